@@ -0,0 +1,133 @@
+package com.example.Config;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Replaces the auto-configured data source when
+ * dataset.datasource.routing.enabled is set.
+ * Read-only transactions are routed to replicas. When shards are configured,
+ * each dataset is routed to its shard first, and each shard routes to its own
+ * replicas; otherwise the primary keeps using the spring.datasource.*
+ * properties.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "dataset.datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingConfiguration implements WebMvcConfigurer, DisposableBean {
+
+    static final String SCHEMA = "db/schema.sql";
+
+    static final String SCHEMA_INDEXES = "db/schema-indexes.sql";
+
+    private final DataSourceRoutingProperties routingProperties;
+
+    private final SessionConsistency sessionConsistency;
+
+    private final List<ReplicaSelector> replicaSelectors = new ArrayList<>();
+
+    public DataSourceRoutingConfiguration(DataSourceRoutingProperties routingProperties) {
+        this.routingProperties = routingProperties;
+        this.sessionConsistency = new SessionConsistency(routingProperties.readYourWritesWindow());
+    }
+
+    @Bean
+    public SessionConsistency sessionConsistency() {
+        return sessionConsistency;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties dataSourceProperties) {
+        if (routingProperties.shards().isEmpty()) {
+            DataSource primary = dataSourceProperties.initializeDataSourceBuilder().build();
+            return new LazyConnectionDataSourceProxy(withReplicas(primary, routingProperties.replicas()));
+        }
+
+        Map<String, DataSource> shards = new LinkedHashMap<>();
+        for (DataSourceRoutingProperties.Shard shard : routingProperties.shards()) {
+            DataSource primary = build(shard.primary());
+            initializeSchema(primary);
+            shards.put(shard.name(), withReplicas(primary, shard.replicas()));
+        }
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shards));
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new SessionTokenInterceptor(sessionConsistency));
+    }
+
+    @Override
+    public void destroy() {
+        replicaSelectors.forEach(ReplicaSelector::close);
+    }
+
+    private DataSource withReplicas(DataSource primary, List<DataSourceRoutingProperties.Node> nodes) {
+        if (nodes.isEmpty()) {
+            return primary;
+        }
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            replicas.put("replica" + i, build(nodes.get(i)));
+        }
+        ReplicaSelector selector = new ReplicaSelector(replicas, routingProperties.replicaSelection());
+        selector.start(routingProperties.probeInterval());
+        replicaSelectors.add(selector);
+        return new ReadWriteRoutingDataSource(primary, selector.getReplicas(), selector, sessionConsistency);
+    }
+
+    /**
+     * Creates the dataset tables on a shard that does not have them yet, and
+     * the record indexes when dataset_records is new.
+     * Replicas receive the tables through replication.
+     *
+     * @param shard the shard primary
+     */
+    static void initializeSchema(DataSource shard) {
+        Boolean initialized = new JdbcTemplate(shard).execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? "DATASET_RECORDS" : "dataset_records";
+            try (ResultSet rs = metaData.getTables(connection.getCatalog(), null, table, null)) {
+                return rs.next();
+            }
+        });
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource(SCHEMA)), shard);
+        if (!Boolean.TRUE.equals(initialized)) {
+            DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource(SCHEMA_INDEXES)),
+                    shard);
+        }
+    }
+
+    static DataSource build(DataSourceRoutingProperties.Node node) {
+        DataSourceBuilder<?> builder = DataSourceBuilder.create()
+                .url(node.url())
+                .username(node.username())
+                .password(node.password());
+        if (node.driverClassName() != null) {
+            builder.driverClassName(node.driverClassName());
+        }
+        return builder.build();
+    }
+}
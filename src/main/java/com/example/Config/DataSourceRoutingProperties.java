@@ -0,0 +1,97 @@
+package com.example.Config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for routing read-only transactions to replica databases and for
+ * spreading datasets over several shards.
+ * Without shards, the primary database is configured through the usual
+ * spring.datasource.* properties.
+ *
+ * @param replicas             the replica databases that serve read-only work
+ * @param replicaSelection     how a replica is picked for each transaction
+ * @param readYourWritesWindow how long a client session reads from the primary
+ *                             after its last write
+ * @param probeInterval        how often replica latency and health are probed
+ * @param shards               the shard databases, each with its own replicas
+ * @param shardOverrides       dataset name to shard name, taking precedence
+ *                             over consistent hashing
+ * @param virtualNodes         points per shard on the consistent-hash ring
+ */
+@ConfigurationProperties(prefix = "dataset.datasource")
+public record DataSourceRoutingProperties(
+        List<Node> replicas,
+        ReplicaSelection replicaSelection,
+        Duration readYourWritesWindow,
+        Duration probeInterval,
+        List<Shard> shards,
+        Map<String, String> shardOverrides,
+        Integer virtualNodes) {
+
+    public DataSourceRoutingProperties {
+        replicas = replicas == null ? List.of() : List.copyOf(replicas);
+        replicaSelection = replicaSelection == null ? ReplicaSelection.ROUND_ROBIN : replicaSelection;
+        readYourWritesWindow = readYourWritesWindow == null ? Duration.ofSeconds(5) : readYourWritesWindow;
+        probeInterval = probeInterval == null ? Duration.ofSeconds(5) : probeInterval;
+        shards = shards == null ? List.of() : List.copyOf(shards);
+        shardOverrides = shardOverrides == null ? Map.of() : Map.copyOf(shardOverrides);
+        virtualNodes = virtualNodes == null ? 128 : virtualNodes;
+    }
+
+    /**
+     * Names of the configured shards, or the single default shard.
+     *
+     * @return the shard names in configuration order
+     */
+    public List<String> shardNames() {
+        if (shards.isEmpty()) {
+            return List.of(ShardRouter.DEFAULT_SHARD);
+        }
+        return shards.stream().map(Shard::name).toList();
+    }
+
+    /**
+     * Connection settings of one database.
+     *
+     * @param url             the JDBC URL
+     * @param username        the login user
+     * @param password        the login password
+     * @param driverClassName the JDBC driver, or null to derive it from the URL
+     */
+    public record Node(String url, String username, String password, String driverClassName) {
+    }
+
+    /**
+     * Connection settings of one shard and its replicas.
+     *
+     * @param name            the shard name used by the shard map
+     * @param url             the JDBC URL of the shard primary
+     * @param username        the login user
+     * @param password        the login password
+     * @param driverClassName the JDBC driver, or null to derive it from the URL
+     * @param replicas        the replicas of this shard
+     */
+    public record Shard(String name, String url, String username, String password, String driverClassName,
+            List<Node> replicas) {
+
+        public Shard {
+            replicas = replicas == null ? List.of() : List.copyOf(replicas);
+        }
+
+        public Node primary() {
+            return new Node(url, username, password, driverClassName);
+        }
+    }
+
+    /**
+     * Strategy for picking a replica.
+     */
+    public enum ReplicaSelection {
+        ROUND_ROBIN,
+        LEAST_LATENCY
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.Config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Data source that sends read-only transactions to a replica and everything
+ * else to the primary.
+ * Must be wrapped in a LazyConnectionDataSourceProxy so that the target is
+ * chosen on the first statement, after the transaction's read-only flag is
+ * known.
+ *
+ * A session is pinned to the primary only by a statement that changed data,
+ * once its transaction commits: read-write transactions that only read, and
+ * rolled back writes, leave the session reading from replicas.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private static final Set<String> STATEMENT_FACTORIES = Set.of("createStatement", "prepareStatement",
+            "prepareCall");
+
+    private static final Set<String> UPDATES = Set.of("executeUpdate", "executeLargeUpdate", "executeBatch",
+            "executeLargeBatch");
+
+    private final ReplicaSelector replicaSelector;
+
+    private final SessionConsistency sessionConsistency;
+
+    /**
+     * Constructor for ReadWriteRoutingDataSource.
+     *
+     * @param primary            the primary data source taking all writes
+     * @param replicas           the replica data sources by lookup key
+     * @param replicaSelector    the strategy picking a replica
+     * @param sessionConsistency the read-your-writes tracker
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+            ReplicaSelector replicaSelector, SessionConsistency sessionConsistency) {
+        this.replicaSelector = replicaSelector;
+        this.sessionConsistency = sessionConsistency;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return trackWrites(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return trackWrites(super.getConnection(username, password));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        if (sessionConsistency.requiresPrimary()) {
+            return PRIMARY;
+        }
+        return replicaSelector.select().orElse(PRIMARY);
+    }
+
+    // Connections of read-only transactions cannot write
+    private Connection trackWrites(Connection connection) {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return connection;
+        }
+        return (Connection) proxy(Connection.class, connection, (method, result) -> STATEMENT_FACTORIES.contains(method.getName())
+                ? proxy(method.getReturnType(), result, (call, executed) -> {
+                    // execute() answers false for an update count
+                    if (UPDATES.contains(call.getName())
+                            || call.getName().equals("execute") && Boolean.FALSE.equals(executed)) {
+                        recordWrite();
+                    }
+                    return executed;
+                })
+                : result);
+    }
+
+    private void recordWrite() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            // Auto-commit: the statement is already committed
+            sessionConsistency.recordWrite();
+            return;
+        }
+        boolean registered = TransactionSynchronizationManager.getSynchronizations().stream()
+                .anyMatch(RecordWriteOnCommit.class::isInstance);
+        if (!registered) {
+            TransactionSynchronizationManager.registerSynchronization(new RecordWriteOnCommit());
+        }
+    }
+
+    private final class RecordWriteOnCommit implements TransactionSynchronization {
+
+        @Override
+        public void afterCommit() {
+            sessionConsistency.recordWrite();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResultHandler {
+
+        Object handle(Method method, Object result) throws SQLException;
+    }
+
+    // Passes every call through to the target and hands its result to the
+    // handler
+    private static Object proxy(Class<?> type, Object target, ResultHandler handler) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            try {
+                return handler.handle(method, method.invoke(target, args));
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        });
+    }
+}
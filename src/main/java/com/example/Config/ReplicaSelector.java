@@ -0,0 +1,138 @@
+package com.example.Config;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.Config.DataSourceRoutingProperties.ReplicaSelection;
+
+/**
+ * Picks the replica that serves a read-only transaction.
+ * Replicas are probed periodically; a replica that fails its probe is skipped
+ * until it answers again. Round-robin rotates over the healthy replicas, and
+ * least-latency picks the one with the lowest smoothed probe latency.
+ */
+public class ReplicaSelector implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaSelector.class);
+
+    // weight of the newest sample in the smoothed latency
+    private static final double SMOOTHING = 0.2;
+
+    private static final int PROBE_TIMEOUT_SECONDS = 1;
+
+    private final Map<String, DataSource> replicas;
+
+    private final List<String> keys;
+
+    private final ReplicaSelection selection;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private final Map<String, Double> latencyNanos = new ConcurrentHashMap<>();
+
+    private final Set<String> unhealthy = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor for ReplicaSelector.
+     *
+     * @param replicas  the replica data sources by lookup key
+     * @param selection the selection strategy
+     */
+    public ReplicaSelector(Map<String, DataSource> replicas, ReplicaSelection selection) {
+        this.replicas = Map.copyOf(replicas);
+        this.keys = replicas.keySet().stream().sorted().toList();
+        this.selection = selection;
+    }
+
+    public Map<String, DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Picks a replica for the next read-only transaction.
+     *
+     * @return the lookup key of the replica, or empty if none is healthy
+     */
+    public Optional<String> select() {
+        List<String> healthy = keys.stream().filter(key -> !unhealthy.contains(key)).toList();
+        if (healthy.isEmpty()) {
+            return Optional.empty();
+        }
+        if (selection == ReplicaSelection.LEAST_LATENCY) {
+            return healthy.stream()
+                    .min(Comparator.comparingDouble(key -> latencyNanos.getOrDefault(key, 0.0)));
+        }
+        return Optional.of(healthy.get(Math.floorMod(counter.getAndIncrement(), healthy.size())));
+    }
+
+    /**
+     * Adds a latency sample for a replica.
+     *
+     * @param key   the lookup key of the replica
+     * @param nanos the measured round trip in nanoseconds
+     */
+    public void recordLatency(String key, long nanos) {
+        latencyNanos.merge(key, (double) nanos,
+                (previous, sample) -> previous + SMOOTHING * (sample - previous));
+    }
+
+    /**
+     * Checks every replica once, updating its latency and health.
+     */
+    public void probe() {
+        replicas.forEach((key, dataSource) -> {
+            long start = System.nanoTime();
+            try (Connection connection = dataSource.getConnection()) {
+                if (!connection.isValid(PROBE_TIMEOUT_SECONDS)) {
+                    throw new IllegalStateException("Connection is not valid");
+                }
+                recordLatency(key, System.nanoTime() - start);
+                if (unhealthy.remove(key)) {
+                    logger.info("Replica {} is healthy again", key);
+                }
+            } catch (Exception ex) {
+                if (unhealthy.add(key)) {
+                    logger.warn("Replica {} failed its health probe: {}", key, ex.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts probing the replicas in the background.
+     *
+     * @param interval the delay between two probes
+     */
+    public void start(Duration interval) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::probe, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.Config;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-your-writes guarantee for client sessions.
+ * A session is identified by the token bound to the current thread; after a
+ * session writes, its reads go to the primary until the replicas have had
+ * time to catch up.
+ */
+public class SessionConsistency {
+
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private static final ThreadLocal<String> currentToken = new ThreadLocal<>();
+
+    private final Map<String, Long> lastWriteNanos = new ConcurrentHashMap<>();
+
+    private final long windowNanos;
+
+    /**
+     * Constructor for SessionConsistency.
+     *
+     * @param window how long a session reads from the primary after a write
+     */
+    public SessionConsistency(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * Binds a session token to the current thread.
+     *
+     * @param token the client session token
+     */
+    public void bind(String token) {
+        currentToken.set(token);
+    }
+
+    /**
+     * Returns the session token bound to the current thread, so work handed
+     * to other threads can bind it too.
+     *
+     * @return the token, or null outside a session
+     */
+    public String token() {
+        return currentToken.get();
+    }
+
+    /**
+     * Removes the session token from the current thread.
+     */
+    public void clear() {
+        currentToken.remove();
+    }
+
+    /**
+     * Records that the current session has written to the primary.
+     */
+    public void recordWrite() {
+        String token = currentToken.get();
+        if (token == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        lastWriteNanos.put(token, now);
+        if (lastWriteNanos.size() > PURGE_THRESHOLD) {
+            lastWriteNanos.values().removeIf(writtenAt -> now - writtenAt > windowNanos);
+        }
+    }
+
+    /**
+     * Checks whether reads of the current session must go to the primary.
+     *
+     * @return true if the session wrote within the read-your-writes window
+     */
+    public boolean requiresPrimary() {
+        String token = currentToken.get();
+        if (token == null) {
+            return false;
+        }
+        Long writtenAt = lastWriteNanos.get(token);
+        return writtenAt != null && System.nanoTime() - writtenAt < windowNanos;
+    }
+}
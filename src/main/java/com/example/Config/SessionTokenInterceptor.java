@@ -0,0 +1,50 @@
+package com.example.Config;
+
+import java.util.UUID;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Binds the client session token of a request for read-your-writes routing.
+ * Clients that want to see their own writes send back the X-Session-Token
+ * header returned on a previous response; a new token is issued otherwise.
+ * The token is removed from the request thread once the request completes
+ * or is handed to async processing, so pooled threads never carry it into
+ * another client's request.
+ */
+public class SessionTokenInterceptor implements AsyncHandlerInterceptor {
+
+    static final String HEADER = "X-Session-Token";
+
+    private final SessionConsistency sessionConsistency;
+
+    public SessionTokenInterceptor(SessionConsistency sessionConsistency) {
+        this.sessionConsistency = sessionConsistency;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String token = request.getHeader(HEADER);
+        if (token == null || token.isBlank()) {
+            token = UUID.randomUUID().toString();
+        }
+        response.setHeader(HEADER, token);
+        sessionConsistency.bind(token);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        sessionConsistency.clear();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+            Object handler) {
+        sessionConsistency.clear();
+    }
+}
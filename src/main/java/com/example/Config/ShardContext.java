@@ -0,0 +1,47 @@
+package com.example.Config;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the shard that database work on the current thread is sent to.
+ * Must be set before a transaction starts, since the connection is bound to
+ * one shard for the whole transaction.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<String> currentShard = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * Returns the shard bound to the current thread.
+     *
+     * @return the shard name, or null for the default shard
+     */
+    public static String current() {
+        return currentShard.get();
+    }
+
+    /**
+     * Runs the given work with the current thread bound to a shard, restoring
+     * the previous shard afterwards.
+     *
+     * @param shard the shard name
+     * @param work  the work to run
+     * @return the result of the work
+     */
+    public static <T> T call(String shard, Supplier<T> work) {
+        String previous = currentShard.get();
+        currentShard.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                currentShard.remove();
+            } else {
+                currentShard.set(previous);
+            }
+        }
+    }
+}
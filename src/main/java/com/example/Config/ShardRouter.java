@@ -0,0 +1,179 @@
+package com.example.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Places each dataset on one shard by consistent hashing of its name.
+ * Every shard owns a number of virtual nodes on a hash ring, so adding a
+ * shard moves only about 1/N of the datasets. Overrides pin single datasets
+ * to a shard, e.g. while rebalancing.
+ */
+public class ShardRouter {
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private final List<String> shards;
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    private final Map<String, String> overrides;
+
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for ShardRouter.
+     *
+     * @param shards       the shard names
+     * @param overrides    dataset name to shard name pins
+     * @param virtualNodes points per shard on the hash ring
+     */
+    public ShardRouter(List<String> shards, Map<String, String> overrides, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        for (String shard : this.shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(shard + "#" + i), shard);
+            }
+        }
+        this.overrides = new ConcurrentHashMap<>();
+        overrides.forEach(this::override);
+        this.executor = this.shards.size() > 1
+                ? Executors.newFixedThreadPool(this.shards.size(), runnable -> {
+                    Thread thread = new Thread(runnable, "shard-fan-out");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    /**
+     * Returns the names of all shards.
+     *
+     * @return the shard names in configuration order
+     */
+    public List<String> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the current dataset overrides.
+     *
+     * @return dataset name to shard name
+     */
+    public Map<String, String> getOverrides() {
+        return Map.copyOf(overrides);
+    }
+
+    /**
+     * Finds the shard that holds a dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @return the shard name
+     */
+    public String shardFor(String datasetName) {
+        String key = String.valueOf(datasetName);
+        String pinned = overrides.get(key);
+        if (pinned != null) {
+            return pinned;
+        }
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Pins a dataset to a shard. Existing rows are not moved; copy them to
+     * the new shard before pinning.
+     *
+     * @param datasetName the name of the dataset
+     * @param shard       the shard that holds it from now on
+     * @throws IllegalArgumentException if the shard is unknown
+     */
+    public void override(String datasetName, String shard) {
+        if (!shards.contains(shard)) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        overrides.put(datasetName, shard);
+    }
+
+    /**
+     * Removes the pin of a dataset, placing it by hashing again.
+     *
+     * @param datasetName the name of the dataset
+     */
+    public void clearOverride(String datasetName) {
+        overrides.remove(datasetName);
+    }
+
+    /**
+     * Runs work against the shard that holds a dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @param work        the work to run, typically a transaction
+     * @return the result of the work
+     */
+    public <T> T onDataset(String datasetName, Supplier<T> work) {
+        return ShardContext.call(shardFor(datasetName), work);
+    }
+
+    /**
+     * Runs work against every shard in parallel.
+     *
+     * @param work the work to run on each shard
+     * @return the results, in shard order
+     */
+    public <T> List<T> onAllShards(Supplier<T> work) {
+        if (executor == null) {
+            return Collections.singletonList(ShardContext.call(shards.get(0), work));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (String shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> ShardContext.call(shard, work), executor));
+        }
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Stops the fan-out threads.
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Data source that sends work to the shard bound in ShardContext, or to the
+ * first shard when none is bound.
+ * Each shard target may itself be a ReadWriteRoutingDataSource.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * Constructor for ShardRoutingDataSource.
+     *
+     * @param shards the shard data sources by shard name, in configuration order
+     */
+    public ShardRoutingDataSource(Map<String, DataSource> shards) {
+        setTargetDataSources(new HashMap<>(shards));
+        setDefaultTargetDataSource(shards.values().iterator().next());
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.Config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides the shard map. Without dataset.datasource.shards there is a single
+ * default shard backed by the regular data source.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(DataSourceRoutingProperties.class)
+public class ShardingConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public ShardRouter shardRouter(DataSourceRoutingProperties routingProperties) {
+        return new ShardRouter(routingProperties.shardNames(), routingProperties.shardOverrides(),
+                routingProperties.virtualNodes());
+    }
+}
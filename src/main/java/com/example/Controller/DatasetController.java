@@ -1,22 +1,44 @@
 package com.example.Controller;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
+import com.example.Entity.DatasetAggregate;
 import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRow;
+import com.example.Entity.GroupCount;
+import com.example.Entity.HistogramBucket;
 import com.example.Exception.DatasetNotFoundException;
 import com.example.Exception.InvalidFieldException;
+import com.example.Service.BatchQuery;
+import com.example.Service.ColumnarWriter;
 import com.example.Service.DatasetService;
+import com.example.Service.QueryOptions;
+import com.example.Service.Versioned;
 
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * REST controller for managing dataset records.
@@ -41,23 +63,45 @@ public class DatasetController {
                     .body(Map.of("error", "ID is required"));
         }
 
-        if (datasetService.existsById(datasetRecord.getId())) {
+        DatasetRecord savedRecord;
+        try {
+            savedRecord = datasetService.addRecord(datasetName, datasetRecord);
+        } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Record with this ID already exists"));
+                    .body(Map.of("error", ex.getMessage()));
         }
 
-        DatasetRecord savedRecord = datasetService.insertRecord(datasetName, datasetRecord);
-
         return ResponseEntity.ok(Map.of(
                 "message", "Record added successfully",
                 "dataset", datasetName,
                 "recordId", savedRecord.getId()));
     }
 
-    @GetMapping(value = "{datasetName}/query", params = "groupBy")
+    @DeleteMapping("{datasetName}")
+    public ResponseEntity<Map<String, Object>> dropDataset(@PathVariable String datasetName) {
+        try {
+            datasetService.dropDataset(datasetName);
+
+            return ResponseEntity.ok(Map.of(
+                    "message", "Dataset dropped successfully",
+                    "dataset", datasetName));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+        }
+    }
+
+    @GetMapping(value = "{datasetName}/query", params = { "groupBy", "!aggregate", "!sortBy", "!bucket" })
     public ResponseEntity<?> getGroupedRecords(
             @PathVariable String datasetName,
-            @RequestParam String groupBy) {
+            @RequestParam String groupBy,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String where,
+            @RequestParam(defaultValue = "false") boolean counts,
+            @RequestParam(defaultValue = "false") boolean subtotals,
+            @RequestParam(defaultValue = "false") boolean explain,
+            WebRequest request) {
 
         if (groupBy == null || groupBy.isBlank()) {
             return ResponseEntity.badRequest()
@@ -65,19 +109,55 @@ public class DatasetController {
         }
 
         try {
-            Map<String, List<DatasetRecord>> groupedRecords = datasetService.groupByField(datasetName, groupBy);
+            if (explain) {
+                return ResponseEntity.ok(Map.of("plan", datasetService.explain(datasetName,
+                        new BatchQuery(null, groupBy, counts, subtotals, null, null, null, null, null, null, null,
+                                fields, where))));
+            }
 
-            if (groupedRecords.isEmpty()) {
+            String current = etag(datasetService.version(datasetName), request);
+            if (notModified(request, current)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+            }
+
+            QueryOptions options = QueryOptions.parse(fields, where);
+            List<String> groupByFields = Arrays.stream(groupBy.split(",")).map(String::trim).toList();
+
+            if (counts) {
+                Versioned<GroupCount> groupCounts = datasetService.versioned(datasetName,
+                        () -> datasetService.countGroups(datasetName, groupByFields, subtotals, options));
+                return ResponseEntity.ok().eTag(etag(groupCounts.version(), request)).body(Map.of(
+                        "groupCounts", groupCounts.result().groups(),
+                        "total", groupCounts.result().count()));
+            }
+
+            if (groupByFields.size() > 1) {
+                Versioned<Map<String, Object>> nestedRecords = datasetService.versioned(datasetName,
+                        () -> datasetService.groupByFields(datasetName, groupByFields, options));
+                if (nestedRecords.result().isEmpty()) {
+                    return ResponseEntity.noContent().build();
+                }
+                return ResponseEntity.ok().eTag(etag(nestedRecords.version(), request))
+                        .body(Map.of("groupedRecords", nestedRecords.result()));
+            }
+
+            Versioned<Map<String, List<DatasetRow>>> groupedRecords = datasetService.versioned(datasetName,
+                    () -> options.isDefault()
+                            ? datasetService.groupByField(datasetName, groupBy)
+                            : datasetService.groupByField(datasetName, groupBy, options));
+
+            if (groupedRecords.result().isEmpty()) {
                 return ResponseEntity.noContent().build();
             }
 
-            return ResponseEntity.ok(Map.of("groupedRecords", groupedRecords));
+            return ResponseEntity.ok().eTag(etag(groupedRecords.version(), request))
+                    .body(Map.of("groupedRecords", groupedRecords.result()));
 
         } catch (DatasetNotFoundException ex) {
             return ResponseEntity.status(404)
                     .body(Map.of("error", ex.getMessage()));
 
-        } catch (InvalidFieldException ex) {
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
             return ResponseEntity.badRequest()
                     .body(Map.of("error", ex.getMessage()));
 
@@ -87,20 +167,339 @@ public class DatasetController {
         }
     }
 
-    @GetMapping(value = "{datasetName}/query", params = { "sortBy" })
+    @GetMapping(value = "{datasetName}/query", params = { "sortBy", "!groupBy" })
     public ResponseEntity<?> getSortedRecords(
             @PathVariable String datasetName,
             @RequestParam String sortBy,
-            @RequestParam(defaultValue = "asc") String order) {
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String where,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean explain,
+            WebRequest request) {
+
+        try {
+            if (explain) {
+                return ResponseEntity.ok(Map.of("plan", datasetService.explain(datasetName,
+                        new BatchQuery(null, null, false, false, sortBy, order, limit, null, null, null, null,
+                                fields, where))));
+            }
+
+            String current = etag(datasetService.version(datasetName), request);
+            if (notModified(request, current)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+            }
+
+            QueryOptions options = QueryOptions.parse(fields, where, limit);
+            Versioned<List<DatasetRow>> sortedRecords = datasetService.versioned(datasetName,
+                    () -> options.isDefault()
+                            ? datasetService.getSortedRecords(datasetName, sortBy, order)
+                            : datasetService.getSortedRecords(datasetName, sortBy, order, options));
+
+            if (sortedRecords.result().isEmpty()) {
+                return ResponseEntity.noContent().build();
+            }
+
+            return ResponseEntity.ok().eTag(etag(sortedRecords.version(), request))
+                    .body(Map.of("sortedRecords", sortedRecords.result()));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @GetMapping(value = "{datasetName}/query", params = { "groupBy", "sortBy", "!aggregate" })
+    public ResponseEntity<?> getSortedRecordsByGroup(
+            @PathVariable String datasetName,
+            @RequestParam String groupBy,
+            @RequestParam String sortBy,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String where,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean explain,
+            WebRequest request) {
 
         try {
-            List<DatasetRecord> sortedRecords = datasetService.getSortedRecords(datasetName, sortBy, order);
+            if (explain) {
+                return ResponseEntity.ok(Map.of("plan", datasetService.explain(datasetName,
+                        new BatchQuery(null, groupBy, false, false, sortBy, order, limit, null, null, null, null,
+                                fields, where))));
+            }
+
+            String current = etag(datasetService.version(datasetName), request);
+            if (notModified(request, current)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+            }
 
-            if (sortedRecords.isEmpty()) {
+            QueryOptions options = QueryOptions.parse(fields, where, limit);
+            Versioned<Map<String, List<DatasetRow>>> groupedRecords = datasetService.versioned(datasetName,
+                    () -> datasetService.getSortedRecordsByGroup(datasetName, groupBy, sortBy, order, options));
+
+            if (groupedRecords.result().isEmpty()) {
                 return ResponseEntity.noContent().build();
             }
 
-            return ResponseEntity.ok(Map.of("sortedRecords", sortedRecords));
+            return ResponseEntity.ok().eTag(etag(groupedRecords.version(), request))
+                    .body(Map.of("groupedRecords", groupedRecords.result()));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @PostMapping("{datasetName}/records:batchGet")
+    public ResponseEntity<?> getRecords(
+            @PathVariable String datasetName,
+            @RequestBody List<Long> ids,
+            @RequestParam(required = false) String fields) {
+
+        try {
+            QueryOptions options = QueryOptions.parse(fields, null);
+            return ResponseEntity.ok(datasetService.getRecords(datasetName, ids, options));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @GetMapping("{datasetName}/changes")
+    public ResponseEntity<?> getChanges(
+            @PathVariable String datasetName,
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "1000") int limit) {
+
+        try {
+            return ResponseEntity.ok(datasetService.changes(datasetName, since, limit));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    // Returns the emitter itself on success so it is streamed; errors are JSON
+    // with the content type set, since an EventSource only accepts
+    // text/event-stream
+    @GetMapping(path = "{datasetName}/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Object streamChanges(
+            @PathVariable String datasetName,
+            @RequestParam(required = false) String since,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+
+        try {
+            return datasetService.subscribe(datasetName, since != null ? since : lastEventId);
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404).contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500).contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    // Returns the body itself on success so it is streamed from an async
+    // thread; errors are JSON
+    @GetMapping("{datasetName}/export")
+    public Object exportDataset(
+            @PathVariable String datasetName,
+            @RequestParam(defaultValue = "8192") int batchSize,
+            @RequestParam(required = false) String where,
+            HttpServletResponse response) {
+
+        try {
+            StreamingResponseBody body = datasetService.export(datasetName, batchSize,
+                    QueryOptions.parse(null, where));
+            response.setContentType(ColumnarWriter.MEDIA_TYPE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename(datasetName + ".dscol", StandardCharsets.UTF_8).build().toString());
+            return body;
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @GetMapping("{datasetName}/sample")
+    public ResponseEntity<?> getSample(
+            @PathVariable String datasetName,
+            @RequestParam(defaultValue = "100") int n,
+            @RequestParam(required = false) Long seed,
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String where) {
+
+        try {
+            QueryOptions options = QueryOptions.parse(fields, where);
+            if (groupBy == null) {
+                return ResponseEntity.ok(datasetService.sample(datasetName, n, seed, options));
+            }
+            return ResponseEntity.ok(Map.of(
+                    "groupedSamples", datasetService.sampleByGroup(datasetName, groupBy, n, seed, options)));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @GetMapping(value = "{datasetName}/query", params = { "bucket", "!aggregate" })
+    public ResponseEntity<?> getHistogram(
+            @PathVariable String datasetName,
+            @RequestParam String bucket,
+            @RequestParam(required = false) Long width,
+            @RequestParam(required = false) List<Long> boundaries,
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(required = false) String where,
+            WebRequest request) {
+
+        try {
+            String current = etag(datasetService.version(datasetName), request);
+            if (notModified(request, current)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+            }
+
+            QueryOptions options = QueryOptions.parse(null, where);
+            Versioned<List<HistogramBucket>> histogram = datasetService.versioned(datasetName,
+                    () -> datasetService.histogram(datasetName, bucket, width, boundaries, groupBy, options));
+            long total = histogram.result().stream().mapToLong(HistogramBucket::count).sum();
+            return ResponseEntity.ok().eTag(etag(histogram.version(), request))
+                    .body(Map.of("histogram", histogram.result(), "total", total));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @GetMapping(value = "{datasetName}/query", params = "aggregate")
+    public ResponseEntity<?> getAggregates(
+            @PathVariable String datasetName,
+            @RequestParam String aggregate,
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(required = false) String where,
+            @RequestParam(defaultValue = "false") boolean explain,
+            WebRequest request) {
+
+        try {
+            if (explain) {
+                return ResponseEntity.ok(Map.of("plan", datasetService.explain(datasetName,
+                        new BatchQuery(null, groupBy, false, false, null, null, null, aggregate, null, null, null,
+                                null, where))));
+            }
+
+            String current = etag(datasetService.version(datasetName), request);
+            if (notModified(request, current)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+            }
+
+            QueryOptions options = QueryOptions.parse(null, where);
+            if (groupBy == null) {
+                Versioned<DatasetAggregate> aggregates = datasetService.versioned(datasetName,
+                        () -> options.isDefault()
+                                ? datasetService.aggregate(datasetName, aggregate)
+                                : datasetService.aggregate(datasetName, aggregate, options));
+                return ResponseEntity.ok().eTag(etag(aggregates.version(), request))
+                        .body(Map.of("aggregates", aggregates.result()));
+            }
+
+            Versioned<Map<String, DatasetAggregate>> groupedAggregates = datasetService.versioned(datasetName,
+                    () -> options.isDefault()
+                            ? datasetService.aggregateByGroup(datasetName, aggregate, groupBy)
+                            : datasetService.aggregateByGroup(datasetName, aggregate, groupBy, options));
+            return ResponseEntity.ok().eTag(etag(groupedAggregates.version(), request))
+                    .body(Map.of("groupedAggregates", groupedAggregates.result()));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (Exception ex) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @PostMapping("{datasetName}/query/batch")
+    public ResponseEntity<?> batchQuery(
+            @PathVariable String datasetName,
+            @RequestBody List<BatchQuery> queries) {
+
+        try {
+            return ResponseEntity.ok(Map.of("results", datasetService.batchQuery(datasetName, queries)));
 
         } catch (DatasetNotFoundException ex) {
             return ResponseEntity.status(404)
@@ -115,4 +514,32 @@ public class DatasetController {
                     .body(Map.of("error", "Internal server error"));
         }
     }
+
+    // Strong ETag of a query response: the dataset version, every query
+    // parameter and the Accept header, so it changes with any of them; none
+    // without a version
+    private static String etag(String version, WebRequest request) {
+        if (version == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) -> query.append('&').append(name)
+                .append('=').append(String.join(",", values)));
+        // The JSON, CBOR and Smile encodings of a result are different representations
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept != null) {
+            query.append("&Accept=").append(accept);
+        }
+        String parameters = DigestUtils.md5DigestAsHex(query.toString().getBytes(StandardCharsets.UTF_8));
+        return "\"" + version + "-" + parameters.substring(0, 16) + "\"";
+    }
+
+    private static boolean notModified(WebRequest request, String etag) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        ETag current = ETag.create(etag);
+        return ETag.parse(ifNoneMatch).stream().anyMatch(tag -> tag.isWildcard() || tag.compare(current, false));
+    }
 }
@@ -0,0 +1,68 @@
+package com.example.Controller;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.example.Exception.DatasetNotFoundException;
+import com.example.Exception.InvalidFieldException;
+import com.example.Service.DistinctCounter;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller serving approximate distinct counts from the HyperLogLog
+ * sketches of one dataset or the union of several.
+ */
+@RestController
+@RequestMapping("/api/dataset/")
+public class DistinctCountController {
+
+    private final DistinctCounter distinctCounter;
+
+    public DistinctCountController(DistinctCounter distinctCounter) {
+        this.distinctCounter = distinctCounter;
+    }
+
+    @GetMapping("{datasetName}/distinct")
+    public ResponseEntity<?> getDistinctCount(
+            @PathVariable String datasetName,
+            @RequestParam String field) {
+        return distinctCount(List.of(datasetName), field);
+    }
+
+    @GetMapping("distinct")
+    public ResponseEntity<?> getMergedDistinctCount(
+            @RequestParam String datasets,
+            @RequestParam String field) {
+        List<String> datasetNames = Arrays.stream(datasets.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .toList();
+        if (datasetNames.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "datasets cannot be empty"));
+        }
+        return distinctCount(datasetNames, field);
+    }
+
+    private ResponseEntity<?> distinctCount(List<String> datasetNames, String field) {
+        try {
+            return ResponseEntity.ok(distinctCounter.estimate(datasetNames, field));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.Controller;
+
+import com.example.Entity.IdFilterStats;
+import com.example.Service.IdFilter;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller exposing the size and accuracy of the record id filter.
+ */
+@RestController
+@RequestMapping("/api/dataset/id-filter")
+public class IdFilterController {
+
+    private final IdFilter idFilter;
+
+    public IdFilterController(IdFilter idFilter) {
+        this.idFilter = idFilter;
+    }
+
+    @GetMapping("stats")
+    public ResponseEntity<IdFilterStats> getStats() {
+        return ResponseEntity.ok(idFilter.stats());
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.Controller;
+
+import java.util.Map;
+
+import com.example.Service.IndexAdvisor;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller exposing the index advisor report.
+ */
+@RestController
+@RequestMapping("/api/dataset/indexes")
+public class IndexAdvisorController {
+
+    private final IndexAdvisor indexAdvisor;
+
+    public IndexAdvisorController(IndexAdvisor indexAdvisor) {
+        this.indexAdvisor = indexAdvisor;
+    }
+
+    @GetMapping("advice")
+    public ResponseEntity<Map<String, Object>> getIndexAdvice() {
+        return ResponseEntity.ok(Map.of("advice", indexAdvisor.report()));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.Controller;
+
+import java.util.List;
+import java.util.Map;
+
+import com.example.Exception.DatasetNotFoundException;
+import com.example.Exception.InvalidFieldException;
+import com.example.Service.QuantileEstimator;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller serving percentiles of numeric fields from the quantile
+ * sketches of a dataset.
+ */
+@RestController
+@RequestMapping("/api/dataset/")
+public class QuantileController {
+
+    private final QuantileEstimator quantileEstimator;
+
+    public QuantileController(QuantileEstimator quantileEstimator) {
+        this.quantileEstimator = quantileEstimator;
+    }
+
+    @GetMapping("{datasetName}/quantiles")
+    public ResponseEntity<?> getQuantiles(
+            @PathVariable String datasetName,
+            @RequestParam String field,
+            @RequestParam(defaultValue = "0.5,0.9,0.99") List<Double> q,
+            @RequestParam(required = false) String groupBy) {
+        try {
+            if (groupBy == null) {
+                return ResponseEntity.ok(Map.of(
+                        "field", field,
+                        "quantiles", quantileEstimator.quantiles(datasetName, field, q)));
+            }
+            return ResponseEntity.ok(Map.of(
+                    "field", field,
+                    "groupedQuantiles", quantileEstimator.quantilesByGroup(datasetName, field, groupBy, q)));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+
+        } catch (InvalidFieldException | IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+        }
+    }
+}
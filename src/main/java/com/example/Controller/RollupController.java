@@ -0,0 +1,43 @@
+package com.example.Controller;
+
+import java.util.Map;
+
+import com.example.Exception.DatasetNotFoundException;
+import com.example.Service.DatasetService;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller rebuilding the per-department rollups of datasets from
+ * their records.
+ */
+@RestController
+@RequestMapping("/api/dataset/rollups")
+public class RollupController {
+
+    private final DatasetService datasetService;
+
+    public RollupController(DatasetService datasetService) {
+        this.datasetService = datasetService;
+    }
+
+    @PostMapping("rebuild")
+    public ResponseEntity<Map<String, Object>> rebuild(@RequestParam(required = false) String dataset) {
+        try {
+            if (dataset == null || dataset.isBlank()) {
+                return ResponseEntity.ok(Map.of("datasets", datasetService.rebuildRollups()));
+            }
+            return ResponseEntity.ok(Map.of(
+                    "dataset", dataset,
+                    "departments", datasetService.rebuildRollups(dataset)));
+
+        } catch (DatasetNotFoundException ex) {
+            return ResponseEntity.status(404)
+                    .body(Map.of("error", ex.getMessage()));
+        }
+    }
+}
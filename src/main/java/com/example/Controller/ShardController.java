@@ -0,0 +1,74 @@
+package com.example.Controller;
+
+import java.util.Map;
+
+import com.example.Config.ShardRouter;
+import com.example.Service.DatasetService;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller exposing the shard map and per-dataset overrides.
+ */
+@RestController
+@RequestMapping("/api/dataset/shards")
+public class ShardController {
+
+    private final ShardRouter shardRouter;
+
+    private final DatasetService datasetService;
+
+    public ShardController(ShardRouter shardRouter, DatasetService datasetService) {
+        this.shardRouter = shardRouter;
+        this.datasetService = datasetService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getShardMap() {
+        return ResponseEntity.ok(Map.of(
+                "shards", shardRouter.getShards(),
+                "overrides", shardRouter.getOverrides()));
+    }
+
+    @GetMapping("{datasetName}")
+    public ResponseEntity<Map<String, Object>> getDatasetShard(@PathVariable String datasetName) {
+        return ResponseEntity.ok(Map.of(
+                "dataset", datasetName,
+                "shard", shardRouter.shardFor(datasetName)));
+    }
+
+    @PutMapping("{datasetName}")
+    public ResponseEntity<Map<String, Object>> pinDataset(
+            @PathVariable String datasetName,
+            @RequestParam String shard) {
+        try {
+            datasetService.pinDataset(datasetName, shard);
+
+            return ResponseEntity.ok(Map.of(
+                    "message", "Dataset pinned successfully",
+                    "dataset", datasetName,
+                    "shard", shard));
+
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", ex.getMessage()));
+        }
+    }
+
+    @DeleteMapping("{datasetName}")
+    public ResponseEntity<Map<String, Object>> unpinDataset(@PathVariable String datasetName) {
+        datasetService.unpinDataset(datasetName);
+
+        return ResponseEntity.ok(Map.of(
+                "message", "Dataset unpinned successfully",
+                "dataset", datasetName,
+                "shard", shardRouter.shardFor(datasetName)));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.Entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.ColumnDefault;
+
+/**
+ * Entity class representing a dataset.
+ * Maps to the "datasets" dimension table, which gives every dataset name a
+ * compact integer key that dataset records reference instead of the name.
+ */
+@Entity
+@Table(name = "datasets", uniqueConstraints = @UniqueConstraint(name = "uk_datasets_name", columnNames = "name"))
+public class Dataset {
+
+    /**
+     * Surrogate key referenced by dataset_records.dataset_id.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    /**
+     * Unique name of the dataset, as used in the REST API.
+     */
+    @Column(nullable = false)
+    private String name;
+
+    /**
+     * Last change sequence number handed out to a record of the dataset.
+     */
+    @ColumnDefault("0")
+    @Column(name = "change_seq", nullable = false)
+    private long changeSeq;
+
+    /**
+     * Whether the rows of dataset_rollups cover every record of the dataset.
+     * Set when the dataset is created; false for datasets older than the
+     * rollups until they are rebuilt.
+     */
+    @ColumnDefault("false")
+    @Column(name = "rollup_ready", nullable = false)
+    private boolean rollupReady;
+
+    // Getters and setters
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
+    public boolean isRollupReady() {
+        return rollupReady;
+    }
+
+    public void setRollupReady(boolean rollupReady) {
+        this.rollupReady = rollupReady;
+    }
+}
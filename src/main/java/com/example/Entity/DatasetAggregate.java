@@ -0,0 +1,14 @@
+package com.example.Entity;
+
+/**
+ * Summary statistics of a numeric field over a dataset or one of its groups.
+ * Null values are ignored, as in SQL aggregates.
+ *
+ * @param count number of non-null values
+ * @param sum   sum of the values
+ * @param min   smallest value, or null when there are none
+ * @param max   largest value, or null when there are none
+ * @param avg   arithmetic mean, or null when there are none
+ */
+public record DatasetAggregate(long count, long sum, Long min, Long max, Double avg) {
+}
@@ -0,0 +1,18 @@
+package com.example.Entity;
+
+import java.util.List;
+
+/**
+ * Records of a dataset written after a cursor, for incremental sync.
+ *
+ * @param records    the records in write order; a record written again
+ *                   appears once, at its last write
+ * @param nextCursor the cursor to pass as since= on the next call
+ * @param reset      whether the records start from the beginning of the
+ *                   dataset, because no cursor was given or it belongs to a
+ *                   dropped incarnation of the dataset; a consumer should
+ *                   replace its copy rather than apply the changes to it
+ * @param more       whether the limit was reached and more changes may follow
+ */
+public record DatasetChanges(List<DatasetRow> records, String nextCursor, boolean reset, boolean more) {
+}
@@ -0,0 +1,88 @@
+package com.example.Entity;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Registry of the DatasetRecord fields that can be used in queries.
+ * Maps each API field name to its column and value accessor, so query
+ * validation and grouping do not rely on reflection.
+ */
+public enum DatasetField {
+
+    ID("id", "id", true, DatasetRow::getId),
+    // Records only hold the dataset key; the name is read once per query
+    // through the key that every dataset_records query binds to ?1
+    DATASET_NAME("datasetName", "(SELECT name FROM datasets WHERE id = ?1)", false, DatasetRow::getDatasetName),
+    NAME("name", "name", false, DatasetRow::getName),
+    AGE("age", "age", true, DatasetRow::getAge),
+    DEPARTMENT("department", "department", false, DatasetRow::getDepartment);
+
+    private final String fieldName;
+    private final String columnName;
+    private final boolean numeric;
+    private final Function<DatasetRow, Object> accessor;
+
+    DatasetField(String fieldName, String columnName, boolean numeric, Function<DatasetRow, Object> accessor) {
+        this.fieldName = fieldName;
+        this.columnName = columnName;
+        this.numeric = numeric;
+        this.accessor = accessor;
+    }
+
+    /**
+     * Looks up a field by its API name.
+     *
+     * @param fieldName the field name as used in query parameters
+     * @return the matching field, or empty if the name is unknown
+     */
+    public static Optional<DatasetField> fromName(String fieldName) {
+        return Arrays.stream(values())
+                .filter(field -> field.fieldName.equals(fieldName))
+                .findFirst();
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    /**
+     * Whether the field holds numbers and can be aggregated.
+     *
+     * @return true for numeric fields
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    /**
+     * Reads the value of this field from the given record.
+     *
+     * @param record the record to read from
+     * @return the field value, possibly null
+     */
+    public Object valueOf(DatasetRow record) {
+        return accessor.apply(record);
+    }
+
+    /**
+     * Orders records by this field like the sortBy queries: nulls first, ties
+     * broken by id.
+     *
+     * @return an ascending comparator; reverse it for descending order
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Comparator<DatasetRow> comparator() {
+        Comparator<DatasetRow> byValue = Comparator.comparing(record -> (Comparable) valueOf(record),
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+        return this == ID
+                ? byValue
+                : byValue.thenComparing(DatasetRow::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+}
@@ -1,20 +1,38 @@
 package com.example.Entity;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 
+import org.hibernate.annotations.Formula;
+
+import com.example.Repository.DatasetKeyListener;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Entity class representing a record in a dataset.
  * Maps to the "dataset_records" table in the database.
+ * Every query is scoped to one dataset, so each index leads with the integer
+ * dataset_id and ends with id, letting sortBy/groupBy read an ordered index
+ * range instead of scanning and filesorting the whole table.
  */
 @Entity
-@Table(name = "dataset_records")
-public class DatasetRecord {
+@EntityListeners(DatasetKeyListener.class)
+@Table(name = "dataset_records", indexes = {
+        @Index(name = "idx_dataset_records_id", columnList = "dataset_id, id"),
+        @Index(name = "idx_dataset_records_name", columnList = "dataset_id, name, id"),
+        @Index(name = "idx_dataset_records_age", columnList = "dataset_id, age, id"),
+        @Index(name = "idx_dataset_records_department", columnList = "dataset_id, department, id"),
+        @Index(name = "idx_dataset_records_change_seq", columnList = "dataset_id, change_seq")
+})
+public class DatasetRecord implements DatasetRow {
 
     /**
      * Unique identifier for the dataset record.
@@ -25,9 +43,20 @@ public class DatasetRecord {
 
     /**
      * Name of the dataset this record belongs to.
+     * Not stored on the record: read from the "datasets" table through
+     * dataset_id when the record is loaded.
      */
+    @Formula("(SELECT d.name FROM datasets d WHERE d.id = dataset_id)")
     private String datasetName;
 
+    /**
+     * Integer key of the dataset in the "datasets" table.
+     * Assigned from datasetName when the record is persisted.
+     */
+    @JsonIgnore
+    @Column(name = "dataset_id")
+    private Integer datasetId;
+
     /**
      * Name of the person or entity.
      * Cannot be blank.
@@ -53,6 +82,14 @@ public class DatasetRecord {
     @Pattern(regexp = "^[A-Za-z ]+$", message = "Department must contain only letters and spaces")
     private String department;
 
+    /**
+     * Position of the record's last write in its dataset's change sequence.
+     * Assigned on every insert, so changes can be read in write order.
+     */
+    @JsonIgnore
+    @Column(name = "change_seq")
+    private Long changeSeq;
+
     // Getters and setters
 
     public Long getId() {
@@ -71,6 +108,14 @@ public class DatasetRecord {
         this.datasetName = datasetName;
     }
 
+    public Integer getDatasetId() {
+        return datasetId;
+    }
+
+    public void setDatasetId(Integer datasetId) {
+        this.datasetId = datasetId;
+    }
+
     public String getName() {
         return name;
     }
@@ -94,4 +139,12 @@ public class DatasetRecord {
     public void setDepartment(String department) {
         this.department = department;
     }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
 }
@@ -0,0 +1,75 @@
+package com.example.Entity;
+
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Immutable projection of a dataset_records row.
+ * Built straight from the query result, so reading a dataset allocates one
+ * small object per row instead of a managed entity with its persistence
+ * context entry and dirty-checking snapshot. Fields that were not selected
+ * are null and left out of the JSON.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class DatasetRecordView implements DatasetRow {
+
+    private final Long id;
+
+    private final String datasetName;
+
+    private final String name;
+
+    private final Integer age;
+
+    private final String department;
+
+    public DatasetRecordView(Long id, String datasetName, String name, Integer age, String department) {
+        this.id = id;
+        this.datasetName = datasetName;
+        this.name = name;
+        this.age = age;
+        this.department = department;
+    }
+
+    /**
+     * Copies the selected fields of a row into a new view.
+     *
+     * @param row    the row to copy
+     * @param fields the fields to keep
+     * @return a view holding only the selected fields
+     */
+    public static DatasetRecordView of(DatasetRow row, Set<DatasetField> fields) {
+        return new DatasetRecordView(
+                fields.contains(DatasetField.ID) ? row.getId() : null,
+                fields.contains(DatasetField.DATASET_NAME) ? row.getDatasetName() : null,
+                fields.contains(DatasetField.NAME) ? row.getName() : null,
+                fields.contains(DatasetField.AGE) ? row.getAge() : null,
+                fields.contains(DatasetField.DEPARTMENT) ? row.getDepartment() : null);
+    }
+
+    @Override
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String getDatasetName() {
+        return datasetName;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Integer getAge() {
+        return age;
+    }
+
+    @Override
+    public String getDepartment() {
+        return department;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.Entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+/**
+ * Entity class holding the pre-aggregated count and age statistics of one
+ * department of a dataset. Maps to the "dataset_rollups" table, stored on
+ * the same shard as the dataset and updated in the transaction of every
+ * insert, so per-department counts and aggregates are read from one row per
+ * department instead of a scan of the records.
+ */
+@Entity
+@IdClass(DatasetRollup.Key.class)
+@Table(name = "dataset_rollups")
+public class DatasetRollup {
+
+    /**
+     * Department key of records without a department. Records with an
+     * empty department are refused on insert, and datasets that still have
+     * some are not rolled up, so it cannot clash with a real one.
+     */
+    public static final String NO_DEPARTMENT = "";
+
+    /**
+     * Key of the dataset the rollup belongs to.
+     */
+    @Id
+    @Column(name = "dataset_id")
+    private Integer datasetId;
+
+    /**
+     * Department of the rolled up records, or NO_DEPARTMENT.
+     */
+    @Id
+    @Column(name = "department")
+    private String department;
+
+    /**
+     * Number of records in the department.
+     */
+    @Column(name = "record_count", nullable = false)
+    private long recordCount;
+
+    /**
+     * Number of records with an age.
+     */
+    @Column(name = "age_count", nullable = false)
+    private long ageCount;
+
+    @Column(name = "age_sum", nullable = false)
+    private long ageSum;
+
+    @Column(name = "age_min")
+    private Integer ageMin;
+
+    @Column(name = "age_max")
+    private Integer ageMax;
+
+    protected DatasetRollup() {
+    }
+
+    // Getters
+
+    public Integer getDatasetId() {
+        return datasetId;
+    }
+
+    public String getDepartment() {
+        return department;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getAgeCount() {
+        return ageCount;
+    }
+
+    public long getAgeSum() {
+        return ageSum;
+    }
+
+    public Integer getAgeMin() {
+        return ageMin;
+    }
+
+    public Integer getAgeMax() {
+        return ageMax;
+    }
+
+    /**
+     * Composite primary key of DatasetRollup.
+     */
+    public static class Key implements Serializable {
+
+        private Integer datasetId;
+
+        private String department;
+
+        protected Key() {
+        }
+
+        public Key(Integer datasetId, String department) {
+            this.datasetId = datasetId;
+            this.department = department;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key
+                    && Objects.equals(datasetId, key.datasetId)
+                    && Objects.equals(department, key.department);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(datasetId, department);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.Entity;
+
+/**
+ * Read-only view of a dataset record, implemented by the managed
+ * DatasetRecord entity and by the immutable DatasetRecordView returned from
+ * queries.
+ */
+public interface DatasetRow {
+
+    Long getId();
+
+    String getDatasetName();
+
+    String getName();
+
+    Integer getAge();
+
+    String getDepartment();
+}
@@ -0,0 +1,14 @@
+package com.example.Entity;
+
+import java.util.List;
+
+/**
+ * Uniform random sample of the records of a dataset or one of its groups.
+ *
+ * @param seed       the seed that reproduces the sample
+ * @param strategy   how the sample was drawn: "random-id" or "reservoir"
+ * @param population number of records the sample was drawn from
+ * @param records    the sampled records in id order
+ */
+public record DatasetSample(long seed, String strategy, long population, List<DatasetRow> records) {
+}
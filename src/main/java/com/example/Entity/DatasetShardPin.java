@@ -0,0 +1,48 @@
+package com.example.Entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Entity class holding a runtime change of where a dataset is placed. Maps
+ * to the "dataset_shard_pins" table of the first shard, which holds the pins
+ * of every shard.
+ */
+@Entity
+@Table(name = "dataset_shard_pins")
+public class DatasetShardPin {
+
+    /**
+     * Name of the pinned dataset.
+     */
+    @Id
+    @Column(name = "dataset_name")
+    private String datasetName;
+
+    /**
+     * Shard holding the dataset, or null when it was unpinned and is placed
+     * by hashing again, also if the configuration pins it.
+     */
+    @Column(length = 64)
+    private String shard;
+
+    protected DatasetShardPin() {
+    }
+
+    public DatasetShardPin(String datasetName, String shard) {
+        this.datasetName = datasetName;
+        this.shard = shard;
+    }
+
+    // Getters
+
+    public String getDatasetName() {
+        return datasetName;
+    }
+
+    public String getShard() {
+        return shard;
+    }
+}
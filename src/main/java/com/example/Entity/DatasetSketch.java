@@ -0,0 +1,98 @@
+package com.example.Entity;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+/**
+ * Entity class holding the serialized HyperLogLog sketch of one field of a
+ * dataset. Maps to the "dataset_sketches" table, stored on the same shard as
+ * the dataset and keyed by its integer dataset_id.
+ */
+@Entity
+@IdClass(DatasetSketch.Key.class)
+@Table(name = "dataset_sketches")
+public class DatasetSketch {
+
+    /**
+     * Key of the dataset the sketch belongs to.
+     */
+    @Id
+    @Column(name = "dataset_id")
+    private Integer datasetId;
+
+    /**
+     * API name of the sketched field.
+     */
+    @Id
+    @Column(name = "field_name", length = 32)
+    private String fieldName;
+
+    /**
+     * HyperLogLog registers, one byte each.
+     */
+    @Column(nullable = false, length = 4096)
+    private byte[] registers;
+
+    protected DatasetSketch() {
+    }
+
+    public DatasetSketch(Integer datasetId, String fieldName, byte[] registers) {
+        this.datasetId = datasetId;
+        this.fieldName = fieldName;
+        this.registers = registers;
+    }
+
+    // Getters and setters
+
+    public Integer getDatasetId() {
+        return datasetId;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public byte[] getRegisters() {
+        return registers;
+    }
+
+    public void setRegisters(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Composite primary key of DatasetSketch.
+     */
+    public static class Key implements Serializable {
+
+        private Integer datasetId;
+
+        private String fieldName;
+
+        protected Key() {
+        }
+
+        public Key(Integer datasetId, String fieldName) {
+            this.datasetId = datasetId;
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key
+                    && Objects.equals(datasetId, key.datasetId)
+                    && Objects.equals(fieldName, key.fieldName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(datasetId, fieldName);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.Entity;
+
+import java.util.List;
+
+/**
+ * Approximate number of distinct values of a field over one or more
+ * datasets, estimated from HyperLogLog sketches.
+ *
+ * @param datasets              the datasets counted together
+ * @param field                 the API name of the field
+ * @param estimate              the estimated number of distinct values
+ * @param relativeStandardError the relative standard error of the estimate;
+ *                              about 95% of estimates lie within twice this
+ *                              fraction of the true count
+ */
+public record DistinctCount(List<String> datasets, String field, long estimate, double relativeStandardError) {
+}
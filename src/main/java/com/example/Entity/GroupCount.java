@@ -0,0 +1,19 @@
+package com.example.Entity;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Node of a nested group count tree.
+ * Leaves carry the number of records in the group; inner nodes carry their
+ * sub-groups and, when subtotals are requested, the number of records below
+ * them.
+ *
+ * @param count  number of records in the group, or null for an inner node
+ *               without subtotal
+ * @param groups sub-groups by key, or null for a leaf
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record GroupCount(Long count, Map<String, GroupCount> groups) {
+}
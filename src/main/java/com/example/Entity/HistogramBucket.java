@@ -0,0 +1,20 @@
+package com.example.Entity;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One bucket of a histogram over a numeric field, covering the values from
+ * lower (inclusive) to upper (exclusive). Records whose value is null are
+ * not counted.
+ *
+ * @param lower  smallest value in the bucket, or null when unbounded
+ * @param upper  first value above the bucket, or null when unbounded
+ * @param count  number of records in the bucket
+ * @param groups number of records in the bucket by group value, or null
+ *               without breakdown
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record HistogramBucket(Long lower, Long upper, long count, Map<String, Long> groups) {
+}
@@ -0,0 +1,20 @@
+package com.example.Entity;
+
+/**
+ * Size and accuracy of the filter over existing record ids.
+ *
+ * @param ids                       number of ids added to the filter
+ * @param stages                    number of stages the filter has grown to
+ * @param memoryBytes               memory held by the filter's bit arrays
+ * @param targetFalsePositiveRate   the configured false positive rate
+ * @param expectedFalsePositiveRate the rate estimated from the filter's fill
+ * @param checks                    number of duplicate checks so far
+ * @param skippedQueries            checks answered by the filter alone
+ * @param falsePositives            checks the filter passed to the database
+ *                                  for ids that turned out to be new
+ * @param observedFalsePositiveRate share of new ids passed to the database
+ */
+public record IdFilterStats(long ids, int stages, long memoryBytes, double targetFalsePositiveRate,
+        double expectedFalsePositiveRate, long checks, long skippedQueries, long falsePositives,
+        double observedFalsePositiveRate) {
+}
@@ -0,0 +1,13 @@
+package com.example.Entity;
+
+import java.util.Map;
+
+/**
+ * Quantiles of a numeric field over a dataset or one of its groups.
+ *
+ * @param count     number of values the quantiles are computed over
+ * @param exact     whether the quantiles are exact rather than estimated
+ * @param quantiles value by quantile, by nearest rank; empty values are null
+ */
+public record QuantileSummary(long count, boolean exact, Map<Double, Long> quantiles) {
+}
@@ -0,0 +1,12 @@
+package com.example.Entity;
+
+import java.util.List;
+
+/**
+ * Records of a dataset looked up by id.
+ *
+ * @param records the records found, in the order their ids were requested
+ * @param missing the requested ids with no record in the dataset
+ */
+public record RecordBatch(List<DatasetRow> records, List<Long> missing) {
+}
@@ -0,0 +1,10 @@
+package com.example.Repository;
+
+/**
+ * Application event published when a dataset receives its integer key.
+ *
+ * @param datasetName the name of the new dataset
+ * @param datasetId   the key assigned in the "datasets" table
+ */
+public record DatasetCreatedEvent(String datasetName, int datasetId) {
+}
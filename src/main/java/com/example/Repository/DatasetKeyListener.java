@@ -0,0 +1,73 @@
+package com.example.Repository;
+
+import java.util.Optional;
+
+import com.example.Entity.DatasetRecord;
+
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * JPA entity listener that assigns the integer dataset key of a record from
+ * its dataset name before the record is inserted, or saved again by name.
+ * Records saved this way bypass DatasetService.insertRecord and its rollup
+ * updates, so the rollups of their dataset are marked for a rebuild. They
+ * take the next change sequence number of their dataset, and a record saved
+ * into another dataset advances the sequence of the one it left, so
+ * snapshots and cached rows of either dataset are not served any longer.
+ */
+public class DatasetKeyListener {
+
+    private final ObjectProvider<DatasetKeyRegistry> datasetKeyRegistry;
+
+    public DatasetKeyListener(ObjectProvider<DatasetKeyRegistry> datasetKeyRegistry) {
+        this.datasetKeyRegistry = datasetKeyRegistry;
+    }
+
+    @PrePersist
+    public void assignDatasetId(DatasetRecord datasetRecord) {
+        if (datasetRecord.getDatasetId() != null || datasetRecord.getDatasetName() == null) {
+            return;
+        }
+        DatasetKeyRegistry registry = datasetKeyRegistry.getIfAvailable();
+        if (registry != null) {
+            assign(registry, datasetRecord, Optional.empty());
+        }
+    }
+
+    @PreUpdate
+    public void reassignDatasetId(DatasetRecord datasetRecord) {
+        // Merged from a record carrying only its dataset name
+        if (datasetRecord.getDatasetId() != null || datasetRecord.getDatasetName() == null) {
+            return;
+        }
+        DatasetKeyRegistry registry = datasetKeyRegistry.getIfAvailable();
+        if (registry != null) {
+            assign(registry, datasetRecord, registry.findIdOfRecord(datasetRecord.getId()));
+        }
+    }
+
+    private static void assign(DatasetKeyRegistry registry, DatasetRecord datasetRecord,
+            Optional<Integer> previousDatasetId) {
+        int datasetId = registry.resolveId(datasetRecord.getDatasetName());
+        Integer previous = previousDatasetId.orElse(null);
+        if (previous != null && previous < datasetId) {
+            // In ascending key order, like every write taking two dataset locks
+            registry.lock(previous);
+        }
+        if (!registry.setRollupReady(datasetId, false)) {
+            // The cached key outlived its dataset row; create the dataset again
+            registry.evict(datasetRecord.getDatasetName());
+            datasetId = registry.resolveId(datasetRecord.getDatasetName());
+            registry.setRollupReady(datasetId, false);
+        }
+        if (previous != null && previous != datasetId) {
+            registry.setRollupReady(previous, false);
+            registry.nextChangeSeq(previous);
+        }
+        datasetRecord.setDatasetId(datasetId);
+        registry.nextChangeSeq(datasetId).ifPresent(datasetRecord::setChangeSeq);
+    }
+}
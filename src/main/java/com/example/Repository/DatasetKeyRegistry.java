@@ -0,0 +1,214 @@
+package com.example.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Resolves dataset names to their integer keys in the "datasets" table.
+ * Keys never change once assigned, so they are cached in memory and only the
+ * first lookup of a dataset reaches the database.
+ */
+@Repository
+public class DatasetKeyRegistry {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<String, Integer> keysByName = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for DatasetKeyRegistry.
+     *
+     * @param jdbcTemplate   the template used to read and insert dataset keys
+     * @param eventPublisher the publisher notified when a dataset is created
+     */
+    public DatasetKeyRegistry(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Looks up the key of an existing dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @return the dataset key, or empty if the dataset has never been written
+     */
+    public Optional<Integer> findId(String datasetName) {
+        if (datasetName == null) {
+            return Optional.empty();
+        }
+        Integer cached = keysByName.get(datasetName);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Integer> id = selectId(datasetName);
+        id.ifPresent(key -> keysByName.put(datasetName, key));
+        return id;
+    }
+
+    /**
+     * Returns the key of a dataset, creating the dataset row if needed. A new
+     * dataset has no records, so its (empty) rollups are complete.
+     *
+     * @param datasetName the name of the dataset
+     * @return the dataset key
+     */
+    public int resolveId(String datasetName) {
+        Optional<Integer> existing = findId(datasetName);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        int id;
+        try {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "INSERT INTO datasets (name, rollup_ready) VALUES (?, TRUE)", Statement.RETURN_GENERATED_KEYS);
+                ps.setString(1, datasetName);
+                return ps;
+            }, keyHolder);
+            id = keyHolder.getKey().intValue();
+            eventPublisher.publishEvent(new DatasetCreatedEvent(datasetName, id));
+        } catch (DuplicateKeyException ex) {
+            // Another writer created the dataset first
+            id = selectId(datasetName).orElseThrow(() -> ex);
+        }
+        keysByName.put(datasetName, id);
+        return id;
+    }
+
+    /**
+     * Hands out the next change sequence number of a dataset. Must run in the
+     * transaction that writes the record: the dataset row stays locked until
+     * it commits, so within a dataset sequence order is commit order and a
+     * reader never sees a number after one that is still to be committed.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the sequence number, starting at 1, or empty if the dataset row
+     *         no longer exists, e.g. after a drop by another instance
+     */
+    public OptionalLong nextChangeSeq(int datasetId) {
+        if (jdbcTemplate.update("UPDATE datasets SET change_seq = change_seq + 1 WHERE id = ?", datasetId) == 0) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(jdbcTemplate.queryForObject(
+                "SELECT change_seq FROM datasets WHERE id = ?", Long.class, datasetId));
+    }
+
+    /**
+     * Reads the last change sequence number handed out for a dataset.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the sequence number, 0 before the first write or if the
+     *         dataset row no longer exists
+     */
+    public long lastChangeSeq(int datasetId) {
+        List<Long> changeSeq = jdbcTemplate.queryForList(
+                "SELECT change_seq FROM datasets WHERE id = ?", Long.class, datasetId);
+        return changeSeq.isEmpty() ? 0 : changeSeq.get(0);
+    }
+
+    /**
+     * Reads the persisted state that identifies the contents of a dataset:
+     * its key, which a dataset created again does not reuse, its last change
+     * sequence number, bumped by every insert, and its record count from the
+     * rollups, which also changes when a record moves to another dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @return the version, "0" if the dataset does not exist
+     */
+    public String version(String datasetName) {
+        List<String> version = jdbcTemplate.query(
+                "SELECT d.id, d.change_seq, (SELECT COALESCE(SUM(r.record_count), 0) FROM dataset_rollups r"
+                        + " WHERE r.dataset_id = d.id) FROM datasets d WHERE d.name = ?",
+                (rs, rowNum) -> rs.getInt(1) + "." + rs.getLong(2) + "." + rs.getLong(3), datasetName);
+        return version.isEmpty() ? "0" : version.get(0);
+    }
+
+    /**
+     * Marks the rollups of a dataset as complete or not. Locks the dataset
+     * row until the transaction ends, like a write, so no insert changes the
+     * dataset while its rollups are rebuilt.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param ready     whether the rollups cover all records
+     * @return false if the dataset row no longer exists
+     */
+    public boolean setRollupReady(int datasetId, boolean ready) {
+        return jdbcTemplate.update("UPDATE datasets SET rollup_ready = ? WHERE id = ?", ready, datasetId) > 0;
+    }
+
+    /**
+     * Locks a dataset row until the transaction ends, like a write to the
+     * dataset does.
+     *
+     * @param datasetId the integer key of the dataset
+     */
+    public void lock(int datasetId) {
+        jdbcTemplate.queryForList("SELECT id FROM datasets WHERE id = ? FOR UPDATE", Integer.class, datasetId);
+    }
+
+    /**
+     * Reads the key of the dataset a stored record belongs to, e.g. before
+     * the record is written to another dataset.
+     *
+     * @param recordId the id of the record
+     * @return the dataset key, or empty if the record is not stored or has
+     *         no dataset
+     */
+    public Optional<Integer> findIdOfRecord(long recordId) {
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "SELECT dataset_id FROM dataset_records WHERE id = ?", Integer.class, recordId);
+        return ids.stream().filter(Objects::nonNull).findFirst();
+    }
+
+    /**
+     * Lists the keys of the datasets on the current shard.
+     *
+     * @return the dataset keys in key order
+     */
+    public List<Integer> findAllIds() {
+        return jdbcTemplate.queryForList("SELECT id FROM datasets ORDER BY id", Integer.class);
+    }
+
+    /**
+     * Deletes a dataset row and removes it from the cache. The key is never
+     * reused; writing to the dataset again assigns a new one.
+     *
+     * @param datasetName the name of the dataset
+     */
+    public void delete(String datasetName) {
+        jdbcTemplate.update("DELETE FROM datasets WHERE name = ?", datasetName);
+        keysByName.remove(datasetName);
+    }
+
+    /**
+     * Forgets the cached key of a dataset, e.g. after it moved to another
+     * shard where it has a different key.
+     *
+     * @param datasetName the name of the dataset
+     */
+    public void evict(String datasetName) {
+        keysByName.remove(datasetName);
+    }
+
+    private Optional<Integer> selectId(String datasetName) {
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM datasets WHERE name = ?", Integer.class, datasetName);
+        return ids.stream().findFirst();
+    }
+}
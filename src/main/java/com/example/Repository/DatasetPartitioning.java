@@ -0,0 +1,16 @@
+package com.example.Repository;
+
+/**
+ * Strategy for how the records of a dataset are physically stored.
+ * Every dataset-scoped query filters on dataset_id, so a partitioned table
+ * only reads the partition of the requested dataset.
+ */
+public interface DatasetPartitioning {
+
+    /**
+     * Removes every record of a dataset.
+     *
+     * @param datasetId the integer key of the dataset
+     */
+    void dropDataset(int datasetId);
+}
@@ -0,0 +1,459 @@
+package com.example.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Repository;
+
+import com.example.Entity.DatasetAggregate;
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+
+/**
+ * Read-only queries on dataset_records that map rows straight into
+ * DatasetRecordView projections.
+ * Statements run as plain SQL on the transaction's connection, so no entity
+ * is hydrated or registered in the persistence context. Pending inserts of
+ * DatasetRecord are flushed first, so the results match the JPA view.
+ */
+@Repository
+public class DatasetQueryRepository {
+
+    private static final Set<DatasetField> ALL_COLUMNS = EnumSet.allOf(DatasetField.class);
+
+    // Rows per round trip of a streamed read; MySQL only streams with
+    // useCursorFetch=true on the connection URL, otherwise the driver reads
+    // the whole result first
+    static final int FETCH_SIZE = 1000;
+
+    // Largest id list bound to one IN (...) parameter
+    public static final int MAX_IN_LIST = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Retrieves all records of a dataset in id order.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the records as immutable views
+     */
+    public List<DatasetRow> findByDatasetId(int datasetId) {
+        return findByDatasetId(datasetId, ALL_COLUMNS, null);
+    }
+
+    /**
+     * Retrieves the given columns of the matching records of a dataset in id
+     * order.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param columns   the fields to select; the others are null in the views
+     * @param filter    the where= filter, or null for all records
+     * @return the records as immutable views
+     */
+    public List<DatasetRow> findByDatasetId(int datasetId, Set<DatasetField> columns, Filter filter) {
+        return rows(select(columns, filter, " ORDER BY id", datasetId), columns);
+    }
+
+    /**
+     * Retrieves the given columns of the matching records of a dataset sorted
+     * by a field, ties broken by id so the (dataset_id, field, id) index can
+     * return them in order.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param columns    the fields to select; the others are null in the views
+     * @param filter     the where= filter, or null for all records
+     * @param sortField  the field to sort by
+     * @param descending whether to sort in descending order
+     * @return the sorted records as immutable views
+     */
+    public List<DatasetRow> findByDatasetId(int datasetId, Set<DatasetField> columns, Filter filter,
+            DatasetField sortField, boolean descending) {
+        return findByDatasetId(datasetId, columns, filter, sortField, descending, null);
+    }
+
+    /**
+     * Retrieves the first records of a dataset sorted by a field. The limit is
+     * applied by the database, which can stop reading the index after the
+     * first rows.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param columns    the fields to select; the others are null in the views
+     * @param filter     the where= filter, or null for all records
+     * @param sortField  the field to sort by
+     * @param descending whether to sort in descending order
+     * @param limit      the maximum number of records, or null for all
+     * @return the sorted records as immutable views
+     */
+    public List<DatasetRow> findByDatasetId(int datasetId, Set<DatasetField> columns, Filter filter,
+            DatasetField sortField, boolean descending, Integer limit) {
+        String direction = descending ? " DESC" : " ASC";
+        String orderBy = sortField == DatasetField.ID
+                ? " ORDER BY id" + direction
+                : " ORDER BY " + sortField.getColumnName() + direction + ", id" + direction;
+        Query query = select(columns, filter, orderBy, datasetId);
+        if (limit != null) {
+            query.setMaxResults(limit);
+        }
+        return rows(query, columns);
+    }
+
+    /**
+     * Passes the given columns of the matching records of a dataset to a
+     * consumer in id order while they are read, without collecting them in a
+     * list. The rows are fetched from a server-side cursor FETCH_SIZE at a
+     * time.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param columns   the fields to select; the others are null in the views
+     * @param filter    the where= filter, or null for all records
+     * @param consumer  receives each record as an immutable view
+     */
+    public void forEachRecord(int datasetId, Set<DatasetField> columns, Filter filter,
+            Consumer<DatasetRow> consumer) {
+        List<DatasetField> selected = List.copyOf(columns);
+        Object[] values = new Object[DatasetField.values().length];
+        Query query = select(columns, filter, " ORDER BY id", datasetId);
+        query.unwrap(NativeQuery.class).setFetchSize(FETCH_SIZE);
+        try (Stream<?> result = query.getResultStream()) {
+            result.forEach(item -> consumer.accept(view(item, selected, values)));
+        }
+    }
+
+    /**
+     * Retrieves the given columns of the records of a dataset with the given
+     * ids, in id order. Ids that do not exist in the dataset are skipped.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param columns   the fields to select; the others are null in the views
+     * @param ids       the record ids
+     * @return the records found as immutable views
+     */
+    public List<DatasetRow> findByIds(int datasetId, Set<DatasetField> columns, Collection<Long> ids) {
+        List<DatasetRow> rows = new ArrayList<>(ids.size());
+        List<Long> remaining = List.copyOf(ids);
+        for (int from = 0; from < remaining.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = remaining.subList(from, Math.min(from + MAX_IN_LIST, remaining.size()));
+            StringBuilder sql = new StringBuilder("SELECT ").append(columnList(List.copyOf(columns)))
+                    .append(" FROM dataset_records WHERE dataset_id = ?1 AND id IN (?2) ORDER BY id");
+            rows.addAll(rows(query(sql.toString(), datasetId, List.of(chunk)), columns));
+        }
+        rows.sort(Comparator.comparing(DatasetRow::getId));
+        return rows;
+    }
+
+    /**
+     * Retrieves the records of a dataset written after a change sequence
+     * number, in sequence order, from the (dataset_id, change_seq) index.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param since     the last sequence number already seen; 0 for all
+     * @param limit     the maximum number of records
+     * @return the records and the sequence number of the last one
+     */
+    public Changes findChanges(int datasetId, long since, int limit) {
+        List<DatasetField> selected = List.copyOf(ALL_COLUMNS);
+        String sql = "SELECT " + columnList(selected) + ", change_seq FROM dataset_records"
+                + " WHERE dataset_id = ?1 AND change_seq > ?2 ORDER BY change_seq";
+        Query query = query(sql, datasetId, List.of(since));
+        query.setMaxResults(limit);
+        List<?> result = query.getResultList();
+        List<DatasetRow> records = new ArrayList<>(result.size());
+        Object[] values = new Object[DatasetField.values().length];
+        long last = since;
+        for (Object item : result) {
+            Object[] row = (Object[]) item;
+            records.add(view(Arrays.copyOf(row, selected.size()), selected, values));
+            last = ((Number) row[selected.size()]).longValue();
+        }
+        return new Changes(records, last);
+    }
+
+    /**
+     * Records read from the change sequence of a dataset.
+     *
+     * @param records       the records in sequence order
+     * @param lastChangeSeq the sequence number of the last record, or the
+     *                      starting number if there are none
+     */
+    public record Changes(List<DatasetRow> records, long lastChangeSeq) {
+    }
+
+    /**
+     * Reads the id range and size of a dataset from the (dataset_id, id)
+     * index.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the smallest and largest id and the number of records
+     */
+    public IdRange idRange(int datasetId) {
+        String sql = "SELECT MIN(id), MAX(id), COUNT(*) FROM dataset_records WHERE dataset_id = ?1";
+        Object[] row = (Object[]) query(sql, datasetId, List.of()).getSingleResult();
+        long count = ((Number) row[2]).longValue();
+        return count == 0
+                ? new IdRange(0, -1, 0)
+                : new IdRange(((Number) row[0]).longValue(), ((Number) row[1]).longValue(), count);
+    }
+
+    /**
+     * Id range of a dataset.
+     *
+     * @param min   the smallest id
+     * @param max   the largest id, below min when the dataset is empty
+     * @param count the number of records
+     */
+    public record IdRange(long min, long max, long count) {
+
+        /**
+         * Fraction of the ids in the range that are used by records.
+         *
+         * @return the density, 0 for an empty dataset
+         */
+        public double density() {
+            return count == 0 ? 0 : (double) count / (max - min + 1);
+        }
+    }
+
+    /**
+     * Computes summary statistics of a numeric field over the matching
+     * records of a dataset.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param field     the numeric field to aggregate
+     * @param filter    the where= filter, or null for all records
+     * @return the statistics, or null when no record matches
+     */
+    public DatasetAggregate aggregate(int datasetId, DatasetField field, Filter filter) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*), ").append(aggregates(field.getColumnName()));
+        List<Object> parameters = where(sql, filter);
+        Object[] row = (Object[]) query(sql.toString(), datasetId, parameters).getSingleResult();
+        return ((Number) row[0]).longValue() == 0 ? null : aggregate(row, 1);
+    }
+
+    /**
+     * Computes summary statistics of a numeric field for each group of the
+     * matching records of a dataset, in group order.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param field     the numeric field to aggregate
+     * @param groupBy   the field to group by
+     * @param filter    the where= filter, or null for all records
+     * @return the statistics by group value; empty when no record matches
+     */
+    public Map<String, DatasetAggregate> aggregateByGroup(int datasetId, DatasetField field, DatasetField groupBy,
+            Filter filter) {
+        String group = groupBy.getColumnName();
+        StringBuilder sql = new StringBuilder("SELECT ").append(group).append(", ")
+                .append(aggregates(field.getColumnName()));
+        List<Object> parameters = where(sql, filter);
+        sql.append(" GROUP BY ").append(group).append(" ORDER BY ").append(group);
+
+        Map<String, DatasetAggregate> result = new LinkedHashMap<>();
+        for (Object item : query(sql.toString(), datasetId, parameters).getResultList()) {
+            Object[] row = (Object[]) item;
+            result.put(String.valueOf(row[0]), aggregate(row, 1));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the matching records of a dataset per combination of group keys,
+     * in key order. Only one row per distinct combination is read.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param groupBy   the fields to group by, outermost first
+     * @param filter    the where= filter, or null for all records
+     * @return the record count by list of group key values
+     */
+    public Map<List<String>, Long> countGroups(int datasetId, List<DatasetField> groupBy, Filter filter) {
+        StringBuilder columns = new StringBuilder();
+        for (DatasetField field : groupBy) {
+            columns.append(columns.isEmpty() ? "" : ", ").append(field.getColumnName());
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(", COUNT(*)");
+        List<Object> parameters = where(sql, filter);
+        sql.append(" GROUP BY ").append(columns).append(" ORDER BY ").append(columns);
+
+        Map<List<String>, Long> counts = new LinkedHashMap<>();
+        for (Object item : query(sql.toString(), datasetId, parameters).getResultList()) {
+            Object[] row = (Object[]) item;
+            List<String> keys = new ArrayList<>(groupBy.size());
+            for (int i = 0; i < groupBy.size(); i++) {
+                keys.add(String.valueOf(row[i]));
+            }
+            counts.put(keys, ((Number) row[groupBy.size()]).longValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the matching records of a dataset in buckets of equal width of a
+     * numeric field, optionally broken down by a second field. Only one row
+     * per non-empty bucket and group is read.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param field     the numeric field to bucket
+     * @param width     the bucket width; bucket keys are multiples of it
+     * @param groupBy   the field to break each bucket down by, or null
+     * @param filter    the where= filter, or null for all records
+     * @return the counts in bucket and group order, keyed by lower bound
+     */
+    public List<BucketCount> countByWidth(int datasetId, DatasetField field, long width, DatasetField groupBy,
+            Filter filter) {
+        String column = field.getColumnName();
+        return countBuckets("FLOOR(" + column + " / " + width + ".0) * " + width, column, groupBy, filter,
+                datasetId);
+    }
+
+    /**
+     * Counts the matching records of a dataset in buckets of a numeric field
+     * delimited by the given boundaries, optionally broken down by a second
+     * field. Bucket i holds the values below boundaries[i] and at or above
+     * the previous boundary; the last bucket holds the values at or above the
+     * last boundary.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param field      the numeric field to bucket
+     * @param boundaries the bucket boundaries in increasing order
+     * @param groupBy    the field to break each bucket down by, or null
+     * @param filter     the where= filter, or null for all records
+     * @return the counts in bucket and group order, keyed by bucket index
+     */
+    public List<BucketCount> countByBoundaries(int datasetId, DatasetField field, List<Long> boundaries,
+            DatasetField groupBy, Filter filter) {
+        String column = field.getColumnName();
+        StringBuilder bucket = new StringBuilder("CASE");
+        for (int i = 0; i < boundaries.size(); i++) {
+            bucket.append(" WHEN ").append(column).append(" < ").append(boundaries.get(i)).append(" THEN ").append(i);
+        }
+        bucket.append(" ELSE ").append(boundaries.size()).append(" END");
+        return countBuckets(bucket.toString(), column, groupBy, filter, datasetId);
+    }
+
+    /**
+     * Number of records in one bucket, or in one group of a bucket.
+     *
+     * @param bucket the bucket key
+     * @param group  the group value, or null without breakdown
+     * @param count  the number of records
+     */
+    public record BucketCount(long bucket, String group, long count) {
+    }
+
+    // Boundaries and widths are validated numbers, so they are inlined
+    private List<BucketCount> countBuckets(String bucket, String column, DatasetField groupBy, Filter filter,
+            int datasetId) {
+        String keys = groupBy == null ? bucket : bucket + ", " + groupBy.getColumnName();
+        StringBuilder sql = new StringBuilder("SELECT ").append(keys).append(", COUNT(*)");
+        List<Object> parameters = where(sql, filter);
+        sql.append(" AND ").append(column).append(" IS NOT NULL GROUP BY ").append(keys)
+                .append(" ORDER BY ").append(keys);
+
+        List<BucketCount> counts = new ArrayList<>();
+        for (Object item : query(sql.toString(), datasetId, parameters).getResultList()) {
+            Object[] row = (Object[]) item;
+            counts.add(groupBy == null
+                    ? new BucketCount(((Number) row[0]).longValue(), null, ((Number) row[1]).longValue())
+                    : new BucketCount(((Number) row[0]).longValue(), String.valueOf(row[1]),
+                            ((Number) row[2]).longValue()));
+        }
+        return counts;
+    }
+
+    private static String aggregates(String column) {
+        return "COUNT(" + column + "), COALESCE(SUM(" + column + "), 0), MIN(" + column + "), MAX(" + column
+                + "), AVG(" + column + ")";
+    }
+
+    private static DatasetAggregate aggregate(Object[] row, int offset) {
+        return new DatasetAggregate(
+                ((Number) row[offset]).longValue(),
+                ((Number) row[offset + 1]).longValue(),
+                toLong(row[offset + 2]),
+                toLong(row[offset + 3]),
+                row[offset + 4] == null ? null : ((Number) row[offset + 4]).doubleValue());
+    }
+
+    // Appends the FROM and WHERE clauses; ?1 is the dataset key
+    private static List<Object> where(StringBuilder sql, Filter filter) {
+        sql.append(" FROM dataset_records WHERE dataset_id = ?1");
+        List<Object> parameters = new ArrayList<>();
+        if (filter != null) {
+            sql.append(" AND ");
+            filter.appendSql(sql, parameters, 2);
+        }
+        return parameters;
+    }
+
+    private Query query(String sql, int datasetId, List<Object> parameters) {
+        Query query = entityManager.createNativeQuery(sql);
+        query.unwrap(NativeQuery.class).addSynchronizedEntityClass(DatasetRecord.class);
+        query.setParameter(1, datasetId);
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 2, parameters.get(i));
+        }
+        return query;
+    }
+
+    private Query select(Set<DatasetField> columns, Filter filter, String orderBy, int datasetId) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columnList(List.copyOf(columns)));
+        List<Object> parameters = where(sql, filter);
+        sql.append(orderBy);
+        return query(sql.toString(), datasetId, parameters);
+    }
+
+    private static String columnList(List<DatasetField> selected) {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < selected.size(); i++) {
+            columns.append(i > 0 ? ", " : "").append(selected.get(i).getColumnName());
+        }
+        return columns.toString();
+    }
+
+    private static List<DatasetRow> rows(Query query, Set<DatasetField> columns) {
+        List<DatasetField> selected = List.copyOf(columns);
+        List<?> result = query.getResultList();
+        List<DatasetRow> rows = new ArrayList<>(result.size());
+        Object[] values = new Object[DatasetField.values().length];
+        for (Object item : result) {
+            rows.add(view(item, selected, values));
+        }
+        return rows;
+    }
+
+    // Maps a result row of the selected columns; values is reused scratch space
+    private static DatasetRow view(Object item, List<DatasetField> selected, Object[] values) {
+        Object[] row = selected.size() == 1 ? new Object[] { item } : (Object[]) item;
+        for (int i = 0; i < row.length; i++) {
+            values[selected.get(i).ordinal()] = row[i];
+        }
+        return new DatasetRecordView(
+                toLong(values[DatasetField.ID.ordinal()]),
+                (String) values[DatasetField.DATASET_NAME.ordinal()],
+                (String) values[DatasetField.NAME.ordinal()],
+                values[DatasetField.AGE.ordinal()] == null
+                        ? null
+                        : ((Number) values[DatasetField.AGE.ordinal()]).intValue(),
+                (String) values[DatasetField.DEPARTMENT.ordinal()]);
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+}
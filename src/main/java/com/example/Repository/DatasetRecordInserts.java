@@ -0,0 +1,22 @@
+package com.example.Repository;
+
+import com.example.Entity.DatasetRecord;
+
+/**
+ * Inserts of dataset records that never turn into updates. Spring Data's
+ * save merges a record with an assigned id over any existing row with that
+ * id; insert lets the primary key reject it instead.
+ */
+public interface DatasetRecordInserts {
+
+    /**
+     * Inserts a record and flushes it, so a duplicate id fails here rather
+     * than at commit.
+     *
+     * @param datasetRecord the record, with its id and dataset key set
+     * @return the inserted record
+     * @throws org.springframework.dao.DataIntegrityViolationException if a
+     *         record with the id already exists
+     */
+    DatasetRecord insert(DatasetRecord datasetRecord);
+}
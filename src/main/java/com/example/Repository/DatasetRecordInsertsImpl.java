@@ -0,0 +1,23 @@
+package com.example.Repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import com.example.Entity.DatasetRecord;
+
+/**
+ * Implementation of DatasetRecordInserts, picked up by Spring Data as a
+ * fragment of DatasetRepository.
+ */
+public class DatasetRecordInsertsImpl implements DatasetRecordInserts {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public DatasetRecord insert(DatasetRecord datasetRecord) {
+        entityManager.persist(datasetRecord);
+        entityManager.flush();
+        return datasetRecord;
+    }
+}
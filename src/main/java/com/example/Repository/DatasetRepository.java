@@ -3,8 +3,12 @@ package com.example.Repository;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.data.mapping.PropertyReferenceException;
 
 import com.example.Entity.DatasetRecord;
 
@@ -14,15 +18,20 @@ import com.example.Entity.DatasetRecord;
  * records.
  */
 @Repository
-public interface DatasetRepository extends JpaRepository<DatasetRecord, Long> {
+public interface DatasetRepository extends JpaRepository<DatasetRecord, Long>, DatasetRecordInserts {
+
+    String BY_DATASET_NAME = "SELECT r FROM DatasetRecord r"
+            + " WHERE r.datasetId = (SELECT d.id FROM Dataset d WHERE d.name = :datasetName)";
 
     /**
-     * Retrieves all records belonging to the specified dataset.
+     * Retrieves all records belonging to the specified dataset. The name is
+     * resolved to the dataset key first, so the (dataset_id, id) index is used.
      *
      * @param datasetName the name of the dataset
      * @return a list of DatasetRecord objects
      */
-    List<DatasetRecord> findByDatasetName(String datasetName);
+    @Query(BY_DATASET_NAME)
+    List<DatasetRecord> findByDatasetName(@Param("datasetName") String datasetName);
 
     /**
      * Retrieves all records belonging to the specified dataset, sorted according to
@@ -31,6 +40,40 @@ public interface DatasetRepository extends JpaRepository<DatasetRecord, Long> {
      * @param datasetName the name of the dataset
      * @param sort        the sorting criteria
      * @return a sorted list of DatasetRecord objects
+     * @throws PropertyReferenceException if a sort property is unknown
+     */
+    default List<DatasetRecord> findByDatasetName(String datasetName, Sort sort) {
+        // Derived queries reject unknown sort properties before running; keep that
+        Sort order = sort == null ? Sort.unsorted() : sort;
+        order.forEach(property -> PropertyPath.from(property.getProperty(), DatasetRecord.class));
+        return findSortedByDatasetName(datasetName, order);
+    }
+
+    /**
+     * Runs {@link #findByDatasetName(String, Sort)} once the sort is checked.
+     *
+     * @param datasetName the name of the dataset
+     * @param sort        the sorting criteria
+     * @return a sorted list of DatasetRecord objects
+     */
+    @Query(BY_DATASET_NAME)
+    List<DatasetRecord> findSortedByDatasetName(@Param("datasetName") String datasetName, Sort sort);
+
+    /**
+     * Retrieves all records belonging to the dataset with the given key.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return a list of DatasetRecord objects
+     */
+    List<DatasetRecord> findByDatasetId(Integer datasetId);
+
+    /**
+     * Retrieves all records belonging to the dataset with the given key, sorted
+     * according to the provided Sort object.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param sort      the sorting criteria
+     * @return a sorted list of DatasetRecord objects
      */
-    List<DatasetRecord> findByDatasetName(String datasetName, Sort sort);
+    List<DatasetRecord> findByDatasetId(Integer datasetId, Sort sort);
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.example.Repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.example.Entity.DatasetRollup;
+
+/**
+ * Repository interface for the per-department rollups of datasets.
+ * Rollups are changed with increment statements rather than read-modify-write,
+ * so an insert touches its department's row once, in its own transaction.
+ * Statements that aggregate dataset_records flush pending records first.
+ */
+@Repository
+public interface DatasetRollupRepository extends JpaRepository<DatasetRollup, DatasetRollup.Key> {
+
+    /**
+     * Reads the rollups of a dataset in department order, as rows of
+     * department, record count, age count, age sum, age min and age max, if
+     * the dataset is marked as fully rolled up. Rows are not hydrated, so
+     * rollups changed by the statements below in the same transaction are
+     * read as they are.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the rollup rows, empty if the dataset has no records or its
+     *         rollups must be rebuilt
+     */
+    @Query(value = "SELECT r.department, r.record_count, r.age_count, r.age_sum, r.age_min, r.age_max"
+            + " FROM dataset_rollups r JOIN datasets d ON d.id = r.dataset_id"
+            + " WHERE r.dataset_id = :datasetId AND d.rollup_ready = TRUE ORDER BY r.department",
+            nativeQuery = true)
+    List<Object[]> findReadyRows(Integer datasetId);
+
+    /**
+     * Adds a record with an age to the rollup of its department.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param department the department key
+     * @param age        the age of the record
+     * @return 1, or 0 if the department has no rollup yet
+     */
+    @Modifying
+    @Query(value = "UPDATE dataset_rollups SET record_count = record_count + 1, age_count = age_count + 1,"
+            + " age_sum = age_sum + :age,"
+            + " age_min = CASE WHEN age_min IS NULL OR age_min > :age THEN :age ELSE age_min END,"
+            + " age_max = CASE WHEN age_max IS NULL OR age_max < :age THEN :age ELSE age_max END"
+            + " WHERE dataset_id = :datasetId AND department = :department", nativeQuery = true)
+    int increment(Integer datasetId, String department, Integer age);
+
+    /**
+     * Adds a record without an age to the rollup of its department.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param department the department key
+     * @return 1, or 0 if the department has no rollup yet
+     */
+    @Modifying
+    @Query(value = "UPDATE dataset_rollups SET record_count = record_count + 1"
+            + " WHERE dataset_id = :datasetId AND department = :department", nativeQuery = true)
+    int incrementWithoutAge(Integer datasetId, String department);
+
+    /**
+     * Creates the rollup of a department from its first record, which has
+     * an age.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param department the department key
+     * @param age        the age of the record
+     */
+    @Modifying
+    @Query(value = "INSERT INTO dataset_rollups"
+            + " (dataset_id, department, record_count, age_count, age_sum, age_min, age_max)"
+            + " VALUES (:datasetId, :department, 1, 1, :age, :age, :age)", nativeQuery = true)
+    void insert(Integer datasetId, String department, Integer age);
+
+    /**
+     * Creates the rollup of a department from its first record, which has no
+     * age.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param department the department key
+     */
+    @Modifying
+    @Query(value = "INSERT INTO dataset_rollups"
+            + " (dataset_id, department, record_count, age_count, age_sum, age_min, age_max)"
+            + " VALUES (:datasetId, :department, 1, 0, 0, NULL, NULL)", nativeQuery = true)
+    void insertWithoutAge(Integer datasetId, String department);
+
+    /**
+     * Computes the rollup of one department from its records, which must
+     * have no rollup row. Reads the (dataset_id, department) index.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param department the department key
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO dataset_rollups"
+            + " (dataset_id, department, record_count, age_count, age_sum, age_min, age_max)"
+            + " SELECT dataset_id, COALESCE(department, ''), COUNT(*), COUNT(age), COALESCE(SUM(age), 0),"
+            + " MIN(age), MAX(age) FROM dataset_records WHERE dataset_id = :datasetId"
+            + " AND (department = :department AND :department <> '' OR :department = '' AND department IS NULL)"
+            + " GROUP BY dataset_id, department", nativeQuery = true)
+    void insertFromRecords(Integer datasetId, String department);
+
+    /**
+     * Computes the rollups of every department of a dataset from its
+     * records, which must have no rollup rows, in one pass over the
+     * (dataset_id, department) index.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the number of departments
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO dataset_rollups"
+            + " (dataset_id, department, record_count, age_count, age_sum, age_min, age_max)"
+            + " SELECT dataset_id, COALESCE(department, ''), COUNT(*), COUNT(age), COALESCE(SUM(age), 0),"
+            + " MIN(age), MAX(age) FROM dataset_records WHERE dataset_id = :datasetId"
+            + " GROUP BY dataset_id, department", nativeQuery = true)
+    int insertAllFromRecords(Integer datasetId);
+
+    /**
+     * Deletes the rollup of one department.
+     *
+     * @param datasetId  the integer key of the dataset
+     * @param department the department key
+     */
+    @Modifying
+    @Query(value = "DELETE FROM dataset_rollups WHERE dataset_id = :datasetId AND department = :department",
+            nativeQuery = true)
+    void deleteGroup(Integer datasetId, String department);
+
+    /**
+     * Checks whether a dataset has records with an empty department, which
+     * cannot be rolled up apart from the records without one.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return true if there is at least one
+     */
+    @Query(value = "SELECT COUNT(*) > 0 FROM dataset_records WHERE dataset_id = :datasetId AND department = ''",
+            nativeQuery = true)
+    boolean hasEmptyDepartment(Integer datasetId);
+
+    /**
+     * Deletes the rollups of a dataset in one statement.
+     *
+     * @param datasetId the integer key of the dataset
+     */
+    @Modifying
+    @Query(value = "DELETE FROM dataset_rollups WHERE dataset_id = :datasetId", nativeQuery = true)
+    void deleteByDatasetId(Integer datasetId);
+}
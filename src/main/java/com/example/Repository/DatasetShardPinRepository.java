@@ -0,0 +1,13 @@
+package com.example.Repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.Entity.DatasetShardPin;
+
+/**
+ * Repository interface for the dataset pins changed at runtime.
+ */
+@Repository
+public interface DatasetShardPinRepository extends JpaRepository<DatasetShardPin, String> {
+}
@@ -0,0 +1,34 @@
+package com.example.Repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.example.Entity.DatasetSketch;
+
+/**
+ * Repository interface for the persisted HyperLogLog sketches of datasets.
+ */
+@Repository
+public interface DatasetSketchRepository extends JpaRepository<DatasetSketch, DatasetSketch.Key> {
+
+    /**
+     * Retrieves the sketches of every field of a dataset.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the persisted sketches, empty if none were saved yet
+     */
+    List<DatasetSketch> findByDatasetId(Integer datasetId);
+
+    /**
+     * Deletes the sketches of a dataset in one statement.
+     *
+     * @param datasetId the integer key of the dataset
+     */
+    @Modifying
+    @Query("DELETE FROM DatasetSketch s WHERE s.datasetId = :datasetId")
+    void deleteByDatasetId(Integer datasetId);
+}
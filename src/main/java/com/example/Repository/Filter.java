@@ -0,0 +1,149 @@
+package com.example.Repository;
+
+import java.util.List;
+
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRow;
+
+/**
+ * Parsed where= expression.
+ * The same plan is rendered as parameterized SQL, so the database can use the
+ * (dataset_id, field, id) indexes, and evaluated against rows already in
+ * memory.
+ */
+public sealed interface Filter {
+
+    /**
+     * Evaluates the filter against a row. Comparisons with a null value are
+     * false, as in SQL, and text is compared ignoring case, as MySQL's
+     * default utf8mb4 collation does, so a filter matches the same rows in
+     * memory as in the database.
+     *
+     * @param row the row to test
+     * @return true if the row matches
+     */
+    boolean test(DatasetRow row);
+
+    /**
+     * Renders the filter as a SQL condition with positional parameters.
+     *
+     * @param sql        the statement being built
+     * @param parameters the parameter values; the first one added is bound to
+     *                   ?{firstIndex}
+     * @param firstIndex the position of the first parameter of this filter
+     */
+    void appendSql(StringBuilder sql, List<Object> parameters, int firstIndex);
+
+    /**
+     * Comparison operators supported in where= expressions.
+     */
+    enum Operator {
+        EQ("="),
+        NE("<>"),
+        LT("<"),
+        LE("<="),
+        GT(">"),
+        GE(">=");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        boolean matches(int comparison) {
+            return switch (this) {
+                case EQ -> comparison == 0;
+                case NE -> comparison != 0;
+                case LT -> comparison < 0;
+                case LE -> comparison <= 0;
+                case GT -> comparison > 0;
+                case GE -> comparison >= 0;
+            };
+        }
+    }
+
+    /**
+     * A field compared with a constant. Numeric fields hold a Long value,
+     * the others a String.
+     */
+    record Comparison(DatasetField field, Operator operator, Object value) implements Filter {
+
+        @Override
+        public boolean test(DatasetRow row) {
+            Object actual = field.valueOf(row);
+            if (actual == null) {
+                return false;
+            }
+            if (field.isNumeric()) {
+                return operator.matches(Long.compare(((Number) actual).longValue(), (Long) value));
+            }
+            return operator.matches(String.CASE_INSENSITIVE_ORDER.compare((String) actual, (String) value));
+        }
+
+        @Override
+        public void appendSql(StringBuilder sql, List<Object> parameters, int firstIndex) {
+            parameters.add(value);
+            sql.append(field.getColumnName()).append(' ').append(operator.getSql())
+                    .append(" ?").append(firstIndex + parameters.size() - 1);
+        }
+    }
+
+    /**
+     * Matches rows that match every operand.
+     */
+    record And(List<Filter> operands) implements Filter {
+
+        @Override
+        public boolean test(DatasetRow row) {
+            for (Filter operand : operands) {
+                if (!operand.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void appendSql(StringBuilder sql, List<Object> parameters, int firstIndex) {
+            join(" AND ", operands, sql, parameters, firstIndex);
+        }
+    }
+
+    /**
+     * Matches rows that match at least one operand.
+     */
+    record Or(List<Filter> operands) implements Filter {
+
+        @Override
+        public boolean test(DatasetRow row) {
+            for (Filter operand : operands) {
+                if (operand.test(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void appendSql(StringBuilder sql, List<Object> parameters, int firstIndex) {
+            join(" OR ", operands, sql, parameters, firstIndex);
+        }
+    }
+
+    private static void join(String separator, List<Filter> operands, StringBuilder sql, List<Object> parameters,
+            int firstIndex) {
+        sql.append('(');
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                sql.append(separator);
+            }
+            operands.get(i).appendSql(sql, parameters, firstIndex);
+        }
+        sql.append(')');
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.Repository;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.Config.ShardRouter;
+
+/**
+ * MySQL strategy that gives every dataset its own RANGE partition of
+ * dataset_records: partition p{id} holds dataset_id = id and p_max catches
+ * anything above the last prepared key.
+ *
+ * Scans of one dataset are pruned to its partition, and dropping a dataset
+ * is an ALTER TABLE ... DROP PARTITION instead of a row-by-row delete.
+ * Partitions are prepared ahead of new dataset keys in the background, since
+ * MySQL DDL cannot run inside the inserting transaction. With several shards,
+ * each shard prepares partitions for its own dataset keys.
+ *
+ * MySQL allows at most 8192 partitions per table; once they are used up,
+ * newer datasets share p_max and are dropped row by row. A failed split is
+ * retried every retry interval until it succeeds.
+ *
+ * Requires the table layout from db/mysql/V3__dataset_partitioning.sql and
+ * the id guard from db/mysql/V7__dataset_record_ids.sql, which keeps record
+ * ids unique now that the primary key includes dataset_id.
+ */
+@Repository
+@ConditionalOnProperty(name = "dataset.partitioning.strategy", havingValue = "mysql-range")
+public class MySqlRangePartitioning implements DatasetPartitioning {
+
+    private static final Logger logger = LoggerFactory.getLogger(MySqlRangePartitioning.class);
+
+    static final String TABLE_NAME = "dataset_records";
+
+    static final String MAX_PARTITION = "p_max";
+
+    static final String ID_TABLE_NAME = "dataset_record_ids";
+
+    static final List<String> ID_TRIGGERS = List.of("dataset_records_claim_id", "dataset_records_release_id");
+
+    // MySQL's limit per table, p_max included
+    static final int MAX_PARTITIONS = 8192;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final int headroom;
+
+    private final long retryInterval;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dataset-partitioning");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor for MySqlRangePartitioning.
+     *
+     * @param jdbcTemplate the template used to inspect and alter partitions
+     * @param shardRouter  the shard map, used to prepare partitions per shard
+     * @param headroom      number of partitions kept ready above the highest key
+     * @param retryInterval milliseconds to wait before preparing partitions
+     *                      again after a failure
+     */
+    public MySqlRangePartitioning(JdbcTemplate jdbcTemplate, ShardRouter shardRouter,
+            @Value("${dataset.partitioning.headroom:16}") int headroom,
+            @Value("${dataset.partitioning.retry-interval:60000}") long retryInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.headroom = headroom;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Checks the table layout of every shard, failing the startup if it is not
+     * partitioned or lacks the id guard, and prepares partitions in the
+     * background.
+     *
+     * @throws IllegalStateException if a shard lacks the layout
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        shardRouter.onAllShards(() -> {
+            checkLayout();
+            return null;
+        });
+        schedule(() -> shardRouter.onAllShards(headroomTask()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDatasetCreated(DatasetCreatedEvent event) {
+        schedule(() -> shardRouter.onDataset(event.datasetName(), headroomTask()));
+    }
+
+    private Supplier<Void> headroomTask() {
+        return () -> {
+            ensureHeadroom();
+            return null;
+        };
+    }
+
+    // Until it succeeds; the records of keys without a partition are in p_max
+    // meanwhile, which only costs pruning
+    private void schedule(Runnable task) {
+        Runnable attempt = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    logger.error("Failed to prepare dataset partitions; retrying in {} ms", retryInterval, ex);
+                    try {
+                        executor.schedule(this, retryInterval, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException shutdown) {
+                        // Shutting down
+                    }
+                }
+            }
+        };
+        try {
+            executor.execute(attempt);
+        } catch (RejectedExecutionException ex) {
+            // Shutting down
+        }
+    }
+
+    void checkLayout() {
+        List<String> partitions = partitionNames();
+        if (partitions.isEmpty()) {
+            throw new IllegalStateException("Table " + TABLE_NAME
+                    + " is not partitioned; run db/mysql/V3__dataset_partitioning.sql");
+        }
+        List<String> triggers = jdbcTemplate.queryForList(
+                "SELECT TRIGGER_NAME FROM INFORMATION_SCHEMA.TRIGGERS"
+                        + " WHERE TRIGGER_SCHEMA = DATABASE() AND EVENT_OBJECT_TABLE = ?",
+                String.class, TABLE_NAME);
+        if (!triggers.containsAll(ID_TRIGGERS)) {
+            throw new IllegalStateException("Record ids of the partitioned " + TABLE_NAME
+                    + " are not guarded; run db/mysql/V7__dataset_record_ids.sql");
+        }
+    }
+
+    @Override
+    public synchronized void dropDataset(int datasetId) {
+        String partition = "p" + datasetId;
+        if (partitionNames().contains(partition)) {
+            // Dropping a partition does not fire the trigger releasing its ids
+            jdbcTemplate.update("DELETE i FROM " + ID_TABLE_NAME + " i JOIN " + TABLE_NAME
+                    + " r ON r.id = i.id WHERE r.dataset_id = ?", datasetId);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE_NAME + " DROP PARTITION " + partition);
+        } else {
+            // The dataset still lives in p_max
+            jdbcTemplate.update("DELETE FROM " + TABLE_NAME + " WHERE dataset_id = ?", datasetId);
+        }
+    }
+
+    /**
+     * Splits p_max so that every existing dataset key, plus the configured
+     * headroom, has its own partition, as far as the partition limit allows.
+     *
+     * @throws IllegalStateException if the table is not partitioned
+     */
+    synchronized void ensureHeadroom() {
+        List<String> bounds = jdbcTemplate.queryForList(
+                "SELECT PARTITION_DESCRIPTION FROM INFORMATION_SCHEMA.PARTITIONS"
+                        + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL"
+                        + " ORDER BY PARTITION_ORDINAL_POSITION",
+                String.class, TABLE_NAME);
+        if (bounds.isEmpty()) {
+            throw new IllegalStateException("Table " + TABLE_NAME
+                    + " is not partitioned; run db/mysql/V3__dataset_partitioning.sql");
+        }
+
+        // Keys below the last numeric bound already have a partition
+        int firstUnprepared = bounds.stream()
+                .filter(bound -> !bound.equalsIgnoreCase("MAXVALUE"))
+                .mapToInt(Integer::parseInt)
+                .max()
+                .orElse(1);
+        Integer maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM datasets", Integer.class);
+        int lastPrepared = lastPreparable(bounds.size(), firstUnprepared, maxId + headroom);
+        if (lastPrepared < maxId) {
+            logger.warn("{} has {} of at most {} partitions; datasets from key {} on share {}", TABLE_NAME,
+                    bounds.size(), MAX_PARTITIONS, Math.max(firstUnprepared, lastPrepared + 1), MAX_PARTITION);
+        }
+        if (firstUnprepared > lastPrepared) {
+            return;
+        }
+        logger.info("Preparing partitions p{}..p{} of {}", firstUnprepared, lastPrepared, TABLE_NAME);
+        jdbcTemplate.execute(reorganizeStatement(firstUnprepared, lastPrepared));
+    }
+
+    /**
+     * Returns the last key that can get a partition without exceeding the
+     * partition limit.
+     *
+     * @param partitions      the current number of partitions, p_max included
+     * @param firstUnprepared the first key without a partition
+     * @param wanted          the last key that should get a partition
+     * @return the last key to give a partition; below firstUnprepared if none
+     */
+    static int lastPreparable(int partitions, int firstUnprepared, int wanted) {
+        int available = MAX_PARTITIONS - partitions;
+        return (int) Math.min(wanted, (long) firstUnprepared + available - 1);
+    }
+
+    /**
+     * Builds the statement that splits p_max into one partition per key.
+     *
+     * @param fromId first dataset key to give a partition
+     * @param toId   last dataset key to give a partition
+     * @return the ALTER TABLE statement
+     */
+    static String reorganizeStatement(int fromId, int toId) {
+        StringBuilder sql = new StringBuilder("ALTER TABLE ").append(TABLE_NAME)
+                .append(" REORGANIZE PARTITION ").append(MAX_PARTITION).append(" INTO (");
+        for (int id = fromId; id <= toId; id++) {
+            sql.append("PARTITION p").append(id).append(" VALUES LESS THAN (").append(id + 1).append("), ");
+        }
+        return sql.append("PARTITION ").append(MAX_PARTITION).append(" VALUES LESS THAN MAXVALUE)").toString();
+    }
+
+    private List<String> partitionNames() {
+        return jdbcTemplate.queryForList(
+                "SELECT PARTITION_NAME FROM INFORMATION_SCHEMA.PARTITIONS"
+                        + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL",
+                String.class, TABLE_NAME);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
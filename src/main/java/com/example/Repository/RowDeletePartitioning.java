@@ -0,0 +1,25 @@
+package com.example.Repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Default strategy for an unpartitioned dataset_records table: dropping a
+ * dataset deletes its rows through the (dataset_id, id) index.
+ */
+@Repository
+@ConditionalOnProperty(name = "dataset.partitioning.strategy", havingValue = "none", matchIfMissing = true)
+public class RowDeletePartitioning implements DatasetPartitioning {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RowDeletePartitioning(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void dropDataset(int datasetId) {
+        jdbcTemplate.update("DELETE FROM dataset_records WHERE dataset_id = ?", datasetId);
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.example.Entity.DatasetAggregate;
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+import com.example.Exception.InvalidFieldException;
+import com.example.Repository.DatasetQueryRepository;
+import com.example.Repository.Filter;
+
+/**
+ * Evaluates the queries of a batch together over one stream of a dataset's
+ * records. Each query is compiled to an accumulator with its own where=
+ * filter; every record read is offered to all of them, so N queries cost one
+ * scan. Results have the same shape as the matching /query responses.
+ */
+final class BatchEvaluator implements Consumer<DatasetRow> {
+
+    static final int MAX_QUERIES = 20;
+
+    // Orders group count keys level by level
+    private static final Comparator<List<String>> KEY_ORDER = (left, right) -> {
+        for (int i = 0; i < left.size(); i++) {
+            int compared = left.get(i).compareTo(right.get(i));
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return 0;
+    };
+
+    private final Map<String, Accumulator> accumulators = new LinkedHashMap<>();
+
+    private final Set<DatasetField> columns = EnumSet.noneOf(DatasetField.class);
+
+    private long scanned;
+
+    /**
+     * Validates and compiles the queries of a batch.
+     *
+     * @param queries      the queries
+     * @param filterParser the parser of where= expressions
+     * @throws InvalidFieldException    if a query names an unknown field
+     * @throws IllegalArgumentException if a query is malformed
+     */
+    BatchEvaluator(List<BatchQuery> queries, FilterParser filterParser) {
+        if (queries == null || queries.isEmpty() || queries.size() > MAX_QUERIES) {
+            throw new IllegalArgumentException("A batch must hold between 1 and " + MAX_QUERIES + " queries");
+        }
+        for (int i = 0; i < queries.size(); i++) {
+            BatchQuery query = queries.get(i);
+            String id = query.id() != null ? query.id() : "q" + i;
+            if (accumulators.containsKey(id)) {
+                throw new IllegalArgumentException("Duplicate query id: " + id);
+            }
+            QueryOptions options = QueryOptions.parse(query.fields(), query.where(), query.limit());
+            Filter filter = options.where() == null ? null : filterParser.parse(options.where());
+            accumulators.put(id, filtered(compile(id, query, options), filter));
+            columns.addAll(options.fields());
+            if (filter != null) {
+                columns.addAll(EnumSet.allOf(DatasetField.class));
+            }
+        }
+    }
+
+    /**
+     * The columns to read so that every query can be evaluated.
+     *
+     * @return the union of the fields used by the queries
+     */
+    Set<DatasetField> columns() {
+        return columns;
+    }
+
+    /**
+     * The number of records offered so far, matching or not.
+     *
+     * @return the record count
+     */
+    long scanned() {
+        return scanned;
+    }
+
+    @Override
+    public void accept(DatasetRow record) {
+        scanned++;
+        for (Accumulator accumulator : accumulators.values()) {
+            accumulator.accept(record);
+        }
+    }
+
+    /**
+     * Returns the result of every query by id, in request order.
+     *
+     * @return the results
+     */
+    Map<String, Object> results() {
+        Map<String, Object> results = new LinkedHashMap<>();
+        accumulators.forEach((id, accumulator) -> results.put(id, accumulator.result()));
+        return results;
+    }
+
+    private Accumulator compile(String id, BatchQuery query, QueryOptions options) {
+        if (query.aggregate() != null) {
+            DatasetField field = DatasetService.numericField(query.aggregate());
+            columns.add(field);
+            return query.groupBy() == null ? new Aggregates(field, null) : new Aggregates(field, groupField(query));
+        }
+        if (query.bucket() != null) {
+            DatasetField field = DatasetField.fromName(query.bucket())
+                    .filter(DatasetField::isNumeric)
+                    .orElseThrow(() -> new InvalidFieldException(
+                            "Unsupported bucket field: " + query.bucket()));
+            DatasetService.checkBuckets(query.width(), query.boundaries());
+            columns.add(field);
+            return new Histogram(field, query.width(), query.boundaries(),
+                    query.groupBy() == null ? null : groupField(query));
+        }
+        if (query.sortBy() != null) {
+            DatasetField field = DatasetField.fromName(query.sortBy())
+                    .orElseThrow(() -> new InvalidFieldException(
+                            "Unsupported sortBy field: " + query.sortBy()));
+            Comparator<DatasetRow> order = DatasetService.direction(query.order() != null ? query.order() : "asc")
+                    .isDescending() ? field.comparator().reversed() : field.comparator();
+            columns.add(field);
+            columns.add(DatasetField.ID);
+            return new Sorted(order, options.limit(), query.groupBy() == null ? null : groupField(query),
+                    options.fields());
+        }
+        if (query.groupBy() != null) {
+            List<DatasetField> groupBy = DatasetService.groupFields(
+                    List.of(query.groupBy().split(",")).stream().map(String::trim).toList());
+            columns.addAll(groupBy);
+            return query.counts()
+                    ? new GroupCounts(groupBy, query.subtotals())
+                    : new GroupedRecords(groupBy, options.fields());
+        }
+        throw new IllegalArgumentException("Query " + id + " needs groupBy, sortBy, aggregate or bucket");
+    }
+
+    private DatasetField groupField(BatchQuery query) {
+        DatasetField groupBy = DatasetField.fromName(query.groupBy())
+                .orElseThrow(() -> new InvalidFieldException(
+                        "Unsupported groupBy field: " + query.groupBy()));
+        columns.add(groupBy);
+        return groupBy;
+    }
+
+    private static Accumulator filtered(Accumulator accumulator, Filter filter) {
+        if (filter == null) {
+            return accumulator;
+        }
+        return new Accumulator() {
+            @Override
+            public void accept(DatasetRow record) {
+                if (filter.test(record)) {
+                    accumulator.accept(record);
+                }
+            }
+
+            @Override
+            public Object result() {
+                return accumulator.result();
+            }
+        };
+    }
+
+    private static DatasetRow project(DatasetRow record, Set<DatasetField> fields) {
+        return fields.size() == DatasetField.values().length ? record : DatasetRecordView.of(record, fields);
+    }
+
+    private interface Accumulator extends Consumer<DatasetRow> {
+
+        Object result();
+    }
+
+    private static final class GroupedRecords implements Accumulator {
+
+        private final List<DatasetField> groupBy;
+
+        private final Set<DatasetField> fields;
+
+        private final Map<String, Object> groups = new TreeMap<>();
+
+        GroupedRecords(List<DatasetField> groupBy, Set<DatasetField> fields) {
+            this.groupBy = groupBy;
+            this.fields = fields;
+        }
+
+        @Override
+        public void accept(DatasetRow record) {
+            DatasetService.nest(groups, groupBy, record, project(record, fields));
+        }
+
+        @Override
+        public Object result() {
+            return Map.of("groupedRecords", groups);
+        }
+    }
+
+    private static final class GroupCounts implements Accumulator {
+
+        private final List<DatasetField> groupBy;
+
+        private final boolean subtotals;
+
+        private final Map<List<String>, Long> counts = new TreeMap<>(KEY_ORDER);
+
+        GroupCounts(List<DatasetField> groupBy, boolean subtotals) {
+            this.groupBy = groupBy;
+            this.subtotals = subtotals;
+        }
+
+        @Override
+        public void accept(DatasetRow record) {
+            List<String> keys = new ArrayList<>(groupBy.size());
+            groupBy.forEach(field -> keys.add(DatasetService.groupKey(field, record)));
+            counts.merge(keys, 1L, Long::sum);
+        }
+
+        @Override
+        public Object result() {
+            var tree = DatasetService.countTree(counts, 0, subtotals);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("groupCounts", tree.groups() != null ? tree.groups() : Map.of());
+            result.put("total", tree.count());
+            return result;
+        }
+    }
+
+    private static final class Sorted implements Accumulator {
+
+        private final Comparator<DatasetRow> order;
+
+        private final int limit;
+
+        private final DatasetField groupBy;
+
+        private final Set<DatasetField> fields;
+
+        private final Map<String, TopK<DatasetRow>> groups = new TreeMap<>();
+
+        Sorted(Comparator<DatasetRow> order, Integer limit, DatasetField groupBy, Set<DatasetField> fields) {
+            this.order = order;
+            this.limit = limit != null ? limit : Integer.MAX_VALUE;
+            this.groupBy = groupBy;
+            this.fields = fields;
+        }
+
+        @Override
+        public void accept(DatasetRow record) {
+            String key = groupBy == null ? "" : DatasetService.groupKey(groupBy, record);
+            groups.computeIfAbsent(key, group -> new TopK<>(limit, order)).offer(record);
+        }
+
+        @Override
+        public Object result() {
+            Map<String, List<DatasetRow>> sorted = new LinkedHashMap<>();
+            groups.forEach((key, topK) -> sorted.put(key, topK.toList().stream()
+                    .map(record -> project(record, fields))
+                    .toList()));
+            if (groupBy == null) {
+                return Map.of("sortedRecords", sorted.getOrDefault("", List.of()));
+            }
+            return Map.of("groupedRecords", sorted);
+        }
+    }
+
+    private static final class Aggregates implements Accumulator {
+
+        private final DatasetField field;
+
+        private final DatasetField groupBy;
+
+        // group -> { count, sum, min, max }
+        private final Map<String, long[]> groups = new TreeMap<>();
+
+        Aggregates(DatasetField field, DatasetField groupBy) {
+            this.field = field;
+            this.groupBy = groupBy;
+        }
+
+        @Override
+        public void accept(DatasetRow record) {
+            long[] state = groups.computeIfAbsent(groupBy == null ? "" : DatasetService.groupKey(groupBy, record),
+                    key -> new long[] { 0, 0, Long.MAX_VALUE, Long.MIN_VALUE });
+            Object value = field.valueOf(record);
+            if (value != null) {
+                long number = ((Number) value).longValue();
+                state[0]++;
+                state[1] += number;
+                state[2] = Math.min(state[2], number);
+                state[3] = Math.max(state[3], number);
+            }
+        }
+
+        @Override
+        public Object result() {
+            Map<String, DatasetAggregate> aggregates = new LinkedHashMap<>();
+            groups.forEach((key, state) -> aggregates.put(key, state[0] == 0
+                    ? new DatasetAggregate(0, 0, null, null, null)
+                    : new DatasetAggregate(state[0], state[1], state[2], state[3], (double) state[1] / state[0])));
+            if (groupBy == null) {
+                return Map.of("aggregates",
+                        aggregates.getOrDefault("", new DatasetAggregate(0, 0, null, null, null)));
+            }
+            return Map.of("groupedAggregates", aggregates);
+        }
+    }
+
+    private static final class Histogram implements Accumulator {
+
+        private final DatasetField field;
+
+        private final Long width;
+
+        private final List<Long> boundaries;
+
+        private final DatasetField groupBy;
+
+        // bucket -> group -> count, both in order
+        private final Map<Long, Map<String, Long>> counts = new TreeMap<>();
+
+        Histogram(DatasetField field, Long width, List<Long> boundaries, DatasetField groupBy) {
+            this.field = field;
+            this.width = width;
+            this.boundaries = boundaries;
+            this.groupBy = groupBy;
+        }
+
+        @Override
+        public void accept(DatasetRow record) {
+            Object value = field.valueOf(record);
+            if (value == null) {
+                return;
+            }
+            long number = ((Number) value).longValue();
+            long bucket;
+            if (width != null) {
+                bucket = Math.floorDiv(number, width) * width;
+            } else {
+                int index = 0;
+                while (index < boundaries.size() && number >= boundaries.get(index)) {
+                    index++;
+                }
+                bucket = index;
+            }
+            String group = groupBy == null ? null : DatasetService.groupKey(groupBy, record);
+            counts.computeIfAbsent(bucket, key -> new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .merge(group, 1L, Long::sum);
+        }
+
+        @Override
+        public Object result() {
+            List<DatasetQueryRepository.BucketCount> rows = new ArrayList<>();
+            counts.forEach((bucket, groups) -> groups.forEach((group, count) ->
+                    rows.add(new DatasetQueryRepository.BucketCount(bucket, group, count))));
+            var buckets = DatasetService.buckets(rows, width, boundaries, groupBy != null);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("histogram", buckets);
+            result.put("total", buckets.stream().mapToLong(bucket -> bucket.count()).sum());
+            return result;
+        }
+    }
+}
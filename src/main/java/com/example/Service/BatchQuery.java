@@ -0,0 +1,28 @@
+package com.example.Service;
+
+import java.util.List;
+
+/**
+ * One query of a batch, with the parameters of the equivalent /query call.
+ * The kind of query follows from the parameters set: aggregate, bucket,
+ * sortBy (optionally per group) or groupBy (optionally counts only).
+ *
+ * @param id         the key of the result in the batch response; defaults
+ *                   to the position, e.g. "q0"
+ * @param groupBy    comma-separated fields to group by
+ * @param counts     whether groupBy returns counts instead of records
+ * @param subtotals  whether group counts include outer-level subtotals
+ * @param sortBy     the field to sort by
+ * @param order      the sort order, "asc" by default
+ * @param limit      the number of sorted records, per group when grouped
+ * @param aggregate  the numeric field to aggregate
+ * @param bucket     the numeric field of a histogram
+ * @param width      the histogram bucket width
+ * @param boundaries the histogram bucket boundaries
+ * @param fields     comma-separated fields to return
+ * @param where      the filter expression
+ */
+public record BatchQuery(String id, String groupBy, boolean counts, boolean subtotals, String sortBy, String order,
+        Integer limit, String aggregate, String bucket, Long width, List<Long> boundaries, String fields,
+        String where) {
+}
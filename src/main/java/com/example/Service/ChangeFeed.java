@@ -0,0 +1,552 @@
+package com.example.Service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PreDestroy;
+
+import com.example.Entity.DatasetChanges;
+import com.example.Entity.DatasetRow;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes inserted records to Server-Sent Events subscribers of a dataset.
+ * An insert only queues its record; a sender thread serializes it once and
+ * offers it to the bounded queue of every subscriber of the dataset, and a
+ * small pool of sender threads drains the queues, so the writer never waits
+ * on a client or the database and thousands of idle subscribers hold no
+ * thread. A subscriber whose queue overflows is sent an
+ * "overflow" event and disconnected, and one whose client takes longer than
+ * the send timeout to accept an event is disconnected; either resumes from
+ * its Last-Event-ID.
+ * Delivery is at least once: an event id is a changes cursor, and resuming
+ * from it replays the changes written since through the changes query, on a
+ * separate bounded pool so that replays never hold up live events.
+ */
+@Component
+public class ChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+
+    static final String RECORD_EVENT = "record";
+
+    static final String RESET_EVENT = "reset";
+
+    static final String OVERFLOW_EVENT = "overflow";
+
+    // Subscriptions waiting for a replay thread; more are turned away
+    private static final int MAX_QUEUED_REPLAYS = 1_000;
+
+    private final ObjectMapper objectMapper;
+
+    private final int bufferSize;
+
+    private final long timeoutMillis;
+
+    private final long sendTimeoutMillis;
+
+    private final ExecutorService senders;
+
+    private final ExecutorService replays;
+
+    // Interrupts sends that exceed the send timeout
+    private final ScheduledThreadPoolExecutor sendTimeouts;
+
+    // dataset name -> publishing state and subscribers; removed with the
+    // last subscriber
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for ChangeFeed.
+     *
+     * @param objectMapper      the mapper serializing each record once
+     * @param bufferSize        number of events a subscriber may fall behind by
+     * @param timeoutMillis     how long a subscription stays open
+     * @param senders           number of threads writing to subscribers
+     * @param sendTimeoutMillis how long a client may take to accept an event
+     *                          before it is disconnected
+     * @param replays           number of threads replaying the changes since
+     *                          the cursor of a resumed subscription
+     */
+    public ChangeFeed(ObjectMapper objectMapper,
+            @Value("${dataset.feed.buffer-size:1000}") int bufferSize,
+            @Value("${dataset.feed.timeout:1800000}") long timeoutMillis,
+            @Value("${dataset.feed.senders:4}") int senders,
+            @Value("${dataset.feed.send-timeout:10000}") long sendTimeoutMillis,
+            @Value("${dataset.feed.replays:2}") int replays) {
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.senders = Executors.newFixedThreadPool(senders, daemon("change-feed"));
+        this.replays = new ThreadPoolExecutor(replays, replays, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_REPLAYS), daemon("change-feed-replay"));
+        this.sendTimeouts = new ScheduledThreadPoolExecutor(1, daemon("change-feed-timeout"));
+        this.sendTimeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Subscribes to the records inserted into a dataset. The subscriber is
+     * registered before the changes since the cursor are read, so no insert
+     * falls between the replay and the live events.
+     *
+     * @param datasetName the name of the dataset
+     * @param since       the cursor to resume from, or null for only new
+     *                    records
+     * @param head        reads the cursor of the last change of the dataset
+     * @param changes     reads a page of changes after a cursor
+     * @return the emitter of the subscription
+     * @throws com.example.Exception.DatasetNotFoundException if the dataset
+     *                                                        does not exist
+     * @throws IllegalArgumentException                       if the cursor is
+     *                                                        malformed
+     */
+    public SseEmitter subscribe(String datasetName, String since, Supplier<String> head,
+            Function<String, DatasetChanges> changes) {
+        SseEmitter emitter = newEmitter(timeoutMillis);
+        Subscriber[] subscribed = new Subscriber[1];
+        Topic topic = topics.compute(datasetName, (name, current) -> {
+            Topic joined = current != null ? current : new Topic(name);
+            subscribed[0] = new Subscriber(joined, emitter);
+            joined.subscribers.add(subscribed[0]);
+            return joined;
+        });
+        Subscriber subscriber = subscribed[0];
+        DatasetChanges first;
+        long[] position;
+        try {
+            first = since == null || since.isBlank() ? null : changes.apply(since);
+            position = DatasetService.parseCursor(head.get());
+        } catch (RuntimeException ex) {
+            subscriber.leave();
+            throw ex;
+        }
+        // Records up to the head are not published again; a subscriber with
+        // a cursor gets them from its replay
+        topic.seed((int) position[0], position[1]);
+        execute(replays, subscriber, () -> subscriber.replay(first, changes, position));
+        return subscriber.emitter;
+    }
+
+    /**
+     * Publishes a committed insert to the subscribers of its dataset. Only
+     * queues the insert: the writer never serializes, reads or waits here,
+     * and a failure to publish never fails the committed insert.
+     * Sequence numbers are committed in order but may reach this method out
+     * of order, or not at all when another instance wrote them; the records
+     * of a gap are read back through the changes query on a sender thread, so
+     * subscribers see every write in sequence order.
+     *
+     * @param datasetName the name of the dataset
+     * @param datasetId   the integer key of the dataset
+     * @param changeSeq   the change sequence number of the insert
+     * @param record      the inserted record
+     * @param changes     reads a page of changes after a cursor
+     */
+    public void publish(String datasetName, int datasetId, long changeSeq, DatasetRow record,
+            Function<String, DatasetChanges> changes) {
+        try {
+            Topic topic = topics.get(datasetName);
+            if (topic != null) {
+                topic.enqueue(new Published(datasetId, changeSeq, record, changes));
+            }
+        } catch (RuntimeException ex) {
+            // Subscribers catch up through the gap fill of the next insert
+            logger.warn("Could not publish change {} of dataset {}", changeSeq, datasetName, ex);
+        }
+    }
+
+    /**
+     * The number of open subscriptions to a dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @return the subscriber count
+     */
+    public int subscribers(String datasetName) {
+        Topic topic = topics.get(datasetName);
+        return topic == null ? 0 : topic.subscribers.size();
+    }
+
+    // The number of datasets with subscribers
+    int topics() {
+        return topics.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        topics.values().forEach(topic -> topic.subscribers.forEach(subscriber -> subscriber.emitter.complete()));
+        senders.shutdownNow();
+        replays.shutdownNow();
+        sendTimeouts.shutdownNow();
+    }
+
+    SseEmitter newEmitter(long timeout) {
+        return new SseEmitter(timeout);
+    }
+
+    private String json(DatasetRow record) {
+        try {
+            return objectMapper.writeValueAsString(record);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Could not serialize record " + record.getId(), ex);
+        }
+    }
+
+    private static void execute(ExecutorService executor, Subscriber subscriber, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // Shutting down, or too many replays waiting; the client resumes later
+            subscriber.close();
+        }
+    }
+
+    /**
+     * One published record. Events read back as a page carry the sequence
+     * number of the page's last record, and only the last one carries an id.
+     */
+    private record Event(String name, String id, int datasetId, long changeSeq, String json) {
+    }
+
+    /**
+     * A committed insert waiting to be dispatched; without a record, only the
+     * records up to its sequence number are read back.
+     */
+    private record Published(int datasetId, long changeSeq, DatasetRow record,
+            Function<String, DatasetChanges> changes) {
+
+        Published withoutRecord() {
+            return new Published(datasetId, changeSeq, null, changes);
+        }
+
+        // Datasets written again get a higher key
+        static Published latest(Published a, Published b) {
+            if (a == null) {
+                return b;
+            }
+            return a.datasetId != b.datasetId ? (a.datasetId > b.datasetId ? a : b)
+                    : (a.changeSeq >= b.changeSeq ? a : b);
+        }
+    }
+
+    private final class Topic {
+
+        private final String datasetName;
+
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+        private final BlockingQueue<Published> pending = new ArrayBlockingQueue<>(bufferSize);
+
+        // The latest insert that did not fit in pending
+        private final AtomicReference<Published> skipped = new AtomicReference<>();
+
+        // Set while a sender dispatches the pending inserts
+        private final AtomicBoolean dispatching = new AtomicBoolean();
+
+        // guarded by this
+        private int datasetId;
+
+        // guarded by this; the last sequence number offered to subscribers
+        private long lastPublished;
+
+        Topic(String datasetName) {
+            this.datasetName = datasetName;
+        }
+
+        void enqueue(Published published) {
+            if (!pending.offer(published)) {
+                skipped.accumulateAndGet(published.withoutRecord(), Published::latest);
+            }
+            if (dispatching.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::dispatch);
+                } catch (RejectedExecutionException ex) {
+                    // Shutting down
+                    dispatching.set(false);
+                }
+            }
+        }
+
+        void dispatch() {
+            while (true) {
+                Published published;
+                while ((published = pending.poll()) != null) {
+                    dispatch(published);
+                }
+                Published behind = skipped.getAndSet(null);
+                if (behind != null) {
+                    dispatch(behind);
+                    continue;
+                }
+                dispatching.set(false);
+                if (pending.isEmpty() && skipped.get() == null || !dispatching.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        private void dispatch(Published published) {
+            try {
+                publish(published);
+            } catch (RuntimeException ex) {
+                // The gap is read back again on the next insert
+                logger.warn("Could not publish change {} of dataset {}", published.changeSeq(),
+                        published.datasetId(), ex);
+            }
+        }
+
+        private synchronized void publish(Published published) {
+            int datasetId = published.datasetId();
+            long changeSeq = published.changeSeq();
+            if (this.datasetId != datasetId) {
+                // A dropped dataset was written again
+                if (this.datasetId != 0) {
+                    offer(new Event(RESET_EVENT, null, datasetId, 0, "{}"));
+                }
+                this.datasetId = datasetId;
+                this.lastPublished = changeSeq - 1;
+            }
+            if (changeSeq <= lastPublished) {
+                return;
+            }
+            if (subscribers.isEmpty()) {
+                lastPublished = changeSeq;
+                return;
+            }
+            // Without the record, its own sequence number is read back too
+            long readUpTo = published.record() == null ? changeSeq : changeSeq - 1;
+            while (readUpTo > lastPublished) {
+                DatasetChanges missed = published.changes().apply(DatasetService.cursor(datasetId, lastPublished));
+                long last = DatasetService.parseCursor(missed.nextCursor())[1];
+                if (missed.records().isEmpty() || last <= lastPublished) {
+                    break;
+                }
+                for (int i = 0; i < missed.records().size(); i++) {
+                    boolean lastOfPage = i == missed.records().size() - 1;
+                    offer(new Event(RECORD_EVENT, lastOfPage ? missed.nextCursor() : null, datasetId, last,
+                            json(missed.records().get(i))));
+                }
+                lastPublished = last;
+            }
+            if (published.record() != null && changeSeq > lastPublished) {
+                offer(new Event(RECORD_EVENT, DatasetService.cursor(datasetId, changeSeq), datasetId, changeSeq,
+                        json(published.record())));
+                lastPublished = changeSeq;
+            }
+        }
+
+        synchronized void seed(int datasetId, long changeSeq) {
+            if (this.datasetId != datasetId) {
+                this.datasetId = datasetId;
+                this.lastPublished = changeSeq;
+            } else {
+                lastPublished = Math.max(lastPublished, changeSeq);
+            }
+        }
+
+        void offer(Event event) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private final class Subscriber {
+
+        private final Topic topic;
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(bufferSize);
+
+        // Set while a sender drains the queue; starts set for the replay
+        private final AtomicBoolean scheduled = new AtomicBoolean(true);
+
+        private volatile boolean overflowed;
+
+        // Position reached by the replay; live events up to it are skipped
+        private int replayedDatasetId;
+
+        private long replayedSeq;
+
+        Subscriber(Topic topic, SseEmitter emitter) {
+            this.topic = topic;
+            this.emitter = emitter;
+            emitter.onCompletion(this::leave);
+            emitter.onTimeout(this::close);
+            emitter.onError(error -> close());
+        }
+
+        void offer(Event event) {
+            if (!queue.offer(event)) {
+                overflowed = true;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                execute(senders, this, this::drain);
+            }
+        }
+
+        void replay(DatasetChanges first, Function<String, DatasetChanges> changes, long[] position) {
+            try {
+                DatasetChanges page = first;
+                while (page != null) {
+                    if (page.reset()) {
+                        send(SseEmitter.event().name(RESET_EVENT).data("{}", MediaType.APPLICATION_JSON));
+                    }
+                    for (int i = 0; i < page.records().size(); i++) {
+                        SseEmitter.SseEventBuilder event = SseEmitter.event().name(RECORD_EVENT)
+                                .data(json(page.records().get(i)), MediaType.APPLICATION_JSON);
+                        if (i == page.records().size() - 1) {
+                            event.id(page.nextCursor());
+                        }
+                        send(event);
+                    }
+                    position = DatasetService.parseCursor(page.nextCursor());
+                    page = page.more() ? changes.apply(page.nextCursor()) : null;
+                }
+                replayedDatasetId = (int) position[0];
+                replayedSeq = position[1];
+            } catch (IOException | RuntimeException ex) {
+                logger.debug("Change feed replay failed", ex);
+                close();
+                return;
+            }
+            // Live events are sent by the senders, freeing the replay thread
+            execute(senders, this, this::drain);
+        }
+
+        void drain() {
+            try {
+                while (true) {
+                    Event event;
+                    while ((event = queue.poll()) != null) {
+                        if (event.datasetId() == replayedDatasetId && event.changeSeq() <= replayedSeq) {
+                            continue;
+                        }
+                        SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event.name())
+                                .data(event.json(), MediaType.APPLICATION_JSON);
+                        if (event.id() != null) {
+                            builder.id(event.id());
+                        }
+                        send(builder);
+                    }
+                    if (overflowed) {
+                        send(SseEmitter.event().name(OVERFLOW_EVENT).data("{}", MediaType.APPLICATION_JSON));
+                        close();
+                        return;
+                    }
+                    scheduled.set(false);
+                    if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            } catch (IOException | IllegalStateException ex) {
+                // The client went away
+                close();
+            }
+        }
+
+        // Sends an event, or fails once the client took longer than the send
+        // timeout to accept it. The stalled send is interrupted, and the
+        // subscriber stops receiving events at once.
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            SendTimeout timeout = new SendTimeout(this, Thread.currentThread());
+            ScheduledFuture<?> scheduled = sendTimeouts.schedule(timeout, sendTimeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                emitter.send(event);
+            } finally {
+                scheduled.cancel(false);
+                timeout.finish();
+            }
+        }
+
+        void leave() {
+            topics.computeIfPresent(topic.datasetName, (name, current) -> {
+                if (current == topic) {
+                    current.subscribers.remove(this);
+                }
+                return current.subscribers.isEmpty() ? null : current;
+            });
+        }
+
+        void close() {
+            leave();
+            emitter.complete();
+        }
+    }
+
+    private static final class SendTimeout implements Runnable {
+
+        private final Subscriber subscriber;
+
+        private final Thread sender;
+
+        // guarded by this
+        private boolean done;
+
+        // guarded by this
+        private boolean expired;
+
+        SendTimeout(Subscriber subscriber, Thread sender) {
+            this.subscriber = subscriber;
+            this.sender = sender;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                expired = true;
+                sender.interrupt();
+            }
+            // Completing the emitter would wait for the stalled send
+            subscriber.leave();
+        }
+
+        void finish() throws IOException {
+            synchronized (this) {
+                done = true;
+                if (!expired) {
+                    return;
+                }
+                // The interrupt was meant for this send only
+                Thread.interrupted();
+            }
+            throw new IOException("Client did not accept an event in time");
+        }
+    }
+}
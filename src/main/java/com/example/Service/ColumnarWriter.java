@@ -0,0 +1,205 @@
+package com.example.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.example.Entity.DatasetRow;
+
+/**
+ * Writes records as a stream of column batches, the layout of the export
+ * endpoint. The stream describes itself: a header names the dataset and
+ * lists the columns with their types, then each batch holds the values of
+ * up to batchSize records column by column, and a footer holds the record
+ * count. All numbers are big-endian; strings are an int32 byte length
+ * followed by UTF-8 bytes.
+ *
+ * <pre>
+ * stream     := "DSCOL" u8 version string(dataset) u16 columns (string(name) u8 type)* batch* footer
+ * batch      := 'B' i32 rows column*
+ * column     := [dictionary entries, for DICTIONARY] validity values
+ * validity   := ceil(rows / 8) bytes, bit i (least significant first) set if row i is not null
+ * INT64      := rows * i64
+ * INT32      := rows * i32
+ * UTF8       := (rows + 1) * i32 offsets, then the bytes of all values
+ * DICTIONARY := i32 count, count * string appended to the dictionary, then rows * i32 index
+ * footer     := 'E' i64 records
+ * </pre>
+ *
+ * Null values are written as 0 or an empty string. Only one batch of
+ * records is held at a time, plus the dictionary of departments.
+ */
+public class ColumnarWriter implements Consumer<DatasetRow> {
+
+    /**
+     * Media type of the stream.
+     */
+    public static final String MEDIA_TYPE = "application/x-dataset-columnar";
+
+    static final byte[] MAGIC = "DSCOL".getBytes(StandardCharsets.US_ASCII);
+
+    static final int VERSION = 1;
+
+    static final byte INT64 = 1;
+
+    static final byte INT32 = 2;
+
+    static final byte UTF8 = 3;
+
+    static final byte DICTIONARY = 4;
+
+    static final byte BATCH = 'B';
+
+    static final byte END = 'E';
+
+    private final DataOutputStream out;
+
+    private final int batchSize;
+
+    private final List<DatasetRow> batch;
+
+    // department -> index, in the order the entries were written
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private long records;
+
+    /**
+     * Constructor for ColumnarWriter; writes the header.
+     *
+     * @param out         the stream to write to; not closed
+     * @param datasetName the name of the exported dataset
+     * @param batchSize   the number of records per batch
+     * @throws IOException if the header cannot be written
+     */
+    public ColumnarWriter(OutputStream out, String datasetName, int batchSize) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION);
+        writeString(datasetName);
+        this.out.writeShort(4);
+        writeColumn("id", INT64);
+        writeColumn("name", UTF8);
+        writeColumn("age", INT32);
+        writeColumn("department", DICTIONARY);
+    }
+
+    /**
+     * Adds a record, writing the batch once it is full.
+     *
+     * @param record the record
+     * @throws UncheckedIOException if the batch cannot be written, e.g. after
+     *                              the client disconnected
+     */
+    @Override
+    public void accept(DatasetRow record) {
+        batch.add(record);
+        if (batch.size() == batchSize) {
+            try {
+                writeBatch();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Writes the last batch and the footer, and flushes the stream.
+     *
+     * @return the number of records written
+     * @throws IOException if the stream cannot be written
+     */
+    public long finish() throws IOException {
+        if (!batch.isEmpty()) {
+            writeBatch();
+        }
+        out.writeByte(END);
+        out.writeLong(records);
+        out.flush();
+        return records;
+    }
+
+    private void writeBatch() throws IOException {
+        int rows = batch.size();
+        out.writeByte(BATCH);
+        out.writeInt(rows);
+
+        writeValidity(row -> row.getId() != null);
+        for (DatasetRow record : batch) {
+            out.writeLong(record.getId() == null ? 0 : record.getId());
+        }
+
+        writeValidity(row -> row.getName() != null);
+        List<byte[]> names = new ArrayList<>(rows);
+        int offset = 0;
+        out.writeInt(offset);
+        for (DatasetRow record : batch) {
+            byte[] name = record.getName() == null
+                    ? new byte[0]
+                    : record.getName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            offset += name.length;
+            out.writeInt(offset);
+        }
+        for (byte[] name : names) {
+            out.write(name);
+        }
+
+        writeValidity(row -> row.getAge() != null);
+        for (DatasetRow record : batch) {
+            out.writeInt(record.getAge() == null ? 0 : record.getAge());
+        }
+
+        // Departments first seen in this batch extend the dictionary
+        List<String> added = new ArrayList<>();
+        for (DatasetRow record : batch) {
+            String department = record.getDepartment();
+            if (department != null && !dictionary.containsKey(department)) {
+                dictionary.put(department, dictionary.size());
+                added.add(department);
+            }
+        }
+        out.writeInt(added.size());
+        for (String department : added) {
+            writeString(department);
+        }
+        writeValidity(row -> row.getDepartment() != null);
+        for (DatasetRow record : batch) {
+            out.writeInt(record.getDepartment() == null ? 0 : dictionary.get(record.getDepartment()));
+        }
+
+        records += rows;
+        batch.clear();
+    }
+
+    private void writeValidity(Predicate<DatasetRow> present) throws IOException {
+        byte[] bits = new byte[(batch.size() + 7) / 8];
+        for (int i = 0; i < batch.size(); i++) {
+            if (present.test(batch.get(i))) {
+                bits[i / 8] |= (byte) (1 << (i % 8));
+            }
+        }
+        out.write(bits);
+    }
+
+    private void writeColumn(String name, byte type) throws IOException {
+        writeString(name);
+        out.writeByte(type);
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.example.Entity.DatasetAggregate;
+import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRollup;
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetRollupRepository;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Maintains the per-department rollups of datasets (record count and age
+ * count, sum, min and max) and answers the unfiltered count and age
+ * aggregate queries from them, reading one row per department instead of
+ * every record. Rollups are updated in the transaction of the insert, after
+ * it locked the dataset row for its change sequence number, so they always
+ * match the committed records. Rollups of datasets older than this feature,
+ * or written to without insertRecord, are not read until rebuilt.
+ */
+@Component
+public class DatasetRollups {
+
+    private final DatasetRollupRepository rollupRepository;
+
+    private final DatasetKeyRegistry datasetKeyRegistry;
+
+    /**
+     * Constructor for DatasetRollups.
+     *
+     * @param rollupRepository   the repository of rollup rows
+     * @param datasetKeyRegistry the registry holding whether rollups are complete
+     */
+    public DatasetRollups(DatasetRollupRepository rollupRepository, DatasetKeyRegistry datasetKeyRegistry) {
+        this.rollupRepository = rollupRepository;
+        this.datasetKeyRegistry = datasetKeyRegistry;
+    }
+
+    /**
+     * Adds a newly inserted record to the rollup of its department with one
+     * increment statement. Must run in the transaction of the insert.
+     *
+     * @param datasetId the integer key of the dataset
+     * @param record    the inserted record
+     * @throws IllegalArgumentException if the department is empty
+     */
+    public void recordInsert(int datasetId, DatasetRecord record) {
+        String department = key(record.getDepartment());
+        Integer age = record.getAge();
+        int updated = age == null
+                ? rollupRepository.incrementWithoutAge(datasetId, department)
+                : rollupRepository.increment(datasetId, department, age);
+        if (updated == 0) {
+            // Inserts into the dataset hold its row lock, so no other one
+            // creates the row in the meantime
+            if (age == null) {
+                rollupRepository.insertWithoutAge(datasetId, department);
+            } else {
+                rollupRepository.insert(datasetId, department, age);
+            }
+        }
+    }
+
+    /**
+     * Moves a record written again from the rollup of its old department to
+     * that of its new one. A minimum or maximum cannot be taken back, so both
+     * departments are computed again from their records. Must run in the
+     * transaction of the write, which holds the locks of both datasets; see
+     * {@link #lockForOverwrite(int, int)}.
+     *
+     * @param datasetId          the integer key of the dataset
+     * @param record             the written record
+     * @param previousDatasetId  the dataset the record belonged to
+     * @param previousDepartment the department the record belonged to
+     * @throws IllegalArgumentException if the new department is empty
+     */
+    public void recordOverwrite(int datasetId, DatasetRecord record, int previousDatasetId,
+            String previousDepartment) {
+        String department = key(record.getDepartment());
+        if (DatasetRollup.NO_DEPARTMENT.equals(previousDepartment)) {
+            // Written before empty departments were refused; its group
+            // cannot be told apart from the records without one
+            datasetKeyRegistry.setRollupReady(previousDatasetId, false);
+            refresh(datasetId, department);
+            return;
+        }
+        String previous = key(previousDepartment);
+        refresh(previousDatasetId, previous);
+        if (previousDatasetId != datasetId || !previous.equals(department)) {
+            refresh(datasetId, department);
+        }
+    }
+
+    /**
+     * Locks the dataset a record is taken from along with the one it is
+     * written to, in ascending key order like every write taking two dataset
+     * locks, so opposite moves wait for each other instead of deadlocking.
+     * Must run in the transaction of the write, before it takes the lock of
+     * its own dataset.
+     *
+     * @param datasetId         the integer key of the dataset written to
+     * @param previousDatasetId the dataset the record belonged to
+     */
+    public void lockForOverwrite(int datasetId, int previousDatasetId) {
+        if (previousDatasetId < datasetId) {
+            datasetKeyRegistry.lock(previousDatasetId);
+            datasetKeyRegistry.lock(datasetId);
+        } else if (previousDatasetId > datasetId) {
+            datasetKeyRegistry.lock(datasetId);
+            datasetKeyRegistry.lock(previousDatasetId);
+        }
+    }
+
+    /**
+     * Reads the rollups of a dataset, if they cover all of its records.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the rollups in department order, or empty if they must be
+     *         rebuilt first or the dataset has no records
+     */
+    public Optional<List<Rollup>> find(int datasetId) {
+        List<Rollup> rollups = new ArrayList<>();
+        for (Object[] row : rollupRepository.findReadyRows(datasetId)) {
+            String department = (String) row[0];
+            rollups.add(new Rollup(
+                    DatasetRollup.NO_DEPARTMENT.equals(department) ? null : department,
+                    ((Number) row[1]).longValue(),
+                    ((Number) row[2]).longValue(),
+                    ((Number) row[3]).longValue(),
+                    row[4] == null ? null : ((Number) row[4]).longValue(),
+                    row[5] == null ? null : ((Number) row[5]).longValue()));
+        }
+        return rollups.isEmpty() ? Optional.empty() : Optional.of(rollups);
+    }
+
+    /**
+     * Computes the rollups of a dataset again from its records and marks them
+     * complete. Holds the dataset row lock, so inserts wait for it. Must run
+     * in a write transaction.
+     *
+     * @param datasetId the integer key of the dataset
+     * @return the number of departments, 0 if records with an empty
+     *         department keep the rollups from being used, or -1 if the
+     *         dataset no longer exists
+     */
+    public int rebuild(int datasetId) {
+        if (!datasetKeyRegistry.setRollupReady(datasetId, false)) {
+            return -1;
+        }
+        rollupRepository.deleteByDatasetId(datasetId);
+        if (rollupRepository.hasEmptyDepartment(datasetId)) {
+            // Left to scans
+            return 0;
+        }
+        int departments = rollupRepository.insertAllFromRecords(datasetId);
+        datasetKeyRegistry.setRollupReady(datasetId, true);
+        return departments;
+    }
+
+    /**
+     * Deletes the rollups of a dropped dataset.
+     *
+     * @param datasetId the integer key of the dataset
+     */
+    public void drop(int datasetId) {
+        rollupRepository.deleteByDatasetId(datasetId);
+    }
+
+    /**
+     * Sums the rollups of all departments into the age statistics of the
+     * dataset.
+     *
+     * @param rollups the rollups of a dataset
+     * @return the statistics
+     */
+    static DatasetAggregate total(List<Rollup> rollups) {
+        long count = 0;
+        long sum = 0;
+        Long min = null;
+        Long max = null;
+        for (Rollup rollup : rollups) {
+            count += rollup.ageCount();
+            sum += rollup.ageSum();
+            if (rollup.ageMin() != null) {
+                min = min == null ? rollup.ageMin() : Math.min(min, rollup.ageMin());
+                max = max == null ? rollup.ageMax() : Math.max(max, rollup.ageMax());
+            }
+        }
+        return aggregate(count, sum, min, max);
+    }
+
+    /**
+     * Returns the age statistics of each department.
+     *
+     * @param rollups the rollups of a dataset
+     * @return the statistics by department, in department order
+     */
+    static Map<String, DatasetAggregate> byDepartment(List<Rollup> rollups) {
+        Map<String, DatasetAggregate> groups = new LinkedHashMap<>();
+        for (Rollup rollup : rollups) {
+            groups.put(String.valueOf(rollup.department()),
+                    aggregate(rollup.ageCount(), rollup.ageSum(), rollup.ageMin(), rollup.ageMax()));
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the record count of each department, keyed like the counts of
+     * a query grouped by department.
+     *
+     * @param rollups the rollups of a dataset
+     * @return the record count by single-element list of the department
+     */
+    static Map<List<String>, Long> counts(List<Rollup> rollups) {
+        Map<List<String>, Long> counts = new LinkedHashMap<>();
+        for (Rollup rollup : rollups) {
+            counts.put(List.of(String.valueOf(rollup.department())), rollup.recordCount());
+        }
+        return counts;
+    }
+
+    private static DatasetAggregate aggregate(long count, long sum, Long min, Long max) {
+        return new DatasetAggregate(count, sum, min, max, count == 0 ? null : (double) sum / count);
+    }
+
+    private void refresh(int datasetId, String department) {
+        rollupRepository.deleteGroup(datasetId, department);
+        rollupRepository.insertFromRecords(datasetId, department);
+    }
+
+    // Departments are validated as not blank on the API; any other writer
+    // with an empty one is refused rather than merged with null
+    private static String key(String department) {
+        if (DatasetRollup.NO_DEPARTMENT.equals(department)) {
+            throw new IllegalArgumentException("Department must not be empty");
+        }
+        return department == null ? DatasetRollup.NO_DEPARTMENT : department;
+    }
+
+    /**
+     * The rollup of one department.
+     *
+     * @param department  the department, or null for records without one
+     * @param recordCount number of records
+     * @param ageCount    number of records with an age
+     * @param ageSum      sum of the ages
+     * @param ageMin      smallest age, or null when there are none
+     * @param ageMax      largest age, or null when there are none
+     */
+    public record Rollup(String department, long recordCount, long ageCount, long ageSum, Long ageMin,
+            Long ageMax) {
+    }
+}
@@ -1,46 +1,304 @@
 package com.example.Service;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import com.example.Config.ShardRouter;
+import com.example.Entity.DatasetAggregate;
+import com.example.Entity.DatasetChanges;
+import com.example.Entity.DatasetField;
 import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+import com.example.Entity.DatasetSample;
+import com.example.Entity.GroupCount;
+import com.example.Entity.HistogramBucket;
+import com.example.Entity.RecordBatch;
 import com.example.Exception.DatasetNotFoundException;
 import com.example.Exception.InvalidFieldException;
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetPartitioning;
+import com.example.Repository.DatasetQueryRepository;
 import com.example.Repository.DatasetRepository;
+import com.example.Repository.Filter;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Service class for handling dataset operations such as insert, group, and
  * sort.
+ * Queries run in read-only transactions, which the data source may route to
+ * a replica, and return immutable row views instead of managed entities;
+ * inserts run in read-write transactions on the primary.
+ * All work on a dataset runs on the shard that holds it; lookups by record id
+ * fan out to every shard.
  */
 @Service
 public class DatasetService {
 
+    private static final int MAX_SAMPLE_SIZE = 10_000;
+
+    private static final int MAX_BATCH_GET = 10_000;
+
+    private static final int MAX_CHANGES = 10_000;
+
+    // Page size of the changes read to replay or fill gaps of the change feed
+    private static final int FEED_PAGE = 500;
+
+    private static final int MAX_EXPORT_BATCH = 65_536;
+
+    /** The error of an insert whose id is taken. */
+    public static final String DUPLICATE_ID = "Record with this ID already exists";
+
+    // Dataset key and change sequence number, e.g. "12-3456"
+    private static final Pattern CURSOR = Pattern.compile("(\\d{1,9})-(\\d{1,18})");
+
+    // Random ids are drawn only when at least half the id range is used
+    private static final double MIN_ID_DENSITY = 0.5;
+
+    private static final int MAX_SAMPLE_ROUNDS = 8;
+
     private final DatasetRepository datasetRepository;
 
+    private final DatasetQueryRepository datasetQueryRepository;
+
+    private final DatasetKeyRegistry datasetKeyRegistry;
+
+    private final DatasetPartitioning datasetPartitioning;
+
+    private final IndexAdvisor indexAdvisor;
+
+    private final ShardRouter shardRouter;
+
+    private final FilterParser filterParser;
+
+    private final DistinctCounter distinctCounter;
+
+    private final QuantileEstimator quantileEstimator;
+
+    private final RecordLookup recordLookup;
+
+    private final IdFilter idFilter;
+
+    private final ChangeFeed changeFeed;
+
+    private final DatasetRollups datasetRollups;
+
+    private final QueryPlanner queryPlanner;
+
+    private final DatasetSnapshots datasetSnapshots;
+
+    private final ShardPins shardPins;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final TransactionTemplate writeTransaction;
+
+    private final long exportTimeoutMillis;
+
+    private final long versionTtlMillis;
+
+    // Versions last read per dataset, answering conditional requests without
+    // a query; dropped on every local write, bumping the generation
+    private final Map<String, KnownVersion> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong versionGeneration = new AtomicLong();
+
+    // The query being tagged on this thread, if any
+    private final ThreadLocal<VersionRead> versionRead = new ThreadLocal<>();
+
     /**
      * Constructor for DatasetService.
      *
-     * @param datasetRepository the repository for dataset records
+     * @param datasetRepository      the repository for dataset records
+     * @param datasetQueryRepository the read-only queries returning row views
+     * @param datasetKeyRegistry     the cache resolving dataset names to keys
+     * @param datasetPartitioning    the storage strategy used to drop datasets
+     * @param indexAdvisor           the advisor tracking groupBy/sortBy field usage
+     * @param shardRouter            the shard map placing datasets on databases
+     * @param filterParser           the parser and plan cache for where= filters
+     * @param distinctCounter        the distinct count sketches updated on every insert
+     * @param quantileEstimator      the quantile sketches updated on every insert
+     * @param recordLookup           the id lookups and their record cache
+     * @param idFilter               the filter sparing duplicate checks of new ids
+     * @param changeFeed             the subscribers notified of every insert
+     * @param datasetRollups         the per-department rollups updated on every insert
+     * @param queryPlanner           the planner choosing how queries are executed
+     * @param datasetSnapshots       the snapshot files serving full scans
+     * @param shardPins              the persisted pins of datasets to shards
+     * @param transactionManager     the transaction manager for queries and inserts
+     * @param exportTimeoutMillis    how long an export may read before it is
+     *                               aborted and releases its connection
+     * @param versionTtlMillis       how long a dataset version is answered from
+     *                               memory, i.e. how late writes of other
+     *                               instances may be noticed
      */
-    public DatasetService(DatasetRepository datasetRepository) {
+    public DatasetService(DatasetRepository datasetRepository, DatasetQueryRepository datasetQueryRepository,
+            DatasetKeyRegistry datasetKeyRegistry, DatasetPartitioning datasetPartitioning,
+            IndexAdvisor indexAdvisor, ShardRouter shardRouter, FilterParser filterParser,
+            DistinctCounter distinctCounter, QuantileEstimator quantileEstimator, RecordLookup recordLookup,
+            IdFilter idFilter, ChangeFeed changeFeed, DatasetRollups datasetRollups, QueryPlanner queryPlanner,
+            DatasetSnapshots datasetSnapshots, ShardPins shardPins, PlatformTransactionManager transactionManager,
+            @Value("${dataset.export.timeout:600000}") long exportTimeoutMillis,
+            @Value("${dataset.versions.ttl:1000}") long versionTtlMillis) {
         this.datasetRepository = datasetRepository;
+        this.datasetQueryRepository = datasetQueryRepository;
+        this.datasetKeyRegistry = datasetKeyRegistry;
+        this.datasetPartitioning = datasetPartitioning;
+        this.indexAdvisor = indexAdvisor;
+        this.shardRouter = shardRouter;
+        this.filterParser = filterParser;
+        this.distinctCounter = distinctCounter;
+        this.quantileEstimator = quantileEstimator;
+        this.recordLookup = recordLookup;
+        this.idFilter = idFilter;
+        this.changeFeed = changeFeed;
+        this.datasetRollups = datasetRollups;
+        this.queryPlanner = queryPlanner;
+        this.datasetSnapshots = datasetSnapshots;
+        this.shardPins = shardPins;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.exportTimeoutMillis = exportTimeoutMillis;
+        this.versionTtlMillis = versionTtlMillis;
     }
 
     /**
-     * Inserts a new record into the specified dataset.
+     * Inserts a new record into the specified dataset, replacing the record
+     * with the same id if the id filter knows it. An id the filter has not
+     * seen, e.g. one written by another instance, is inserted without a
+     * lookup and rejected by the primary key if it exists.
      *
      * @param datasetName   the name of the dataset
      * @param datasetRecord the record to insert
      * @return the saved DatasetRecord
+     * @throws IllegalArgumentException if the id filter does not know the id
+     *                                  but a record with it exists
      */
     public DatasetRecord insertRecord(String datasetName, DatasetRecord datasetRecord) {
+        return insert(datasetName, datasetRecord, true);
+    }
+
+    /**
+     * Adds a record with a new id to the specified dataset. Ids the id filter
+     * rules out are inserted without a duplicate check; the primary key
+     * rejects the ones the filter has not seen.
+     *
+     * @param datasetName   the name of the dataset
+     * @param datasetRecord the record to add
+     * @return the saved DatasetRecord
+     * @throws IllegalArgumentException if a record with the id already exists
+     */
+    public DatasetRecord addRecord(String datasetName, DatasetRecord datasetRecord) {
+        Long id = datasetRecord.getId();
+        if (id != null && idFilter.mightExist(id)) {
+            boolean exists = existsOnAnyShard(id);
+            idFilter.recordCheck(exists);
+            if (exists) {
+                throw duplicate(null);
+            }
+        }
+        return insert(datasetName, datasetRecord, false);
+    }
+
+    private DatasetRecord insert(String datasetName, DatasetRecord datasetRecord, boolean overwrite) {
         datasetRecord.setDatasetName(datasetName);
-        return datasetRepository.save(datasetRecord);
+        return shardRouter.onDataset(datasetName, () -> {
+            Written written = writeTransaction.execute(status -> {
+                int datasetId = datasetKeyRegistry.resolveId(datasetName);
+                // A record written again leaves the rollup of its old department
+                Optional<DatasetRecord> previous = overwrite && datasetRecord.getId() != null
+                        && idFilter.mayContain(datasetRecord.getId())
+                                ? datasetRepository.findById(datasetRecord.getId())
+                                : Optional.empty();
+                Integer previousDatasetId = previous.map(DatasetRecord::getDatasetId).orElse(null);
+                String previousDepartment = previous.map(DatasetRecord::getDepartment).orElse(null);
+                if (previousDatasetId != null) {
+                    datasetRollups.lockForOverwrite(datasetId, previousDatasetId);
+                }
+                OptionalLong changeSeq = datasetKeyRegistry.nextChangeSeq(datasetId);
+                if (changeSeq.isEmpty()) {
+                    // The cached key outlived its dataset row; create the dataset again
+                    datasetKeyRegistry.evict(datasetName);
+                    datasetId = datasetKeyRegistry.resolveId(datasetName);
+                    if (previousDatasetId != null) {
+                        datasetRollups.lockForOverwrite(datasetId, previousDatasetId);
+                    }
+                    changeSeq = datasetKeyRegistry.nextChangeSeq(datasetId);
+                }
+                datasetRecord.setDatasetId(datasetId);
+                datasetRecord.setChangeSeq(changeSeq.orElseThrow());
+                if (previousDatasetId != null && previousDatasetId != datasetId) {
+                    // Snapshots and cached rows of the dataset the record
+                    // leaves are only served at the sequence number they were read at
+                    datasetKeyRegistry.nextChangeSeq(previousDatasetId);
+                }
+                DatasetRecord saved;
+                if (previous.isPresent() || datasetRecord.getId() == null) {
+                    saved = datasetRepository.save(datasetRecord);
+                } else {
+                    // Never merged over a row nobody looked up
+                    try {
+                        saved = datasetRepository.insert(datasetRecord);
+                    } catch (DataIntegrityViolationException ex) {
+                        throw duplicate(ex);
+                    }
+                }
+                if (previousDatasetId == null) {
+                    datasetRollups.recordInsert(datasetId, saved);
+                } else {
+                    datasetRollups.recordOverwrite(datasetId, saved, previousDatasetId, previousDepartment);
+                }
+                return new Written(saved, previousDatasetId);
+            });
+            DatasetRecord saved = written.record();
+            // Other instances notice by the sequence number of the dataset left
+            if (written.previousDatasetId() != null && !written.previousDatasetId().equals(saved.getDatasetId())) {
+                datasetSnapshots.invalidate(written.previousDatasetId());
+                // The version of the other dataset, whose name is not at hand, changed too
+                forgetVersions(null);
+            } else {
+                forgetVersions(datasetName);
+            }
+            recordLookup.evict(saved.getId());
+            idFilter.add(saved.getId());
+            changeFeed.publish(datasetName, saved.getDatasetId(), saved.getChangeSeq(), saved,
+                    cursor -> changes(datasetName, cursor, FEED_PAGE));
+            distinctCounter.record(datasetName, saved);
+            quantileEstimator.record(datasetName, saved);
+            return saved;
+        });
     }
 
     /**
@@ -53,31 +311,55 @@ public class DatasetService {
      * @throws DatasetNotFoundException if no records are found for the dataset
      * @throws InvalidFieldException    if the groupBy field is invalid
      */
-    public Map<String, List<DatasetRecord>> groupByField(String datasetName, String groupByField) {
-        List<DatasetRecord> records = datasetRepository.findByDatasetName(datasetName);
-        if (records.isEmpty()) {
-            throw new DatasetNotFoundException("No records found for dataset: " + datasetName);
+    public Map<String, List<DatasetRow>> groupByField(String datasetName, String groupByField) {
+        return groupByField(datasetName, groupByField, QueryOptions.defaults());
+    }
+
+    /**
+     * Groups records of a dataset by the specified field, reading only the
+     * fields selected in the options.
+     *
+     * @param datasetName  the name of the dataset
+     * @param groupByField the field to group by
+     * @param options      the fields to return and the where= filter
+     * @return a map where the key is the field value and the value is the list of
+     *         matching records
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if the groupBy field is invalid
+     */
+    public Map<String, List<DatasetRow>> groupByField(String datasetName, String groupByField,
+            QueryOptions options) {
+        Optional<DatasetField> groupBy = DatasetField.fromName(groupByField);
+        Filter filter = compile(options);
+
+        // The group key is read along with the requested fields
+        Set<DatasetField> columns = EnumSet.copyOf(options.fields());
+        groupBy.ifPresent(columns::add);
+        Planned<List<DatasetRow>> planned = read(datasetName, datasetId -> {
+            QueryPlanner.Statistics statistics = scanStatistics(datasetName, datasetId, filter);
+            return new Planned<>(queryPlanner.group(statistics), scan(datasetId, statistics, columns, filter));
+        }).orElseThrow(() -> notFound(datasetName));
+        List<DatasetRow> records = planned.result();
+        if (records.isEmpty() && filter == null) {
+            throw notFound(datasetName);
         }
 
         // Validate that the groupByField exists in DatasetRecord
-        Field field;
-        try {
-            field = DatasetRecord.class.getDeclaredField(groupByField);
-            field.setAccessible(true);
-        } catch (NoSuchFieldException e) {
-            throw new InvalidFieldException("Unsupported groupBy field: " + groupByField);
-        }
+        DatasetField field = groupBy
+                .orElseThrow(() -> new InvalidFieldException("Unsupported groupBy field: " + groupByField));
+        indexAdvisor.recordUsage(datasetName, field);
 
-        // Group records by the specified field
-        return records.stream()
+        // Group records by the specified field; a parallel stream keeps the
+        // id order within each group
+        boolean keyRequested = options.fields().contains(field);
+        return (planned.plan().strategy() == QueryPlanner.Strategy.PARALLEL_SCAN
+                ? records.parallelStream()
+                : records.stream())
                 .collect(Collectors.groupingBy(record -> {
-                    try {
-                        Object value = field.get(record);
-                        return value != null ? value.toString() : "null";
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException("Error accessing field: " + groupByField, e);
-                    }
-                }));
+                    Object value = field.valueOf(record);
+                    return value != null ? value.toString() : "null";
+                }, Collectors.mapping(record -> keyRequested ? record : DatasetRecordView.of(record, options.fields()),
+                        Collectors.toList())));
     }
 
     /**
@@ -86,33 +368,1019 @@ public class DatasetService {
      * @param datasetName the name of the dataset
      * @param sortByField the field to sort by
      * @param sortOrder   the sort order ("asc" or "desc")
-     * @return a list of sorted DatasetRecord objects
+     * @return a list of sorted records
      * @throws DatasetNotFoundException if no records are found for the dataset
      */
-    public List<DatasetRecord> getSortedRecords(String datasetName, String sortByField, String sortOrder) {
+    public List<DatasetRow> getSortedRecords(String datasetName, String sortByField, String sortOrder) {
+        return getSortedRecords(datasetName, sortByField, sortOrder, QueryOptions.defaults());
+    }
+
+    /**
+     * Retrieves sorted records from the specified dataset, reading only the
+     * fields selected in the options.
+     *
+     * @param datasetName the name of the dataset
+     * @param sortByField the field to sort by
+     * @param sortOrder   the sort order ("asc" or "desc")
+     * @param options     the fields to return and the where= filter
+     * @return a list of sorted matching records
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     */
+    public List<DatasetRow> getSortedRecords(String datasetName, String sortByField, String sortOrder,
+            QueryOptions options) {
         // Validate sortByField
-        try {
-            DatasetRecord.class.getDeclaredField(sortByField);
-        } catch (NoSuchFieldException e) {
-            throw new InvalidFieldException("Unsupported sortBy field: " + sortByField);
-        }
+        DatasetField field = DatasetField.fromName(sortByField)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported sortBy field: " + sortByField));
 
         // Validate sortOrder
-        Sort.Direction direction;
+        boolean descending = direction(sortOrder).isDescending();
+
+        Filter filter = compile(options);
+        indexAdvisor.recordUsage(datasetName, field);
+
+        // A parallel scan reads the sort key and id tiebreak along with the
+        // requested fields and sorts once the transaction is over
+        Set<DatasetField> columns = EnumSet.of(DatasetField.ID, field);
+        columns.addAll(options.fields());
+        Planned<List<DatasetRow>> planned = read(datasetName, datasetId -> {
+            QueryPlanner.Statistics statistics = scanStatistics(datasetName, datasetId, filter);
+            QueryPlanner.Plan plan = queryPlanner.sort(statistics, field, filter != null, options.limit());
+            return new Planned<>(plan, plan.strategy() == QueryPlanner.Strategy.PARALLEL_SCAN
+                    ? scan(datasetId, statistics, columns, filter)
+                    : datasetQueryRepository.findByDatasetId(datasetId, options.fields(), filter, field,
+                            descending, options.limit()));
+        }).orElseThrow(() -> notFound(datasetName));
+        List<DatasetRow> records = planned.result();
+        if (records.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+        if (planned.plan().strategy() != QueryPlanner.Strategy.PARALLEL_SCAN) {
+            return records;
+        }
+        Comparator<DatasetRow> order = descending ? field.comparator().reversed() : field.comparator();
+        List<DatasetRow> sorted = options.limit() != null
+                ? records.parallelStream().collect(TopK.collector(options.limit(), order))
+                : records.parallelStream().sorted(order).toList();
+        boolean allRequested = options.fields().containsAll(columns);
+        return allRequested
+                ? sorted
+                : sorted.stream().<DatasetRow>map(record -> DatasetRecordView.of(record, options.fields())).toList();
+    }
+
+    /**
+     * Retrieves the first records of each group of a dataset in sort order,
+     * e.g. the three oldest per department. The records are scanned once and
+     * each group keeps only its first records in a bounded heap, so memory
+     * grows with the number of groups times the limit rather than with the
+     * number of records.
+     *
+     * @param datasetName  the name of the dataset
+     * @param groupByField the field to group by
+     * @param sortByField  the field to sort by
+     * @param sortOrder    the sort order ("asc" or "desc")
+     * @param options      the fields to return, the where= filter and the
+     *                     number of records per group
+     * @return the sorted records by group value, in group order
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if the groupBy or sortBy field is invalid
+     */
+    public Map<String, List<DatasetRow>> getSortedRecordsByGroup(String datasetName, String groupByField,
+            String sortByField, String sortOrder, QueryOptions options) {
+        DatasetField groupBy = DatasetField.fromName(groupByField)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported groupBy field: " + groupByField));
+        DatasetField sortBy = DatasetField.fromName(sortByField)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported sortBy field: " + sortByField));
+        Comparator<DatasetRow> order = direction(sortOrder).isDescending()
+                ? sortBy.comparator().reversed()
+                : sortBy.comparator();
+        int limit = options.limit() != null ? options.limit() : Integer.MAX_VALUE;
+        Filter filter = compile(options);
+        indexAdvisor.recordUsage(datasetName, groupBy);
+
+        // The group and sort keys and the id tiebreak are read along with the
+        // requested fields
+        Set<DatasetField> columns = EnumSet.of(DatasetField.ID, groupBy, sortBy);
+        columns.addAll(options.fields());
+        Map<String, TopK<DatasetRow>> groups = read(datasetName, datasetId -> {
+            Map<String, TopK<DatasetRow>> heaps = new TreeMap<>();
+            forEachRecord(datasetName, datasetId, columns, filter, record -> heaps
+                    .computeIfAbsent(groupKey(groupBy, record), key -> new TopK<>(limit, order))
+                    .offer(record));
+            return heaps;
+        }).orElseThrow(() -> notFound(datasetName));
+        if (groups.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+
+        boolean allRequested = options.fields().containsAll(columns);
+        Map<String, List<DatasetRow>> result = new LinkedHashMap<>();
+        groups.forEach((key, heap) -> result.put(key, heap.toList().stream()
+                .map(record -> allRequested ? record : DatasetRecordView.of(record, options.fields()))
+                .toList()));
+        return result;
+    }
+
+    /**
+     * Looks up records of a dataset by id, e.g. the few hundred records a
+     * caller already knows about, without reading the whole dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @param ids         the record ids; duplicates are returned once
+     * @param options     the fields to return
+     * @return the records found in the order requested, and the ids not found
+     * @throws DatasetNotFoundException if the dataset does not exist
+     * @throws IllegalArgumentException if no ids or too many are given
+     */
+    public RecordBatch getRecords(String datasetName, List<Long> ids, QueryOptions options) {
+        List<Long> distinct = ids == null ? List.of() : ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinct.isEmpty() || distinct.size() > MAX_BATCH_GET) {
+            throw new IllegalArgumentException("ids must hold between 1 and " + MAX_BATCH_GET + " ids");
+        }
+        Map<Long, DatasetRow> found = recordLookup.find(datasetName, distinct)
+                .orElseThrow(() -> notFound(datasetName));
+
+        boolean allFields = options.fields().size() == DatasetField.values().length;
+        List<DatasetRow> records = found.values().stream()
+                .map(record -> allFields ? record : DatasetRecordView.of(record, options.fields()))
+                .toList();
+        List<Long> missing = distinct.stream().filter(id -> !found.containsKey(id)).toList();
+        return new RecordBatch(records, missing);
+    }
+
+    /**
+     * Reads the records of a dataset written after a cursor, in write order,
+     * so a consumer can keep a copy in sync in time proportional to the
+     * changes rather than to the dataset. A cursor is the dataset key and a
+     * change sequence number; a cursor of a dropped and recreated dataset
+     * starts again from the beginning.
+     *
+     * @param datasetName the name of the dataset
+     * @param since       the nextCursor of the previous call, or null to read
+     *                    from the beginning
+     * @param limit       the maximum number of records
+     * @return the changed records and the cursor to continue from
+     * @throws DatasetNotFoundException if the dataset does not exist
+     * @throws IllegalArgumentException if the cursor is malformed or the limit
+     *                                  out of range
+     */
+    public DatasetChanges changes(String datasetName, String since, int limit) {
+        if (limit < 1 || limit > MAX_CHANGES) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_CHANGES + ": " + limit);
+        }
+        Matcher cursor = since == null || since.isBlank() ? null : CURSOR.matcher(since);
+        if (cursor != null && !cursor.matches()) {
+            throw new IllegalArgumentException("Invalid cursor: " + since);
+        }
+        return read(datasetName, datasetId -> {
+            boolean reset = cursor == null || Integer.parseInt(cursor.group(1)) != datasetId;
+            long from = reset ? 0 : Long.parseLong(cursor.group(2));
+            DatasetQueryRepository.Changes changes = datasetQueryRepository.findChanges(datasetId, from, limit);
+            return new DatasetChanges(changes.records(), cursor(datasetId, changes.lastChangeSeq()), reset,
+                    changes.records().size() == limit);
+        }).orElseThrow(() -> notFound(datasetName));
+    }
+
+    /**
+     * Subscribes to the records inserted into a dataset from now on, or
+     * after a cursor of the changes query, as Server-Sent Events.
+     *
+     * @param datasetName the name of the dataset
+     * @param since       the cursor to resume from, or null for only new
+     *                    records
+     * @return the emitter of the subscription
+     * @throws DatasetNotFoundException if the dataset does not exist
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public SseEmitter subscribe(String datasetName, String since) {
+        return changeFeed.subscribe(datasetName, since,
+                () -> read(datasetName, datasetId -> cursor(datasetId, datasetKeyRegistry.lastChangeSeq(datasetId)))
+                        .orElseThrow(() -> notFound(datasetName)),
+                cursor -> changes(datasetName, cursor, FEED_PAGE));
+    }
+
+    /**
+     * Prepares the export of a dataset as column batches, see
+     * {@link ColumnarWriter} for the layout. The records are read through a
+     * cursor in id order while the stream is written, in one read-only
+     * transaction, so only one batch is held in memory at a time. A client
+     * reading too slowly keeps that transaction open, so the export is
+     * aborted once it has run for the export timeout.
+     *
+     * @param datasetName the name of the dataset
+     * @param batchSize   the number of records per batch
+     * @param options     the where= filter
+     * @return the body writing the export
+     * @throws DatasetNotFoundException if the dataset does not exist
+     * @throws IllegalArgumentException if the batch size is out of range
+     */
+    public StreamingResponseBody export(String datasetName, int batchSize, QueryOptions options) {
+        if (batchSize < 1 || batchSize > MAX_EXPORT_BATCH) {
+            throw new IllegalArgumentException("batchSize must be between 1 and " + MAX_EXPORT_BATCH);
+        }
+        Filter filter = compile(options);
+        read(datasetName, datasetId -> datasetId).orElseThrow(() -> notFound(datasetName));
+        Set<DatasetField> columns = EnumSet.of(DatasetField.ID, DatasetField.NAME, DatasetField.AGE,
+                DatasetField.DEPARTMENT);
+        return out -> {
+            ColumnarWriter writer = new ColumnarWriter(out, datasetName, batchSize);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(exportTimeoutMillis);
+            // A dataset dropped in the meantime exports no records
+            read(datasetName, datasetId -> {
+                forEachRecord(datasetName, datasetId, columns, filter, record -> {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw new IllegalStateException("Export of dataset " + datasetName + " exceeded "
+                                + exportTimeoutMillis + " ms");
+                    }
+                    writer.accept(record);
+                });
+                return null;
+            });
+            writer.finish();
+        };
+    }
+
+    static String cursor(int datasetId, long changeSeq) {
+        return datasetId + "-" + changeSeq;
+    }
+
+    /**
+     * Splits a cursor made by {@link #cursor(int, long)}.
+     *
+     * @param cursor the cursor
+     * @return the dataset key and the sequence number
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    static long[] parseCursor(String cursor) {
+        Matcher matcher = CURSOR.matcher(cursor);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) };
+    }
+
+    /**
+     * Draws a uniform random sample of the records of a dataset without
+     * reading all of them when possible. Without a filter, on a dataset whose
+     * ids densely cover their range, random ids are drawn and looked up by
+     * primary key; otherwise the matching records are streamed once through a
+     * reservoir. The same seed gives the same sample of the same data.
+     *
+     * @param datasetName the name of the dataset
+     * @param size        the number of records to sample
+     * @param seed        the random seed, or null for a random one
+     * @param options     the fields to return and the where= filter
+     * @return the sample, all matching records if there are at most size
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws IllegalArgumentException if the size is out of range
+     */
+    public DatasetSample sample(String datasetName, int size, Long seed, QueryOptions options) {
+        checkSampleSize(size);
+        long actualSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+        Filter filter = compile(options);
+        Set<DatasetField> columns = EnumSet.of(DatasetField.ID);
+        columns.addAll(options.fields());
+
+        DatasetSample sample = read(datasetName, datasetId -> {
+            if (filter == null) {
+                DatasetQueryRepository.IdRange range = datasetQueryRepository.idRange(datasetId);
+                if (range.density() >= MIN_ID_DENSITY && (long) size * 10 <= range.count()) {
+                    Optional<List<DatasetRow>> byIds = sampleByIds(datasetId, range, size, actualSeed, columns);
+                    if (byIds.isPresent()) {
+                        return new DatasetSample(actualSeed, "random-id", range.count(), byIds.get());
+                    }
+                }
+            }
+            Reservoir<DatasetRow> reservoir = new Reservoir<>(size, actualSeed);
+            datasetQueryRepository.forEachRecord(datasetId, columns, filter, reservoir::offer);
+            return new DatasetSample(actualSeed, "reservoir", reservoir.seen(), byId(reservoir.toList()));
+        }).orElseThrow(() -> notFound(datasetName));
+        if (sample.population() == 0 && filter == null) {
+            throw notFound(datasetName);
+        }
+        return project(sample, options);
+    }
+
+    /**
+     * Draws a uniform random sample of each group of a dataset, streaming the
+     * matching records once through one reservoir per group.
+     *
+     * @param datasetName  the name of the dataset
+     * @param groupByField the field to group by
+     * @param size         the number of records to sample per group
+     * @param seed         the random seed, or null for a random one
+     * @param options      the fields to return and the where= filter
+     * @return the sample by group value, in group order
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if the groupBy field is invalid
+     * @throws IllegalArgumentException if the size is out of range
+     */
+    public Map<String, DatasetSample> sampleByGroup(String datasetName, String groupByField, int size, Long seed,
+            QueryOptions options) {
+        checkSampleSize(size);
+        DatasetField groupBy = DatasetField.fromName(groupByField)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported groupBy field: " + groupByField));
+        long actualSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+        Filter filter = compile(options);
+        indexAdvisor.recordUsage(datasetName, groupBy);
+        Set<DatasetField> columns = EnumSet.of(DatasetField.ID, groupBy);
+        columns.addAll(options.fields());
+
+        // Each group has its own seed, so its sample does not depend on the others
+        Map<String, Reservoir<DatasetRow>> reservoirs = read(datasetName, datasetId -> {
+            Map<String, Reservoir<DatasetRow>> groups = new TreeMap<>();
+            datasetQueryRepository.forEachRecord(datasetId, columns, filter, record -> groups
+                    .computeIfAbsent(groupKey(groupBy, record),
+                            key -> new Reservoir<>(size, actualSeed * 31 + key.hashCode()))
+                    .offer(record));
+            return groups;
+        }).orElseThrow(() -> notFound(datasetName));
+        if (reservoirs.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+
+        Map<String, DatasetSample> samples = new LinkedHashMap<>();
+        reservoirs.forEach((key, reservoir) -> samples.put(key, project(
+                new DatasetSample(actualSeed, "reservoir", reservoir.seen(), byId(reservoir.toList())), options)));
+        return samples;
+    }
+
+    // Draws distinct random ids in the dataset's id range and keeps those that
+    // exist, in draw order, so every record is equally likely to be picked
+    private Optional<List<DatasetRow>> sampleByIds(int datasetId, DatasetQueryRepository.IdRange range, int size,
+            long seed, Set<DatasetField> columns) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long span = range.max() - range.min() + 1;
+        Set<Long> drawn = new HashSet<>();
+        List<DatasetRow> sample = new ArrayList<>(size);
+        for (int round = 0; round < MAX_SAMPLE_ROUNDS && sample.size() < size; round++) {
+            int needed = size - sample.size();
+            long batch = Math.min(span - drawn.size(), (long) Math.ceil(needed / range.density() * 1.25) + 8);
+            List<Long> candidates = new ArrayList<>((int) batch);
+            while (candidates.size() < batch) {
+                long id = range.min() + random.nextLong(span);
+                if (drawn.add(id)) {
+                    candidates.add(id);
+                }
+            }
+            Map<Long, DatasetRow> found = new HashMap<>();
+            datasetQueryRepository.findByIds(datasetId, columns, candidates)
+                    .forEach(record -> found.put(record.getId(), record));
+            for (Long id : candidates) {
+                DatasetRow record = found.get(id);
+                if (record != null && sample.size() < size) {
+                    sample.add(record);
+                }
+            }
+        }
+        return sample.size() == size ? Optional.of(byId(sample)) : Optional.empty();
+    }
+
+    private static void checkSampleSize(int size) {
+        if (size < 1 || size > MAX_SAMPLE_SIZE) {
+            throw new IllegalArgumentException("n must be between 1 and " + MAX_SAMPLE_SIZE + ": " + size);
+        }
+    }
+
+    private static List<DatasetRow> byId(List<DatasetRow> records) {
+        records.sort(Comparator.comparing(DatasetRow::getId));
+        return records;
+    }
+
+    private static DatasetSample project(DatasetSample sample, QueryOptions options) {
+        if (options.fields().size() == DatasetField.values().length) {
+            return sample;
+        }
+        return new DatasetSample(sample.seed(), sample.strategy(), sample.population(), sample.records().stream()
+                .map(record -> (DatasetRow) DatasetRecordView.of(record, options.fields()))
+                .toList());
+    }
+
+    static Sort.Direction direction(String sortOrder) {
         if (sortOrder.equalsIgnoreCase("asc")) {
-            direction = Sort.Direction.ASC;
+            return Sort.Direction.ASC;
         } else if (sortOrder.equalsIgnoreCase("desc")) {
-            direction = Sort.Direction.DESC;
+            return Sort.Direction.DESC;
+        }
+        throw new IllegalArgumentException("Invalid sort order: " + sortOrder + ". Use 'asc' or 'desc'.");
+    }
+
+    /**
+     * Computes count, sum, min, max and average of a numeric field over a
+     * dataset, in the database.
+     *
+     * @param datasetName    the name of the dataset
+     * @param aggregateField the numeric field to aggregate
+     * @return the summary statistics
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if the field is unknown or not numeric
+     */
+    public DatasetAggregate aggregate(String datasetName, String aggregateField) {
+        return aggregate(datasetName, aggregateField, QueryOptions.defaults());
+    }
+
+    /**
+     * Computes count, sum, min, max and average of a numeric field over the
+     * records of a dataset that match the where= filter, in the database.
+     *
+     * @param datasetName    the name of the dataset
+     * @param aggregateField the numeric field to aggregate
+     * @param options        the where= filter
+     * @return the summary statistics
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if the field is unknown or not numeric
+     */
+    public DatasetAggregate aggregate(String datasetName, String aggregateField, QueryOptions options) {
+        DatasetField field = numericField(aggregateField);
+        Filter filter = compile(options);
+        Optional<DatasetAggregate> aggregate = read(datasetName, datasetId -> {
+            QueryPlanner.Statistics statistics = queryPlanner.statistics(datasetId, filter == null);
+            return queryPlanner.aggregate(statistics, field, List.of(), filter != null)
+                    .strategy() == QueryPlanner.Strategy.ROLLUP
+                            ? Optional.of(DatasetRollups.total(statistics.rollups().orElseThrow()))
+                            : Optional.ofNullable(datasetQueryRepository.aggregate(datasetId, field, filter));
+        }).orElseThrow(() -> notFound(datasetName));
+        if (aggregate.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+        return aggregate.orElse(new DatasetAggregate(0, 0, null, null, null));
+    }
+
+    /**
+     * Computes count, sum, min, max and average of a numeric field for each
+     * group of a dataset, in the database.
+     *
+     * @param datasetName    the name of the dataset
+     * @param aggregateField the numeric field to aggregate
+     * @param groupByField   the field to group by
+     * @return the summary statistics by group value
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if a field is unknown or not numeric
+     */
+    public Map<String, DatasetAggregate> aggregateByGroup(String datasetName, String aggregateField,
+            String groupByField) {
+        return aggregateByGroup(datasetName, aggregateField, groupByField, QueryOptions.defaults());
+    }
+
+    /**
+     * Computes count, sum, min, max and average of a numeric field for each
+     * group of the records of a dataset that match the where= filter, in the
+     * database.
+     *
+     * @param datasetName    the name of the dataset
+     * @param aggregateField the numeric field to aggregate
+     * @param groupByField   the field to group by
+     * @param options        the where= filter
+     * @return the summary statistics by group value
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if a field is unknown or not numeric
+     */
+    public Map<String, DatasetAggregate> aggregateByGroup(String datasetName, String aggregateField,
+            String groupByField, QueryOptions options) {
+        DatasetField field = numericField(aggregateField);
+        DatasetField groupBy = DatasetField.fromName(groupByField)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported groupBy field: " + groupByField));
+        Filter filter = compile(options);
+        indexAdvisor.recordUsage(datasetName, groupBy);
+        Map<String, DatasetAggregate> groups = read(datasetName, datasetId -> {
+            QueryPlanner.Statistics statistics = queryPlanner.statistics(datasetId, filter == null);
+            return queryPlanner.aggregate(statistics, field, List.of(groupBy), filter != null)
+                    .strategy() == QueryPlanner.Strategy.ROLLUP
+                            ? DatasetRollups.byDepartment(statistics.rollups().orElseThrow())
+                            : datasetQueryRepository.aggregateByGroup(datasetId, field, groupBy, filter);
+        }).orElseThrow(() -> notFound(datasetName));
+        if (groups.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+        return groups;
+    }
+
+    /**
+     * Groups records of a dataset by several fields at once, nesting the
+     * groups of each field inside those of the previous one. The records are
+     * read and distributed in a single pass.
+     *
+     * @param datasetName   the name of the dataset
+     * @param groupByFields the fields to group by, outermost first
+     * @param options       the fields to return and the where= filter
+     * @return nested maps keyed by field value, with lists of matching records
+     *         at the innermost level
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if a groupBy field is invalid
+     */
+    public Map<String, Object> groupByFields(String datasetName, List<String> groupByFields, QueryOptions options) {
+        List<DatasetField> groupBy = groupFields(groupByFields);
+        Filter filter = compile(options);
+        groupBy.forEach(field -> indexAdvisor.recordUsage(datasetName, field));
+
+        Set<DatasetField> columns = EnumSet.copyOf(options.fields());
+        columns.addAll(groupBy);
+        List<DatasetRow> records = read(datasetName,
+                datasetId -> datasetQueryRepository.findByDatasetId(datasetId, columns, filter))
+                .orElseThrow(() -> notFound(datasetName));
+        if (records.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+
+        boolean keysRequested = options.fields().containsAll(groupBy);
+        Map<String, Object> groups = new TreeMap<>();
+        for (DatasetRow record : records) {
+            nest(groups, groupBy, record, keysRequested ? record : DatasetRecordView.of(record, options.fields()));
+        }
+        return groups;
+    }
+
+    // Adds a record to the nested groups of its keys, lists at the innermost level
+    @SuppressWarnings("unchecked")
+    static void nest(Map<String, Object> groups, List<DatasetField> groupBy, DatasetRow record, DatasetRow value) {
+        Map<String, Object> level = groups;
+        for (DatasetField field : groupBy.subList(0, groupBy.size() - 1)) {
+            level = (Map<String, Object>) level.computeIfAbsent(groupKey(field, record), key -> new TreeMap<>());
+        }
+        ((List<DatasetRow>) level.computeIfAbsent(groupKey(groupBy.get(groupBy.size() - 1), record),
+                key -> new ArrayList<>())).add(value);
+    }
+
+    /**
+     * Counts the records of a dataset per nested group, in the database. Only
+     * one row per distinct key combination is read, so memory grows with the
+     * number of groups rather than the number of records.
+     *
+     * @param datasetName   the name of the dataset
+     * @param groupByFields the fields to group by, outermost first
+     * @param subtotals     whether outer groups carry the count of their
+     *                      records as well
+     * @param options       the where= filter
+     * @return the root of the group tree, whose count is the total
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if a groupBy field is invalid
+     */
+    public GroupCount countGroups(String datasetName, List<String> groupByFields, boolean subtotals,
+            QueryOptions options) {
+        List<DatasetField> groupBy = groupFields(groupByFields);
+        Filter filter = compile(options);
+        groupBy.forEach(field -> indexAdvisor.recordUsage(datasetName, field));
+        Map<List<String>, Long> counts = read(datasetName, datasetId -> {
+            QueryPlanner.Statistics statistics = queryPlanner.statistics(datasetId, filter == null);
+            return queryPlanner.aggregate(statistics, null, groupBy, filter != null)
+                    .strategy() == QueryPlanner.Strategy.ROLLUP
+                            ? DatasetRollups.counts(statistics.rollups().orElseThrow())
+                            : datasetQueryRepository.countGroups(datasetId, groupBy, filter);
+        }).orElseThrow(() -> notFound(datasetName));
+        if (counts.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+        return countTree(counts, 0, subtotals);
+    }
+
+    // Builds the tree level for keys[depth]; rows arrive sorted by key, so the
+    // nested maps keep the database order
+    static GroupCount countTree(Map<List<String>, Long> counts, int depth, boolean subtotals) {
+        long total = counts.values().stream().mapToLong(Long::longValue).sum();
+        int levels = counts.keySet().stream().findFirst().map(List::size).orElse(depth);
+        if (depth == levels) {
+            return new GroupCount(total, null);
+        }
+        Map<String, Map<List<String>, Long>> children = new LinkedHashMap<>();
+        counts.forEach((keys, count) -> children.computeIfAbsent(keys.get(depth), key -> new LinkedHashMap<>())
+                .put(keys, count));
+        Map<String, GroupCount> groups = new LinkedHashMap<>();
+        children.forEach((key, child) -> groups.put(key, countTree(child, depth + 1, subtotals)));
+        // The root always carries the total; inner levels only when asked
+        return new GroupCount(depth == 0 || subtotals ? total : null, groups);
+    }
+
+    /**
+     * Counts the records of a dataset in buckets of a numeric field, in the
+     * database, either of equal width or between explicit boundaries. Equal
+     * width buckets run from the lowest to the highest non-empty bucket;
+     * boundary buckets are all returned, the first and last unbounded.
+     *
+     * @param datasetName  the name of the dataset
+     * @param bucketField  the numeric field to bucket
+     * @param width        the bucket width, or null when boundaries are given
+     * @param boundaries   the bucket boundaries in increasing order, or null
+     *                     when a width is given
+     * @param groupByField the field to break each bucket down by, or null
+     * @param options      the where= filter
+     * @return the buckets in value order
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if a field is unknown or not numeric
+     * @throws IllegalArgumentException if not exactly one of width and
+     *                                  boundaries is valid
+     */
+    public List<HistogramBucket> histogram(String datasetName, String bucketField, Long width, List<Long> boundaries,
+            String groupByField, QueryOptions options) {
+        DatasetField field = DatasetField.fromName(bucketField)
+                .filter(DatasetField::isNumeric)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported bucket field: " + bucketField));
+        DatasetField groupBy = groupByField == null ? null : DatasetField.fromName(groupByField)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported groupBy field: " + groupByField));
+        checkBuckets(width, boundaries);
+        Filter filter = compile(options);
+        if (groupBy != null) {
+            indexAdvisor.recordUsage(datasetName, groupBy);
+        }
+
+        List<DatasetQueryRepository.BucketCount> counts = read(datasetName, datasetId -> width != null
+                ? datasetQueryRepository.countByWidth(datasetId, field, width, groupBy, filter)
+                : datasetQueryRepository.countByBoundaries(datasetId, field, boundaries, groupBy, filter))
+                .orElseThrow(() -> notFound(datasetName));
+        if (counts.isEmpty() && filter == null) {
+            throw notFound(datasetName);
+        }
+
+        return buckets(counts, width, boundaries, groupBy != null);
+    }
+
+    /**
+     * Evaluates several queries of one dataset in a single pass over its
+     * records. The union of the columns the queries need is streamed once and
+     * every record is offered to each query, which applies its own filter, so
+     * a dashboard's N queries cost one scan instead of N.
+     *
+     * @param datasetName the name of the dataset
+     * @param queries     the queries, evaluated independently
+     * @return the result of each query by id, in request order
+     * @throws DatasetNotFoundException if no records are found for the dataset
+     * @throws InvalidFieldException    if a query names an unknown field
+     * @throws IllegalArgumentException if a query or the batch is malformed
+     */
+    public Map<String, Object> batchQuery(String datasetName, List<BatchQuery> queries) {
+        BatchEvaluator evaluator = new BatchEvaluator(queries, filterParser);
+        read(datasetName, datasetId -> {
+            forEachRecord(datasetName, datasetId, evaluator.columns(), null, evaluator);
+            return evaluator;
+        }).orElseThrow(() -> notFound(datasetName));
+        if (evaluator.scanned() == 0) {
+            throw notFound(datasetName);
+        }
+        return evaluator.results();
+    }
+
+    /**
+     * Plans a query without running it, e.g. to see whether a sort is served
+     * by an index or by a parallel scan. The query is described by the
+     * parameters of the equivalent /query call.
+     *
+     * @param datasetName the name of the dataset
+     * @param query       the groupBy, sortBy or aggregate query
+     * @return the plan the query would run with now
+     * @throws DatasetNotFoundException if the dataset does not exist
+     * @throws InvalidFieldException    if the query names an unknown field
+     * @throws IllegalArgumentException if the query has nothing to plan
+     */
+    public QueryPlanner.Plan explain(String datasetName, BatchQuery query) {
+        Filter filter = query.where() == null ? null : filterParser.parse(query.where());
+        List<DatasetField> groupBy = query.groupBy() == null
+                ? List.of()
+                : groupFields(Arrays.stream(query.groupBy().split(",")).map(String::trim).toList());
+        if (query.aggregate() != null) {
+            DatasetField field = numericField(query.aggregate());
+            if (groupBy.size() > 1) {
+                throw new IllegalArgumentException("Aggregates are grouped by one field");
+            }
+            return read(datasetName, datasetId -> queryPlanner.aggregate(
+                    queryPlanner.statistics(datasetId, filter == null), field, groupBy, filter != null))
+                    .orElseThrow(() -> notFound(datasetName));
+        }
+        if (query.sortBy() != null) {
+            DatasetField field = DatasetField.fromName(query.sortBy())
+                    .orElseThrow(() -> new InvalidFieldException("Unsupported sortBy field: " + query.sortBy()));
+            QueryOptions options = QueryOptions.parse(null, null, query.limit());
+            // The first records of each group are kept in heaps during one scan
+            return read(datasetName, datasetId -> groupBy.isEmpty()
+                    ? queryPlanner.sort(scanStatistics(datasetName, datasetId, filter), field, filter != null,
+                            options.limit())
+                    : queryPlanner.scan(scanStatistics(datasetName, datasetId, filter)))
+                    .orElseThrow(() -> notFound(datasetName));
+        }
+        if (groupBy.isEmpty()) {
+            throw new IllegalArgumentException("Only groupBy, sortBy and aggregate queries can be explained");
+        }
+        return read(datasetName, datasetId -> {
+            if (query.counts()) {
+                return queryPlanner.aggregate(queryPlanner.statistics(datasetId, filter == null), null, groupBy,
+                        filter != null);
+            }
+            QueryPlanner.Statistics statistics = scanStatistics(datasetName, datasetId, filter);
+            return groupBy.size() == 1 ? queryPlanner.group(statistics) : queryPlanner.scan(statistics);
+        }).orElseThrow(() -> notFound(datasetName));
+    }
+
+    static void checkBuckets(Long width, List<Long> boundaries) {
+        if ((width == null) == (boundaries == null)) {
+            throw new IllegalArgumentException("Specify either width or boundaries");
+        }
+        if (width != null && width < 1) {
+            throw new IllegalArgumentException("width must be positive: " + width);
+        }
+        if (boundaries != null) {
+            for (int i = 1; i < boundaries.size(); i++) {
+                if (boundaries.get(i) <= boundaries.get(i - 1)) {
+                    throw new IllegalArgumentException("boundaries must be increasing: " + boundaries);
+                }
+            }
+            if (boundaries.isEmpty()) {
+                throw new IllegalArgumentException("boundaries must not be empty");
+            }
+        }
+    }
+
+    // Builds the buckets from counts in bucket order, keyed by lower bound
+    // for widths and by index for boundaries
+    static List<HistogramBucket> buckets(List<DatasetQueryRepository.BucketCount> counts, Long width,
+            List<Long> boundaries, boolean grouped) {
+        // Count rows arrive in bucket order; sum them per bucket key
+        Map<Long, Long> totals = new LinkedHashMap<>();
+        Map<Long, Map<String, Long>> groups = new LinkedHashMap<>();
+        for (DatasetQueryRepository.BucketCount count : counts) {
+            totals.merge(count.bucket(), count.count(), Long::sum);
+            if (grouped) {
+                groups.computeIfAbsent(count.bucket(), key -> new LinkedHashMap<>())
+                        .put(count.group(), count.count());
+            }
+        }
+        List<Long> keys = new ArrayList<>();
+        if (width != null) {
+            if (!totals.isEmpty()) {
+                List<Long> present = List.copyOf(totals.keySet());
+                for (long key = present.get(0); key <= present.get(present.size() - 1); key += width) {
+                    keys.add(key);
+                }
+            }
         } else {
-            throw new IllegalArgumentException("Invalid sort order: " + sortOrder + ". Use 'asc' or 'desc'.");
+            for (long index = 0; index <= boundaries.size(); index++) {
+                keys.add(index);
+            }
         }
 
-        Sort sort = Sort.by(direction, sortByField);
-        List<DatasetRecord> records = datasetRepository.findByDatasetName(datasetName, sort);
-        if (records.isEmpty()) {
-            throw new DatasetNotFoundException("No records found for dataset: " + datasetName);
+        List<HistogramBucket> buckets = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            Long lower = width != null ? Long.valueOf(key) : key == 0 ? null : boundaries.get((int) key - 1);
+            Long upper = width != null ? Long.valueOf(key + width)
+                    : key == boundaries.size() ? null : boundaries.get((int) key);
+            buckets.add(new HistogramBucket(lower, upper, totals.getOrDefault(key, 0L),
+                    grouped ? groups.getOrDefault(key, Map.of()) : null));
+        }
+        return buckets;
+    }
+
+    static List<DatasetField> groupFields(List<String> groupByFields) {
+        List<DatasetField> groupBy = new ArrayList<>(groupByFields.size());
+        for (String name : groupByFields) {
+            DatasetField field = DatasetField.fromName(name)
+                    .orElseThrow(() -> new InvalidFieldException("Unsupported groupBy field: " + name));
+            if (groupBy.contains(field)) {
+                throw new IllegalArgumentException("Duplicate groupBy field: " + name);
+            }
+            groupBy.add(field);
+        }
+        if (groupBy.isEmpty()) {
+            throw new IllegalArgumentException("At least one groupBy field is required");
+        }
+        return groupBy;
+    }
+
+    static String groupKey(DatasetField field, DatasetRow record) {
+        Object value = field.valueOf(record);
+        return value != null ? value.toString() : "null";
+    }
+
+    // Runs a read-only query on the dataset's shard; empty if the dataset does not exist
+    private <T> Optional<T> read(String datasetName, IntFunction<T> query) {
+        return shardRouter.onDataset(datasetName,
+                () -> readOnlyTransaction.execute(status -> datasetKeyRegistry.findId(datasetName)
+                        .map(datasetId -> {
+                            readVersion(datasetName);
+                            return query.apply(datasetId);
+                        })));
+    }
+
+    // Reads the version of a query being tagged in its own transaction, before
+    // the data, so that replica lag never tags older rows with a newer version
+    private void readVersion(String datasetName) {
+        VersionRead read = versionRead.get();
+        if (read != null && read.version == null && read.datasetName.equals(datasetName)) {
+            long generation = versionGeneration.get();
+            read.version = datasetKeyRegistry.version(datasetName);
+            remember(datasetName, read.version, generation);
+        }
+    }
+
+    // Caches a version unless a local write may have changed it since it was read
+    private void remember(String datasetName, String version, long generation) {
+        KnownVersion known = new KnownVersion(version, System.nanoTime());
+        versions.put(datasetName, known);
+        if (versionGeneration.get() != generation) {
+            versions.remove(datasetName, known);
+        }
+    }
+
+    // Drops the versions of a dataset, or of all datasets if null
+    private void forgetVersions(String datasetName) {
+        versionGeneration.incrementAndGet();
+        if (datasetName == null) {
+            versions.clear();
+        } else {
+            versions.remove(datasetName);
+        }
+    }
+
+    // The version of a dataset and when it was read, by System.nanoTime()
+    private record KnownVersion(String version, long readAt) {
+    }
+
+    // The version read by the query being tagged, set by its first read
+    private static final class VersionRead {
+
+        private final String datasetName;
+
+        private String version;
+
+        VersionRead(String datasetName) {
+            this.datasetName = datasetName;
+        }
+    }
+
+    // The result of a query read along with the plan it ran with
+    private record Planned<T>(QueryPlanner.Plan plan, T result) {
+    }
+
+    // An inserted record and the dataset it belonged to before, if any
+    private record Written(DatasetRecord record, Integer previousDatasetId) {
+    }
+
+    // The statistics of a query reading the records, with the snapshot it
+    // would read when it is current and every record is read; must run in
+    // the query's transaction
+    private QueryPlanner.Statistics scanStatistics(String datasetName, int datasetId, Filter filter) {
+        return queryPlanner.statistics(datasetId, false).withSnapshot(snapshot(datasetName, datasetId, filter));
+    }
+
+    // Reads the records of a dataset in id order, from the snapshot the plan
+    // was made with if any; must run in the query's transaction
+    private List<DatasetRow> scan(int datasetId, QueryPlanner.Statistics statistics, Set<DatasetField> columns,
+            Filter filter) {
+        return statistics.snapshot()
+                .map(snapshot -> snapshot.records(columns))
+                .orElseGet(() -> datasetQueryRepository.findByDatasetId(datasetId, columns, filter));
+    }
+
+    private void forEachRecord(String datasetName, int datasetId, Set<DatasetField> columns, Filter filter,
+            Consumer<DatasetRow> consumer) {
+        Optional<SnapshotFile> snapshot = snapshot(datasetName, datasetId, filter);
+        if (snapshot.isPresent()) {
+            snapshot.get().records(columns).forEach(consumer);
+        } else {
+            datasetQueryRepository.forEachRecord(datasetId, columns, filter, consumer);
+        }
+    }
+
+    private Optional<SnapshotFile> snapshot(String datasetName, int datasetId, Filter filter) {
+        return filter == null ? datasetSnapshots.find(datasetName, datasetId) : Optional.empty();
+    }
+
+    private Filter compile(QueryOptions options) {
+        return options.where() == null ? null : filterParser.parse(options.where());
+    }
+
+    private static DatasetNotFoundException notFound(String datasetName) {
+        return new DatasetNotFoundException("No records found for dataset: " + datasetName);
+    }
+
+    static DatasetField numericField(String aggregateField) {
+        return DatasetField.fromName(aggregateField)
+                .filter(DatasetField::isNumeric)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported aggregate field: " + aggregateField));
+    }
+
+    /**
+     * Drops a dataset and all of its records.
+     *
+     * @param datasetName the name of the dataset
+     * @throws DatasetNotFoundException if the dataset does not exist
+     */
+    public void dropDataset(String datasetName) {
+        shardRouter.onDataset(datasetName, () -> {
+            int datasetId = datasetKeyRegistry.findId(datasetName)
+                    .orElseThrow(() -> notFound(datasetName));
+            datasetPartitioning.dropDataset(datasetId);
+            writeTransaction.executeWithoutResult(status -> datasetRollups.drop(datasetId));
+            queryPlanner.forget(datasetId);
+            datasetSnapshots.invalidate(datasetId);
+            distinctCounter.drop(datasetName, datasetId);
+            quantileEstimator.drop(datasetName);
+            recordLookup.drop(datasetName);
+            datasetKeyRegistry.delete(datasetName);
+            forgetVersions(datasetName);
+            return null;
+        });
+    }
+
+    /**
+     * Computes the rollups of a dataset again from its records, e.g. to
+     * backfill a dataset created before rollups existed. Inserts into the
+     * dataset wait until it is done.
+     *
+     * @param datasetName the name of the dataset
+     * @return the number of departments rolled up
+     * @throws DatasetNotFoundException if the dataset does not exist
+     */
+    public int rebuildRollups(String datasetName) {
+        int departments = shardRouter.onDataset(datasetName, () -> writeTransaction.execute(
+                status -> datasetKeyRegistry.findId(datasetName).map(datasetRollups::rebuild).orElse(-1)));
+        if (departments < 0) {
+            throw notFound(datasetName);
+        }
+        return departments;
+    }
+
+    /**
+     * Computes the rollups of every dataset on every shard again, one
+     * dataset per transaction.
+     *
+     * @return the number of datasets rolled up
+     */
+    public int rebuildRollups() {
+        return shardRouter.onAllShards(() -> {
+            int datasets = 0;
+            for (int datasetId : datasetKeyRegistry.findAllIds()) {
+                if (writeTransaction.execute(status -> datasetRollups.rebuild(datasetId)) >= 0) {
+                    datasets++;
+                }
+            }
+            return datasets;
+        }).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Pins a dataset to a shard for rebalancing, also after restarts. Rows
+     * already written are not moved; copy them to the target shard before
+     * pinning.
+     *
+     * @param datasetName the name of the dataset
+     * @param shard       the shard that holds the dataset from now on
+     * @throws IllegalArgumentException if the shard is unknown
+     */
+    public void pinDataset(String datasetName, String shard) {
+        shardPins.pin(datasetName, shard);
+        datasetKeyRegistry.evict(datasetName);
+    }
+
+    /**
+     * Removes the pin of a dataset, placing it by consistent hashing again,
+     * also after restarts.
+     *
+     * @param datasetName the name of the dataset
+     */
+    public void unpinDataset(String datasetName) {
+        shardPins.unpin(datasetName);
+        datasetKeyRegistry.evict(datasetName);
+    }
+
+    /**
+     * Returns the current version of a dataset, which changes whenever a
+     * record is written or the dataset is dropped, e.g. to answer conditional
+     * requests. It is built from the dataset's persisted state, so every
+     * instance hands out the same version, also after restarts. Versions are
+     * kept in memory: writes through this instance replace them at once,
+     * writes through other instances once they are older than the configured
+     * time to live.
+     *
+     * @param datasetName the name of the dataset
+     * @return the version, "0" if the dataset does not exist
+     */
+    public String version(String datasetName) {
+        KnownVersion known = versions.get(datasetName);
+        if (known != null && System.nanoTime() - known.readAt() < TimeUnit.MILLISECONDS.toNanos(versionTtlMillis)) {
+            return known.version();
+        }
+        long generation = versionGeneration.get();
+        String version = shardRouter.onDataset(datasetName,
+                () -> readOnlyTransaction.execute(status -> datasetKeyRegistry.version(datasetName)));
+        remember(datasetName, version, generation);
+        return version;
+    }
+
+    /**
+     * Runs a query on a dataset and returns its result along with the version
+     * of the dataset it read, e.g. to tag the response. The version is read in
+     * the same transaction as the data, so it never names rows the query did
+     * not see, whichever replica served it.
+     *
+     * @param datasetName the name of the dataset the query reads
+     * @param query       the query
+     * @return the result and the version it was read at
+     */
+    public <T> Versioned<T> versioned(String datasetName, Supplier<T> query) {
+        VersionRead read = new VersionRead(datasetName);
+        versionRead.set(read);
+        try {
+            T result = query.get();
+            return new Versioned<>(read.version, result);
+        } finally {
+            versionRead.remove();
         }
-        return records;
     }
 
     /**
@@ -122,6 +1390,23 @@ public class DatasetService {
      * @return true if a record with the given ID exists, false otherwise
      */
     public boolean existsById(Long id) {
-        return datasetRepository.existsById(id);
+        // The filter only knows the ids this instance saw, so it cannot
+        // answer no; ids it missed are added once found
+        boolean exists = existsOnAnyShard(id);
+        if (exists && !idFilter.mayContain(id)) {
+            idFilter.add(id);
+        }
+        return exists;
+    }
+
+    // Duplicate checks must see the latest writes, so they read the primary
+    // of every shard, since the id may have been used in any dataset
+    private boolean existsOnAnyShard(Long id) {
+        return shardRouter.onAllShards(() -> writeTransaction.execute(status -> datasetRepository.existsById(id)))
+                .contains(Boolean.TRUE);
+    }
+
+    private static IllegalArgumentException duplicate(Throwable cause) {
+        return new IllegalArgumentException(DUPLICATE_ID, cause);
     }
 }
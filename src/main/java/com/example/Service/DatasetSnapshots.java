@@ -0,0 +1,305 @@
+package com.example.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+
+import com.example.Config.ShardContext;
+import com.example.Config.ShardRouter;
+import com.example.Entity.DatasetField;
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetQueryRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps a snapshot file of each large dataset, so full scans read the
+ * records from a memory mapping instead of the database, also right after a
+ * restart. A snapshot is used while the dataset's change sequence number is
+ * the one it was written at; once a write makes it stale, scans go to the
+ * database again and the snapshot is rebuilt on a background thread after
+ * the dataset has gone without writes for a quiet period, so a dataset
+ * taking a steady stream of inserts is not rewritten after each one.
+ * Snapshots are disabled unless dataset.snapshots.directory is set.
+ */
+@Component
+public class DatasetSnapshots {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetSnapshots.class);
+
+    private static final Set<DatasetField> STORED_FIELDS = EnumSet.of(DatasetField.ID, DatasetField.NAME,
+            DatasetField.AGE, DatasetField.DEPARTMENT);
+
+    private final DatasetQueryRepository datasetQueryRepository;
+
+    private final DatasetKeyRegistry datasetKeyRegistry;
+
+    private final QueryPlanner queryPlanner;
+
+    private final ShardRouter shardRouter;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final Path directory;
+
+    private final long minRecords;
+
+    private final long quietPeriodMillis;
+
+    // "shard-datasetId" -> mapped snapshot, empty once the file was found
+    // missing or unreadable; dataset keys are only unique per shard
+    private final Map<String, Optional<SnapshotFile>> snapshots = new ConcurrentHashMap<>();
+
+    // Bumped when a dataset loses records without a change sequence number,
+    // so a rebuild that was reading it meanwhile is discarded
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final Set<String> rebuilding = ConcurrentHashMap.newKeySet();
+
+    // "shard-datasetId" -> change sequence number a stale snapshot was first
+    // found behind, and when
+    private final Map<String, StaleSince> staleSince = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for DatasetSnapshots.
+     *
+     * @param datasetQueryRepository the queries reading the records
+     * @param datasetKeyRegistry     the cache resolving dataset names to keys
+     * @param queryPlanner           the planner, whose row counts decide which
+     *                               datasets get a snapshot
+     * @param shardRouter            the shard map placing datasets on databases
+     * @param transactionManager     the transaction manager for rebuilds
+     * @param directory              the directory of the snapshot files, empty
+     *                               to disable snapshots
+     * @param minRecords             the smallest dataset rebuilt in the
+     *                               background
+     * @param quietPeriodMillis      how long a dataset must go without writes
+     *                               before its snapshot is rebuilt in the
+     *                               background
+     */
+    public DatasetSnapshots(DatasetQueryRepository datasetQueryRepository, DatasetKeyRegistry datasetKeyRegistry,
+            QueryPlanner queryPlanner, ShardRouter shardRouter, PlatformTransactionManager transactionManager,
+            @Value("${dataset.snapshots.directory:}") String directory,
+            @Value("${dataset.snapshots.min-records:10000}") long minRecords,
+            @Value("${dataset.snapshots.quiet-period:60000}") long quietPeriodMillis) {
+        this.datasetQueryRepository = datasetQueryRepository;
+        this.datasetKeyRegistry = datasetKeyRegistry;
+        this.queryPlanner = queryPlanner;
+        this.shardRouter = shardRouter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.directory = directory.isBlank() ? null : Path.of(directory);
+        this.minRecords = minRecords;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dataset-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.directory != null) {
+            try {
+                Files.createDirectories(this.directory);
+                // Left behind by rebuilds interrupted by a shutdown
+                try (DirectoryStream<Path> temporary = Files.newDirectoryStream(this.directory, "*.tmp")) {
+                    for (Path path : temporary) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot use the snapshot directory " + directory, ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot of a dataset if it holds exactly the records the
+     * caller's transaction sees, otherwise schedules a rebuild for large
+     * datasets that have had no write for the quiet period. Must run on the
+     * dataset's shard, in the transaction of the query.
+     *
+     * @param datasetName the name of the dataset
+     * @param datasetId   the integer key of the dataset
+     * @return the current snapshot, or empty to read the database
+     */
+    public Optional<SnapshotFile> find(String datasetName, int datasetId) {
+        if (directory == null) {
+            return Optional.empty();
+        }
+        String key = key(datasetId);
+        Optional<SnapshotFile> snapshot = snapshots.computeIfAbsent(key, this::load)
+                .filter(found -> found.getDatasetId() == datasetId && found.getDatasetName().equals(datasetName));
+        long changeSeq = datasetKeyRegistry.lastChangeSeq(datasetId);
+        if (snapshot.isPresent() && snapshot.get().getChangeSeq() == changeSeq) {
+            return snapshot;
+        }
+        if (queryPlanner.statistics(datasetId, false).rows() >= minRecords
+                && quiet(key, changeSeq, System.currentTimeMillis()) && rebuilding.add(key)) {
+            String shard = ShardContext.current();
+            try {
+                executor.execute(() -> {
+                    try {
+                        ShardContext.call(shard, () -> rebuild(datasetName, datasetId));
+                    } catch (RuntimeException ex) {
+                        logger.warn("Could not rebuild the snapshot of dataset {}", datasetName, ex);
+                    } finally {
+                        rebuilding.remove(key);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // Shutting down
+                rebuilding.remove(key);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Writes the snapshot of a dataset again from its records, whatever its
+     * size.
+     *
+     * @param datasetName the name of the dataset
+     * @return the number of records written, or -1 if the dataset does not
+     *         exist or changed while it was read
+     * @throws IllegalStateException if snapshots are disabled
+     */
+    public int rebuild(String datasetName) {
+        if (directory == null) {
+            throw new IllegalStateException("Snapshots are disabled; set dataset.snapshots.directory");
+        }
+        return shardRouter.onDataset(datasetName, () -> datasetKeyRegistry.findId(datasetName)
+                .map(datasetId -> rebuild(datasetName, datasetId))
+                .orElse(-1));
+    }
+
+    /**
+     * Discards the snapshot of a dataset, e.g. after one of its records moved
+     * to another dataset or the dataset was dropped. Must run on the
+     * dataset's shard.
+     *
+     * @param datasetId the integer key of the dataset
+     */
+    public synchronized void invalidate(int datasetId) {
+        if (directory == null) {
+            return;
+        }
+        String key = key(datasetId);
+        generations.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+        snapshots.remove(key);
+        staleSince.remove(key);
+        try {
+            Files.deleteIfExists(path(key));
+        } catch (IOException ex) {
+            // The mapping only serves while the change sequence number matches
+            logger.warn("Could not delete the snapshot {}", path(key), ex);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // Reads the records and the change sequence number in one transaction;
+    // the dataset's sequence number is bumped by every insert in the insert's
+    // transaction, so an unchanged number means no insert committed meanwhile
+    private int rebuild(String datasetName, int datasetId) {
+        String key = key(datasetId);
+        long generation = generations.computeIfAbsent(key, k -> new AtomicLong()).get();
+        Path temporary;
+        try {
+            temporary = Files.createTempFile(directory, key, ".tmp");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        try {
+            Integer written = readOnlyTransaction.execute(status -> {
+                long changeSeq = datasetKeyRegistry.lastChangeSeq(datasetId);
+                try (SnapshotFile.Writer writer = SnapshotFile.create(temporary, datasetName, datasetId,
+                        changeSeq)) {
+                    datasetQueryRepository.forEachRecord(datasetId, STORED_FIELDS, null, writer);
+                    int records = writer.finish();
+                    return changeSeq == datasetKeyRegistry.lastChangeSeq(datasetId) ? records : -1;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            if (written < 0) {
+                return -1;
+            }
+            synchronized (this) {
+                if (generations.get(key).get() != generation) {
+                    return -1;
+                }
+                Path path = path(key);
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                snapshots.put(key, Optional.of(SnapshotFile.open(path)));
+                staleSince.remove(key);
+            }
+            logger.debug("Wrote the snapshot of dataset {} with {} records", datasetName, written);
+            return written;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ex) {
+                logger.warn("Could not delete {}", temporary, ex);
+            }
+        }
+    }
+
+    // Whether a stale snapshot has been behind the same change sequence
+    // number for the quiet period; a write seen meanwhile starts it again.
+    // The period is measured from the first read finding the snapshot stale
+    boolean quiet(String key, long changeSeq, long now) {
+        StaleSince stale = staleSince.compute(key,
+                (k, seen) -> seen != null && seen.changeSeq() == changeSeq ? seen : new StaleSince(changeSeq, now));
+        return now - stale.since() >= quietPeriodMillis;
+    }
+
+    private Optional<SnapshotFile> load(String key) {
+        Path path = path(key);
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(SnapshotFile.open(path));
+        } catch (IOException ex) {
+            logger.warn("Ignoring the unreadable snapshot {}", path, ex);
+            return Optional.empty();
+        }
+    }
+
+    private Path path(String key) {
+        return directory.resolve(key + ".snapshot");
+    }
+
+    private static String key(int datasetId) {
+        return Objects.requireNonNullElse(ShardContext.current(), ShardRouter.DEFAULT_SHARD) + "-" + datasetId;
+    }
+
+    private record StaleSince(long changeSeq, long since) {
+    }
+}
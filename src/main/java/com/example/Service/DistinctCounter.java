@@ -0,0 +1,219 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.Config.ShardRouter;
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRow;
+import com.example.Entity.DatasetSketch;
+import com.example.Entity.DistinctCount;
+import com.example.Exception.DatasetNotFoundException;
+import com.example.Exception.InvalidFieldException;
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetQueryRepository;
+import com.example.Repository.DatasetSketchRepository;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains a HyperLogLog sketch per (dataset, field) for approximate
+ * distinct counts without scanning the records.
+ * Sketches are updated in memory on every insert and written to the
+ * dataset_sketches table of the dataset's shard in the background. A
+ * dataset's sketches are loaded on first use, or built with one scan when the
+ * dataset predates them.
+ */
+@Component
+public class DistinctCounter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistinctCounter.class);
+
+    // The dataset name is the same on every record, so it is not sketched
+    static final Set<DatasetField> FIELDS = EnumSet.complementOf(EnumSet.of(DatasetField.DATASET_NAME));
+
+    private final DatasetSketchRepository sketchRepository;
+
+    private final DatasetQueryRepository datasetQueryRepository;
+
+    private final DatasetKeyRegistry datasetKeyRegistry;
+
+    private final ShardRouter shardRouter;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final TransactionTemplate writeTransaction;
+
+    // dataset name -> field -> sketch; the inner maps are not modified once published
+    private final Map<String, Map<DatasetField, HyperLogLog>> sketches = new ConcurrentHashMap<>();
+
+    // datasets whose sketches changed since they were last saved
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor for DistinctCounter.
+     *
+     * @param sketchRepository       the repository of persisted sketches
+     * @param datasetQueryRepository the queries used to build missing sketches
+     * @param datasetKeyRegistry     the cache resolving dataset names to keys
+     * @param shardRouter            the shard map placing datasets on databases
+     * @param transactionManager     the transaction manager for loads and saves
+     */
+    public DistinctCounter(DatasetSketchRepository sketchRepository, DatasetQueryRepository datasetQueryRepository,
+            DatasetKeyRegistry datasetKeyRegistry, ShardRouter shardRouter,
+            PlatformTransactionManager transactionManager) {
+        this.sketchRepository = sketchRepository;
+        this.datasetQueryRepository = datasetQueryRepository;
+        this.datasetKeyRegistry = datasetKeyRegistry;
+        this.shardRouter = shardRouter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Adds the values of an inserted record to the sketches of its dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @param record      the inserted record
+     */
+    public void record(String datasetName, DatasetRow record) {
+        Map<DatasetField, HyperLogLog> fields = sketchesOf(datasetName)
+                .orElseThrow(() -> notFound(datasetName));
+        if (add(fields, record)) {
+            dirty.add(datasetName);
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values of a field over the union of one
+     * or more datasets, by merging their sketches.
+     *
+     * @param datasetNames the names of the datasets
+     * @param fieldName    the API name of the field
+     * @return the estimate and its error bound
+     * @throws DatasetNotFoundException if a dataset does not exist
+     * @throws InvalidFieldException    if the field is unknown or not sketched
+     */
+    public DistinctCount estimate(List<String> datasetNames, String fieldName) {
+        DatasetField field = DatasetField.fromName(fieldName)
+                .filter(FIELDS::contains)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported distinct field: " + fieldName));
+        HyperLogLog union = new HyperLogLog();
+        for (String datasetName : datasetNames) {
+            union.merge(sketchesOf(datasetName).orElseThrow(() -> notFound(datasetName)).get(field));
+        }
+        return new DistinctCount(List.copyOf(datasetNames), field.getFieldName(), union.estimate(),
+                HyperLogLog.RELATIVE_STANDARD_ERROR);
+    }
+
+    /**
+     * Forgets the sketches of a dropped dataset and deletes them from its
+     * shard. Must run on the dataset's shard.
+     *
+     * @param datasetName the name of the dataset
+     * @param datasetId   the integer key the dataset had
+     */
+    public void drop(String datasetName, int datasetId) {
+        sketches.remove(datasetName);
+        dirty.remove(datasetName);
+        writeTransaction.executeWithoutResult(status -> sketchRepository.deleteByDatasetId(datasetId));
+    }
+
+    /**
+     * Writes the changed sketches to their shards.
+     */
+    @Scheduled(fixedDelayString = "${dataset.sketch.flush-interval:5000}")
+    public void flush() {
+        for (String datasetName : new ArrayList<>(dirty)) {
+            // Cleared before the snapshot, so concurrent updates mark it again
+            dirty.remove(datasetName);
+            Map<DatasetField, HyperLogLog> fields = sketches.get(datasetName);
+            if (fields == null) {
+                continue;
+            }
+            shardRouter.onDataset(datasetName, () -> writeTransaction.execute(status -> {
+                datasetKeyRegistry.findId(datasetName).ifPresent(datasetId -> fields.forEach((field, sketch) -> {
+                    sketchRepository.save(new DatasetSketch(datasetId, field.getFieldName(), sketch.toBytes()));
+                }));
+                return null;
+            }));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            logger.warn("Could not save distinct count sketches on shutdown", ex);
+        }
+    }
+
+    private Optional<Map<DatasetField, HyperLogLog>> sketchesOf(String datasetName) {
+        Map<DatasetField, HyperLogLog> cached = sketches.get(datasetName);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Map<DatasetField, HyperLogLog>> loaded = shardRouter.onDataset(datasetName,
+                () -> readOnlyTransaction.execute(status -> datasetKeyRegistry.findId(datasetName)
+                        .map(datasetId -> load(datasetName, datasetId))));
+        // Another thread may have loaded it meanwhile; adding values is
+        // idempotent, so merging both copies loses nothing
+        return loaded.map(fields -> {
+            Map<DatasetField, HyperLogLog> existing = sketches.putIfAbsent(datasetName, fields);
+            if (existing == null) {
+                return fields;
+            }
+            existing.forEach((field, sketch) -> sketch.merge(fields.get(field)));
+            return existing;
+        });
+    }
+
+    private Map<DatasetField, HyperLogLog> load(String datasetName, int datasetId) {
+        Map<DatasetField, HyperLogLog> fields = new EnumMap<>(DatasetField.class);
+        for (DatasetSketch sketch : sketchRepository.findByDatasetId(datasetId)) {
+            DatasetField.fromName(sketch.getFieldName())
+                    .filter(FIELDS::contains)
+                    .ifPresent(field -> fields.put(field, HyperLogLog.fromBytes(sketch.getRegisters())));
+        }
+        if (fields.keySet().containsAll(FIELDS)) {
+            return fields;
+        }
+
+        // No sketch saved yet: build them from the existing records
+        FIELDS.forEach(field -> fields.put(field, new HyperLogLog()));
+        datasetQueryRepository.forEachRecord(datasetId, FIELDS, null, record -> add(fields, record));
+        dirty.add(datasetName);
+        logger.info("Built distinct count sketches of dataset {}", datasetName);
+        return fields;
+    }
+
+    private static boolean add(Map<DatasetField, HyperLogLog> fields, DatasetRow record) {
+        boolean changed = false;
+        for (Map.Entry<DatasetField, HyperLogLog> entry : fields.entrySet()) {
+            Object value = entry.getKey().valueOf(record);
+            if (value != null) {
+                changed |= entry.getValue().add(value.toString());
+            }
+        }
+        return changed;
+    }
+
+    private static DatasetNotFoundException notFound(String datasetName) {
+        return new DatasetNotFoundException("No records found for dataset: " + datasetName);
+    }
+}
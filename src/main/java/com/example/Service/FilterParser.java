@@ -0,0 +1,230 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.Entity.DatasetField;
+import com.example.Exception.InvalidFieldException;
+import com.example.Repository.Filter;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Parses where= expressions such as
+ * {@code age>40 and (department=Engineering or department='Human Resources')}
+ * into Filter plans, validating fields against DatasetField.
+ * Plans are cached by expression string, so repeated queries skip parsing.
+ * Parentheses nest at most MAX_DEPTH deep, so a hostile expression is
+ * rejected as malformed instead of exhausting the stack.
+ */
+@Component
+public class FilterParser {
+
+    static final int MAX_DEPTH = 32;
+
+    private final Map<String, Filter> cache;
+
+    /**
+     * Constructor for FilterParser.
+     *
+     * @param cacheSize number of parsed expressions kept, least recently used
+     *                  first out
+     */
+    public FilterParser(@Value("${dataset.filter.cache-size:1024}") int cacheSize) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Filter> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Returns the plan of an expression, parsing it on first use.
+     *
+     * @param expression the where= expression
+     * @return the parsed filter
+     * @throws InvalidFieldException    if the expression names an unknown field
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    public Filter parse(String expression) {
+        Filter cached = cache.get(expression);
+        if (cached != null) {
+            return cached;
+        }
+        Filter filter = new Parser(expression).parse();
+        cache.put(expression, filter);
+        return filter;
+    }
+
+    /**
+     * Recursive descent parser; "and" binds tighter than "or".
+     */
+    private static final class Parser {
+
+        private final String input;
+
+        private int position;
+
+        private int depth;
+
+        Parser(String input) {
+            this.input = input;
+        }
+
+        Filter parse() {
+            Filter filter = orExpression();
+            skipWhitespace();
+            if (position < input.length()) {
+                throw error("unexpected '" + input.substring(position) + "'");
+            }
+            return filter;
+        }
+
+        private Filter orExpression() {
+            List<Filter> operands = new ArrayList<>();
+            operands.add(andExpression());
+            while (keyword("or")) {
+                operands.add(andExpression());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Filter.Or(List.copyOf(operands));
+        }
+
+        private Filter andExpression() {
+            List<Filter> operands = new ArrayList<>();
+            operands.add(primary());
+            while (keyword("and")) {
+                operands.add(primary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Filter.And(List.copyOf(operands));
+        }
+
+        private Filter primary() {
+            skipWhitespace();
+            if (peek() == '(') {
+                if (++depth > MAX_DEPTH) {
+                    throw error("parentheses nested deeper than " + MAX_DEPTH);
+                }
+                position++;
+                Filter filter = orExpression();
+                depth--;
+                skipWhitespace();
+                if (peek() != ')') {
+                    throw error("missing ')'");
+                }
+                position++;
+                return filter;
+            }
+            return comparison();
+        }
+
+        private Filter comparison() {
+            String name = word();
+            if (name.isEmpty()) {
+                throw error("field name expected");
+            }
+            DatasetField field = DatasetField.fromName(name)
+                    .orElseThrow(() -> new InvalidFieldException("Unsupported where field: " + name));
+            Filter.Operator operator = operator();
+            String literal = literal();
+            Object value;
+            if (field.isNumeric()) {
+                try {
+                    value = Long.parseLong(literal);
+                } catch (NumberFormatException ex) {
+                    throw error("'" + literal + "' is not a number for field " + name);
+                }
+            } else {
+                value = literal;
+            }
+            return new Filter.Comparison(field, operator, value);
+        }
+
+        private Filter.Operator operator() {
+            skipWhitespace();
+            String rest = input.substring(position);
+            for (String symbol : List.of("<=", ">=", "!=", "<>", "=", "<", ">")) {
+                if (rest.startsWith(symbol)) {
+                    position += symbol.length();
+                    return switch (symbol) {
+                        case "<=" -> Filter.Operator.LE;
+                        case ">=" -> Filter.Operator.GE;
+                        case "!=", "<>" -> Filter.Operator.NE;
+                        case "=" -> Filter.Operator.EQ;
+                        case "<" -> Filter.Operator.LT;
+                        default -> Filter.Operator.GT;
+                    };
+                }
+            }
+            throw error("comparison operator expected");
+        }
+
+        private String literal() {
+            skipWhitespace();
+            if (peek() != '\'') {
+                String word = word();
+                if (word.isEmpty()) {
+                    throw error("value expected");
+                }
+                return word;
+            }
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (position < input.length()) {
+                char c = input.charAt(position++);
+                if (c != '\'') {
+                    value.append(c);
+                } else if (peek() == '\'') {
+                    // '' is an escaped quote
+                    value.append('\'');
+                    position++;
+                } else {
+                    return value.toString();
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private String word() {
+            skipWhitespace();
+            int start = position;
+            while (position < input.length()) {
+                char c = input.charAt(position);
+                if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                    break;
+                }
+                position++;
+            }
+            return input.substring(start, position);
+        }
+
+        private boolean keyword(String keyword) {
+            skipWhitespace();
+            int end = position + keyword.length();
+            if (end < input.length() && input.regionMatches(true, position, keyword, 0, keyword.length())
+                    && !Character.isLetterOrDigit(input.charAt(end))) {
+                position = end;
+                return true;
+            }
+            return false;
+        }
+
+        private char peek() {
+            return position < input.length() ? input.charAt(position) : '\0';
+        }
+
+        private void skipWhitespace() {
+            while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String reason) {
+            return new IllegalArgumentException("Invalid where expression: " + reason);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.Service;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values added to it.
+ * Uses 2^12 one-byte registers (4 KiB) and a 64-bit hash, so estimates have a
+ * relative standard error of 1.04 / sqrt(4096), about 1.6%, at any
+ * cardinality. Small cardinalities fall back to linear counting, which is
+ * near exact.
+ * Sketches are mergeable: the merge of two sketches equals the sketch of the
+ * union of their values, so counts over several datasets need no rescan.
+ */
+public final class HyperLogLog {
+
+    public static final int PRECISION = 12;
+
+    public static final int REGISTERS = 1 << PRECISION;
+
+    public static final double RELATIVE_STANDARD_ERROR = 1.04 / Math.sqrt(REGISTERS);
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(new byte[REGISTERS]);
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Restores a sketch from its serialized registers.
+     *
+     * @param bytes the registers, as returned by {@link #toBytes()}
+     * @return the sketch
+     * @throws IllegalArgumentException if the length does not match
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length != REGISTERS) {
+            throw new IllegalArgumentException("Expected " + REGISTERS + " registers, got " + bytes.length);
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    /**
+     * Adds a value to the sketch. Adding a value again has no effect.
+     *
+     * @param value the value
+     * @return true if the sketch changed
+     */
+    public synchronized boolean add(String value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        // Position of the first set bit after the index bits, capped by a sentinel
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Merges another sketch into this one.
+     *
+     * @param other the sketch to merge
+     * @return this sketch
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        byte[] theirs = other.toBytes();
+        synchronized (this) {
+            for (int i = 0; i < REGISTERS; i++) {
+                if (theirs[i] > registers[i]) {
+                    registers[i] = theirs[i];
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Estimates the number of distinct values added.
+     *
+     * @return the estimated cardinality
+     */
+    public synchronized long estimate() {
+        double sum = 0;
+        int empty = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                empty++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && empty > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Serializes the registers for storage.
+     *
+     * @return a copy of the registers
+     */
+    public synchronized byte[] toBytes() {
+        return registers.clone();
+    }
+
+    // FNV-1a over the characters, finished with the MurmurHash3 fmix64 mixer so
+    // every input bit affects the index and rank bits
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
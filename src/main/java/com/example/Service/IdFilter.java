@@ -0,0 +1,158 @@
+package com.example.Service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.Config.ShardRouter;
+import com.example.Entity.IdFilterStats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Scalable Bloom filter over the ids of every record on every shard, so the
+ * duplicate check of an insert only queries the databases for ids that may
+ * already exist. Built from the primary key index at startup (or on first
+ * use) and updated on every insert through DatasetService; ids of dropped
+ * datasets stay in the filter and only cost a database check.
+ */
+@Component
+public class IdFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdFilter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final long initialCapacity;
+
+    private final double falsePositiveRate;
+
+    private final LongAdder checks = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder falsePositives = new LongAdder();
+
+    private volatile ScalableBloomFilter filter;
+
+    /**
+     * Constructor for IdFilter.
+     *
+     * @param jdbcTemplate      the template used to scan the record ids
+     * @param shardRouter       the shard map, used to scan every shard
+     * @param initialCapacity   the smallest number of ids the first stage holds
+     * @param falsePositiveRate the target false positive rate
+     */
+    public IdFilter(JdbcTemplate jdbcTemplate, ShardRouter shardRouter,
+            @Value("${dataset.id-filter.initial-capacity:100000}") long initialCapacity,
+            @Value("${dataset.id-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            filter();
+        } catch (RuntimeException ex) {
+            logger.warn("Could not build the record id filter; building it on first use", ex);
+        }
+    }
+
+    /**
+     * Checks whether a record with the given id may exist.
+     *
+     * @param id the record id
+     * @return false if no record has the id, true if the database must be
+     *         asked
+     */
+    public boolean mightExist(long id) {
+        checks.increment();
+        boolean possible = filter().mightContain(id);
+        if (!possible) {
+            skipped.increment();
+        }
+        return possible;
+    }
+
+    /**
+     * Checks whether a record with the given id may exist, without counting
+     * the check in the statistics of duplicate checks.
+     *
+     * @param id the record id
+     * @return false if no record has the id
+     */
+    boolean mayContain(long id) {
+        return filter().mightContain(id);
+    }
+
+    /**
+     * Records the database answer for an id the filter could not rule out.
+     *
+     * @param exists whether the record exists
+     */
+    public void recordCheck(boolean exists) {
+        if (!exists) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Adds the id of a saved record.
+     *
+     * @param id the record id
+     */
+    public void add(long id) {
+        filter().add(id);
+    }
+
+    /**
+     * Reports the size of the filter and how often it spared a query.
+     *
+     * @return the current statistics
+     */
+    public IdFilterStats stats() {
+        ScalableBloomFilter current = filter();
+        long newIds = skipped.sum() + falsePositives.sum();
+        return new IdFilterStats(current.count(), current.stages(), current.memoryBytes(),
+                current.targetFalsePositiveRate(), current.expectedFalsePositiveRate(), checks.sum(),
+                skipped.sum(), falsePositives.sum(), newIds == 0 ? 0 : (double) falsePositives.sum() / newIds);
+    }
+
+    private ScalableBloomFilter filter() {
+        ScalableBloomFilter current = filter;
+        if (current == null) {
+            synchronized (this) {
+                current = filter;
+                if (current == null) {
+                    current = build();
+                    filter = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Sized for twice the current ids so the first stage has room to grow
+    private ScalableBloomFilter build() {
+        long rows = shardRouter.onAllShards(() -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM dataset_records", Long.class))
+                .stream().mapToLong(Long::longValue).sum();
+        ScalableBloomFilter built = new ScalableBloomFilter(Math.max(initialCapacity, rows * 2), falsePositiveRate);
+        shardRouter.onAllShards(() -> {
+            jdbcTemplate.query("SELECT id FROM dataset_records", (RowCallbackHandler) row -> built.add(row.getLong(1)));
+            return null;
+        });
+        logger.info("Built the record id filter over {} ids in {} bytes", built.count(), built.memoryBytes());
+        return built;
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.Service;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.Config.ShardContext;
+import com.example.Config.ShardRouter;
+import com.example.Entity.DatasetField;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks which fields are used for groupBy/sortBy per dataset and reports the
+ * fields that are not backed by a (dataset_id, field, id) index.
+ * When auto-create is enabled, a missing index is created in the background
+ * once a field has been used often enough.
+ * Index metadata is read from the default shard; indexes are created on every
+ * shard.
+ */
+@Component
+public class IndexAdvisor {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexAdvisor.class);
+
+    static final String TABLE_NAME = "dataset_records";
+
+    static final String DATASET_COLUMN = "dataset_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final boolean autoCreate;
+
+    private final long minUsage;
+
+    // dataset name -> field -> number of groupBy/sortBy calls
+    private final Map<String, Map<DatasetField, LongAdder>> usage = new ConcurrentHashMap<>();
+
+    // fields with an index creation already submitted
+    private final Set<DatasetField> pending = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-advisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // lazily loaded from the database metadata, reset after an index is created
+    private volatile Set<DatasetField> indexedFields;
+
+    /**
+     * Constructor for IndexAdvisor.
+     *
+     * @param jdbcTemplate the template used to read index metadata and run DDL
+     * @param shardRouter  the shard map, used to create indexes on every shard
+     * @param autoCreate   whether missing indexes are created automatically
+     * @param minUsage     number of calls on a field before an index is created
+     */
+    public IndexAdvisor(JdbcTemplate jdbcTemplate, ShardRouter shardRouter,
+            @Value("${dataset.index-advisor.auto-create:false}") boolean autoCreate,
+            @Value("${dataset.index-advisor.min-usage:100}") long minUsage) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.autoCreate = autoCreate;
+        this.minUsage = minUsage;
+    }
+
+    /**
+     * Records that a dataset was grouped or sorted by the given field.
+     *
+     * @param datasetName the name of the dataset
+     * @param field       the field used by the query
+     */
+    public void recordUsage(String datasetName, DatasetField field) {
+        LongAdder counter = usage
+                .computeIfAbsent(String.valueOf(datasetName), name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(field, f -> new LongAdder());
+        counter.increment();
+
+        if (autoCreate && counter.sum() >= minUsage && !isIndexed(field) && pending.add(field)) {
+            executor.execute(() -> {
+                try {
+                    createIndex(field);
+                } finally {
+                    pending.remove(field);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds a report of every (dataset, field) pair seen so far, most used
+     * first, with the index to create for the ones that are not covered.
+     *
+     * @return the list of advice entries
+     */
+    public List<Advice> report() {
+        Set<DatasetField> indexed = loadIndexedFields();
+        List<Advice> advice = new ArrayList<>();
+        usage.forEach((datasetName, fields) -> fields.forEach((field, counter) -> {
+            boolean covered = indexed.contains(field);
+            advice.add(new Advice(datasetName, field.getFieldName(), counter.sum(), covered,
+                    covered ? null : indexDdl(field)));
+        }));
+        advice.sort(Comparator.comparingLong(Advice::usage).reversed());
+        return advice;
+    }
+
+    /**
+     * Checks whether the given field is covered by an index that starts with
+     * the dataset column.
+     *
+     * @param field the field to check
+     * @return true if a range scan on (dataset, field) is possible
+     */
+    public boolean isIndexed(DatasetField field) {
+        Set<DatasetField> indexed = indexedFields;
+        if (indexed == null) {
+            indexed = loadIndexedFields();
+        }
+        return indexed.contains(field);
+    }
+
+    /**
+     * Creates the recommended index for the given field on every shard where
+     * it does not exist.
+     *
+     * @param field the field to index
+     */
+    public synchronized void createIndex(DatasetField field) {
+        String ddl = indexDdl(field);
+        shardRouter.onAllShards(() -> {
+            if (!readIndexedFields().contains(field)) {
+                logger.info("Creating missing index on shard {}: {}", ShardContext.current(), ddl);
+                jdbcTemplate.execute(ddl);
+            }
+            return null;
+        });
+        indexedFields = null;
+    }
+
+    /**
+     * Returns the columns of the recommended index for a field.
+     *
+     * @param field the field used by groupBy/sortBy
+     * @return the ordered index columns
+     */
+    static List<String> indexColumns(DatasetField field) {
+        return switch (field) {
+            case ID, DATASET_NAME -> List.of(DATASET_COLUMN, "id");
+            default -> List.of(DATASET_COLUMN, field.getColumnName(), "id");
+        };
+    }
+
+    // leading index columns that make a (dataset, field) range scan possible
+    private static List<String> coveringPrefix(DatasetField field) {
+        return field == DatasetField.DATASET_NAME
+                ? List.of(DATASET_COLUMN)
+                : indexColumns(field).subList(0, 2);
+    }
+
+    static String indexDdl(DatasetField field) {
+        String name = field == DatasetField.DATASET_NAME ? "id" : field.getColumnName();
+        return "CREATE INDEX idx_" + TABLE_NAME + "_" + name
+                + " ON " + TABLE_NAME + " (" + String.join(", ", indexColumns(field)) + ")";
+    }
+
+    private Set<DatasetField> loadIndexedFields() {
+        Set<DatasetField> covered = readIndexedFields();
+        indexedFields = covered;
+        return covered;
+    }
+
+    private Set<DatasetField> readIndexedFields() {
+        Map<String, TreeMap<Short, String>> indexes = jdbcTemplate.execute(
+                (ConnectionCallback<Map<String, TreeMap<Short, String>>>) connection -> {
+                    DatabaseMetaData metaData = connection.getMetaData();
+                    String table = metaData.storesUpperCaseIdentifiers() ? TABLE_NAME.toUpperCase() : TABLE_NAME;
+                    Map<String, TreeMap<Short, String>> columnsByIndex = new TreeMap<>();
+                    try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+                        while (rs.next()) {
+                            String indexName = rs.getString("INDEX_NAME");
+                            String columnName = rs.getString("COLUMN_NAME");
+                            if (indexName == null || columnName == null) {
+                                continue;
+                            }
+                            columnsByIndex.computeIfAbsent(indexName, name -> new TreeMap<>())
+                                    .put(rs.getShort("ORDINAL_POSITION"), columnName.toLowerCase());
+                        }
+                    }
+                    return columnsByIndex;
+                });
+
+        Set<DatasetField> covered = EnumSet.noneOf(DatasetField.class);
+        for (TreeMap<Short, String> columns : indexes.values()) {
+            List<String> ordered = List.copyOf(columns.values());
+            for (DatasetField field : DatasetField.values()) {
+                List<String> prefix = coveringPrefix(field);
+                if (ordered.size() >= prefix.size() && ordered.subList(0, prefix.size()).equals(prefix)) {
+                    covered.add(field);
+                }
+            }
+        }
+        return covered;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A single line of the index report.
+     *
+     * @param dataset        the dataset the usage was recorded for
+     * @param field          the groupBy/sortBy field
+     * @param usage          number of calls that used the field
+     * @param indexed        whether an index already covers the field
+     * @param suggestedIndex DDL for the missing index, or null when covered
+     */
+    public record Advice(String dataset, String field, long usage, boolean indexed, String suggestedIndex) {
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * KLL quantile sketch over long values.
+ * Keeps a stack of compactors: an item at level h stands for 2^h inserted
+ * values, and a full level is sorted and every other item promoted to the
+ * next level. Memory stays O(k) whatever the number of values, and a rank
+ * query is off by about 1.65 / k of the count (under 1% for the default
+ * k = 200). Until the first compaction the sketch holds every value and
+ * answers exactly.
+ * Sketches are mergeable: merging two sketches gives a sketch of all their
+ * values with the same error bound.
+ */
+public final class KllSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    // Capacity ratio between a level and the one above it
+    private static final double DECAY = 2.0 / 3.0;
+
+    private final int k;
+
+    private final List<Compactor> levels = new ArrayList<>();
+
+    private final SplittableRandom random = new SplittableRandom(0x5eed);
+
+    private long count;
+
+    private int size;
+
+    private int maxSize;
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Constructor for KllSketch.
+     *
+     * @param k the accuracy parameter; memory and accuracy grow with it
+     * @throws IllegalArgumentException if k is below 8
+     */
+    public KllSketch(int k) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k must be at least 8: " + k);
+        }
+        this.k = k;
+        level(0);
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value
+     */
+    public synchronized void add(long value) {
+        levels.get(0).add(value);
+        count++;
+        size++;
+        compress();
+    }
+
+    /**
+     * Merges another sketch into this one.
+     *
+     * @param other the sketch to merge
+     * @return this sketch
+     */
+    public KllSketch merge(KllSketch other) {
+        List<long[]> theirs;
+        long theirCount;
+        synchronized (other) {
+            theirs = new ArrayList<>(other.levels.size());
+            for (Compactor compactor : other.levels) {
+                theirs.add(Arrays.copyOf(compactor.items, compactor.size));
+            }
+            theirCount = other.count;
+        }
+        synchronized (this) {
+            for (int h = 0; h < theirs.size(); h++) {
+                Compactor compactor = level(h);
+                for (long value : theirs.get(h)) {
+                    compactor.add(value);
+                }
+                size += theirs.get(h).length;
+            }
+            count += theirCount;
+            compress();
+        }
+        return this;
+    }
+
+    /**
+     * Number of values added, including merged sketches.
+     *
+     * @return the count
+     */
+    public synchronized long count() {
+        return count;
+    }
+
+    /**
+     * Whether the sketch still holds every value, so quantiles are exact.
+     *
+     * @return true until the first compaction
+     */
+    public synchronized boolean isExact() {
+        return levels.size() == 1;
+    }
+
+    /**
+     * Estimates a quantile by nearest rank: the smallest value with at least
+     * q * count values at or below it.
+     *
+     * @param q the quantile, between 0 and 1
+     * @return the estimated value, or null when the sketch is empty
+     * @throws IllegalArgumentException if q is out of range
+     */
+    public synchronized Long quantile(double q) {
+        checkQuantile(q);
+        if (count == 0) {
+            return null;
+        }
+        // Sorted values with the weight of their level
+        long[] values = new long[size];
+        long[] weights = new long[size];
+        Integer[] order = new Integer[size];
+        int n = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            Compactor compactor = levels.get(h);
+            for (int i = 0; i < compactor.size; i++) {
+                values[n] = compactor.items[i];
+                weights[n] = 1L << h;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(values[a], values[b]));
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long cumulative = 0;
+        for (int index : order) {
+            cumulative += weights[index];
+            if (cumulative >= rank) {
+                return values[index];
+            }
+        }
+        return values[order[n - 1]];
+    }
+
+    /**
+     * Computes a quantile exactly by nearest rank, as {@link #quantile(double)}
+     * estimates it.
+     *
+     * @param sorted the values in ascending order
+     * @param q      the quantile, between 0 and 1
+     * @return the value, or null when there are none
+     * @throws IllegalArgumentException if q is out of range
+     */
+    public static Long exactQuantile(long[] sorted, double q) {
+        checkQuantile(q);
+        if (sorted.length == 0) {
+            return null;
+        }
+        int rank = (int) Math.max(1, Math.ceil(q * sorted.length));
+        return sorted[rank - 1];
+    }
+
+    static void checkQuantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+    }
+
+    private Compactor level(int h) {
+        while (levels.size() <= h) {
+            levels.add(new Compactor());
+            maxSize = 0;
+            for (int i = 0; i < levels.size(); i++) {
+                maxSize += capacity(i);
+            }
+        }
+        return levels.get(h);
+    }
+
+    private int capacity(int h) {
+        int depth = levels.size() - h - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(DECAY, depth)));
+    }
+
+    // Compacts the lowest full level until the sketch fits its capacity
+    private void compress() {
+        while (size >= maxSize) {
+            for (int h = 0; h < levels.size(); h++) {
+                Compactor compactor = levels.get(h);
+                if (compactor.size >= capacity(h)) {
+                    Compactor next = level(h + 1);
+                    Arrays.sort(compactor.items, 0, compactor.size);
+                    // An odd item stays behind so the total weight is unchanged
+                    int kept = compactor.size % 2;
+                    for (int i = kept + random.nextInt(2); i < compactor.size; i += 2) {
+                        next.add(compactor.items[i]);
+                    }
+                    size -= (compactor.size - kept) / 2;
+                    compactor.size = kept;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final class Compactor {
+
+        private long[] items = new long[16];
+
+        private int size;
+
+        void add(long value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.Config.ShardRouter;
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRow;
+import com.example.Entity.QuantileSummary;
+import com.example.Exception.DatasetNotFoundException;
+import com.example.Exception.InvalidFieldException;
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetQueryRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains KLL quantile sketches of the numeric fields of each dataset,
+ * overall and per department, so percentiles are answered from the sketch
+ * instead of sorting the records.
+ * A dataset's sketches are built with one scan on first use and then
+ * updated on every insert; they live in memory only and are rebuilt after a
+ * restart. Datasets with few records are answered exactly from the database.
+ */
+@Component
+public class QuantileEstimator {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuantileEstimator.class);
+
+    static final DatasetField GROUP_FIELD = DatasetField.DEPARTMENT;
+
+    private static final Set<DatasetField> FIELDS = EnumSet.of(DatasetField.ID, DatasetField.AGE);
+
+    private final DatasetQueryRepository datasetQueryRepository;
+
+    private final DatasetKeyRegistry datasetKeyRegistry;
+
+    private final ShardRouter shardRouter;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final long exactThreshold;
+
+    private final Map<String, DatasetQuantiles> sketches = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for QuantileEstimator.
+     *
+     * @param datasetQueryRepository the queries used to build sketches and
+     *                               answer small datasets exactly
+     * @param datasetKeyRegistry     the cache resolving dataset names to keys
+     * @param shardRouter            the shard map placing datasets on databases
+     * @param transactionManager     the transaction manager for scans
+     * @param exactThreshold         datasets with at most this many records are
+     *                               answered exactly
+     */
+    public QuantileEstimator(DatasetQueryRepository datasetQueryRepository, DatasetKeyRegistry datasetKeyRegistry,
+            ShardRouter shardRouter, PlatformTransactionManager transactionManager,
+            @Value("${dataset.quantiles.exact-threshold:1000}") long exactThreshold) {
+        this.datasetQueryRepository = datasetQueryRepository;
+        this.datasetKeyRegistry = datasetKeyRegistry;
+        this.shardRouter = shardRouter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.exactThreshold = exactThreshold;
+    }
+
+    /**
+     * Adds the values of an inserted record to the sketches of its dataset,
+     * if they have been built; otherwise the first query scans it.
+     *
+     * @param datasetName the name of the dataset
+     * @param record      the inserted record
+     */
+    public void record(String datasetName, DatasetRow record) {
+        DatasetQuantiles quantiles = sketches.get(datasetName);
+        if (quantiles != null) {
+            quantiles.add(record);
+        }
+    }
+
+    /**
+     * Forgets the sketches of a dropped dataset.
+     *
+     * @param datasetName the name of the dataset
+     */
+    public void drop(String datasetName) {
+        sketches.remove(datasetName);
+    }
+
+    /**
+     * Computes quantiles of a numeric field over a dataset.
+     *
+     * @param datasetName the name of the dataset
+     * @param fieldName   the numeric field
+     * @param quantiles   the quantiles to compute, between 0 and 1
+     * @return the quantile values
+     * @throws DatasetNotFoundException if the dataset does not exist
+     * @throws InvalidFieldException    if the field is unknown or not numeric
+     * @throws IllegalArgumentException if a quantile is out of range
+     */
+    public QuantileSummary quantiles(String datasetName, String fieldName, List<Double> quantiles) {
+        DatasetField field = numericField(fieldName);
+        quantiles.forEach(KllSketch::checkQuantile);
+        KllSketch sketch = sketchesOf(datasetName).overall.get(field);
+        if (sketch.count() <= exactThreshold) {
+            return summary(exactValues(datasetName, field, null).getOrDefault("", new long[0]), quantiles);
+        }
+        return summary(sketch, quantiles);
+    }
+
+    /**
+     * Computes quantiles of a numeric field for each group of a dataset.
+     *
+     * @param datasetName  the name of the dataset
+     * @param fieldName    the numeric field
+     * @param groupByField the field to group by; only department is sketched
+     * @param quantiles    the quantiles to compute, between 0 and 1
+     * @return the quantile values by group value, in group order
+     * @throws DatasetNotFoundException if the dataset does not exist
+     * @throws InvalidFieldException    if a field is unknown or not supported
+     * @throws IllegalArgumentException if a quantile is out of range
+     */
+    public Map<String, QuantileSummary> quantilesByGroup(String datasetName, String fieldName, String groupByField,
+            List<Double> quantiles) {
+        DatasetField field = numericField(fieldName);
+        if (!GROUP_FIELD.getFieldName().equals(groupByField)) {
+            throw new InvalidFieldException("Unsupported quantile groupBy field: " + groupByField);
+        }
+        quantiles.forEach(KllSketch::checkQuantile);
+        DatasetQuantiles datasetQuantiles = sketchesOf(datasetName);
+        Map<String, QuantileSummary> result = new TreeMap<>();
+        if (datasetQuantiles.overall.get(field).count() <= exactThreshold) {
+            exactValues(datasetName, field, GROUP_FIELD)
+                    .forEach((group, sorted) -> result.put(group, summary(sorted, quantiles)));
+            return result;
+        }
+        datasetQuantiles.groups.forEach((group, fields) -> result.put(group, summary(fields.get(field), quantiles)));
+        return result;
+    }
+
+    private DatasetQuantiles sketchesOf(String datasetName) {
+        // Built under the map's lock for this dataset, so no insert is
+        // counted twice while the scan runs
+        DatasetQuantiles quantiles = sketches.computeIfAbsent(datasetName, name -> shardRouter.onDataset(name,
+                () -> readOnlyTransaction.execute(status -> datasetKeyRegistry.findId(name)
+                        .map(datasetId -> build(name, datasetId))))
+                .orElse(null));
+        if (quantiles == null) {
+            throw notFound(datasetName);
+        }
+        return quantiles;
+    }
+
+    private DatasetQuantiles build(String datasetName, int datasetId) {
+        DatasetQuantiles quantiles = new DatasetQuantiles();
+        Set<DatasetField> columns = EnumSet.copyOf(FIELDS);
+        columns.add(GROUP_FIELD);
+        datasetQueryRepository.forEachRecord(datasetId, columns, null, quantiles::add);
+        logger.info("Built quantile sketches of dataset {}", datasetName);
+        return quantiles;
+    }
+
+    // Reads the values in order from the (dataset_id, field, id) index and
+    // splits them by group; without groupBy everything is in group ""
+    private Map<String, long[]> exactValues(String datasetName, DatasetField field, DatasetField groupBy) {
+        Set<DatasetField> columns = groupBy == null ? EnumSet.of(field) : EnumSet.of(field, groupBy);
+        List<DatasetRow> rows = shardRouter.onDataset(datasetName,
+                () -> readOnlyTransaction.execute(status -> datasetKeyRegistry.findId(datasetName)
+                        .map(datasetId -> datasetQueryRepository.findByDatasetId(datasetId, columns, null, field,
+                                false))))
+                .orElseThrow(() -> notFound(datasetName));
+
+        Map<String, List<Long>> groups = new TreeMap<>();
+        for (DatasetRow row : rows) {
+            Object value = field.valueOf(row);
+            if (value != null) {
+                groups.computeIfAbsent(groupBy == null ? "" : groupKey(groupBy.valueOf(row)),
+                        key -> new ArrayList<>()).add(((Number) value).longValue());
+            }
+        }
+        Map<String, long[]> values = new TreeMap<>();
+        groups.forEach((group, sorted) -> values.put(group,
+                sorted.stream().mapToLong(Long::longValue).toArray()));
+        return values;
+    }
+
+    private static QuantileSummary summary(long[] sorted, List<Double> quantiles) {
+        Map<Double, Long> values = new LinkedHashMap<>();
+        quantiles.forEach(q -> values.put(q, KllSketch.exactQuantile(sorted, q)));
+        return new QuantileSummary(sorted.length, true, values);
+    }
+
+    private static QuantileSummary summary(KllSketch sketch, List<Double> quantiles) {
+        Map<Double, Long> values = new LinkedHashMap<>();
+        quantiles.forEach(q -> values.put(q, sketch.quantile(q)));
+        return new QuantileSummary(sketch.count(), sketch.isExact(), values);
+    }
+
+    private static DatasetField numericField(String fieldName) {
+        return DatasetField.fromName(fieldName)
+                .filter(FIELDS::contains)
+                .orElseThrow(() -> new InvalidFieldException("Unsupported quantile field: " + fieldName));
+    }
+
+    private static DatasetNotFoundException notFound(String datasetName) {
+        return new DatasetNotFoundException("No records found for dataset: " + datasetName);
+    }
+
+    private static String groupKey(Object value) {
+        return value != null ? value.toString() : "null";
+    }
+
+    /**
+     * Sketches of one dataset, overall and per group.
+     */
+    private static final class DatasetQuantiles {
+
+        private final Map<DatasetField, KllSketch> overall = sketches();
+
+        private final Map<String, Map<DatasetField, KllSketch>> groups = new ConcurrentHashMap<>();
+
+        void add(DatasetRow record) {
+            Map<DatasetField, KllSketch> group = groups.computeIfAbsent(groupKey(GROUP_FIELD.valueOf(record)),
+                    key -> sketches());
+            for (DatasetField field : FIELDS) {
+                Object value = field.valueOf(record);
+                if (value != null) {
+                    long number = ((Number) value).longValue();
+                    overall.get(field).add(number);
+                    group.get(field).add(number);
+                }
+            }
+        }
+
+        private static Map<DatasetField, KllSketch> sketches() {
+            Map<DatasetField, KllSketch> sketches = new EnumMap<>(DatasetField.class);
+            FIELDS.forEach(field -> sketches.put(field, new KllSketch()));
+            return sketches;
+        }
+    }
+}
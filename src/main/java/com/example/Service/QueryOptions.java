@@ -0,0 +1,82 @@
+package com.example.Service;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.example.Entity.DatasetField;
+import com.example.Exception.InvalidFieldException;
+
+/**
+ * Optional settings of a groupBy/sortBy query.
+ *
+ * @param fields the fields to select and return; all fields by default
+ * @param where  the where= filter expression, or null for all records
+ * @param limit  the maximum number of sorted records, per group when
+ *               grouped, or null for all
+ */
+public record QueryOptions(Set<DatasetField> fields, String where, Integer limit) {
+
+    private static final QueryOptions DEFAULTS = new QueryOptions(EnumSet.allOf(DatasetField.class), null, null);
+
+    public QueryOptions {
+        fields = Collections.unmodifiableSet(EnumSet.copyOf(fields));
+        where = where == null || where.isBlank() ? null : where.trim();
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+    }
+
+    /**
+     * Returns the options of a plain query.
+     *
+     * @return options selecting every field
+     */
+    public static QueryOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Parses the query parameters of a request.
+     *
+     * @param fields comma-separated field names, or null for all fields
+     * @param where  the filter expression, or null for all records
+     * @return the parsed options
+     * @throws InvalidFieldException if a field name is unknown
+     */
+    public static QueryOptions parse(String fields, String where) {
+        return parse(fields, where, null);
+    }
+
+    /**
+     * Parses the query parameters of a sorted request.
+     *
+     * @param fields comma-separated field names, or null for all fields
+     * @param where  the filter expression, or null for all records
+     * @param limit  the maximum number of records, or null for all
+     * @return the parsed options
+     * @throws InvalidFieldException    if a field name is unknown
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public static QueryOptions parse(String fields, String where, Integer limit) {
+        if (fields == null || fields.isBlank()) {
+            return new QueryOptions(DEFAULTS.fields, where, limit);
+        }
+        Set<DatasetField> selected = EnumSet.noneOf(DatasetField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            selected.add(DatasetField.fromName(trimmed)
+                    .orElseThrow(() -> new InvalidFieldException("Unsupported field: " + trimmed)));
+        }
+        return new QueryOptions(selected, where, limit);
+    }
+
+    /**
+     * Whether these options select everything, like a plain query.
+     *
+     * @return true if no option narrows the query
+     */
+    public boolean isDefault() {
+        return fields.size() == DatasetField.values().length && where == null && limit == null;
+    }
+}
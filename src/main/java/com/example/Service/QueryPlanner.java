@@ -0,0 +1,298 @@
+package com.example.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import com.example.Config.ShardContext;
+import com.example.Entity.DatasetField;
+import com.example.Repository.DatasetQueryRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses how a query is executed from the size of the dataset, the indexes
+ * on the queried field and whether the dataset's rollups are complete: from
+ * the rollups, in the database, or by reading the records and sorting or
+ * grouping them in the application, in parallel when the dataset is large
+ * enough to pay for it. Each candidate gets an estimated cost in units of one
+ * record read by the database, and the cheapest one wins.
+ * Row counts are read from the rollups when they are complete, otherwise from
+ * the (dataset_id, id) index and cached for a while; a where= filter is
+ * assumed to match every record. Records read from a current snapshot cost
+ * only their decoding, which can make a scan cheaper than the database.
+ */
+@Component
+public class QueryPlanner {
+
+    // Sending a record to the application and building its view
+    static final double TRANSFER_COST = 0.5;
+
+    // One comparison while sorting
+    static final double COMPARE_COST = 0.05;
+
+    // Putting a record into its group
+    static final double GROUP_COST = 0.02;
+
+    // Decoding a record from a memory-mapped snapshot instead of reading and
+    // sending it
+    static final double SNAPSHOT_READ_COST = 0.1;
+
+    private final DatasetQueryRepository datasetQueryRepository;
+
+    private final DatasetRollups datasetRollups;
+
+    private final IndexAdvisor indexAdvisor;
+
+    private final long statsTtlMillis;
+
+    private final double parallelOverhead;
+
+    private final int parallelism;
+
+    // "shard:datasetId" -> row count, dataset keys are only unique per shard
+    private final Map<String, RowCount> rowCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for QueryPlanner.
+     *
+     * @param datasetQueryRepository the queries reading the row counts
+     * @param datasetRollups         the rollups answering unfiltered aggregates
+     * @param indexAdvisor           the advisor knowing which fields are indexed
+     * @param statsTtlMillis         how long a row count is used before it is
+     *                               read again
+     * @param parallelOverhead       the fixed cost of splitting work across
+     *                               threads, in records read
+     * @param parallelism            the threads a parallel scan runs on; 0 for
+     *                               those of the common fork/join pool
+     */
+    public QueryPlanner(DatasetQueryRepository datasetQueryRepository, DatasetRollups datasetRollups,
+            IndexAdvisor indexAdvisor,
+            @Value("${dataset.planner.stats-ttl:60000}") long statsTtlMillis,
+            @Value("${dataset.planner.parallel-overhead:20000}") double parallelOverhead,
+            @Value("${dataset.planner.parallelism:0}") int parallelism) {
+        this.datasetQueryRepository = datasetQueryRepository;
+        this.datasetRollups = datasetRollups;
+        this.indexAdvisor = indexAdvisor;
+        this.statsTtlMillis = statsTtlMillis;
+        this.parallelOverhead = parallelOverhead;
+        this.parallelism = parallelism > 0 ? parallelism : ForkJoinPool.getCommonPoolParallelism();
+    }
+
+    /**
+     * Reads what the plans of a dataset are based on. Must run on the
+     * dataset's shard, in the transaction of the query.
+     *
+     * @param datasetId   the integer key of the dataset
+     * @param withRollups whether to read the rollups, which only unfiltered
+     *                    aggregates can use
+     * @return the statistics
+     */
+    public Statistics statistics(int datasetId, boolean withRollups) {
+        Optional<List<DatasetRollups.Rollup>> rollups = withRollups
+                ? datasetRollups.find(datasetId)
+                : Optional.empty();
+        long rows = rollups
+                .map(found -> found.stream().mapToLong(DatasetRollups.Rollup::recordCount).sum())
+                .orElseGet(() -> rowCount(datasetId));
+        return new Statistics(rows, rollups);
+    }
+
+    /**
+     * Plans an aggregate or count query. Rollups answer unfiltered age
+     * aggregates and counts, overall or by department, from one row per
+     * department; anything else is aggregated by the database, which sends
+     * one row per group. Reading the records into the application would only
+     * add the transfer, so it is never a candidate.
+     *
+     * @param statistics the statistics of the dataset
+     * @param field      the aggregated field, or null for counts
+     * @param groupBy    the fields to group by, empty for one total
+     * @param filtered   whether a where= filter applies
+     * @return the plan
+     */
+    public Plan aggregate(Statistics statistics, DatasetField field, List<DatasetField> groupBy, boolean filtered) {
+        Map<Strategy, Double> costs = new EnumMap<>(Strategy.class);
+        boolean rollupQuery = !filtered
+                && (field == null || field == DatasetField.AGE)
+                && (groupBy.isEmpty() || groupBy.equals(List.of(DatasetField.DEPARTMENT)));
+        if (rollupQuery && statistics.rollups().isPresent()) {
+            costs.put(Strategy.ROLLUP, (double) statistics.rollups().get().size());
+        }
+        costs.put(Strategy.SQL, (double) statistics.rows());
+        return choose(statistics, groupBy.size() == 1 && indexAdvisor.isIndexed(groupBy.get(0)), costs);
+    }
+
+    /**
+     * Plans a sort query. The database reads an index on the field in order
+     * and stops after the limit; without one it sorts every record, keeping
+     * only the first ones when there is a limit. Reading the records in id
+     * order and sorting them on several threads in the application costs the
+     * transfer of every record but spreads the comparisons.
+     *
+     * @param statistics the statistics of the dataset
+     * @param field      the field to sort by
+     * @param filtered   whether a where= filter applies
+     * @param limit      the maximum number of records, or null for all
+     * @return the plan
+     */
+    public Plan sort(Statistics statistics, DatasetField field, boolean filtered, Integer limit) {
+        double rows = statistics.rows();
+        double returned = limit == null ? rows : Math.min(limit, rows);
+        boolean indexed = indexAdvisor.isIndexed(field);
+        Map<Strategy, Double> costs = new EnumMap<>(Strategy.class);
+        // A filtered index scan may read every record to find the first matches
+        costs.put(Strategy.SQL, indexed
+                ? (filtered ? rows : returned) + returned * TRANSFER_COST
+                : rows + rows * log2(returned) * COMPARE_COST + returned * TRANSFER_COST);
+        if (parallelism > 1) {
+            costs.put(Strategy.PARALLEL_SCAN, rows * readCost(statistics)
+                    + rows * log2(returned) * COMPARE_COST / parallelism + parallelOverhead);
+        }
+        return choose(statistics, indexed, costs);
+    }
+
+    /**
+     * Plans a query grouping the records by one field. Every record is
+     * returned, so the records are always read into the application; they are
+     * grouped on several threads when that saves more than it costs.
+     *
+     * @param statistics the statistics of the dataset
+     * @return the plan
+     */
+    public Plan group(Statistics statistics) {
+        double rows = statistics.rows();
+        Map<Strategy, Double> costs = new EnumMap<>(Strategy.class);
+        costs.put(Strategy.SCAN, rows * (readCost(statistics) + GROUP_COST));
+        if (parallelism > 1) {
+            costs.put(Strategy.PARALLEL_SCAN,
+                    rows * (readCost(statistics) + GROUP_COST / parallelism) + parallelOverhead);
+        }
+        return choose(statistics, false, costs);
+    }
+
+    /**
+     * Plans a query that has a single way to run: one pass over the records
+     * in the application, e.g. nested groups or the first records of each
+     * group.
+     *
+     * @param statistics the statistics of the dataset
+     * @return the plan
+     */
+    public Plan scan(Statistics statistics) {
+        Map<Strategy, Double> costs = new EnumMap<>(Strategy.class);
+        costs.put(Strategy.SCAN, statistics.rows() * readCost(statistics));
+        return choose(statistics, false, costs);
+    }
+
+    /**
+     * Forgets the cached row count of a dropped dataset.
+     *
+     * @param datasetId the integer key of the dataset
+     */
+    public void forget(int datasetId) {
+        rowCounts.remove(countKey(datasetId));
+    }
+
+    private long rowCount(int datasetId) {
+        String key = countKey(datasetId);
+        long now = System.currentTimeMillis();
+        RowCount cached = rowCounts.get(key);
+        if (cached != null && now - cached.readAt() < statsTtlMillis) {
+            return cached.rows();
+        }
+        long rows = datasetQueryRepository.idRange(datasetId).count();
+        rowCounts.put(key, new RowCount(rows, now));
+        return rows;
+    }
+
+    // Reading one record into the application
+    private static double readCost(Statistics statistics) {
+        return statistics.snapshot().isPresent() ? SNAPSHOT_READ_COST : 1 + TRANSFER_COST;
+    }
+
+    private static String countKey(int datasetId) {
+        return ShardContext.current() + ":" + datasetId;
+    }
+
+    // Cheapest candidate; ties go to the one listed first in Strategy
+    private static Plan choose(Statistics statistics, boolean indexed, Map<Strategy, Double> costs) {
+        Strategy best = null;
+        Map<Strategy, Long> rounded = new EnumMap<>(Strategy.class);
+        for (Map.Entry<Strategy, Double> candidate : costs.entrySet()) {
+            if (best == null || candidate.getValue() < costs.get(best)) {
+                best = candidate.getKey();
+            }
+            rounded.put(candidate.getKey(), Math.round(candidate.getValue()));
+        }
+        return new Plan(best, statistics.rows(), indexed, statistics.rollups().isPresent(),
+                statistics.snapshot().isPresent(), rounded.get(best), rounded);
+    }
+
+    private static double log2(double n) {
+        return Math.log(Math.max(n, 2)) / Math.log(2);
+    }
+
+    private record RowCount(long rows, long readAt) {
+    }
+
+    /**
+     * How a query is executed.
+     */
+    public enum Strategy {
+        /** Read from the per-department rollups. */
+        ROLLUP,
+        /** Sorted or aggregated by the database. */
+        SQL,
+        /** Records read in id order and processed in the application. */
+        SCAN,
+        /** Records read in id order and processed on several threads. */
+        PARALLEL_SCAN
+    }
+
+    /**
+     * What the plans of a dataset are based on.
+     *
+     * @param rows     the number of records in the dataset
+     * @param rollups  the rollups of the dataset, if read and complete
+     * @param snapshot the current snapshot of the dataset, which scans read
+     *                 instead of the database
+     */
+    public record Statistics(long rows, Optional<List<DatasetRollups.Rollup>> rollups,
+            Optional<SnapshotFile> snapshot) {
+
+        public Statistics(long rows, Optional<List<DatasetRollups.Rollup>> rollups) {
+            this(rows, rollups, Optional.empty());
+        }
+
+        /**
+         * Adds the snapshot scans would read; its size is the exact number of
+         * records.
+         *
+         * @param snapshot the current snapshot, or empty
+         * @return the statistics
+         */
+        public Statistics withSnapshot(Optional<SnapshotFile> snapshot) {
+            return snapshot.map(found -> new Statistics(found.size(), rollups, snapshot)).orElse(this);
+        }
+    }
+
+    /**
+     * The chosen way to run a query, as reported by explain=true.
+     *
+     * @param strategy      the cheapest strategy
+     * @param estimatedRows the number of records in the dataset
+     * @param indexed       whether an index covers the sorted or grouped field
+     * @param rollupsReady  whether complete rollups were available
+     * @param snapshot      whether scans read a current snapshot
+     * @param cost          the estimated cost of the strategy
+     * @param costs         the estimated cost of every candidate
+     */
+    public record Plan(Strategy strategy, long estimatedRows, boolean indexed, boolean rollupsReady,
+            boolean snapshot, long cost, Map<Strategy, Long> costs) {
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PreDestroy;
+
+import com.example.Config.SessionConsistency;
+import com.example.Config.ShardRouter;
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRow;
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetQueryRepository;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Looks up records by id. Recently read records are cached by id along with
+ * the change sequence number their dataset had when they were read, and are
+ * only served while the dataset is still at that number, so hot ids cost one
+ * primary key lookup of the dataset; the others are read by primary key in
+ * IN-list chunks of bounded size, the chunks running in parallel on their own
+ * read-only transactions. A row read before a write, by this instance or
+ * another, or from a lagging replica carries an older number and is never
+ * served once the write is visible.
+ */
+@Component
+public class RecordLookup {
+
+    private static final EnumSet<DatasetField> ALL_FIELDS = EnumSet.allOf(DatasetField.class);
+
+    private final DatasetQueryRepository datasetQueryRepository;
+
+    private final DatasetKeyRegistry datasetKeyRegistry;
+
+    private final ShardRouter shardRouter;
+
+    private final ObjectProvider<SessionConsistency> sessionConsistency;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final int chunkSize;
+
+    // record id -> full record, least recently used first out; a record is
+    // only served for the dataset it belongs to, at the change sequence
+    // number it was read at
+    private final Map<Long, Cached> cache;
+
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for RecordLookup.
+     *
+     * @param datasetQueryRepository the queries reading records by id
+     * @param datasetKeyRegistry     the cache resolving dataset names to keys
+     * @param shardRouter            the shard map placing datasets on databases
+     * @param sessionConsistency     the read-your-writes sessions, when
+     *                               replicas are configured
+     * @param transactionManager     the transaction manager for the chunks
+     * @param cacheSize              number of records kept in the cache
+     * @param chunkSize              number of ids per IN list
+     * @param parallelism            number of chunks read at the same time
+     */
+    public RecordLookup(DatasetQueryRepository datasetQueryRepository, DatasetKeyRegistry datasetKeyRegistry,
+            ShardRouter shardRouter, ObjectProvider<SessionConsistency> sessionConsistency,
+            PlatformTransactionManager transactionManager,
+            @Value("${dataset.records.cache-size:10000}") int cacheSize,
+            @Value("${dataset.records.chunk-size:200}") int chunkSize,
+            @Value("${dataset.records.parallelism:4}") int parallelism) {
+        if (chunkSize < 1 || chunkSize > DatasetQueryRepository.MAX_IN_LIST) {
+            throw new IllegalArgumentException(
+                    "chunk-size must be between 1 and " + DatasetQueryRepository.MAX_IN_LIST + ": " + chunkSize);
+        }
+        this.datasetQueryRepository = datasetQueryRepository;
+        this.datasetKeyRegistry = datasetKeyRegistry;
+        this.shardRouter = shardRouter;
+        this.sessionConsistency = sessionConsistency;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.chunkSize = chunkSize;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "record-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the records of a dataset with the given ids.
+     *
+     * @param datasetName the name of the dataset
+     * @param ids         the record ids, without duplicates
+     * @return the records found by id, in the order of the ids; empty if the
+     *         dataset does not exist
+     */
+    public Optional<Map<Long, DatasetRow>> find(String datasetName, List<Long> ids) {
+        Optional<Integer> datasetId = shardRouter.onDataset(datasetName, () -> datasetKeyRegistry.findId(datasetName));
+        if (datasetId.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long changeSeq = shardRouter.onDataset(datasetName, () -> readOnlyTransaction.execute(
+                status -> datasetKeyRegistry.lastChangeSeq(datasetId.get())));
+        Map<Long, DatasetRow> found = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Cached cached = cache.get(id);
+            if (cached != null && cached.changeSeq() == changeSeq
+                    && datasetName.equals(cached.row().getDatasetName())) {
+                found.put(id, cached.row());
+            } else {
+                missing.add(id);
+            }
+        }
+        for (Cached read : fetch(datasetName, datasetId.get(), missing)) {
+            cache.put(read.row().getId(), read);
+            found.put(read.row().getId(), read.row());
+        }
+
+        Map<Long, DatasetRow> ordered = new LinkedHashMap<>();
+        for (Long id : ids) {
+            DatasetRow row = found.get(id);
+            if (row != null) {
+                ordered.put(id, row);
+            }
+        }
+        return Optional.of(ordered);
+    }
+
+    /**
+     * Forgets a record, e.g. after it was written.
+     *
+     * @param id the record id
+     */
+    public void evict(Long id) {
+        cache.remove(id);
+    }
+
+    /**
+     * Forgets every record of a dropped dataset.
+     *
+     * @param datasetName the name of the dataset
+     */
+    public void drop(String datasetName) {
+        synchronized (cache) {
+            cache.values().removeIf(cached -> datasetName.equals(cached.row().getDatasetName()));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private List<Cached> fetch(String datasetName, int datasetId, List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            chunks.add(ids.subList(from, Math.min(from + chunkSize, ids.size())));
+        }
+        Supplier<List<Cached>> sequential = () -> chunks.stream()
+                .flatMap(chunk -> read(datasetName, datasetId, chunk).stream())
+                .toList();
+        // A caller's open transaction holds a connection that other threads
+        // cannot share, and may hold writes they could not see
+        if (chunks.size() <= 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return sequential.get();
+        }
+
+        SessionConsistency session = sessionConsistency.getIfAvailable();
+        String token = session != null ? session.token() : null;
+        List<CompletableFuture<List<Cached>>> futures = new ArrayList<>(chunks.size());
+        for (List<Long> chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                if (token == null) {
+                    return read(datasetName, datasetId, chunk);
+                }
+                session.bind(token);
+                try {
+                    return read(datasetName, datasetId, chunk);
+                } finally {
+                    session.clear();
+                }
+            }, executor));
+        }
+        try {
+            return futures.stream().flatMap(future -> future.join().stream()).toList();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    // The sequence number is read before the rows, so rows written after it
+    // are at worst cached under an older number and never served
+    private List<Cached> read(String datasetName, int datasetId, List<Long> chunk) {
+        return shardRouter.onDataset(datasetName, () -> readOnlyTransaction.execute(status -> {
+            long changeSeq = datasetKeyRegistry.lastChangeSeq(datasetId);
+            return datasetQueryRepository.findByIds(datasetId, ALL_FIELDS, chunk).stream()
+                    .map(row -> new Cached(row, changeSeq))
+                    .toList();
+        }));
+    }
+
+    private record Cached(DatasetRow row, long changeSeq) {
+    }
+}
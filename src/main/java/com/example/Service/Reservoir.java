@@ -0,0 +1,75 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Uniform random sample of at most n items of a stream of unknown length
+ * (reservoir sampling, Algorithm R). Each item seen so far is kept with
+ * probability n / seen, using O(n) memory. The same seed and the same stream
+ * give the same sample.
+ *
+ * @param <T> the item type
+ */
+public final class Reservoir<T> {
+
+    private final int size;
+
+    private final SplittableRandom random;
+
+    private final List<T> items;
+
+    private long seen;
+
+    /**
+     * Constructor for Reservoir.
+     *
+     * @param size the number of items to keep
+     * @param seed the seed of the random choices
+     * @throws IllegalArgumentException if size is not positive
+     */
+    public Reservoir(int size, long seed) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Sample size must be positive: " + size);
+        }
+        this.size = size;
+        this.random = new SplittableRandom(seed);
+        this.items = new ArrayList<>(Math.min(size, 1024));
+    }
+
+    /**
+     * Offers the next item of the stream.
+     *
+     * @param item the item
+     */
+    public void offer(T item) {
+        seen++;
+        if (items.size() < size) {
+            items.add(item);
+            return;
+        }
+        long slot = random.nextLong(seen);
+        if (slot < size) {
+            items.set((int) slot, item);
+        }
+    }
+
+    /**
+     * Number of items offered so far.
+     *
+     * @return the stream length
+     */
+    public long seen() {
+        return seen;
+    }
+
+    /**
+     * Returns the sampled items.
+     *
+     * @return at most size items, in no particular order
+     */
+    public List<T> toList() {
+        return new ArrayList<>(items);
+    }
+}
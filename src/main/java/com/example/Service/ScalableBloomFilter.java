@@ -0,0 +1,198 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scalable Bloom filter over long values (Almeida et al., 2007).
+ * A Bloom filter never reports an added value as absent, and reports an
+ * absent value as present with a false positive rate set by its size. When
+ * the current stage is full, a new stage of twice the capacity and half the
+ * false positive rate is added, so the filter grows with the number of
+ * values while the compound rate stays below the target:
+ * p/2 + p/4 + ... &lt; p.
+ */
+public final class ScalableBloomFilter {
+
+    // False positive rate ratio between a stage and the one before it
+    private static final double TIGHTENING = 0.5;
+
+    private static final int GROWTH = 2;
+
+    private final double falsePositiveRate;
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    private long count;
+
+    /**
+     * Constructor for ScalableBloomFilter.
+     *
+     * @param initialCapacity   number of values the first stage holds
+     * @param falsePositiveRate the target false positive rate, between 0 and 1
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + initialCapacity);
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        stages.add(new Stage(initialCapacity, falsePositiveRate * (1 - TIGHTENING)));
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value the value
+     */
+    public synchronized void add(long value) {
+        long hash = hash(value);
+        if (contains(hash)) {
+            return;
+        }
+        Stage last = stages.get(stages.size() - 1);
+        if (last.count >= last.capacity) {
+            last = new Stage(last.capacity * GROWTH, last.falsePositiveRate * TIGHTENING);
+            stages.add(last);
+        }
+        last.add(hash);
+        count++;
+    }
+
+    /**
+     * Checks whether a value may have been added.
+     *
+     * @param value the value
+     * @return false if the value was definitely never added
+     */
+    public synchronized boolean mightContain(long value) {
+        return contains(hash(value));
+    }
+
+    /**
+     * The number of distinct values added, less the ones taken for false
+     * positives when added.
+     *
+     * @return the value count
+     */
+    public synchronized long count() {
+        return count;
+    }
+
+    /**
+     * The number of stages the filter has grown to.
+     *
+     * @return the stage count
+     */
+    public synchronized int stages() {
+        return stages.size();
+    }
+
+    /**
+     * The memory held by the bit arrays of all stages.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long memoryBytes() {
+        return stages.stream().mapToLong(stage -> (long) stage.bits.length * Long.BYTES).sum();
+    }
+
+    /**
+     * The target false positive rate the filter was created with.
+     *
+     * @return the target rate
+     */
+    public double targetFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Estimates the current false positive rate from the fill of each stage:
+     * an absent value is a false positive if any stage matches it.
+     *
+     * @return the estimated rate
+     */
+    public synchronized double expectedFalsePositiveRate() {
+        double allMiss = 1;
+        for (Stage stage : stages) {
+            double filled = 1 - Math.exp(-(double) stage.hashes * stage.count / stage.size);
+            allMiss *= 1 - Math.pow(filled, stage.hashes);
+        }
+        return 1 - allMiss;
+    }
+
+    private boolean contains(long hash) {
+        for (Stage stage : stages) {
+            if (stage.contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // MurmurHash3 fmix64 of the value offset by the golden ratio, so 0 does
+    // not hash to 0; the two halves seed the double hashing of each stage
+    static long hash(long value) {
+        long hash = value ^ 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * One fixed-size Bloom filter; probes are h1 + i * h2 (Kirsch and
+     * Mitzenmacher), so one 64-bit hash serves every probe.
+     */
+    private static final class Stage {
+
+        private final long capacity;
+
+        private final double falsePositiveRate;
+
+        private final long[] bits;
+
+        private final long size;
+
+        private final int hashes;
+
+        private long count;
+
+        Stage(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            double ln2 = Math.log(2);
+            long optimal = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.bits = new long[(int) Math.max(1, (optimal + Long.SIZE - 1) / Long.SIZE)];
+            this.size = (long) bits.length * Long.SIZE;
+            this.hashes = (int) Math.max(1, Math.ceil(-Math.log(falsePositiveRate) / ln2));
+        }
+
+        void add(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, size);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+
+        boolean contains(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, size);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
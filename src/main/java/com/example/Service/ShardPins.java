@@ -0,0 +1,105 @@
+package com.example.Service;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PostConstruct;
+
+import com.example.Config.ShardContext;
+import com.example.Config.ShardRouter;
+import com.example.Entity.DatasetShardPin;
+import com.example.Repository.DatasetShardPinRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the dataset pins changed at runtime in the dataset_shard_pins table of
+ * the first shard, and applies them to the shard map on startup, after the
+ * pins of the configuration, so a restart routes datasets where they were
+ * last placed.
+ */
+@Component
+public class ShardPins {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardPins.class);
+
+    private final DatasetShardPinRepository pinRepository;
+
+    private final ShardRouter shardRouter;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final TransactionTemplate writeTransaction;
+
+    /**
+     * Constructor for ShardPins.
+     *
+     * @param pinRepository      the repository of persisted pins
+     * @param shardRouter        the shard map the pins are applied to
+     * @param transactionManager the transaction manager for loads and saves
+     */
+    public ShardPins(DatasetShardPinRepository pinRepository, ShardRouter shardRouter,
+            PlatformTransactionManager transactionManager) {
+        this.pinRepository = pinRepository;
+        this.shardRouter = shardRouter;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Applies the persisted pins to the shard map.
+     */
+    @PostConstruct
+    public void load() {
+        List<DatasetShardPin> pins = onHome(() -> readOnlyTransaction.execute(status -> pinRepository.findAll()));
+        for (DatasetShardPin pin : pins) {
+            if (pin.getShard() == null) {
+                shardRouter.clearOverride(pin.getDatasetName());
+            } else if (shardRouter.getShards().contains(pin.getShard())) {
+                shardRouter.override(pin.getDatasetName(), pin.getShard());
+            } else {
+                logger.warn("Ignoring the pin of dataset {} to the unknown shard {}", pin.getDatasetName(),
+                        pin.getShard());
+            }
+        }
+    }
+
+    /**
+     * Pins a dataset to a shard, now and after restarts.
+     *
+     * @param datasetName the name of the dataset
+     * @param shard       the shard that holds it from now on
+     * @throws IllegalArgumentException if the shard is unknown
+     */
+    public void pin(String datasetName, String shard) {
+        if (!shardRouter.getShards().contains(shard)) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        save(new DatasetShardPin(datasetName, shard));
+        shardRouter.override(datasetName, shard);
+    }
+
+    /**
+     * Removes the pin of a dataset, now and after restarts, also if the
+     * configuration pins it.
+     *
+     * @param datasetName the name of the dataset
+     */
+    public void unpin(String datasetName) {
+        save(new DatasetShardPin(datasetName, null));
+        shardRouter.clearOverride(datasetName);
+    }
+
+    private void save(DatasetShardPin pin) {
+        onHome(() -> writeTransaction.execute(status -> pinRepository.save(pin)));
+    }
+
+    private <T> T onHome(Supplier<T> work) {
+        return ShardContext.call(shardRouter.getShards().get(0), work);
+    }
+}
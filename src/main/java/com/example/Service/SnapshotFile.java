@@ -0,0 +1,365 @@
+package com.example.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+
+/**
+ * Snapshot of the records of a dataset on disk, read through a memory
+ * mapping. Records are fixed-width slots in id order, so opening a snapshot
+ * only reads the header and the dictionary of departments, and a record is
+ * decoded from its slot when it is read; pages the reads never touch are
+ * never loaded. All numbers are big-endian; strings are an int32 byte length
+ * followed by UTF-8 bytes.
+ *
+ * <pre>
+ * file    := header record* names footer
+ * header  := i32 "DSNP" i32 version i32 datasetId i32 records i64 changeSeq i64 namesOffset i64 footerOffset
+ * record  := i64 id i32 age i32 department i32 nameOffset i32 nameLength i32 nulls
+ * names   := the UTF-8 bytes of every name, in record order
+ * footer  := string(dataset) i32 departments string*
+ * </pre>
+ *
+ * department is an index into the footer's departments; nameOffset is
+ * relative to the names. nulls has bit 0 set for a null name, bit 1 for a
+ * null age and bit 2 for a null department. A file is at most 2 GB, the size
+ * of one mapping.
+ */
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x44534e50;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 40;
+
+    static final int RECORD_SIZE = 28;
+
+    private static final int NULL_NAME = 1;
+
+    private static final int NULL_AGE = 2;
+
+    private static final int NULL_DEPARTMENT = 4;
+
+    private final ByteBuffer buffer;
+
+    private final int datasetId;
+
+    private final int size;
+
+    private final long changeSeq;
+
+    private final int namesOffset;
+
+    private final String datasetName;
+
+    private final String[] departments;
+
+    private SnapshotFile(Path path, ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a snapshot file: " + path);
+        }
+        this.datasetId = buffer.getInt(8);
+        this.size = buffer.getInt(12);
+        this.changeSeq = buffer.getLong(16);
+        long names = buffer.getLong(24);
+        long footer = buffer.getLong(32);
+        if (size < 0 || names != HEADER_SIZE + (long) size * RECORD_SIZE || footer < names
+                || footer > buffer.capacity()) {
+            throw new IOException("Corrupt snapshot file: " + path);
+        }
+        this.namesOffset = (int) names;
+
+        ByteBuffer in = buffer.duplicate().position((int) footer);
+        try {
+            this.datasetName = readString(in);
+            this.departments = new String[in.getInt()];
+            for (int i = 0; i < departments.length; i++) {
+                departments[i] = readString(in);
+            }
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupt snapshot file: " + path, ex);
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Corrupt snapshot file: " + path);
+        }
+    }
+
+    /**
+     * Maps a snapshot file into memory.
+     *
+     * @param path the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a complete
+     *                     snapshot
+     */
+    public static SnapshotFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            // The mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            return new SnapshotFile(path, buffer);
+        }
+    }
+
+    /**
+     * Creates a snapshot file, to be filled with the records of a dataset in
+     * id order.
+     *
+     * @param path        the file to write; replaced if it exists
+     * @param datasetName the name of the dataset
+     * @param datasetId   the integer key of the dataset
+     * @param changeSeq   the last change sequence number of the dataset the
+     *                    records reflect
+     * @return the writer
+     * @throws IOException if the file cannot be created
+     */
+    public static Writer create(Path path, String datasetName, int datasetId, long changeSeq) throws IOException {
+        return new Writer(path, datasetName, datasetId, changeSeq);
+    }
+
+    public int getDatasetId() {
+        return datasetId;
+    }
+
+    public String getDatasetName() {
+        return datasetName;
+    }
+
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the records in id order, as views holding the given fields.
+     * Each read decodes the fields from the mapping; nothing is copied up
+     * front.
+     *
+     * @param fields the fields to read; the others are null in the views
+     * @return the records
+     */
+    public List<DatasetRow> records(Set<DatasetField> fields) {
+        return new Records(fields);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class Records extends AbstractList<DatasetRow> implements RandomAccess {
+
+        private final boolean id;
+
+        private final boolean datasetName;
+
+        private final boolean name;
+
+        private final boolean age;
+
+        private final boolean department;
+
+        Records(Set<DatasetField> fields) {
+            this.id = fields.contains(DatasetField.ID);
+            this.datasetName = fields.contains(DatasetField.DATASET_NAME);
+            this.name = fields.contains(DatasetField.NAME);
+            this.age = fields.contains(DatasetField.AGE);
+            this.department = fields.contains(DatasetField.DEPARTMENT);
+        }
+
+        @Override
+        public DatasetRow get(int index) {
+            Objects.checkIndex(index, size);
+            int slot = HEADER_SIZE + index * RECORD_SIZE;
+            int nulls = buffer.getInt(slot + 24);
+            String nameValue = null;
+            if (name && (nulls & NULL_NAME) == 0) {
+                byte[] bytes = new byte[buffer.getInt(slot + 20)];
+                buffer.get(namesOffset + buffer.getInt(slot + 16), bytes);
+                nameValue = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new DatasetRecordView(
+                    id ? buffer.getLong(slot) : null,
+                    datasetName ? SnapshotFile.this.datasetName : null,
+                    nameValue,
+                    age && (nulls & NULL_AGE) == 0 ? buffer.getInt(slot + 8) : null,
+                    department && (nulls & NULL_DEPARTMENT) == 0 ? departments[buffer.getInt(slot + 12)] : null);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Writes a snapshot file. Records go straight to the file and names to a
+     * temporary file next to it, appended once all records are written, so
+     * only the dictionary of departments is held in memory.
+     */
+    public static final class Writer implements Consumer<DatasetRow>, Closeable {
+
+        private final Path path;
+
+        private final Path namesPath;
+
+        private final String datasetName;
+
+        private final int datasetId;
+
+        private final long changeSeq;
+
+        private final DataOutputStream records;
+
+        private final DataOutputStream names;
+
+        // department -> index, in the order of the footer
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        private final List<String> departments = new ArrayList<>();
+
+        private int size;
+
+        private long namesLength;
+
+        private Writer(Path path, String datasetName, int datasetId, long changeSeq) throws IOException {
+            this.path = path;
+            this.datasetName = datasetName;
+            this.datasetId = datasetId;
+            this.changeSeq = changeSeq;
+            this.namesPath = Files.createTempFile(path.toAbsolutePath().getParent(), "names", ".tmp");
+            this.records = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+            this.names = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(namesPath), 64 * 1024));
+            // Filled in once the counts are known
+            records.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Adds a record.
+         *
+         * @param record the record; its id must not be null
+         * @throws UncheckedIOException  if the record cannot be written
+         * @throws IllegalStateException if the file would exceed 2 GB
+         */
+        @Override
+        public void accept(DatasetRow record) {
+            byte[] name = record.getName() == null ? null : record.getName().getBytes(StandardCharsets.UTF_8);
+            int nulls = (name == null ? NULL_NAME : 0)
+                    | (record.getAge() == null ? NULL_AGE : 0)
+                    | (record.getDepartment() == null ? NULL_DEPARTMENT : 0);
+            int department = record.getDepartment() == null ? 0 : dictionary.computeIfAbsent(
+                    record.getDepartment(), value -> {
+                        departments.add(value);
+                        return departments.size() - 1;
+                    });
+            int nameLength = name == null ? 0 : name.length;
+            if (HEADER_SIZE + (size + 1L) * RECORD_SIZE + namesLength + nameLength > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Snapshot of " + datasetName + " exceeds 2 GB");
+            }
+            try {
+                records.writeLong(record.getId());
+                records.writeInt(record.getAge() == null ? 0 : record.getAge());
+                records.writeInt(department);
+                records.writeInt((int) namesLength);
+                records.writeInt(nameLength);
+                records.writeInt(nulls);
+                if (name != null) {
+                    names.write(name);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            size++;
+            namesLength += nameLength;
+        }
+
+        /**
+         * Appends the names and the footer, writes the header and forces the
+         * file to disk.
+         *
+         * @return the number of records written
+         * @throws IOException if the file cannot be written
+         */
+        public int finish() throws IOException {
+            names.close();
+            Files.copy(namesPath, records);
+            long footerOffset = HEADER_SIZE + (long) size * RECORD_SIZE + namesLength;
+            writeString(datasetName);
+            records.writeInt(departments.size());
+            for (String department : departments) {
+                writeString(department);
+            }
+            records.close();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(datasetId)
+                    .putInt(size)
+                    .putLong(changeSeq)
+                    .putLong(HEADER_SIZE + (long) size * RECORD_SIZE)
+                    .putLong(footerOffset)
+                    .flip();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+            Files.deleteIfExists(namesPath);
+            return size;
+        }
+
+        /**
+         * Closes the file and removes the temporary file of the names. A file
+         * closed before {@link #finish()} is incomplete and fails to open.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                names.close();
+                records.close();
+            } finally {
+                Files.deleteIfExists(namesPath);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            records.writeInt(bytes.length);
+            records.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Keeps the first k items of a stream in a given order without sorting the
+ * whole stream: a bounded max-heap whose head is the worst item kept, so each
+ * offer costs O(log k) and memory stays O(k).
+ *
+ * @param <T> the item type
+ */
+public final class TopK<T> {
+
+    private final int k;
+
+    private final Comparator<? super T> order;
+
+    private final PriorityQueue<T> heap;
+
+    /**
+     * Constructor for TopK.
+     *
+     * @param k     the number of items to keep
+     * @param order the order in which the first items are kept
+     * @throws IllegalArgumentException if k is not positive
+     */
+    public TopK(int k, Comparator<? super T> order) {
+        if (k < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + k);
+        }
+        this.k = k;
+        this.order = order;
+        this.heap = new PriorityQueue<>(Math.min(k, 64) + 1, order.reversed());
+    }
+
+    /**
+     * Offers an item, keeping it only if it is among the first k seen so far.
+     *
+     * @param item the item
+     */
+    public void offer(T item) {
+        if (heap.size() < k) {
+            heap.add(item);
+        } else if (order.compare(item, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(item);
+        }
+    }
+
+    /**
+     * Returns the kept items in order.
+     *
+     * @return at most k items, first first
+     */
+    public List<T> toList() {
+        List<T> items = new ArrayList<>(heap);
+        items.sort(order);
+        return items;
+    }
+
+    /**
+     * Collects the first k items of a stream in order.
+     *
+     * @param <T>   the item type
+     * @param k     the number of items to keep
+     * @param order the order in which the first items are kept
+     * @return a collector producing at most k items, first first
+     */
+    public static <T> Collector<T, ?, List<T>> collector(int k, Comparator<? super T> order) {
+        return Collector.of(
+                () -> new TopK<T>(k, order),
+                TopK::offer,
+                (left, right) -> {
+                    right.heap.forEach(left::offer);
+                    return left;
+                },
+                TopK::toList);
+    }
+}
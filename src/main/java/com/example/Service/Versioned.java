@@ -0,0 +1,12 @@
+package com.example.Service;
+
+/**
+ * The result of a query along with the version of the dataset it was read
+ * at.
+ *
+ * @param version the dataset version read in the query's transaction, or
+ *                null if the query read no dataset
+ * @param result  the query result
+ */
+public record Versioned<T>(String version, T result) {
+}
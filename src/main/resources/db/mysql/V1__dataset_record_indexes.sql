@@ -0,0 +1,8 @@
+-- Composite indexes for dataset-scoped queries on dataset_records.
+-- ddl-auto=update creates these from the @Table annotation on DatasetRecord;
+-- run this script on databases where schema changes are applied by hand.
+
+CREATE INDEX idx_dataset_records_id ON dataset_records (dataset_name, id);
+CREATE INDEX idx_dataset_records_name ON dataset_records (dataset_name, name, id);
+CREATE INDEX idx_dataset_records_age ON dataset_records (dataset_name, age, id);
+CREATE INDEX idx_dataset_records_department ON dataset_records (dataset_name, department, id);
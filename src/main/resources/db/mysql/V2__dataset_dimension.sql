@@ -0,0 +1,29 @@
+-- Moves dataset names into the "datasets" dimension table and keys
+-- dataset_records by the compact integer dataset_id.
+-- dataset_name stays on the record as a plain label; indexes and queries use dataset_id.
+
+CREATE TABLE IF NOT EXISTS datasets (
+    id INT NOT NULL AUTO_INCREMENT,
+    name VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_datasets_name UNIQUE (name)
+);
+
+INSERT IGNORE INTO datasets (name)
+SELECT DISTINCT dataset_name FROM dataset_records WHERE dataset_name IS NOT NULL;
+
+ALTER TABLE dataset_records ADD COLUMN dataset_id INT NULL;
+
+UPDATE dataset_records r
+JOIN datasets d ON d.name = r.dataset_name
+SET r.dataset_id = d.id;
+
+DROP INDEX idx_dataset_records_id ON dataset_records;
+DROP INDEX idx_dataset_records_name ON dataset_records;
+DROP INDEX idx_dataset_records_age ON dataset_records;
+DROP INDEX idx_dataset_records_department ON dataset_records;
+
+CREATE INDEX idx_dataset_records_id ON dataset_records (dataset_id, id);
+CREATE INDEX idx_dataset_records_name ON dataset_records (dataset_id, name, id);
+CREATE INDEX idx_dataset_records_age ON dataset_records (dataset_id, age, id);
+CREATE INDEX idx_dataset_records_department ON dataset_records (dataset_id, department, id);
@@ -0,0 +1,13 @@
+-- Partitions dataset_records by dataset_id for dataset.partitioning.strategy=mysql-range.
+-- MySQL requires the partitioning column in every unique key, so the primary key
+-- becomes (id, dataset_id); V7__dataset_record_ids.sql keeps record ids unique.
+-- MySqlRangePartitioning splits p_max into one partition per dataset on startup.
+
+ALTER TABLE dataset_records MODIFY dataset_id INT NOT NULL;
+
+ALTER TABLE dataset_records DROP PRIMARY KEY, ADD PRIMARY KEY (id, dataset_id);
+
+ALTER TABLE dataset_records
+    PARTITION BY RANGE (dataset_id) (
+        PARTITION p_max VALUES LESS THAN MAXVALUE
+    );
@@ -0,0 +1,19 @@
+-- Adds the per-dataset change sequence read by GET /api/dataset/{name}/changes.
+-- Existing records are numbered in id order within their dataset, and each
+-- dataset row keeps the last number handed out.
+
+ALTER TABLE datasets ADD COLUMN change_seq BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE dataset_records ADD COLUMN change_seq BIGINT NULL;
+
+UPDATE dataset_records r
+JOIN (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY dataset_id ORDER BY id) AS seq
+    FROM dataset_records
+) numbered ON numbered.id = r.id
+SET r.change_seq = numbered.seq;
+
+UPDATE datasets d
+SET d.change_seq = (SELECT COALESCE(MAX(r.change_seq), 0) FROM dataset_records r WHERE r.dataset_id = d.id);
+
+CREATE INDEX idx_dataset_records_change_seq ON dataset_records (dataset_id, change_seq);
@@ -0,0 +1,18 @@
+-- Adds the per-department rollups maintained by every insert and read by the
+-- unfiltered count and age aggregate queries. Datasets that exist before the
+-- rollups are marked not ready and keep being scanned until
+-- POST /api/dataset/rollups/rebuild backfills them; datasets created
+-- afterwards are marked ready and rolled up from their first record.
+
+CREATE TABLE IF NOT EXISTS dataset_rollups (
+    dataset_id INT NOT NULL,
+    department VARCHAR(255) NOT NULL,
+    record_count BIGINT NOT NULL,
+    age_count BIGINT NOT NULL,
+    age_sum BIGINT NOT NULL,
+    age_min INT,
+    age_max INT,
+    PRIMARY KEY (dataset_id, department)
+);
+
+ALTER TABLE datasets ADD COLUMN rollup_ready BOOLEAN NOT NULL DEFAULT FALSE;
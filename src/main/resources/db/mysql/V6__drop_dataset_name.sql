@@ -0,0 +1,14 @@
+-- Drops the per-record copy of the dataset name left by V2. Records are keyed
+-- by dataset_id alone and the name is read from the "datasets" table.
+-- Records written without a key since V2 are assigned one first.
+
+INSERT IGNORE INTO datasets (name, rollup_ready)
+SELECT DISTINCT dataset_name, FALSE FROM dataset_records
+WHERE dataset_id IS NULL AND dataset_name IS NOT NULL;
+
+UPDATE dataset_records r
+JOIN datasets d ON d.name = r.dataset_name
+SET r.dataset_id = d.id
+WHERE r.dataset_id IS NULL;
+
+ALTER TABLE dataset_records DROP COLUMN dataset_name;
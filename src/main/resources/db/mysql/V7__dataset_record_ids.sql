@@ -0,0 +1,20 @@
+-- Keeps record ids unique across datasets on the partitioned dataset_records of
+-- V3, whose primary key (id, dataset_id) no longer does. Every inserted id is
+-- claimed in the unpartitioned dataset_record_ids, so inserting an id that
+-- another dataset holds fails with a duplicate key error, also when two inserts
+-- race past the existence check. MySqlRangePartitioning refuses to start
+-- without the triggers, and releases the ids of a partition before dropping it,
+-- since DROP PARTITION does not fire delete triggers.
+
+CREATE TABLE IF NOT EXISTS dataset_record_ids (
+    id BIGINT NOT NULL PRIMARY KEY
+);
+
+INSERT INTO dataset_record_ids (id)
+    SELECT id FROM dataset_records;
+
+CREATE TRIGGER dataset_records_claim_id BEFORE INSERT ON dataset_records
+    FOR EACH ROW INSERT INTO dataset_record_ids (id) VALUES (NEW.id);
+
+CREATE TRIGGER dataset_records_release_id AFTER DELETE ON dataset_records
+    FOR EACH ROW DELETE FROM dataset_record_ids WHERE id = OLD.id;
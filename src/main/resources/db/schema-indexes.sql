@@ -0,0 +1,8 @@
+-- Indexes of dataset_records for a new shard, in SQL accepted by both MySQL and H2.
+-- Runs once per shard primary, right after dataset_records is created.
+
+CREATE INDEX idx_dataset_records_id ON dataset_records (dataset_id, id);
+CREATE INDEX idx_dataset_records_name ON dataset_records (dataset_id, name, id);
+CREATE INDEX idx_dataset_records_age ON dataset_records (dataset_id, age, id);
+CREATE INDEX idx_dataset_records_department ON dataset_records (dataset_id, department, id);
+CREATE INDEX idx_dataset_records_change_seq ON dataset_records (dataset_id, change_seq);
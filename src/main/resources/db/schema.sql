@@ -0,0 +1,49 @@
+-- Dataset tables of a shard, in SQL accepted by both MySQL and H2.
+-- Runs on every shard primary at startup, so tables added later are created on
+-- existing shards too (columns added later are not; see db/mysql/V4 and V5); keep it in
+-- sync with the entities. Indexes are in
+-- db/schema-indexes.sql and partitioning (db/mysql/V3) is applied separately.
+
+CREATE TABLE IF NOT EXISTS datasets (
+    id INT NOT NULL AUTO_INCREMENT,
+    name VARCHAR(255) NOT NULL,
+    change_seq BIGINT DEFAULT 0 NOT NULL,
+    rollup_ready BOOLEAN DEFAULT FALSE NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_datasets_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS dataset_records (
+    id BIGINT NOT NULL,
+    dataset_id INT,
+    name VARCHAR(255),
+    age INT,
+    department VARCHAR(255),
+    change_seq BIGINT,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS dataset_sketches (
+    dataset_id INT NOT NULL,
+    field_name VARCHAR(32) NOT NULL,
+    registers VARBINARY(4096) NOT NULL,
+    PRIMARY KEY (dataset_id, field_name)
+);
+
+CREATE TABLE IF NOT EXISTS dataset_rollups (
+    dataset_id INT NOT NULL,
+    department VARCHAR(255) NOT NULL,
+    record_count BIGINT NOT NULL,
+    age_count BIGINT NOT NULL,
+    age_sum BIGINT NOT NULL,
+    age_min INT,
+    age_max INT,
+    PRIMARY KEY (dataset_id, department)
+);
+
+-- Read from the first shard only
+CREATE TABLE IF NOT EXISTS dataset_shard_pins (
+    dataset_name VARCHAR(255) NOT NULL,
+    shard VARCHAR(64),
+    PRIMARY KEY (dataset_name)
+);
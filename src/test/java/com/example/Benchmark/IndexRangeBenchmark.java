@@ -0,0 +1,140 @@
+package com.example.Benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares a full scan against an index range read on dataset_records as the
+ * table grows. The "scan" variant has no secondary indexes, like the table
+ * ddl-auto used to create; the "index" variant has the composite
+ * (dataset_name, field, id) indexes declared on DatasetRecord.
+ *
+ * Run with:
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main IndexRangeBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IndexRangeBenchmark {
+
+    private static final int DATASETS = 50;
+
+    private static final String[] DEPARTMENTS = { "Engineering", "HR", "Marketing", "Sales", "Finance" };
+
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    @Param({ "scan", "index" })
+    public String access;
+
+    private Connection connection;
+
+    private PreparedStatement sortedByAge;
+
+    private PreparedStatement ageRange;
+
+    private int dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:index-range-" + access + "-" + rows, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE dataset_records (id BIGINT PRIMARY KEY, dataset_name VARCHAR(255),"
+                    + " name VARCHAR(255), age INT, department VARCHAR(255))");
+            if (access.equals("index")) {
+                statement.execute("CREATE INDEX idx_dataset_records_id ON dataset_records (dataset_name, id)");
+                statement.execute("CREATE INDEX idx_dataset_records_age ON dataset_records (dataset_name, age, id)");
+                statement.execute("CREATE INDEX idx_dataset_records_department"
+                        + " ON dataset_records (dataset_name, department, id)");
+            }
+        }
+
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO dataset_records (id, dataset_name, name, age, department) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                insert.setLong(1, i);
+                insert.setString(2, "dataset" + (i % DATASETS));
+                insert.setString(3, "Person " + i);
+                insert.setInt(4, 18 + random.nextInt(50));
+                insert.setString(5, DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]);
+                insert.addBatch();
+                if (i % 10_000 == 9_999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        sortedByAge = connection.prepareStatement(
+                "SELECT id, name, age, department FROM dataset_records WHERE dataset_name = ? ORDER BY age, id");
+        ageRange = connection.prepareStatement("SELECT id, name, age, department FROM dataset_records"
+                + " WHERE dataset_name = ? AND age BETWEEN ? AND ? ORDER BY age, id");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void sortByAge(Blackhole blackhole) throws SQLException {
+        sortedByAge.setString(1, nextDataset());
+        consume(sortedByAge, blackhole);
+    }
+
+    @Benchmark
+    public void ageRange(Blackhole blackhole) throws SQLException {
+        ageRange.setString(1, nextDataset());
+        ageRange.setInt(2, 30);
+        ageRange.setInt(3, 35);
+        consume(ageRange, blackhole);
+    }
+
+    private String nextDataset() {
+        dataset = (dataset + 1) % DATASETS;
+        return "dataset" + dataset;
+    }
+
+    private static void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(rs.getLong(1));
+                blackhole.consume(rs.getString(2));
+                blackhole.consume(rs.getInt(3));
+                blackhole.consume(rs.getString(4));
+            }
+        }
+    }
+}
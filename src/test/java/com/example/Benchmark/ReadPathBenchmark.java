@@ -0,0 +1,111 @@
+package com.example.Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.BackendoperationsApplication;
+import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRow;
+import com.example.Repository.DatasetQueryRepository;
+import com.example.Repository.DatasetRepository;
+
+/**
+ * Compares reading one dataset as managed DatasetRecord entities with reading
+ * it as DatasetRecordView projections, each in its own read-only transaction
+ * like a groupBy/sortBy request.
+ *
+ * Time per call is the time-to-response of the query; run with -prof gc and
+ * divide gc.alloc.rate.norm by the row count for the heap allocated per row.
+ *
+ * Run with:
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main ReadPathBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReadPathBenchmark {
+
+    private static final String[] DEPARTMENTS = { "Engineering", "HR", "Marketing", "Sales", "Finance" };
+
+    @Param({ "1000", "10000", "100000" })
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+
+    private DatasetRepository datasetRepository;
+
+    private DatasetQueryRepository datasetQueryRepository;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private int datasetId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(BackendoperationsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:read-path-" + rows,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN")
+                .run();
+        datasetRepository = context.getBean(DatasetRepository.class);
+        datasetQueryRepository = context.getBean(DatasetQueryRepository.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO datasets (name) VALUES ('benchmark')");
+        datasetId = jdbcTemplate.queryForObject("SELECT id FROM datasets WHERE name = 'benchmark'", Integer.class);
+
+        Random random = new Random(42);
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[] { (long) i, datasetId, "Person", 18 + random.nextInt(50),
+                    DEPARTMENTS[random.nextInt(DEPARTMENTS.length)] });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO dataset_records (id, dataset_id, name, age, department)"
+                + " VALUES (?, ?, ?, ?, ?)", batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<DatasetRecord> entities() {
+        return readOnlyTransaction.execute(status -> datasetRepository.findByDatasetId(datasetId));
+    }
+
+    @Benchmark
+    public List<DatasetRow> views() {
+        return readOnlyTransaction.execute(status -> datasetQueryRepository.findByDatasetId(datasetId));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.Benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Compares encoding a sortedRecords response as JSON, CBOR and Smile, with
+ * object mappers built like the HTTP message converters build theirs. Each
+ * response is written to a stream that only counts bytes, like the
+ * converters write to the response without buffering it.
+ *
+ * Throughput is responses encoded per second; the "bytes" counter is the
+ * size of one response in the format.
+ *
+ * Run with:
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath org.openjdk.jmh.Main ResponseFormatBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResponseFormatBenchmark {
+
+    private static final String[] DEPARTMENTS = { "Engineering", "HR", "Marketing", "Sales", "Finance" };
+
+    @Param({ "100", "10000" })
+    public int rows;
+
+    @Param({ "json", "cbor", "smile" })
+    public String format;
+
+    private ObjectMapper mapper;
+
+    private Map<String, Object> response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        mapper = switch (format) {
+            case "cbor" -> builder.factory(new CBORFactory()).build();
+            case "smile" -> builder.factory(new SmileFactory()).build();
+            default -> builder.build();
+        };
+
+        Random random = new Random(42);
+        List<DatasetRow> records = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            records.add(new DatasetRecordView((long) i, "employees", "Person " + i, 18 + random.nextInt(50),
+                    DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]));
+        }
+        response = Map.of("sortedRecords", records);
+    }
+
+    @Benchmark
+    public void encode(Size size) throws IOException {
+        CountingStream out = new CountingStream();
+        mapper.writeValue(out, response);
+        size.bytes = out.count;
+    }
+
+    /**
+     * Size of the last encoded response.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+
+        public long bytes;
+    }
+
+    private static final class CountingStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.Config.DataSourceRoutingProperties.ReplicaSelection;
+
+/**
+ * Routes between two in-memory H2 databases standing in for a primary and a
+ * replica; each one answers with its own name.
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+    private SessionConsistency sessionConsistency;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private TransactionTemplate writeTransaction;
+
+    @BeforeEach
+    void setup() {
+        DataSource primary = node("primary");
+        DataSource replica = node("replica0");
+
+        sessionConsistency = new SessionConsistency(Duration.ofMinutes(1));
+        ReplicaSelector selector = new ReplicaSelector(Map.of("replica0", replica), ReplicaSelection.ROUND_ROBIN);
+        DataSource routing = new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(
+                primary, selector.getReplicas(), selector, sessionConsistency));
+
+        jdbcTemplate = new JdbcTemplate(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionConsistency.clear();
+    }
+
+    private static DataSource node(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(32))");
+        template.execute("DELETE FROM node");
+        template.update("INSERT INTO node (name) VALUES (?)", name);
+        return dataSource;
+    }
+
+    private String answeringNode(TransactionTemplate transaction) {
+        return transaction.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    @Test
+    void testReadOnlyTransactionGoesToReplica() {
+        assertThat(answeringNode(readOnlyTransaction)).isEqualTo("replica0");
+    }
+
+    @Test
+    void testWriteTransactionGoesToPrimary() {
+        assertThat(answeringNode(writeTransaction)).isEqualTo("primary");
+    }
+
+    private void write(TransactionTemplate transaction, boolean commit) {
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE node SET name = name");
+            if (!commit) {
+                status.setRollbackOnly();
+            }
+        });
+    }
+
+    @Test
+    void testSessionReadsItsOwnWritesFromPrimary() {
+        sessionConsistency.bind("client-a");
+        write(writeTransaction, true);
+        assertThat(answeringNode(readOnlyTransaction)).isEqualTo("primary");
+
+        sessionConsistency.bind("client-b");
+        assertThat(answeringNode(readOnlyTransaction)).isEqualTo("replica0");
+    }
+
+    @Test
+    void testOnlyCommittedWritesPinTheSession() {
+        sessionConsistency.bind("client-a");
+        // A read-write transaction that only reads
+        answeringNode(writeTransaction);
+        assertThat(answeringNode(readOnlyTransaction)).isEqualTo("replica0");
+
+        write(writeTransaction, false);
+        assertThat(answeringNode(readOnlyTransaction)).isEqualTo("replica0");
+
+        // Auto-commit writes are committed right away
+        jdbcTemplate.update("UPDATE node SET name = name");
+        assertThat(answeringNode(readOnlyTransaction)).isEqualTo("primary");
+    }
+
+    @Test
+    void testLeastLatencyPicksFastestHealthyReplica() {
+        ReplicaSelector selector = new ReplicaSelector(
+                Map.of("replica0", node("replica0"), "replica1", node("replica1")),
+                ReplicaSelection.LEAST_LATENCY);
+        selector.recordLatency("replica0", 5_000_000);
+        selector.recordLatency("replica1", 1_000_000);
+        assertThat(selector.select()).contains("replica1");
+    }
+
+    @Test
+    void testRoundRobinRotatesOverReplicas() {
+        ReplicaSelector selector = new ReplicaSelector(
+                Map.of("replica0", node("replica0"), "replica1", node("replica1")),
+                ReplicaSelection.ROUND_ROBIN);
+        assertThat(selector.select()).contains("replica0");
+        assertThat(selector.select()).contains("replica1");
+        assertThat(selector.select()).contains("replica0");
+    }
+
+    @Test
+    void testUnreachableReplicaIsSkipped() {
+        ReplicaSelector selector = new ReplicaSelector(
+                Map.of("replica0", new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/unreachable", "sa", "")),
+                ReplicaSelection.ROUND_ROBIN);
+        selector.probe();
+        assertThat(selector.select()).isEmpty();
+    }
+}
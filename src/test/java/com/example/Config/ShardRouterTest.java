@@ -0,0 +1,72 @@
+package com.example.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardRouterTest {
+
+    private static final List<String> SHARDS = List.of("shard0", "shard1", "shard2");
+
+    @Test
+    void testPlacementIsStableAndBalanced() {
+        ShardRouter router = new ShardRouter(SHARDS, Map.of(), 128);
+        ShardRouter sameConfig = new ShardRouter(SHARDS, Map.of(), 128);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            String dataset = "dataset" + i;
+            assertThat(router.shardFor(dataset)).isEqualTo(sameConfig.shardFor(dataset));
+            counts.merge(router.shardFor(dataset), 1, Integer::sum);
+        }
+        assertThat(counts).containsOnlyKeys(SHARDS);
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(700, 1300));
+    }
+
+    @Test
+    void testAddingShardMovesOnlyItsShare() {
+        ShardRouter before = new ShardRouter(SHARDS, Map.of(), 128);
+        ShardRouter after = new ShardRouter(List.of("shard0", "shard1", "shard2", "shard3"), Map.of(), 128);
+
+        int moved = 0;
+        for (int i = 0; i < 4000; i++) {
+            String dataset = "dataset" + i;
+            if (!before.shardFor(dataset).equals(after.shardFor(dataset))) {
+                assertThat(after.shardFor(dataset)).isEqualTo("shard3");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(700, 1300);
+    }
+
+    @Test
+    void testOverrideTakesPrecedence() {
+        ShardRouter router = new ShardRouter(SHARDS, Map.of("pinned", "shard2"), 128);
+        assertThat(router.shardFor("pinned")).isEqualTo("shard2");
+
+        String hashed = new ShardRouter(SHARDS, Map.of(), 128).shardFor("moving");
+        String target = SHARDS.stream().filter(shard -> !shard.equals(hashed)).findFirst().orElseThrow();
+        router.override("moving", target);
+        assertThat(router.shardFor("moving")).isEqualTo(target);
+        router.clearOverride("moving");
+        assertThat(router.shardFor("moving")).isEqualTo(hashed);
+
+        assertThrows(IllegalArgumentException.class, () -> router.override("moving", "unknown"));
+    }
+
+    @Test
+    void testFanOutRunsOnEveryShard() {
+        ShardRouter router = new ShardRouter(SHARDS, Map.of(), 128);
+        try {
+            assertThat(router.onAllShards(ShardContext::current)).containsExactlyElementsOf(SHARDS);
+            assertThat(ShardContext.current()).isNull();
+        } finally {
+            router.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRow;
+import com.example.Repository.DatasetShardPinRepository;
+import com.example.Service.DatasetService;
+import com.example.Service.ShardPins;
+
+/**
+ * Runs the service against three in-memory H2 databases standing in for
+ * shards, and checks where the rows physically end up.
+ */
+@SpringBootTest(properties = {
+        "dataset.datasource.routing.enabled=true",
+        "dataset.datasource.shards[0].name=shard0",
+        "dataset.datasource.shards[0].url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+        "dataset.datasource.shards[0].username=sa",
+        "dataset.datasource.shards[1].name=shard1",
+        "dataset.datasource.shards[1].url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+        "dataset.datasource.shards[1].username=sa",
+        "dataset.datasource.shards[2].name=shard2",
+        "dataset.datasource.shards[2].url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+        "dataset.datasource.shards[2].username=sa"
+})
+class ShardingIntegrationTest {
+
+    private static final String ROWS_OF_DATASET = "SELECT COUNT(*) FROM dataset_records r"
+            + " JOIN datasets d ON d.id = r.dataset_id WHERE d.name = ?";
+
+    @Autowired
+    private DatasetService datasetService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private DatasetShardPinRepository pinRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static JdbcTemplate shard(String name) {
+        return new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", ""));
+    }
+
+    private static DatasetRecord record(long id, String name, int age) {
+        DatasetRecord rec = new DatasetRecord();
+        rec.setId(id);
+        rec.setName(name);
+        rec.setAge(age);
+        rec.setDepartment("Engineering");
+        return rec;
+    }
+
+    @Test
+    void testDatasetsArePlacedOnTheirShard() {
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 12; i++) {
+            String dataset = "Placement" + i;
+            datasetService.insertRecord(dataset, record(1000 + i * 2, "Alice", 30));
+            datasetService.insertRecord(dataset, record(1001 + i * 2, "Bob", 40));
+            used.add(shardRouter.shardFor(dataset));
+        }
+        assertThat(used).hasSizeGreaterThan(1);
+
+        for (int i = 0; i < 12; i++) {
+            String dataset = "Placement" + i;
+            String home = shardRouter.shardFor(dataset);
+            for (String name : shardRouter.getShards()) {
+                Integer rows = shard(name).queryForObject(
+                        ROWS_OF_DATASET, Integer.class, dataset);
+                assertThat(rows).as(dataset + " on " + name).isEqualTo(name.equals(home) ? 2 : 0);
+            }
+            Map<String, List<DatasetRow>> grouped = datasetService.groupByField(dataset, "age");
+            assertThat(grouped).containsOnlyKeys("30", "40");
+        }
+    }
+
+    @Test
+    void testExistsByIdFansOutToAllShards() {
+        for (String name : shardRouter.getShards()) {
+            String dataset = "Exists-" + name;
+            shardRouter.override(dataset, name);
+            datasetService.insertRecord(dataset, record(2000 + name.charAt(5), "Carol", 25));
+        }
+        for (String name : shardRouter.getShards()) {
+            assertThat(datasetService.existsById(2000L + name.charAt(5))).isTrue();
+        }
+        assertThat(datasetService.existsById(2999L)).isFalse();
+    }
+
+    @Test
+    void testPinnedDatasetIsWrittenToItsShard() {
+        String dataset = "Pinned";
+        String hashed = shardRouter.shardFor(dataset);
+        String target = shardRouter.getShards().stream()
+                .filter(name -> !name.equals(hashed))
+                .findFirst()
+                .orElseThrow();
+
+        datasetService.pinDataset(dataset, target);
+        try {
+            datasetService.insertRecord(dataset, record(3000, "Dave", 50));
+            assertThat(shard(target).queryForObject(
+                    ROWS_OF_DATASET, Integer.class, dataset))
+                    .isEqualTo(1);
+            assertThat(shard(hashed).queryForObject(
+                    ROWS_OF_DATASET, Integer.class, dataset))
+                    .isZero();
+        } finally {
+            datasetService.unpinDataset(dataset);
+        }
+    }
+
+    @Test
+    void testPinsSurviveARestart() {
+        String dataset = "Durable";
+        String hashed = shardRouter.shardFor(dataset);
+        String target = shardRouter.getShards().stream()
+                .filter(name -> !name.equals(hashed))
+                .findFirst()
+                .orElseThrow();
+
+        datasetService.pinDataset(dataset, target);
+        try {
+            assertThat(shard("shard0").queryForObject(
+                    "SELECT shard FROM dataset_shard_pins WHERE dataset_name = ?", String.class, dataset))
+                    .isEqualTo(target);
+            assertThat(restarted().shardFor(dataset)).isEqualTo(target);
+        } finally {
+            datasetService.unpinDataset(dataset);
+        }
+        assertThat(restarted().shardFor(dataset)).isEqualTo(hashed);
+
+        // An unpin also outlasts a pin of the configuration
+        ShardRouter configured = new ShardRouter(shardRouter.getShards(), Map.of(dataset, target), 128);
+        new ShardPins(pinRepository, configured, transactionManager).load();
+        assertThat(configured.shardFor(dataset)).isEqualTo(hashed);
+    }
+
+    private ShardRouter restarted() {
+        ShardRouter router = new ShardRouter(shardRouter.getShards(), Map.of(), 128);
+        new ShardPins(pinRepository, router, transactionManager).load();
+        return router;
+    }
+}
@@ -1,16 +1,28 @@
 package com.example.Controller;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,13 +30,35 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import com.example.Entity.DatasetAggregate;
+import com.example.Entity.DatasetChanges;
 import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetSample;
+import com.example.Entity.GroupCount;
+import com.example.Entity.HistogramBucket;
+import com.example.Entity.RecordBatch;
+import com.example.Entity.DatasetRow;
+import com.example.Exception.DatasetNotFoundException;
 import com.example.Exception.GlobalExceptionHandler;
 import com.example.Exception.InvalidFieldException;
+import com.example.Service.BatchQuery;
+import com.example.Service.ColumnarWriter;
 import com.example.Service.DatasetService;
+import com.example.Service.QueryOptions;
+import com.example.Service.QueryPlanner;
+import com.example.Service.Versioned;
 import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @WebMvcTest(DatasetController.class)
 @Import(GlobalExceptionHandler.class)
@@ -46,12 +80,16 @@ public class DatasetControllerTest {
                 record.setName("Alice");
                 record.setAge(25);
                 record.setDepartment("Engineering");
+                // Queries are tagged with the version the mock hands out
+                when(datasetService.version(anyString())).thenReturn("1.1.1");
+                when(datasetService.versioned(anyString(), any())).thenAnswer(invocation -> new Versioned<>(
+                                datasetService.version(invocation.getArgument(0)),
+                                invocation.<Supplier<?>>getArgument(1).get()));
         }
 
         @Test
         void testAddRecordSuccess() throws Exception {
-                when(datasetService.existsById(1L)).thenReturn(false);
-                when(datasetService.insertRecord(eq("TestDS"), any(DatasetRecord.class))).thenReturn(record);
+                when(datasetService.addRecord(eq("TestDS"), any(DatasetRecord.class))).thenReturn(record);
 
                 String json = """
                                     {
@@ -74,7 +112,8 @@ public class DatasetControllerTest {
 
         @Test
         void testAddRecordDuplicateId() throws Exception {
-                when(datasetService.existsById(1L)).thenReturn(true);
+                when(datasetService.addRecord(eq("TestDS"), any(DatasetRecord.class)))
+                                .thenThrow(new IllegalArgumentException(DatasetService.DUPLICATE_ID));
 
                 String json = """
                                     {
@@ -564,7 +603,7 @@ public class DatasetControllerTest {
                 record3.setAge(22);
                 record3.setDepartment("BCA");
 
-                List<DatasetRecord> sortedList = List.of(record3, record, record2);
+                List<DatasetRow> sortedList = List.of(record3, record, record2);
 
                 when(datasetService.getSortedRecords(anyString(), anyString(), anyString()))
                                 .thenReturn(sortedList);
@@ -751,4 +790,444 @@ public class DatasetControllerTest {
                                                 .value("Invalid sort order: invalidOrder. Use 'asc' or 'desc'."));
         }
 
+        @Test
+        void testDropDataset() throws Exception {
+                mockMvc.perform(delete("/api/dataset/TestDS"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.message").value("Dataset dropped successfully"))
+                                .andExpect(jsonPath("$.dataset").value("TestDS"));
+        }
+
+        @Test
+        void testDropDatasetNotFound() throws Exception {
+                doThrow(new DatasetNotFoundException("No records found for dataset: Unknown"))
+                                .when(datasetService).dropDataset("Unknown");
+
+                mockMvc.perform(delete("/api/dataset/Unknown"))
+                                .andExpect(status().isNotFound())
+                                .andExpect(jsonPath("$.error").value("No records found for dataset: Unknown"));
+        }
+
+
+        @Test
+        void testAggregate() throws Exception {
+                when(datasetService.aggregate(eq("TestDS"), eq("age")))
+                                .thenReturn(new DatasetAggregate(2, 50, 20L, 30L, 25.0));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("aggregate", "age")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.aggregates.count").value(2))
+                                .andExpect(jsonPath("$.aggregates.avg").value(25.0));
+        }
+
+        @Test
+        void testAggregateByGroup() throws Exception {
+                when(datasetService.aggregateByGroup(eq("TestDS"), eq("age"), eq("department")))
+                                .thenReturn(Map.of("HR", new DatasetAggregate(1, 30, 30L, 30L, 30.0)));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("aggregate", "age")
+                                .param("groupBy", "department")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.groupedAggregates.HR.max").value(30));
+        }
+
+        @Test
+        void testExplainReturnsPlanWithoutRunningQuery() throws Exception {
+                when(datasetService.explain(eq("TestDS"), any(BatchQuery.class)))
+                                .thenReturn(new QueryPlanner.Plan(QueryPlanner.Strategy.PARALLEL_SCAN, 50_000, false,
+                                                false, false, 79_000, Map.of(QueryPlanner.Strategy.SQL, 89_000L,
+                                                                QueryPlanner.Strategy.PARALLEL_SCAN, 79_000L)));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("sortBy", "name")
+                                .param("limit", "10")
+                                .param("explain", "true")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.plan.strategy").value("PARALLEL_SCAN"))
+                                .andExpect(jsonPath("$.plan.estimatedRows").value(50_000))
+                                .andExpect(jsonPath("$.plan.costs.SQL").value(89_000));
+
+                verify(datasetService).explain(eq("TestDS"), eq(new BatchQuery(null, null, false, false, "name",
+                                "asc", 10, null, null, null, null, null, null)));
+                verify(datasetService, times(0)).getSortedRecords(anyString(), anyString(), anyString());
+        }
+
+        @Test
+        void testExplainOfMissingDataset() throws Exception {
+                when(datasetService.explain(eq("Missing"), any(BatchQuery.class)))
+                                .thenThrow(new DatasetNotFoundException("No records found for dataset: Missing"));
+
+                mockMvc.perform(get("/api/dataset/Missing/query")
+                                .param("aggregate", "age")
+                                .param("explain", "true")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isNotFound());
+        }
+
+        @Test
+        void testAggregateInvalidField() throws Exception {
+                when(datasetService.aggregate(eq("TestDS"), eq("name")))
+                                .thenThrow(new InvalidFieldException("Unsupported aggregate field: name"));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("aggregate", "name")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.error").value("Unsupported aggregate field: name"));
+        }
+
+        @Test
+        void testSortedWithFields() throws Exception {
+                when(datasetService.getSortedRecords(eq("TestDS"), eq("age"), eq("asc"), any(QueryOptions.class)))
+                                .thenReturn(List.of(new DatasetRecordView(1L, null, null, null, "HR")));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("sortBy", "age")
+                                .param("fields", "id,department")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.sortedRecords[0].id").value(1))
+                                .andExpect(jsonPath("$.sortedRecords[0].department").value("HR"))
+                                .andExpect(jsonPath("$.sortedRecords[0].name").doesNotExist());
+        }
+
+        @Test
+        void testExportStreamsColumnarBody() throws Exception {
+                when(datasetService.export(eq("TestDS"), eq(500), any(QueryOptions.class)))
+                                .thenReturn(out -> out.write(new byte[] { 'D', 'S', 'C', 'O', 'L' }));
+
+                MvcResult result = mockMvc.perform(get("/api/dataset/TestDS/export")
+                                .param("batchSize", "500"))
+                                .andExpect(request().asyncStarted())
+                                .andReturn();
+                mockMvc.perform(asyncDispatch(result))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(ColumnarWriter.MEDIA_TYPE))
+                                .andExpect(header().string("Content-Disposition",
+                                                containsString("filename*=UTF-8''TestDS.dscol")))
+                                .andExpect(content().bytes(new byte[] { 'D', 'S', 'C', 'O', 'L' }));
+        }
+
+        @Test
+        void testExportOfMissingDataset() throws Exception {
+                when(datasetService.export(eq("Missing"), eq(8192), any(QueryOptions.class)))
+                                .thenThrow(new DatasetNotFoundException("No records found for dataset: Missing"));
+
+                mockMvc.perform(get("/api/dataset/Missing/export"))
+                                .andExpect(status().isNotFound())
+                                .andExpect(jsonPath("$.error").value("No records found for dataset: Missing"));
+        }
+
+        @Test
+        void testSortedRecordsInBinaryFormats() throws Exception {
+                when(datasetService.getSortedRecords(eq("TestDS"), eq("age"), eq("asc"), any(QueryOptions.class)))
+                                .thenReturn(List.of(new DatasetRecordView(1L, null, null, 25, "HR")));
+
+                String jsonEtag = mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("sortBy", "age")
+                                .param("fields", "id,age,department"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("Vary", "Accept"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                for (ObjectMapper mapper : List.of(new CBORMapper(), new SmileMapper())) {
+                        MediaType type = mapper instanceof CBORMapper
+                                        ? MediaType.APPLICATION_CBOR
+                                        : MediaType.valueOf("application/x-jackson-smile");
+                        MockHttpServletResponse response = mockMvc.perform(get("/api/dataset/TestDS/query")
+                                        .param("sortBy", "age")
+                                        .param("fields", "id,age,department")
+                                        .accept(type))
+                                        .andExpect(status().isOk())
+                                        .andExpect(content().contentType(type))
+                                        .andExpect(header().string("Vary", "Accept"))
+                                        .andReturn().getResponse();
+
+                        JsonNode record = mapper.readTree(response.getContentAsByteArray()).get("sortedRecords").get(0);
+                        assertThat(record.get("id").asLong()).isEqualTo(1);
+                        assertThat(record.get("age").asInt()).isEqualTo(25);
+                        assertThat(record.get("department").asText()).isEqualTo("HR");
+                        assertThat(record.has("name")).isFalse();
+                        assertThat(response.getHeader("ETag")).isNotEqualTo(jsonEtag);
+                }
+        }
+
+        @Test
+        void testGroupedWithUnknownField() throws Exception {
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "age")
+                                .param("fields", "salary")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.error").value("Unsupported field: salary"));
+        }
+
+        @Test
+        void testSortedWithWhere() throws Exception {
+                when(datasetService.getSortedRecords(eq("TestDS"), eq("age"), eq("asc"),
+                                eq(QueryOptions.parse(null, "age>40"))))
+                                .thenReturn(List.of(new DatasetRecordView(1L, "TestDS", "Alice", 45, "HR")));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("sortBy", "age")
+                                .param("where", "age>40")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.sortedRecords[0].age").value(45));
+        }
+
+        @Test
+        void testGroupedWithInvalidWhere() throws Exception {
+                when(datasetService.groupByField(eq("TestDS"), eq("age"), any(QueryOptions.class)))
+                                .thenThrow(new IllegalArgumentException("Invalid where expression: missing ')'"));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "age")
+                                .param("where", "(age>40")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.error").value("Invalid where expression: missing ')'"));
+        }
+
+        @Test
+        void testGroupedByMultipleFields() throws Exception {
+                when(datasetService.groupByFields(eq("TestDS"), eq(List.of("department", "age")),
+                                any(QueryOptions.class)))
+                                .thenReturn(Map.of("HR", Map.of("30",
+                                                List.of(new DatasetRecordView(2L, "TestDS", "Bob", 30, "HR")))));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "department, age")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.groupedRecords.HR.30[0].name").value("Bob"));
+        }
+
+        @Test
+        void testGroupCounts() throws Exception {
+                GroupCount hr = new GroupCount(1L, Map.of("30", new GroupCount(1L, null)));
+                when(datasetService.countGroups(eq("TestDS"), eq(List.of("department", "age")), eq(true),
+                                any(QueryOptions.class)))
+                                .thenReturn(new GroupCount(1L, Map.of("HR", hr)));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "department,age")
+                                .param("counts", "true")
+                                .param("subtotals", "true")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.total").value(1))
+                                .andExpect(jsonPath("$.groupCounts.HR.count").value(1))
+                                .andExpect(jsonPath("$.groupCounts.HR.groups.30.count").value(1));
+        }
+
+        @Test
+        void testSortedWithLimit() throws Exception {
+                when(datasetService.getSortedRecords(eq("TestDS"), eq("age"), eq("desc"),
+                                eq(QueryOptions.parse(null, null, 1))))
+                                .thenReturn(List.of(new DatasetRecordView(2L, "TestDS", "Bob", 50, "HR")));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("sortBy", "age")
+                                .param("order", "desc")
+                                .param("limit", "1")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.sortedRecords.length()").value(1))
+                                .andExpect(jsonPath("$.sortedRecords[0].name").value("Bob"));
+        }
+
+        @Test
+        void testConditionalGetReturnsNotModified() throws Exception {
+                when(datasetService.version("TestDS")).thenReturn("7.3.3");
+                when(datasetService.groupByField("TestDS", "department"))
+                                .thenReturn(Map.of("HR", List.of(new DatasetRecordView(1L, "TestDS", "Al", 30, "HR"))));
+
+                String etag = mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "department"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("ETag"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "department")
+                                .header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", etag));
+                verify(datasetService, times(1)).groupByField("TestDS", "department");
+
+                // Other parameters or a new version give another tag
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "age")
+                                .header("If-None-Match", etag))
+                                .andExpect(status().isNoContent());
+                when(datasetService.version("TestDS")).thenReturn("7.4.4");
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "department")
+                                .header("If-None-Match", etag))
+                                .andExpect(status().isOk());
+        }
+
+        @Test
+        void testSortedWithInvalidLimit() throws Exception {
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("sortBy", "age")
+                                .param("limit", "0")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.error").value("limit must be positive: 0"));
+        }
+
+        @Test
+        void testSortedPerGroup() throws Exception {
+                when(datasetService.getSortedRecordsByGroup(eq("TestDS"), eq("department"), eq("age"), eq("desc"),
+                                eq(QueryOptions.parse(null, null, 3))))
+                                .thenReturn(Map.of("HR", List.of(new DatasetRecordView(2L, "TestDS", "Bob", 50, "HR"))));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("groupBy", "department")
+                                .param("sortBy", "age")
+                                .param("order", "desc")
+                                .param("limit", "3")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.groupedRecords.HR[0].name").value("Bob"));
+        }
+
+        @Test
+        void testHistogram() throws Exception {
+                when(datasetService.histogram(eq("TestDS"), eq("age"), eq(10L), isNull(), eq("department"),
+                                any(QueryOptions.class)))
+                                .thenReturn(List.of(new HistogramBucket(20L, 30L, 2, Map.of("HR", 2L)),
+                                                new HistogramBucket(30L, 40L, 1, Map.of("IT", 1L))));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("bucket", "age")
+                                .param("width", "10")
+                                .param("groupBy", "department")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.total").value(3))
+                                .andExpect(jsonPath("$.histogram[0].lower").value(20))
+                                .andExpect(jsonPath("$.histogram[0].groups.HR").value(2));
+        }
+
+        @Test
+        void testGetRecords() throws Exception {
+                when(datasetService.getRecords(eq("TestDS"), eq(List.of(2L, 1L, 9L)), eq(QueryOptions.defaults())))
+                                .thenReturn(new RecordBatch(List.of(
+                                                new DatasetRecordView(2L, "TestDS", "Bob", 30, "HR"),
+                                                new DatasetRecordView(1L, "TestDS", "Alice", 25, "IT")),
+                                                List.of(9L)));
+
+                mockMvc.perform(post("/api/dataset/TestDS/records:batchGet")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[2, 1, 9]"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.records[0].id").value(2))
+                                .andExpect(jsonPath("$.records[1].name").value("Alice"))
+                                .andExpect(jsonPath("$.missing[0]").value(9));
+        }
+
+        @Test
+        void testChanges() throws Exception {
+                when(datasetService.changes("TestDS", "3-10", 2))
+                                .thenReturn(new DatasetChanges(
+                                                List.of(new DatasetRecordView(5L, "TestDS", "Eve", 33, "IT")),
+                                                "3-11", false, false));
+
+                mockMvc.perform(get("/api/dataset/TestDS/changes")
+                                .param("since", "3-10")
+                                .param("limit", "2"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.records[0].id").value(5))
+                                .andExpect(jsonPath("$.nextCursor").value("3-11"))
+                                .andExpect(jsonPath("$.reset").value(false));
+        }
+
+        @Test
+        void testStreamChangesResumesFromLastEventId() throws Exception {
+                when(datasetService.subscribe("TestDS", "3-11")).thenReturn(new SseEmitter());
+
+                mockMvc.perform(get("/api/dataset/TestDS/changes/stream")
+                                .accept(MediaType.TEXT_EVENT_STREAM)
+                                .header("Last-Event-ID", "3-11"))
+                                .andExpect(request().asyncStarted());
+
+                verify(datasetService).subscribe("TestDS", "3-11");
+        }
+
+        @Test
+        void testStreamChangesOfMissingDataset() throws Exception {
+                when(datasetService.subscribe("Missing", null))
+                                .thenThrow(new DatasetNotFoundException("No records found for dataset: Missing"));
+
+                mockMvc.perform(get("/api/dataset/Missing/changes/stream")
+                                .accept(MediaType.TEXT_EVENT_STREAM))
+                                .andExpect(status().isNotFound())
+                                .andExpect(jsonPath("$.error").value("No records found for dataset: Missing"));
+        }
+
+        @Test
+        void testBatchQuery() throws Exception {
+                when(datasetService.batchQuery(eq("TestDS"), any()))
+                                .thenReturn(Map.of("q0", Map.of("groupCounts", Map.of("HR", Map.of("count", 2)),
+                                                "total", 2)));
+
+                mockMvc.perform(post("/api/dataset/TestDS/query/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[{\"groupBy\":\"department\",\"counts\":true}]"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.results.q0.total").value(2))
+                                .andExpect(jsonPath("$.results.q0.groupCounts.HR.count").value(2));
+        }
+
+        @Test
+        void testBatchQueryWithInvalidQuery() throws Exception {
+                when(datasetService.batchQuery(eq("TestDS"), any()))
+                                .thenThrow(new IllegalArgumentException("Query q0 needs a query kind"));
+
+                mockMvc.perform(post("/api/dataset/TestDS/query/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[{}]"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.error").value("Query q0 needs a query kind"));
+        }
+
+        @Test
+        void testHistogramWithBoundaries() throws Exception {
+                when(datasetService.histogram(eq("TestDS"), eq("age"), isNull(), eq(List.of(30L, 60L)), isNull(),
+                                eq(QueryOptions.defaults())))
+                                .thenReturn(List.of(new HistogramBucket(null, 30L, 1, null)));
+
+                mockMvc.perform(get("/api/dataset/TestDS/query")
+                                .param("bucket", "age")
+                                .param("boundaries", "30,60")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.histogram[0].upper").value(30))
+                                .andExpect(jsonPath("$.histogram[0].lower").doesNotExist());
+        }
+
+        @Test
+        void testSample() throws Exception {
+                when(datasetService.sample(eq("TestDS"), eq(2), eq(42L), eq(QueryOptions.defaults())))
+                                .thenReturn(new DatasetSample(42L, "random-id", 1000, List.of(
+                                                new DatasetRecordView(7L, "TestDS", "Alice", 30, "HR"),
+                                                new DatasetRecordView(9L, "TestDS", "Bob", 40, "HR"))));
+
+                mockMvc.perform(get("/api/dataset/TestDS/sample")
+                                .param("n", "2")
+                                .param("seed", "42")
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.seed").value(42))
+                                .andExpect(jsonPath("$.strategy").value("random-id"))
+                                .andExpect(jsonPath("$.records[1].name").value("Bob"));
+        }
 }
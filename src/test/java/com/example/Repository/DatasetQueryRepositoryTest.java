@@ -0,0 +1,179 @@
+package com.example.Repository;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRow;
+
+// Streamed reads must reach the driver as statements MySQL serves from a
+// server-side cursor, or the driver buffers the whole result
+@DataJpaTest
+@EntityScan(basePackages = "com.example.Entity")
+@Import({ DatasetKeyRegistry.class, DatasetQueryRepository.class, DatasetQueryRepositoryTest.StatementRecorder.class })
+public class DatasetQueryRepositoryTest {
+
+    @Autowired
+    private DatasetRepository repository;
+
+    @Autowired
+    private DatasetQueryRepository queryRepository;
+
+    @Autowired
+    private DatasetKeyRegistry datasetKeyRegistry;
+
+    @Autowired
+    private StatementRecorder statements;
+
+    @Test
+    void testRecordsAreStreamedFromACursor() {
+        for (long id = 1; id <= 3; id++) {
+            DatasetRecord rec = new DatasetRecord();
+            rec.setId(id);
+            rec.setDatasetName("Streamed");
+            rec.setName("Name");
+            rec.setAge(20 + (int) id);
+            rec.setDepartment("Engineering");
+            repository.save(rec);
+        }
+        int datasetId = datasetKeyRegistry.findId("Streamed").orElseThrow();
+
+        statements.prepared.clear();
+        List<Long> ids = new ArrayList<>();
+        queryRepository.forEachRecord(datasetId, EnumSet.of(DatasetField.ID), null,
+                (DatasetRow record) -> ids.add(record.getId()));
+        assertThat(ids).containsExactly(1L, 2L, 3L);
+
+        // Connector/J uses a cursor for forward-only, read-only statements
+        // with a positive fetch size
+        assertThat(statements.prepared).filteredOn(statement -> statement.sql().contains("ORDER BY id"))
+                .singleElement()
+                .satisfies(statement -> {
+                    assertThat(statement.type()).isEqualTo(ResultSet.TYPE_FORWARD_ONLY);
+                    assertThat(statement.concurrency()).isEqualTo(ResultSet.CONCUR_READ_ONLY);
+                    assertThat(statement.fetchSize()).isEqualTo(DatasetQueryRepository.FETCH_SIZE);
+                });
+    }
+
+    @Test
+    void testMySqlUrlsEnableCursorFetch() throws IOException {
+        // The test resources replace application.properties on the classpath
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(Path.of("src/main/resources/application.properties"))) {
+            properties.load(reader);
+        }
+        assertThat(properties.getProperty("spring.datasource.url"))
+                .startsWith("jdbc:mysql:")
+                .contains("useCursorFetch=true");
+        // So do the commented shard and replica examples
+        assertThat(Files.readAllLines(Path.of("src/main/resources/application.properties")))
+                .filteredOn(line -> line.contains("jdbc:mysql:"))
+                .allMatch(line -> line.contains("useCursorFetch=true"));
+    }
+
+    // Records how every statement is prepared and configured
+    static class StatementRecorder implements BeanPostProcessor {
+
+        final List<Prepared> prepared = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource)) {
+                return bean;
+            }
+            return proxy(DataSource.class, dataSource, (method, args, result) -> result instanceof Connection
+                    ? proxy(Connection.class, (Connection) result, this::prepare)
+                    : result);
+        }
+
+        private Object prepare(Method method, Object[] args, Object result) {
+            if (!method.getName().equals("prepareStatement")) {
+                return result;
+            }
+            Prepared statement = new Prepared((String) args[0],
+                    args.length >= 3 ? (int) args[1] : ResultSet.TYPE_FORWARD_ONLY,
+                    args.length >= 3 ? (int) args[2] : ResultSet.CONCUR_READ_ONLY);
+            prepared.add(statement);
+            return proxy(PreparedStatement.class, (PreparedStatement) result, (called, calledArgs, value) -> {
+                if (called.getName().equals("setFetchSize")) {
+                    statement.fetchSize = (int) calledArgs[0];
+                }
+                return value;
+            });
+        }
+
+        private static <T> T proxy(Class<T> type, T target, AfterCall afterCall) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                try {
+                    return afterCall.apply(method, args, method.invoke(target, args));
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            };
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+        }
+    }
+
+    interface AfterCall {
+        Object apply(Method method, Object[] args, Object result);
+    }
+
+    static final class Prepared {
+
+        private final String sql;
+
+        private final int type;
+
+        private final int concurrency;
+
+        volatile int fetchSize;
+
+        Prepared(String sql, int type, int concurrency) {
+            this.sql = sql;
+            this.type = type;
+            this.concurrency = concurrency;
+        }
+
+        String sql() {
+            return sql;
+        }
+
+        int type() {
+            return type;
+        }
+
+        int concurrency() {
+            return concurrency;
+        }
+
+        int fetchSize() {
+            return fetchSize;
+        }
+    }
+}
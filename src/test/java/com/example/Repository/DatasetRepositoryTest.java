@@ -6,19 +6,51 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.example.Entity.DatasetRecord;
 
+// Records are keyed by the dataset key the registry assigns on insert
 @DataJpaTest
 @EntityScan(basePackages = "com.example.Entity")
+@Import(DatasetKeyRegistry.class)
 public class DatasetRepositoryTest {
 
     @Autowired
     private DatasetRepository repository;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testDatasetNameIsReadThroughTheDatasetKey() {
+        DatasetRecord rec = new DatasetRecord();
+        rec.setId(1L);
+        rec.setDatasetName("TestDataset");
+        rec.setName("myTestName");
+        rec.setAge(30);
+        rec.setDepartment("Engineering");
+        repository.save(rec);
+        entityManager.flush();
+        entityManager.clear();
+
+        DatasetRecord loaded = repository.findById(1L).orElseThrow();
+        assertThat(loaded.getDatasetName()).isEqualTo("TestDataset");
+        assertThat(loaded.getDatasetId()).isNotNull();
+        // Records hold only the key
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE TABLE_NAME = 'DATASET_RECORDS' AND COLUMN_NAME = 'DATASET_NAME'", Integer.class))
+                .isZero();
+    }
+
     @Test
     void testFindByDatasetName() {
         DatasetRecord rec1 = new DatasetRecord();
@@ -0,0 +1,27 @@
+package com.example.Repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class MySqlRangePartitioningTest {
+
+    @Test
+    void testReorganizeStatementGivesEachKeyItsOwnPartition() {
+        assertThat(MySqlRangePartitioning.reorganizeStatement(3, 5)).isEqualTo(
+                "ALTER TABLE dataset_records REORGANIZE PARTITION p_max INTO ("
+                        + "PARTITION p3 VALUES LESS THAN (4), "
+                        + "PARTITION p4 VALUES LESS THAN (5), "
+                        + "PARTITION p5 VALUES LESS THAN (6), "
+                        + "PARTITION p_max VALUES LESS THAN MAXVALUE)");
+    }
+
+    @Test
+    void testPreparationStopsAtThePartitionLimit() {
+        assertThat(MySqlRangePartitioning.lastPreparable(1, 1, 16)).isEqualTo(16);
+        assertThat(MySqlRangePartitioning.lastPreparable(8190, 9000, 9016)).isEqualTo(9001);
+        // Full: nothing left to prepare
+        assertThat(MySqlRangePartitioning.lastPreparable(MySqlRangePartitioning.MAX_PARTITIONS, 9000, 9016))
+                .isLessThan(9000);
+    }
+}
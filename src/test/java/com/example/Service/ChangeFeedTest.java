@@ -0,0 +1,289 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.example.Entity.DatasetChanges;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public class ChangeFeedTest {
+
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+
+    private final List<DatasetRow> log = new CopyOnWriteArrayList<>();
+
+    private CountDownLatch blockSends;
+
+    private ChangeFeed feed(int bufferSize) {
+        return feed(bufferSize, 60_000);
+    }
+
+    private ChangeFeed feed(int bufferSize, long sendTimeoutMillis) {
+        return new ChangeFeed(new ObjectMapper(), bufferSize, 60_000, 2, sendTimeoutMillis, 1) {
+            @Override
+            SseEmitter newEmitter(long timeout) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+    }
+
+    // Serves the changes of dataset 7 from the log, one record per sequence
+    // number, two records per page
+    private DatasetChanges changes(String cursor) {
+        long since = DatasetService.parseCursor(cursor)[1];
+        List<DatasetRow> page = log.stream().skip(since).limit(2).toList();
+        return new DatasetChanges(page, DatasetService.cursor(7, since + page.size()), false,
+                since + page.size() < log.size());
+    }
+
+    private DatasetRow write(String name) {
+        DatasetRow record = new DatasetRecordView((long) log.size() + 1, "Feed", name, 30, "HR");
+        log.add(record);
+        return record;
+    }
+
+    private void publish(ChangeFeed feed, DatasetRow record) {
+        Function<String, DatasetChanges> changes = this::changes;
+        feed.publish("Feed", 7, record.getId(), record, changes);
+    }
+
+    @Test
+    void testLiveRecordsArePushedInOrder() {
+        ChangeFeed feed = feed(100);
+        write("Alice");
+        feed.subscribe("Feed", null, () -> "7-1", this::changes);
+        RecordingEmitter emitter = emitters.get(0);
+
+        publish(feed, write("Bob"));
+        publish(feed, write("Carol"));
+
+        emitter.await(2);
+        assertThat(emitter.names()).containsExactly("Bob", "Carol");
+        assertThat(emitter.events.get(1)).contains("id:7-3");
+        assertThat(feed.subscribers("Feed")).isEqualTo(1);
+    }
+
+    @Test
+    void testResumeReplaysFromCursorBeforeLiveRecords() {
+        ChangeFeed feed = feed(100);
+        write("Alice");
+        write("Bob");
+        write("Carol");
+        write("Dave");
+        feed.subscribe("Feed", "7-1", () -> "7-4", this::changes);
+        publish(feed, write("Eve"));
+
+        RecordingEmitter emitter = emitters.get(0);
+        emitter.await(4);
+        assertThat(emitter.names()).containsExactly("Bob", "Carol", "Dave", "Eve");
+    }
+
+    @Test
+    void testMissedSequenceNumbersAreReadBack() {
+        ChangeFeed feed = feed(100);
+        feed.subscribe("Feed", null, () -> "7-0", this::changes);
+        // Written by another instance; never published here
+        write("Alice");
+        write("Bob");
+        publish(feed, write("Carol"));
+
+        RecordingEmitter emitter = emitters.get(0);
+        emitter.await(3);
+        assertThat(emitter.names()).containsExactly("Alice", "Bob", "Carol");
+    }
+
+    @Test
+    void testPublishingNeverReadsOnOrFailsTheWriter() {
+        ChangeFeed feed = feed(100);
+        feed.subscribe("Feed", null, () -> "7-0", this::changes);
+        write("Alice");
+
+        List<String> readers = new CopyOnWriteArrayList<>();
+        DatasetRow bob = write("Bob");
+        feed.publish("Feed", 7, bob.getId(), bob, cursor -> {
+            readers.add(Thread.currentThread().getName());
+            throw new IllegalStateException("Database down");
+        });
+        // The next insert reads the gap back
+        publish(feed, write("Carol"));
+
+        RecordingEmitter emitter = emitters.get(0);
+        emitter.await(3);
+        assertThat(emitter.names()).containsExactly("Alice", "Bob", "Carol");
+        assertThat(readers).isNotEmpty().allMatch(name -> name.startsWith("change-feed"));
+    }
+
+    @Test
+    void testSlowSubscriberIsDisconnected() throws Exception {
+        ChangeFeed feed = feed(2);
+        feed.subscribe("Feed", null, () -> "7-0", this::changes);
+        feed.subscribe("Feed", null, () -> "7-0", this::changes);
+        RecordingEmitter slow = emitters.get(0);
+        RecordingEmitter fast = emitters.get(1);
+
+        blockSends = new CountDownLatch(1);
+        slow.blocking = true;
+        publish(feed, write("Alice"));
+        assertThat(slow.sending.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 5; i++) {
+            publish(feed, write("Bob" + i));
+            fast.await(i + 2);
+        }
+        blockSends.countDown();
+
+        slow.awaitCompletion();
+        assertThat(slow.events.get(slow.events.size() - 1)).contains("event:" + ChangeFeed.OVERFLOW_EVENT);
+        assertThat(fast.completed).isFalse();
+        assertThat(feed.subscribers("Feed")).isEqualTo(1);
+    }
+
+    @Test
+    void testStalledClientIsDisconnectedAfterTheSendTimeout() throws Exception {
+        ChangeFeed feed = feed(100, 200);
+        feed.subscribe("Feed", null, () -> "7-0", this::changes);
+        feed.subscribe("Feed", null, () -> "7-0", this::changes);
+        RecordingEmitter stalled = emitters.get(0);
+        RecordingEmitter fast = emitters.get(1);
+
+        // The stalled client never accepts the event; its send is interrupted
+        blockSends = new CountDownLatch(1);
+        stalled.blocking = true;
+        try {
+            publish(feed, write("Alice"));
+            assertThat(stalled.sending.await(5, TimeUnit.SECONDS)).isTrue();
+            stalled.awaitCompletion();
+            assertThat(stalled.interrupted).isTrue();
+            assertThat(feed.subscribers("Feed")).isEqualTo(1);
+
+            publish(feed, write("Bob"));
+            fast.await(2);
+            assertThat(stalled.names()).containsExactly("Alice");
+        } finally {
+            blockSends.countDown();
+        }
+    }
+
+    @Test
+    void testReplaysRunOnTheirOwnThreads() {
+        ChangeFeed feed = feed(100);
+        write("Alice");
+        write("Bob");
+        write("Carol");
+        List<String> readers = new CopyOnWriteArrayList<>();
+        feed.subscribe("Feed", "7-0", () -> "7-3", cursor -> {
+            readers.add(Thread.currentThread().getName());
+            return changes(cursor);
+        });
+        publish(feed, write("Dave"));
+
+        RecordingEmitter emitter = emitters.get(0);
+        emitter.await(4);
+        assertThat(emitter.names()).containsExactly("Alice", "Bob", "Carol", "Dave");
+        // The first page is read by the subscribing request
+        assertThat(readers).hasSize(2).last().asString().startsWith("change-feed-replay");
+    }
+
+    @Test
+    void testTopicIsRemovedWithItsLastSubscriber() {
+        ChangeFeed feed = feed(100, 200);
+        feed.subscribe("Feed", null, () -> "7-0", this::changes);
+        RecordingEmitter emitter = emitters.get(0);
+        assertThat(feed.topics()).isEqualTo(1);
+
+        blockSends = new CountDownLatch(1);
+        emitter.blocking = true;
+        try {
+            publish(feed, write("Alice"));
+            emitter.awaitCompletion();
+        } finally {
+            blockSends.countDown();
+        }
+        assertThat(feed.subscribers("Feed")).isZero();
+        assertThat(feed.topics()).isZero();
+
+        // Subscribing again starts a new topic
+        feed.subscribe("Feed", null, () -> "7-1", this::changes);
+        publish(feed, write("Bob"));
+        emitters.get(1).await(1);
+        assertThat(emitters.get(1).names()).containsExactly("Bob");
+        assertThat(feed.topics()).isEqualTo(1);
+    }
+
+    private final class RecordingEmitter extends SseEmitter {
+
+        private final List<String> events = new ArrayList<>();
+
+        private final CountDownLatch sending = new CountDownLatch(1);
+
+        private volatile boolean blocking;
+
+        private volatile boolean interrupted;
+
+        private volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (blocking) {
+                blocking = false;
+                sending.countDown();
+                try {
+                    blockSends.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String event = builder.build().stream()
+                    .map(data -> data.getData().toString())
+                    .collect(Collectors.joining());
+            synchronized (events) {
+                events.add(event);
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        List<String> names() {
+            synchronized (events) {
+                return events.stream()
+                        .filter(event -> event.contains("event:" + ChangeFeed.RECORD_EVENT))
+                        .map(event -> event.replaceAll("(?s).*\"name\":\"([^\"]*)\".*", "$1"))
+                        .toList();
+            }
+        }
+
+        void await(int records) {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (names().size() < records && System.currentTimeMillis() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertThat(names()).hasSize(records);
+        }
+
+        void awaitCompletion() {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!completed && System.currentTimeMillis() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertThat(completed).isTrue();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+
+public class ColumnarWriterTest {
+
+    @Test
+    void testRecordsRoundTripThroughBatches() throws IOException {
+        List<DatasetRow> records = List.of(
+                new DatasetRecordView(1L, null, "Alice", 25, "Engineering"),
+                new DatasetRecordView(2L, null, null, null, "HR"),
+                new DatasetRecordView(3L, null, "Zoë", 41, "Engineering"),
+                new DatasetRecordView(4L, null, "Dave", 30, null),
+                new DatasetRecordView(5L, null, "Eve", 35, "Sales"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(out, "Staff", 2);
+        records.forEach(writer);
+        assertThat(writer.finish()).isEqualTo(5);
+
+        Export export = decode(out.toByteArray());
+        assertThat(export.dataset()).isEqualTo("Staff");
+        assertThat(export.columns()).containsExactly("id", "name", "age", "department");
+        assertThat(export.batchSizes()).containsExactly(2, 2, 1);
+        // Each department is sent once, in the batch it first appears in
+        assertThat(export.dictionary()).containsExactly("Engineering", "HR", "Sales");
+        assertThat(export.records()).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(records);
+    }
+
+    @Test
+    void testEmptyExportHasHeaderAndFooter() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(new ColumnarWriter(out, "Empty", 10).finish()).isZero();
+
+        Export export = decode(out.toByteArray());
+        assertThat(export.batchSizes()).isEmpty();
+        assertThat(export.records()).isEmpty();
+    }
+
+    /**
+     * Reads a stream written by ColumnarWriter back into records.
+     */
+    static Export decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        assertThat(in.readNBytes(ColumnarWriter.MAGIC.length)).isEqualTo(ColumnarWriter.MAGIC);
+        assertThat(in.readUnsignedByte()).isEqualTo(ColumnarWriter.VERSION);
+        String dataset = readString(in);
+        List<String> columns = new ArrayList<>();
+        List<Byte> types = new ArrayList<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            columns.add(readString(in));
+            types.add(in.readByte());
+        }
+        assertThat(types).containsExactly(ColumnarWriter.INT64, ColumnarWriter.UTF8, ColumnarWriter.INT32,
+                ColumnarWriter.DICTIONARY);
+
+        List<String> dictionary = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        List<DatasetRow> records = new ArrayList<>();
+        byte marker;
+        while ((marker = in.readByte()) == ColumnarWriter.BATCH) {
+            int rows = in.readInt();
+            batchSizes.add(rows);
+
+            boolean[] idValid = readValidity(in, rows);
+            long[] ids = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = in.readLong();
+            }
+
+            boolean[] nameValid = readValidity(in, rows);
+            int[] offsets = new int[rows + 1];
+            for (int i = 0; i <= rows; i++) {
+                offsets[i] = in.readInt();
+            }
+            byte[] data = in.readNBytes(offsets[rows]);
+
+            boolean[] ageValid = readValidity(in, rows);
+            int[] ages = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                ages[i] = in.readInt();
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                dictionary.add(readString(in));
+            }
+            boolean[] departmentValid = readValidity(in, rows);
+            int[] departments = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                departments[i] = in.readInt();
+            }
+
+            for (int i = 0; i < rows; i++) {
+                records.add(new DatasetRecordView(
+                        idValid[i] ? ids[i] : null,
+                        null,
+                        nameValid[i]
+                                ? new String(data, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8)
+                                : null,
+                        ageValid[i] ? ages[i] : null,
+                        departmentValid[i] ? dictionary.get(departments[i]) : null));
+            }
+        }
+        assertThat(marker).isEqualTo(ColumnarWriter.END);
+        assertThat(in.readLong()).isEqualTo(records.size());
+        assertThat(in.read()).isEqualTo(-1);
+        return new Export(dataset, columns, dictionary, batchSizes, records);
+    }
+
+    private static boolean[] readValidity(DataInputStream in, int rows) throws IOException {
+        byte[] bits = in.readNBytes((rows + 7) / 8);
+        boolean[] valid = new boolean[rows];
+        for (int i = 0; i < rows; i++) {
+            valid[i] = (bits[i / 8] & (1 << (i % 8))) != 0;
+        }
+        return valid;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    record Export(String dataset, List<String> columns, List<String> dictionary, List<Integer> batchSizes,
+            List<DatasetRow> records) {
+    }
+}
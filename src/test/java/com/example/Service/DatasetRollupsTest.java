@@ -0,0 +1,36 @@
+package com.example.Service;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetRollupRepository;
+
+public class DatasetRollupsTest {
+
+    private final DatasetKeyRegistry registry = mock(DatasetKeyRegistry.class);
+
+    private final DatasetRollups rollups = new DatasetRollups(mock(DatasetRollupRepository.class), registry);
+
+    @Test
+    void testOppositeMovesLockInTheSameOrder() {
+        rollups.lockForOverwrite(5, 3);
+        rollups.lockForOverwrite(3, 5);
+
+        InOrder order = inOrder(registry);
+        order.verify(registry).lock(3);
+        order.verify(registry).lock(5);
+        order.verify(registry).lock(3);
+        order.verify(registry).lock(5);
+    }
+
+    @Test
+    void testOverwriteInTheSameDatasetTakesNoExtraLock() {
+        rollups.lockForOverwrite(4, 4);
+        verifyNoInteractions(registry);
+    }
+}
@@ -1,29 +1,132 @@
 package com.example.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.example.Config.ShardRouter;
+import com.example.Config.ShardingConfiguration;
+import com.example.Entity.DatasetAggregate;
+import com.example.Entity.DatasetChanges;
+import com.example.Entity.DatasetField;
 import com.example.Entity.DatasetRecord;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+import com.example.Entity.DatasetSample;
+import com.example.Entity.DistinctCount;
+import com.example.Entity.GroupCount;
+import com.example.Entity.QuantileSummary;
+import com.example.Entity.RecordBatch;
+import com.example.Entity.HistogramBucket;
+import com.example.Entity.IdFilterStats;
 import com.example.Exception.DatasetNotFoundException;
+import com.example.Exception.InvalidFieldException;
+import com.example.Repository.DatasetKeyRegistry;
+import com.example.Repository.DatasetQueryRepository;
 import com.example.Repository.DatasetRepository;
+import com.example.Repository.DatasetRollupRepository;
+import com.example.Repository.DatasetSketchRepository;
+import com.example.Repository.RowDeletePartitioning;
 
-import org.junit.jupiter.api.BeforeEach;
+import org.hibernate.Session;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
-@DataJpaTest
+// Parallel scans pay off at any size, so plans depend on the indexes only
+@DataJpaTest(properties = { "dataset.planner.parallelism=4", "dataset.planner.parallel-overhead=0" })
 @EntityScan(basePackages = "com.example.Entity")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({ DatasetService.class, DatasetQueryRepository.class, DatasetKeyRegistry.class, RowDeletePartitioning.class,
+                IndexAdvisor.class, FilterParser.class, DistinctCounter.class, QuantileEstimator.class, RecordLookup.class,
+                IdFilter.class, ChangeFeed.class, DatasetRollups.class, QueryPlanner.class, DatasetSnapshots.class,
+                ShardPins.class, ShardingConfiguration.class })
 class DatasetControllerTest {
+        private static Path snapshotDirectory;
+
+        @DynamicPropertySource
+        static void snapshotProperties(DynamicPropertyRegistry registry) throws IOException {
+                snapshotDirectory = Files.createTempDirectory("dataset-snapshots");
+                registry.add("dataset.snapshots.directory", snapshotDirectory::toString);
+        }
+
+        @Autowired
         private DatasetService datasetService;
 
         @Autowired
         private DatasetRepository repository;
 
-        @BeforeEach
-        void setup() {
-                datasetService = new DatasetService(repository);
-        }
+        @Autowired
+        private TestEntityManager entityManager;
+
+        @Autowired
+        private DistinctCounter distinctCounter;
+
+        @Autowired
+        private DatasetSketchRepository sketchRepository;
+
+        @Autowired
+        private QuantileEstimator quantileEstimator;
+
+        @Autowired
+        private DatasetKeyRegistry datasetKeyRegistry;
+
+        @Autowired
+        private IdFilter idFilter;
+
+        @Autowired
+        private JdbcTemplate jdbcTemplate;
+
+        @Autowired
+        private DatasetRollupRepository rollupRepository;
+
+        @MockitoSpyBean
+        private IndexAdvisor indexAdvisor;
+
+        @MockitoSpyBean
+        private DatasetQueryRepository queryRepository;
+
+        @Autowired
+        private DatasetSnapshots datasetSnapshots;
+
+        @Autowired
+        private QueryPlanner queryPlanner;
+
+        @Autowired
+        private ShardRouter shardRouter;
+
+        @Autowired
+        private PlatformTransactionManager transactionManager;
 
         private DatasetRecord createRecord(Long id, String datasetName, String name, int age, String dept) {
                 DatasetRecord rec = new DatasetRecord();
@@ -46,6 +149,41 @@ class DatasetControllerTest {
                 assertThat(saved.getDepartment()).isEqualTo("Engineering");
         }
 
+        @Test
+        void testInsertRecordAssignsDatasetKey() {
+                DatasetRecord rec1 = datasetService.insertRecord("TestDataset",
+                                createRecord(1L, null, "Alice", 25, "Engineering"));
+                DatasetRecord rec2 = datasetService.insertRecord("TestDataset",
+                                createRecord(2L, null, "Bob", 30, "HR"));
+                DatasetRecord rec3 = datasetService.insertRecord("OtherDataset",
+                                createRecord(3L, null, "Charlie", 28, "Marketing"));
+
+                assertThat(rec1.getDatasetId()).isNotNull();
+                assertThat(rec2.getDatasetId()).isEqualTo(rec1.getDatasetId());
+                assertThat(rec3.getDatasetId()).isNotEqualTo(rec1.getDatasetId());
+                assertThat(repository.findByDatasetId(rec1.getDatasetId())).hasSize(2);
+        }
+
+        @Test
+        void testDropDataset() {
+                datasetService.insertRecord("TestDataset", createRecord(1L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("TestDataset", createRecord(2L, null, "Bob", 30, "HR"));
+                datasetService.insertRecord("OtherDataset", createRecord(3L, null, "Charlie", 28, "Marketing"));
+                entityManager.flush();
+                entityManager.clear();
+
+                datasetService.dropDataset("TestDataset");
+
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.groupByField("TestDataset", "age"));
+                assertThat(datasetService.existsById(1L)).isFalse();
+                assertThat(datasetService.groupByField("OtherDataset", "age")).hasSize(1);
+
+                DatasetNotFoundException ex = assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.dropDataset("TestDataset"));
+                assertThat(ex.getMessage()).isEqualTo("No records found for dataset: TestDataset");
+        }
+
         @Test
         void testDatasetNotFound() {
                 // Make sure the dataset repository is empty for this dataset
@@ -368,4 +506,857 @@ class DatasetControllerTest {
                 exists = repository.existsById(3L);
                 assertThat(exists).isFalse();
         }
+
+        @Test
+        void testQueriesReturnUnmanagedViews() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 30, "HR"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 25, "Engineering"));
+                entityManager.flush();
+                entityManager.clear();
+
+                var sorted = datasetService.getSortedRecords("TestDataset", "age", "desc");
+                assertThat(sorted).extracting(DatasetRow::getName).containsExactly("Bob", "Charlie", "Alice");
+                assertThat(sorted).allSatisfy(row -> assertThat(row).isInstanceOf(DatasetRecordView.class));
+
+                var grouped = datasetService.groupByField("TestDataset", "department");
+                assertThat(grouped.get("Engineering")).extracting(DatasetRow::getId).containsExactly(1L, 3L);
+
+                // Nothing was loaded into the persistence context
+                assertThat(entityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount())
+                                .isZero();
+        }
+
+        @Test
+        void testAggregate() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 30, "HR"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 35, "Engineering"));
+
+                DatasetAggregate aggregate = datasetService.aggregate("TestDataset", "age");
+                assertThat(aggregate.count()).isEqualTo(3);
+                assertThat(aggregate.sum()).isEqualTo(90);
+                assertThat(aggregate.min()).isEqualTo(25);
+                assertThat(aggregate.max()).isEqualTo(35);
+                assertThat(aggregate.avg()).isEqualTo(30.0);
+
+                var grouped = datasetService.aggregateByGroup("TestDataset", "age", "department");
+                assertThat(grouped).containsOnlyKeys("Engineering", "HR");
+                assertThat(grouped.get("Engineering").sum()).isEqualTo(60);
+                assertThat(grouped.get("HR").count()).isEqualTo(1);
+        }
+
+        @Test
+        void testAggregateInvalidField() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+
+                InvalidFieldException ex = assertThrows(InvalidFieldException.class,
+                                () -> datasetService.aggregate("TestDataset", "department"));
+                assertThat(ex.getMessage()).isEqualTo("Unsupported aggregate field: department");
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.aggregate("MissingDataset", "age"));
+        }
+
+        @Test
+        void testQueriesSelectRequestedFields() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 30, "HR"));
+
+                QueryOptions options = QueryOptions.parse("id,department", null);
+                var sorted = datasetService.getSortedRecords("TestDataset", "age", "asc", options);
+                assertThat(sorted).extracting(DatasetRow::getId).containsExactly(1L, 2L);
+                assertThat(sorted).extracting(DatasetRow::getDepartment).containsExactly("Engineering", "HR");
+                assertThat(sorted).extracting(DatasetRow::getName).containsOnlyNulls();
+
+                // The group key is not returned unless requested
+                var grouped = datasetService.groupByField("TestDataset", "age", QueryOptions.parse("name", null));
+                assertThat(grouped.get("25")).extracting(DatasetRow::getName).containsExactly("Alice");
+                assertThat(grouped.get("25")).extracting(DatasetRow::getAge).containsOnlyNulls();
+
+                InvalidFieldException ex = assertThrows(InvalidFieldException.class,
+                                () -> QueryOptions.parse("id,salary", null));
+                assertThat(ex.getMessage()).isEqualTo("Unsupported field: salary");
+        }
+
+        @Test
+        void testQueriesApplyWhereFilter() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 45, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 50, "HR"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 30, "Engineering"));
+                repository.save(createRecord(4L, "TestDataset", "Dave", 41, "Engineering"));
+
+                QueryOptions options = QueryOptions.parse(null, "age>40 and department=Engineering");
+                var sorted = datasetService.getSortedRecords("TestDataset", "age", "desc", options);
+                assertThat(sorted).extracting(DatasetRow::getName).containsExactly("Alice", "Dave");
+
+                var grouped = datasetService.groupByField("TestDataset", "department", options);
+                assertThat(grouped).containsOnlyKeys("Engineering");
+
+                DatasetAggregate aggregate = datasetService.aggregate("TestDataset", "age", options);
+                assertThat(aggregate.count()).isEqualTo(2);
+                assertThat(aggregate.sum()).isEqualTo(86);
+
+                // No match is an empty result, not a missing dataset
+                QueryOptions none = QueryOptions.parse(null, "age>100");
+                assertThat(datasetService.getSortedRecords("TestDataset", "age", "asc", none)).isEmpty();
+                assertThat(datasetService.aggregate("TestDataset", "age", none).count()).isZero();
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.getSortedRecords("MissingDataset", "age", "asc", none));
+        }
+
+        @Test
+        void testGroupByMultipleFields() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 30, "HR"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 25, "Engineering"));
+                repository.save(createRecord(4L, "TestDataset", "Dave", 30, "Engineering"));
+
+                var nested = datasetService.groupByFields("TestDataset", List.of("department", "age"),
+                                QueryOptions.defaults());
+                assertThat(nested).containsOnlyKeys("Engineering", "HR");
+                @SuppressWarnings("unchecked")
+                var engineering = (Map<String, List<DatasetRow>>) nested.get("Engineering");
+                assertThat(engineering).containsOnlyKeys("25", "30");
+                assertThat(engineering.get("25")).extracting(DatasetRow::getName).containsExactly("Alice", "Charlie");
+
+                GroupCount counts = datasetService.countGroups("TestDataset", List.of("department", "age"), true,
+                                QueryOptions.defaults());
+                assertThat(counts.count()).isEqualTo(4);
+                assertThat(counts.groups().get("Engineering").count()).isEqualTo(3);
+                assertThat(counts.groups().get("Engineering").groups().get("25").count()).isEqualTo(2);
+                assertThat(counts.groups().get("HR").groups().get("30").groups()).isNull();
+
+                // Without subtotals only the leaves and the total carry counts
+                GroupCount leaves = datasetService.countGroups("TestDataset", List.of("department", "age"), false,
+                                QueryOptions.parse(null, "age=30"));
+                assertThat(leaves.count()).isEqualTo(2);
+                assertThat(leaves.groups().get("Engineering").count()).isNull();
+                assertThat(leaves.groups().get("Engineering").groups().get("30").count()).isEqualTo(1);
+
+                InvalidFieldException ex = assertThrows(InvalidFieldException.class,
+                                () -> datasetService.groupByFields("TestDataset", List.of("department", "salary"),
+                                                QueryOptions.defaults()));
+                assertThat(ex.getMessage()).isEqualTo("Unsupported groupBy field: salary");
+        }
+
+        @Test
+        void testSortedWithLimit() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 45, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 50, "HR"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 30, "Engineering"));
+                repository.save(createRecord(4L, "TestDataset", "Dave", 41, "Engineering"));
+                repository.save(createRecord(5L, "TestDataset", "Eve", 28, "HR"));
+
+                var top = datasetService.getSortedRecords("TestDataset", "age", "desc",
+                                QueryOptions.parse(null, null, 2));
+                assertThat(top).extracting(DatasetRow::getName).containsExactly("Bob", "Alice");
+
+                // Two oldest per department, only the name returned
+                var perGroup = datasetService.getSortedRecordsByGroup("TestDataset", "department", "age", "desc",
+                                QueryOptions.parse("name", null, 2));
+                assertThat(perGroup).containsOnlyKeys("Engineering", "HR");
+                assertThat(perGroup.get("Engineering")).extracting(DatasetRow::getName)
+                                .containsExactly("Alice", "Dave");
+                assertThat(perGroup.get("HR")).extracting(DatasetRow::getName).containsExactly("Bob", "Eve");
+                assertThat(perGroup.get("HR")).extracting(DatasetRow::getAge).containsOnlyNulls();
+
+                assertThrows(IllegalArgumentException.class, () -> QueryOptions.parse(null, null, 0));
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.getSortedRecordsByGroup("MissingDataset", "department", "age",
+                                                "asc", QueryOptions.defaults()));
+        }
+
+        @Test
+        void testHistogram() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 29, "HR"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 47, "Engineering"));
+                repository.save(createRecord(4L, "TestDataset", "Dave", 61, "Engineering"));
+
+                var byWidth = datasetService.histogram("TestDataset", "age", 10L, null, null, QueryOptions.defaults());
+                assertThat(byWidth).extracting(HistogramBucket::lower).containsExactly(20L, 30L, 40L, 50L, 60L);
+                assertThat(byWidth).extracting(HistogramBucket::count).containsExactly(2L, 0L, 1L, 0L, 1L);
+                assertThat(byWidth.get(0).upper()).isEqualTo(30L);
+                assertThat(byWidth.get(0).groups()).isNull();
+
+                var byBoundaries = datasetService.histogram("TestDataset", "age", null, List.of(30L, 60L),
+                                "department", QueryOptions.parse(null, "id>1"));
+                assertThat(byBoundaries).extracting(HistogramBucket::count).containsExactly(1L, 1L, 1L);
+                assertThat(byBoundaries.get(0).lower()).isNull();
+                assertThat(byBoundaries.get(0).groups()).containsExactly(Map.entry("HR", 1L));
+                assertThat(byBoundaries.get(2).lower()).isEqualTo(60L);
+                assertThat(byBoundaries.get(2).upper()).isNull();
+
+                InvalidFieldException ex = assertThrows(InvalidFieldException.class,
+                                () -> datasetService.histogram("TestDataset", "name", 10L, null, null,
+                                                QueryOptions.defaults()));
+                assertThat(ex.getMessage()).isEqualTo("Unsupported bucket field: name");
+                assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.histogram("TestDataset", "age", 10L, List.of(30L), null,
+                                                QueryOptions.defaults()));
+                assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.histogram("TestDataset", "age", null, List.of(60L, 30L), null,
+                                                QueryOptions.defaults()));
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void testBatchQuery() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 29, "HR"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 47, "Engineering"));
+                repository.save(createRecord(4L, "TestDataset", "Dave", 61, "Engineering"));
+
+                Map<String, Object> results = datasetService.batchQuery("TestDataset", List.of(
+                                new BatchQuery("ages", null, false, false, null, null, null, "age", null, null, null,
+                                                null, "department=Engineering"),
+                                new BatchQuery(null, "department", true, false, null, null, null, null, null, null,
+                                                null, null, null),
+                                new BatchQuery(null, "department", false, false, "age", "desc", 1, null, null, null,
+                                                null, "name", null),
+                                new BatchQuery(null, null, false, false, null, null, null, null, "age", 10L, null,
+                                                null, null)));
+
+                assertThat(results).containsOnlyKeys("ages", "q1", "q2", "q3");
+                assertThat(((Map<String, Object>) results.get("ages")).get("aggregates"))
+                                .isEqualTo(datasetService.aggregate("TestDataset", "age",
+                                                QueryOptions.parse(null, "department=Engineering")));
+                Map<String, Object> counts = (Map<String, Object>) results.get("q1");
+                assertThat(counts.get("total")).isEqualTo(4L);
+                assertThat(counts.get("groupCounts")).isEqualTo(datasetService.countGroups("TestDataset",
+                                List.of("department"), false, QueryOptions.defaults()).groups());
+                Map<String, List<DatasetRow>> oldest = (Map<String, List<DatasetRow>>) ((Map<String, Object>) results
+                                .get("q2")).get("groupedRecords");
+                assertThat(oldest.get("Engineering")).extracting(DatasetRow::getName).containsExactly("Dave");
+                assertThat(oldest.get("Engineering").get(0).getAge()).isNull();
+                assertThat(((Map<String, Object>) results.get("q3")).get("histogram"))
+                                .isEqualTo(datasetService.histogram("TestDataset", "age", 10L, null, null,
+                                                QueryOptions.defaults()));
+
+                assertThrows(IllegalArgumentException.class, () -> datasetService.batchQuery("TestDataset",
+                                List.of(new BatchQuery(null, null, false, false, null, null, null, null, null, null,
+                                                null, null, null))));
+                assertThrows(DatasetNotFoundException.class, () -> datasetService.batchQuery("Missing",
+                                List.of(new BatchQuery(null, "department", true, false, null, null, null, null, null,
+                                                null, null, null, null))));
+        }
+
+        @Test
+        void testBatchFiltersIgnoreCase() {
+                repository.save(createRecord(1L, "TestDataset", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "TestDataset", "Bob", 29, "engineering"));
+                repository.save(createRecord(3L, "TestDataset", "Charlie", 47, "HR"));
+
+                // Matches what MySQL's case-insensitive collation returns
+                Map<String, Object> results = datasetService.batchQuery("TestDataset", List.of(
+                                new BatchQuery("engineers", null, false, false, null, null, null, "age", null, null,
+                                                null, null, "department=ENGINEERING")));
+                DatasetAggregate aggregates = (DatasetAggregate) ((Map<?, ?>) results.get("engineers"))
+                                .get("aggregates");
+                assertThat(aggregates.count()).isEqualTo(2);
+        }
+
+        @Test
+        void testDistinctCounts() {
+                datasetService.insertRecord("Staff", createRecord(1L, "Staff", "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Staff", createRecord(2L, "Staff", "Bob", 30, "HR"));
+                datasetService.insertRecord("Staff", createRecord(3L, "Staff", "Alice", 35, "Engineering"));
+                datasetService.insertRecord("Contractors", createRecord(4L, "Contractors", "Eve", 30, "Sales"));
+
+                DistinctCount names = distinctCounter.estimate(List.of("Staff"), "name");
+                assertThat(names.estimate()).isEqualTo(2);
+                assertThat(names.relativeStandardError()).isLessThan(0.02);
+                assertThat(distinctCounter.estimate(List.of("Staff", "Contractors"), "department").estimate())
+                                .isEqualTo(3);
+
+                // Saved sketches are loaded instead of rescanning the dataset
+                distinctCounter.flush();
+                entityManager.flush();
+                assertThat(sketchRepository.findByDatasetId(datasetKeyRegistry.findId("Staff").orElseThrow()))
+                                .hasSize(DistinctCounter.FIELDS.size());
+
+                InvalidFieldException ex = assertThrows(InvalidFieldException.class,
+                                () -> distinctCounter.estimate(List.of("Staff"), "salary"));
+                assertThat(ex.getMessage()).isEqualTo("Unsupported distinct field: salary");
+                assertThrows(DatasetNotFoundException.class,
+                                () -> distinctCounter.estimate(List.of("MissingDataset"), "name"));
+
+                datasetService.dropDataset("Contractors");
+                assertThrows(DatasetNotFoundException.class,
+                                () -> distinctCounter.estimate(List.of("Contractors"), "name"));
+        }
+
+        @Test
+        void testDistinctCountsBuiltFromExistingRecords() {
+                // Sketches live in memory across tests, so this dataset is not used elsewhere
+                repository.save(createRecord(1L, "Interns", "Alice", 25, "Engineering"));
+                repository.save(createRecord(2L, "Interns", "Bob", 30, "HR"));
+
+                assertThat(distinctCounter.estimate(List.of("Interns"), "age").estimate()).isEqualTo(2);
+        }
+
+        @Test
+        void testQuantiles() {
+                // Sketches live in memory across tests, so these datasets are not used elsewhere
+                for (long id = 1; id <= 10; id++) {
+                        repository.save(createRecord(id, "Board", "Member", 20 + (int) id,
+                                        id <= 4 ? "HR" : "Engineering"));
+                }
+                List<Double> percentiles = List.of(0.5, 0.9);
+
+                // Small datasets are answered exactly from the database
+                QuantileSummary small = quantileEstimator.quantiles("Board", "age", percentiles);
+                assertThat(small.exact()).isTrue();
+                assertThat(small.count()).isEqualTo(10);
+                assertThat(small.quantiles()).containsEntry(0.5, 25L).containsEntry(0.9, 29L);
+                var byDepartment = quantileEstimator.quantilesByGroup("Board", "age", "department", percentiles);
+                assertThat(byDepartment.get("HR").quantiles()).containsEntry(0.5, 22L);
+
+                List<DatasetRecord> records = new ArrayList<>();
+                for (long id = 1000; id < 3000; id++) {
+                        records.add(createRecord(id, "Census", "Person", (int) (id % 100),
+                                        id % 2 == 0 ? "HR" : "Engineering"));
+                }
+                repository.saveAll(records);
+                datasetService.insertRecord("Census", createRecord(3000L, "Census", "Last", 99, "Sales"));
+
+                QuantileSummary large = quantileEstimator.quantiles("Census", "age", percentiles);
+                assertThat(large.count()).isEqualTo(2001);
+                assertThat(large.quantiles().get(0.5)).isBetween(47L, 52L);
+                var grouped = quantileEstimator.quantilesByGroup("Census", "age", "department", percentiles);
+                assertThat(grouped).containsOnlyKeys("Engineering", "HR", "Sales");
+                assertThat(grouped.get("Sales").count()).isEqualTo(1);
+
+                InvalidFieldException ex = assertThrows(InvalidFieldException.class,
+                                () -> quantileEstimator.quantiles("Census", "name", percentiles));
+                assertThat(ex.getMessage()).isEqualTo("Unsupported quantile field: name");
+                assertThrows(InvalidFieldException.class,
+                                () -> quantileEstimator.quantilesByGroup("Census", "age", "name", percentiles));
+                assertThrows(IllegalArgumentException.class,
+                                () -> quantileEstimator.quantiles("Census", "age", List.of(2.0)));
+                assertThrows(DatasetNotFoundException.class,
+                                () -> quantileEstimator.quantiles("MissingDataset", "age", percentiles));
+        }
+
+        @Test
+        void testAddRecordSkipsQueryForNewIds() {
+                datasetService.addRecord("Members", createRecord(7001L, null, "Alice", 25, "Engineering"));
+
+                long checks = idFilter.stats().checks();
+                long skipped = idFilter.stats().skippedQueries();
+                IllegalArgumentException duplicate = assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.addRecord("Members",
+                                                createRecord(7001L, null, "Bob", 30, "HR")));
+                assertThat(duplicate.getMessage()).isEqualTo(DatasetService.DUPLICATE_ID);
+                datasetService.addRecord("Members", createRecord(7002L, null, "Carol", 35, "HR"));
+
+                IdFilterStats stats = idFilter.stats();
+                assertThat(stats.checks()).isEqualTo(checks + 2);
+                assertThat(stats.skippedQueries() + stats.falsePositives()).isGreaterThanOrEqualTo(skipped + 1);
+                assertThat(stats.ids()).isPositive();
+                assertThat(stats.memoryBytes()).isPositive();
+                assertThat(datasetService.existsById(7001L)).isTrue();
+                assertThat(datasetService.existsById(7002L)).isTrue();
+                assertThat(datasetService.existsById(7003L)).isFalse();
+        }
+
+        @Test
+        void testIdsTheFilterHasNotSeenAreNeverOverwritten() {
+                datasetService.insertRecord("Owners", createRecord(7101L, null, "Alice", 25, "Engineering"));
+                int datasetId = datasetKeyRegistry.findId("Owners").orElseThrow();
+                // Written by another instance, so this one's filter has not seen them
+                long first = 7_100_000L;
+                while (idFilter.mayContain(first) || idFilter.mayContain(first + 1)) {
+                        first += 2;
+                }
+                for (long id = first; id <= first + 1; id++) {
+                        jdbcTemplate.update("INSERT INTO dataset_records (id, dataset_id, name, age, department,"
+                                        + " change_seq) VALUES (?, ?, 'Elsewhere', 50, 'Sales', 0)", id, datasetId);
+                }
+
+                // The filter cannot rule them out, and learns the ones it finds
+                assertThat(datasetService.existsById(first + 1)).isTrue();
+                assertThat(idFilter.mayContain(first + 1)).isTrue();
+
+                // An insert is rejected instead of taking the row from its dataset
+                long unseen = first;
+                IllegalArgumentException duplicate = assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.insertRecord("Others",
+                                                createRecord(unseen, null, "Bob", 30, "HR")));
+                assertThat(duplicate.getMessage()).isEqualTo(DatasetService.DUPLICATE_ID);
+                assertThat(jdbcTemplate.queryForObject("SELECT name FROM dataset_records WHERE id = ?", String.class,
+                                unseen)).isEqualTo("Elsewhere");
+        }
+
+        @Test
+        void testVersionChangesOnWrite() {
+                String initial = datasetService.version("Versioned");
+                datasetService.insertRecord("Versioned", createRecord(8001L, null, "Alice", 25, "Engineering"));
+                String written = datasetService.version("Versioned");
+                assertThat(written).isNotEqualTo(initial);
+                assertThat(datasetService.version("Versioned")).isEqualTo(written);
+
+                // Records taken from the dataset change it too
+                datasetService.insertRecord("Versioned", createRecord(8002L, null, "Bob", 30, "HR"));
+                String grown = datasetService.version("Versioned");
+                datasetService.insertRecord("Elsewhere", createRecord(8002L, null, "Bob", 30, "HR"));
+                assertThat(datasetService.version("Versioned")).isNotIn(initial, written, grown);
+
+                // A missing dataset has a single version, and one created again
+                // does not repeat the versions it had
+                datasetService.dropDataset("Versioned");
+                String dropped = datasetService.version("Versioned");
+                assertThat(dropped).isEqualTo(initial).isNotIn(written, grown);
+                datasetService.insertRecord("Versioned", createRecord(8003L, null, "Alice", 25, "Engineering"));
+                assertThat(datasetService.version("Versioned")).isNotIn(initial, written, grown);
+        }
+
+        @Test
+        void testVersionsAreReadWithTheDataAndKeptInMemory() {
+                datasetService.insertRecord("Remembered", createRecord(8101L, null, "Alice", 25, "Engineering"));
+                ReflectionTestUtils.setField(datasetService, "versionTtlMillis", 60_000L);
+                try {
+                        Versioned<List<DatasetRow>> sorted = datasetService.versioned("Remembered",
+                                        () -> datasetService.getSortedRecords("Remembered", "age", "asc"));
+                        assertThat(sorted.result()).extracting(DatasetRow::getId).containsExactly(8101L);
+                        assertThat(sorted.version()).isEqualTo(datasetKeyRegistry.version("Remembered"));
+
+                        // Writes through another instance are noticed once the
+                        // version outlives its time to live
+                        jdbcTemplate.update("UPDATE datasets SET change_seq = change_seq + 1 WHERE name = ?",
+                                        "Remembered");
+                        assertThat(datasetService.version("Remembered")).isEqualTo(sorted.version());
+                        ReflectionTestUtils.setField(datasetService, "versionTtlMillis", 0L);
+                        String changed = datasetService.version("Remembered");
+                        assertThat(changed).isNotEqualTo(sorted.version())
+                                        .isEqualTo(datasetKeyRegistry.version("Remembered"));
+                        ReflectionTestUtils.setField(datasetService, "versionTtlMillis", 60_000L);
+
+                        // Writes through this one at once
+                        datasetService.insertRecord("Remembered", createRecord(8102L, null, "Bob", 30, "HR"));
+                        assertThat(datasetService.version("Remembered")).isNotIn(sorted.version(), changed)
+                                        .isEqualTo(datasetKeyRegistry.version("Remembered"));
+
+                        // A query reading no dataset is not tagged
+                        assertThat(datasetService.versioned("Remembered", () -> 1).version()).isNull();
+                } finally {
+                        ReflectionTestUtils.setField(datasetService, "versionTtlMillis", 1000L);
+                }
+        }
+
+        @Test
+        void testChangesSinceCursor() {
+                datasetService.insertRecord("Ledger", createRecord(9001L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Ledger", createRecord(9002L, null, "Bob", 30, "HR"));
+                datasetService.insertRecord("Ledger", createRecord(9003L, null, "Carol", 35, "Sales"));
+
+                DatasetChanges first = datasetService.changes("Ledger", null, 2);
+                assertThat(first.reset()).isTrue();
+                assertThat(first.more()).isTrue();
+                assertThat(first.records()).extracting(DatasetRow::getId).containsExactly(9001L, 9002L);
+
+                DatasetChanges second = datasetService.changes("Ledger", first.nextCursor(), 2);
+                assertThat(second.reset()).isFalse();
+                assertThat(second.more()).isFalse();
+                assertThat(second.records()).extracting(DatasetRow::getId).containsExactly(9003L);
+
+                // Nothing new: the cursor stays put
+                DatasetChanges none = datasetService.changes("Ledger", second.nextCursor(), 2);
+                assertThat(none.records()).isEmpty();
+                assertThat(none.nextCursor()).isEqualTo(second.nextCursor());
+
+                // A record written again moves to the end of the sequence
+                datasetService.insertRecord("Ledger", createRecord(9001L, null, "Alicia", 26, "Engineering"));
+                DatasetChanges rewritten = datasetService.changes("Ledger", second.nextCursor(), 2);
+                assertThat(rewritten.records()).extracting(DatasetRow::getName).containsExactly("Alicia");
+
+                // A cursor of another incarnation of the dataset starts over
+                assertThat(datasetService.changes("Ledger", "999999-1", 10).reset()).isTrue();
+
+                assertThrows(IllegalArgumentException.class, () -> datasetService.changes("Ledger", "abc", 10));
+                assertThrows(IllegalArgumentException.class, () -> datasetService.changes("Ledger", null, 0));
+                assertThrows(DatasetNotFoundException.class, () -> datasetService.changes("Missing", null, 10));
+        }
+
+        @Test
+        void testRollupsAnswerUnfilteredAggregates() {
+                datasetService.insertRecord("Payroll", createRecord(9201L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Payroll", createRecord(9202L, null, "Bob", 41, "HR"));
+                datasetService.insertRecord("Payroll", createRecord(9203L, null, "Carol", 35, "Engineering"));
+                int datasetId = datasetKeyRegistry.findId("Payroll").orElseThrow();
+
+                assertThat(rollupRepository.findReadyRows(datasetId)).hasSize(2);
+                DatasetAggregate total = datasetService.aggregate("Payroll", "age");
+                assertThat(total).isEqualTo(new DatasetAggregate(3, 101, 25L, 41L, 101 / 3.0));
+                var grouped = datasetService.aggregateByGroup("Payroll", "age", "department");
+                assertThat(grouped.get("Engineering")).isEqualTo(new DatasetAggregate(2, 60, 25L, 35L, 30.0));
+                GroupCount counts = datasetService.countGroups("Payroll", List.of("department"), false,
+                                QueryOptions.defaults());
+                assertThat(counts.count()).isEqualTo(3);
+                assertThat(counts.groups().get("HR").count()).isEqualTo(1);
+
+                // Filters still scan the records
+                assertThat(datasetService.aggregate("Payroll", "age", QueryOptions.parse(null, "age>30")).count())
+                                .isEqualTo(2);
+
+                // A record written again moves to its new department
+                datasetService.insertRecord("Payroll", createRecord(9201L, null, "Alice", 50, "HR"));
+                grouped = datasetService.aggregateByGroup("Payroll", "age", "department");
+                assertThat(grouped.get("Engineering")).isEqualTo(new DatasetAggregate(1, 35, 35L, 35L, 35.0));
+                assertThat(grouped.get("HR")).isEqualTo(new DatasetAggregate(2, 91, 41L, 50L, 45.5));
+                assertThat(datasetService.aggregate("Payroll", "age").count()).isEqualTo(3);
+        }
+
+        @Test
+        void testRebuildRollupsOfDatasetWrittenWithoutThem() {
+                repository.save(createRecord(9301L, "Archive", "Alice", 25, "Engineering"));
+                repository.save(createRecord(9302L, "Archive", "Bob", 30, "HR"));
+                int datasetId = datasetKeyRegistry.findId("Archive").orElseThrow();
+
+                // Not rolled up: answered by a scan
+                assertThat(rollupRepository.findReadyRows(datasetId)).isEmpty();
+                assertThat(datasetService.aggregate("Archive", "age").sum()).isEqualTo(55);
+
+                assertThat(datasetService.rebuildRollups("Archive")).isEqualTo(2);
+                assertThat(rollupRepository.findReadyRows(datasetId)).hasSize(2);
+                assertThat(datasetService.aggregate("Archive", "age").sum()).isEqualTo(55);
+                assertThat(datasetService.rebuildRollups()).isGreaterThanOrEqualTo(1);
+                assertThrows(DatasetNotFoundException.class, () -> datasetService.rebuildRollups("Missing"));
+
+                datasetService.dropDataset("Archive");
+                assertThat(rollupRepository.findAll()).noneMatch(rollup -> rollup.getDatasetId() == datasetId);
+        }
+
+        @Test
+        void testEmptyDepartmentsDoNotShareTheRollupOfMissingOnes() {
+                datasetService.insertRecord("Blanks", createRecord(9501L, null, "Alice", 25, "Engineering"));
+                int datasetId = datasetKeyRegistry.findId("Blanks").orElseThrow();
+                // Written around the validation, e.g. before it existed
+                entityManager.getEntityManager().createNativeQuery("INSERT INTO dataset_records"
+                                + " (id, dataset_id, name, age, department) VALUES (9502, ?1, 'Legacy', 35, '')")
+                                .setParameter(1, datasetId)
+                                .executeUpdate();
+
+                // The dataset is left to scans, which tell it from records without one
+                assertThat(datasetService.rebuildRollups("Blanks")).isZero();
+                assertThat(rollupRepository.findReadyRows(datasetId)).isEmpty();
+                var grouped = datasetService.aggregateByGroup("Blanks", "age", "department");
+                assertThat(grouped.get("")).isEqualTo(new DatasetAggregate(1, 35, 35L, 35L, 35.0));
+                assertThat(grouped).doesNotContainKey("null");
+
+                // Moving the record away leaves no empty group behind; the id
+                // filter learns the legacy id once it is looked up
+                assertThat(datasetService.existsById(9502L)).isTrue();
+                datasetService.insertRecord("Blanks", createRecord(9502L, null, "Carol", 35, "HR"));
+                assertThat(datasetService.aggregateByGroup("Blanks", "age", "department"))
+                                .containsOnlyKeys("Engineering", "HR");
+                assertThat(datasetService.rebuildRollups("Blanks")).isEqualTo(2);
+                assertThat(rollupRepository.findReadyRows(datasetId)).hasSize(2);
+        }
+
+        @Test
+        void testExplainReportsChosenPlan() {
+                datasetService.insertRecord("Planner", createRecord(9401L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Planner", createRecord(9402L, null, "Bob", 41, "HR"));
+                datasetService.insertRecord("Planner", createRecord(9403L, null, "Carol", 35, "Engineering"));
+
+                QueryPlanner.Plan plan = datasetService.explain("Planner", query("department", false, null, null,
+                                "age", null));
+                assertThat(plan.strategy()).isEqualTo(QueryPlanner.Strategy.ROLLUP);
+                assertThat(plan.estimatedRows()).isEqualTo(3);
+                assertThat(plan.rollupsReady()).isTrue();
+                assertThat(plan.costs()).containsOnlyKeys(QueryPlanner.Strategy.ROLLUP, QueryPlanner.Strategy.SQL);
+                assertThat(datasetService.explain("Planner", query(null, false, null, null, "age", "age>30"))
+                                .strategy()).isEqualTo(QueryPlanner.Strategy.SQL);
+                assertThat(datasetService.explain("Planner", query("name", true, null, null, null, null))
+                                .strategy()).isEqualTo(QueryPlanner.Strategy.SQL);
+
+                plan = datasetService.explain("Planner", query(null, false, "age", 2, null, null));
+                assertThat(plan.strategy()).isEqualTo(QueryPlanner.Strategy.SQL);
+                assertThat(plan.indexed()).isTrue();
+                assertThat(datasetService.explain("Planner", query("department", false, null, null, null, null))
+                                .strategy()).isEqualTo(QueryPlanner.Strategy.PARALLEL_SCAN);
+                assertThat(datasetService.explain("Planner", query("department", false, "age", 1, null, null))
+                                .strategy()).isEqualTo(QueryPlanner.Strategy.SCAN);
+
+                assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.explain("Planner", query(null, false, null, null, null, null)));
+                assertThrows(InvalidFieldException.class,
+                                () -> datasetService.explain("Planner", query(null, false, "salary", null, null, null)));
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.explain("Missing", query("name", false, null, null, null, null)));
+        }
+
+        @Test
+        void testParallelScanSortsLikeTheDatabase() {
+                datasetService.insertRecord("Roster", createRecord(9501L, null, "Dave", 30, "HR"));
+                datasetService.insertRecord("Roster", createRecord(9502L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Roster", createRecord(9503L, null, "Carol", 35, "Engineering"));
+                datasetService.insertRecord("Roster", createRecord(9504L, null, "Alice", 41, "HR"));
+                List<Long> ascending = List.of(9502L, 9504L, 9503L, 9501L);
+                assertThat(datasetService.getSortedRecords("Roster", "name", "asc").stream().map(DatasetRow::getId))
+                                .containsExactlyElementsOf(ascending);
+
+                // Without an index on name the records are sorted in the application
+                doReturn(false).when(indexAdvisor).isIndexed(DatasetField.NAME);
+                assertThat(datasetService.explain("Roster", query(null, false, "name", null, null, null))
+                                .strategy()).isEqualTo(QueryPlanner.Strategy.PARALLEL_SCAN);
+                assertThat(datasetService.getSortedRecords("Roster", "name", "asc").stream().map(DatasetRow::getId))
+                                .containsExactlyElementsOf(ascending);
+                List<Long> descending = new ArrayList<>(ascending);
+                Collections.reverse(descending);
+                assertThat(datasetService.getSortedRecords("Roster", "name", "desc").stream().map(DatasetRow::getId))
+                                .containsExactlyElementsOf(descending);
+
+                // Only the requested fields are returned
+                List<DatasetRow> projected = datasetService.getSortedRecords("Roster", "name", "asc",
+                                QueryOptions.parse("age", "department=HR"));
+                assertThat(projected).extracting(DatasetRow::getAge).containsExactly(41, 30);
+                assertThat(projected).extracting(DatasetRow::getName).containsOnlyNulls();
+        }
+
+        @Test
+        void testExportStreamsColumnBatches() throws Exception {
+                datasetService.insertRecord("Exports", createRecord(9601L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Exports", createRecord(9602L, null, "Bob", 41, "HR"));
+                datasetService.insertRecord("Exports", createRecord(9603L, null, "Carol", 35, "Engineering"));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                datasetService.export("Exports", 2, QueryOptions.defaults()).writeTo(out);
+                ColumnarWriterTest.Export export = ColumnarWriterTest.decode(out.toByteArray());
+                assertThat(export.dataset()).isEqualTo("Exports");
+                assertThat(export.batchSizes()).containsExactly(2, 1);
+                assertThat(export.dictionary()).containsExactly("Engineering", "HR");
+                assertThat(export.records()).extracting(DatasetRow::getId).containsExactly(9601L, 9602L, 9603L);
+                assertThat(export.records()).extracting(DatasetRow::getName).containsExactly("Alice", "Bob", "Carol");
+
+                out.reset();
+                datasetService.export("Exports", 100, QueryOptions.parse(null, "department=HR")).writeTo(out);
+                assertThat(ColumnarWriterTest.decode(out.toByteArray()).records()).extracting(DatasetRow::getAge)
+                                .containsExactly(41);
+
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.export("Missing", 100, QueryOptions.defaults()));
+                assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.export("Exports", 0, QueryOptions.defaults()));
+
+                // An export running past its timeout stops reading and ends its transaction
+                ReflectionTestUtils.setField(datasetService, "exportTimeoutMillis", -1L);
+                try {
+                        StreamingResponseBody expired = datasetService.export("Exports", 2, QueryOptions.defaults());
+                        assertThrows(IllegalStateException.class, () -> expired.writeTo(new ByteArrayOutputStream()));
+                } finally {
+                        ReflectionTestUtils.setField(datasetService, "exportTimeoutMillis", 600_000L);
+                }
+        }
+
+        @Test
+        void testSnapshotServesScansUntilTheDatasetChanges() {
+                datasetService.insertRecord("Snapshots", createRecord(9701L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Snapshots", createRecord(9702L, null, "Bob", 41, "HR"));
+                datasetService.insertRecord("Snapshots", createRecord(9703L, null, "Carol", 35, "Engineering"));
+                Map<String, List<DatasetRow>> fromDatabase = datasetService.groupByField("Snapshots", "department");
+
+                assertThat(datasetSnapshots.rebuild("Snapshots")).isEqualTo(3);
+                clearInvocations(queryRepository);
+                assertThat(datasetService.groupByField("Snapshots", "department"))
+                                .usingRecursiveComparison().isEqualTo(fromDatabase);
+                assertThat(datasetService.getSortedRecords("Snapshots", "name", "desc",
+                                QueryOptions.parse("name", null)))
+                                .extracting(DatasetRow::getName, DatasetRow::getAge)
+                                .containsExactly(tuple("Carol", null), tuple("Bob", null), tuple("Alice", null));
+                verify(queryRepository, never()).findByDatasetId(anyInt(), anySet(), any());
+                // The plan is made with the snapshot the scan reads
+                assertThat(datasetService.explain("Snapshots", query("department", false, null, null, null, null))
+                                .snapshot()).isTrue();
+                assertThat(datasetService.explain("Snapshots", query("department", false, null, null, null,
+                                "age>30")).snapshot()).isFalse();
+                // A filter is evaluated by the database
+                assertThat(datasetService.groupByField("Snapshots", "department",
+                                QueryOptions.parse(null, "age>30"))).containsOnlyKeys("HR", "Engineering");
+                verify(queryRepository).findByDatasetId(anyInt(), anySet(), notNull());
+
+                // After a restart the file is mapped again without reading the records
+                int datasetId = datasetKeyRegistry.findId("Snapshots").orElseThrow();
+                DatasetSnapshots restarted = new DatasetSnapshots(queryRepository, datasetKeyRegistry, queryPlanner,
+                                shardRouter, transactionManager, snapshotDirectory.toString(), 10_000, 60_000);
+                try {
+                        assertThat(shardRouter.onDataset("Snapshots", () -> restarted.find("Snapshots", datasetId)))
+                                        .get().extracting(SnapshotFile::size).isEqualTo(3);
+                } finally {
+                        restarted.close();
+                }
+
+                // A new record makes the snapshot stale
+                datasetService.insertRecord("Snapshots", createRecord(9704L, null, "Dave", 29, "Sales"));
+                assertThat(datasetService.groupByField("Snapshots", "department")).containsKey("Sales");
+                assertThat(datasetService.explain("Snapshots", query("department", false, null, null, null, null))
+                                .snapshot()).isFalse();
+
+                // So does a record moving to another dataset
+                assertThat(datasetSnapshots.rebuild("Snapshots")).isEqualTo(4);
+                datasetService.insertRecord("Moved", createRecord(9704L, null, "Dave", 29, "Sales"));
+                assertThat(datasetService.groupByField("Snapshots", "department")).doesNotContainKey("Sales");
+                assertThat(shardRouter.onDataset("Snapshots", () -> datasetSnapshots.find("Snapshots", datasetId)))
+                                .isEmpty();
+
+                assertThat(datasetSnapshots.rebuild("Missing")).isEqualTo(-1);
+        }
+
+        @Test
+        void testRecordsMovedOutMakeSnapshotsStale() throws IOException {
+                datasetService.insertRecord("Departing", createRecord(9711L, null, "Alice", 25, "Engineering"));
+                datasetService.insertRecord("Departing", createRecord(9712L, null, "Bob", 41, "HR"));
+                datasetService.insertRecord("Departing", createRecord(9713L, null, "Carol", 35, "Sales"));
+                int datasetId = datasetKeyRegistry.findId("Departing").orElseThrow();
+
+                // Another instance holding a snapshot of the dataset learns of
+                // a record moved out only through the database
+                DatasetSnapshots other = new DatasetSnapshots(queryRepository, datasetKeyRegistry, queryPlanner,
+                                shardRouter, transactionManager,
+                                Files.createTempDirectory("other-snapshots").toString(), 10_000, 60_000);
+                try {
+                        assertThat(other.rebuild("Departing")).isEqualTo(3);
+                        datasetService.insertRecord("Arriving", createRecord(9712L, null, "Bob", 41, "HR"));
+                        assertThat(shardRouter.onDataset("Departing", () -> other.find("Departing", datasetId)))
+                                        .isEmpty();
+                } finally {
+                        other.close();
+                }
+
+                // So does this one for a record saved into another dataset
+                // through the repository
+                assertThat(datasetSnapshots.rebuild("Departing")).isEqualTo(2);
+                repository.save(createRecord(9713L, "Arriving", "Carol", 35, "Sales"));
+                entityManager.flush();
+                entityManager.clear();
+                assertThat(datasetService.getSortedRecords("Departing", "name", "asc"))
+                                .extracting(DatasetRow::getId).containsExactly(9711L);
+                assertThat(datasetService.explain("Departing", query("department", false, null, null, null, null))
+                                .snapshot()).isFalse();
+                assertThat(datasetService.getSortedRecords("Arriving", "name", "asc"))
+                                .extracting(DatasetRow::getId).containsExactly(9712L, 9713L);
+        }
+
+        private static BatchQuery query(String groupBy, boolean counts, String sortBy, Integer limit,
+                        String aggregate, String where) {
+                return new BatchQuery(null, groupBy, counts, false, sortBy, null, limit, aggregate, null, null, null,
+                                null, where);
+        }
+
+        @Test
+        void testSubscribeChecksDatasetAndCursor() {
+                datasetService.insertRecord("Tickers", createRecord(9101L, null, "Alice", 25, "Engineering"));
+
+                assertThat(datasetService.subscribe("Tickers", null)).isNotNull();
+                assertThat(datasetService.subscribe("Tickers", "1-0")).isNotNull();
+
+                assertThrows(DatasetNotFoundException.class, () -> datasetService.subscribe("Missing", null));
+                assertThrows(IllegalArgumentException.class, () -> datasetService.subscribe("Tickers", "abc"));
+        }
+
+        @Test
+        void testGetRecords() {
+                List<DatasetRecord> records = new ArrayList<>();
+                for (long id = 1; id <= 450; id++) {
+                        records.add(createRecord(id, "Visitors", "Guest", (int) (id % 60), "Sales"));
+                }
+                repository.saveAll(records);
+
+                // More ids than one IN-list chunk, returned in the order requested
+                List<Long> ids = new ArrayList<>();
+                for (long id = 450; id >= 1; id -= 2) {
+                        ids.add(id);
+                }
+                ids.add(999L);
+                RecordBatch batch = datasetService.getRecords("Visitors", ids, QueryOptions.defaults());
+                assertThat(batch.records()).extracting(DatasetRow::getId)
+                                .containsExactlyElementsOf(ids.subList(0, ids.size() - 1));
+                assertThat(batch.missing()).containsExactly(999L);
+
+                RecordBatch projected = datasetService.getRecords("Visitors", List.of(3L, 1L, 3L),
+                                QueryOptions.parse("id,age", null));
+                assertThat(projected.records()).extracting(DatasetRow::getId).containsExactly(3L, 1L);
+                assertThat(projected.records()).extracting(DatasetRow::getName).containsOnlyNulls();
+
+                // A write replaces the cached record
+                DatasetRecord host = createRecord(1L, "Visitors", "Host", 40, "Sales");
+                host.setDatasetId(datasetKeyRegistry.findId("Visitors").orElseThrow());
+                datasetService.insertRecord("Visitors", host);
+                assertThat(datasetService.getRecords("Visitors", List.of(1L), QueryOptions.defaults()).records())
+                                .extracting(DatasetRow::getName).containsExactly("Host");
+
+                assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.getRecords("Visitors", List.of(), QueryOptions.defaults()));
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.getRecords("Missing", List.of(1L), QueryOptions.defaults()));
+        }
+
+        @Test
+        void testRowsReadBeforeAWriteAreNotServedAfterIt() {
+                datasetService.insertRecord("Lookups", createRecord(9801L, null, "Alice", 25, "Engineering"));
+                int datasetId = datasetKeyRegistry.findId("Lookups").orElseThrow();
+
+                // The write and its eviction land between the read of the old
+                // row and its caching
+                doAnswer(invocation -> {
+                        Object rows = invocation.callRealMethod();
+                        DatasetRecord renamed = createRecord(9801L, null, "Alicia", 25, "Engineering");
+                        renamed.setDatasetId(datasetId);
+                        datasetService.insertRecord("Lookups", renamed);
+                        return rows;
+                }).doCallRealMethod().when(queryRepository).findByIds(anyInt(), anySet(), anyList());
+                assertThat(datasetService.getRecords("Lookups", List.of(9801L), QueryOptions.defaults()).records())
+                                .extracting(DatasetRow::getName).containsExactly("Alice");
+
+                assertThat(datasetService.getRecords("Lookups", List.of(9801L), QueryOptions.defaults()).records())
+                                .extracting(DatasetRow::getName).containsExactly("Alicia");
+                // The fresh row is cached again
+                clearInvocations(queryRepository);
+                assertThat(datasetService.getRecords("Lookups", List.of(9801L), QueryOptions.defaults()).records())
+                                .extracting(DatasetRow::getName).containsExactly("Alicia");
+                verify(queryRepository, never()).findByIds(anyInt(), anySet(), anyList());
+        }
+
+        @Test
+        void testSample() {
+                List<DatasetRecord> records = new ArrayList<>();
+                for (long id = 1; id <= 500; id++) {
+                        records.add(createRecord(id, "TestDataset", "Person", (int) (id % 60),
+                                        id % 3 == 0 ? "HR" : "Engineering"));
+                }
+                repository.saveAll(records);
+
+                // Dense ids: drawn at random and looked up by key
+                DatasetSample sample = datasetService.sample("TestDataset", 20, 42L, QueryOptions.defaults());
+                assertThat(sample.strategy()).isEqualTo("random-id");
+                assertThat(sample.population()).isEqualTo(500);
+                assertThat(sample.records()).hasSize(20).extracting(DatasetRow::getId).doesNotHaveDuplicates()
+                                .isSorted();
+                assertThat(datasetService.sample("TestDataset", 20, 42L, QueryOptions.defaults()).records())
+                                .extracting(DatasetRow::getId)
+                                .containsExactlyElementsOf(sample.records().stream().map(DatasetRow::getId).toList());
+
+                // Filtered: streamed through a reservoir
+                DatasetSample filtered = datasetService.sample("TestDataset", 10, 7L,
+                                QueryOptions.parse("id,department", "department=HR"));
+                assertThat(filtered.strategy()).isEqualTo("reservoir");
+                assertThat(filtered.population()).isEqualTo(166);
+                assertThat(filtered.records()).hasSize(10).extracting(DatasetRow::getDepartment).containsOnly("HR");
+                assertThat(filtered.records()).extracting(DatasetRow::getName).containsOnlyNulls();
+
+                var grouped = datasetService.sampleByGroup("TestDataset", "department", 5, 1L, QueryOptions.defaults());
+                assertThat(grouped).containsOnlyKeys("Engineering", "HR");
+                assertThat(grouped.get("HR").records()).hasSize(5).extracting(DatasetRow::getDepartment)
+                                .containsOnly("HR");
+                assertThat(grouped.get("Engineering").population()).isEqualTo(334);
+
+                // Asking for more records than exist returns all of them
+                assertThat(datasetService.sample("TestDataset", 1000, null, QueryOptions.defaults()).records())
+                                .hasSize(500);
+                assertThrows(IllegalArgumentException.class,
+                                () -> datasetService.sample("TestDataset", 0, null, QueryOptions.defaults()));
+                assertThrows(DatasetNotFoundException.class,
+                                () -> datasetService.sample("MissingDataset", 10, null, QueryOptions.defaults()));
+        }
 }
@@ -0,0 +1,43 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DatasetSnapshotsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRebuildsWaitForTheDatasetToGoQuiet() {
+        DatasetSnapshots snapshots = new DatasetSnapshots(null, null, null, null, null, directory.toString(), 0,
+                60_000);
+        try {
+            assertThat(snapshots.quiet("shard0-1", 5, 0)).isFalse();
+            assertThat(snapshots.quiet("shard0-1", 5, 59_999)).isFalse();
+            assertThat(snapshots.quiet("shard0-1", 5, 60_000)).isTrue();
+
+            // A write seen meanwhile starts the period again
+            assertThat(snapshots.quiet("shard0-1", 6, 70_000)).isFalse();
+            assertThat(snapshots.quiet("shard0-1", 6, 129_999)).isFalse();
+            assertThat(snapshots.quiet("shard0-1", 6, 130_000)).isTrue();
+
+            // Datasets are timed separately
+            assertThat(snapshots.quiet("shard0-2", 6, 130_000)).isFalse();
+        } finally {
+            snapshots.close();
+        }
+
+        // A period of 0 rebuilds as soon as a snapshot is found stale
+        DatasetSnapshots eager = new DatasetSnapshots(null, null, null, null, null, directory.toString(), 0, 0);
+        try {
+            assertThat(eager.quiet("shard0-1", 5, 0)).isTrue();
+        } finally {
+            eager.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.Entity.DatasetRecordView;
+import com.example.Exception.InvalidFieldException;
+import com.example.Repository.Filter;
+
+public class FilterParserTest {
+
+    private final FilterParser parser = new FilterParser(16);
+
+    private static String sql(Filter filter, List<Object> parameters) {
+        StringBuilder sql = new StringBuilder();
+        filter.appendSql(sql, parameters, 2);
+        return sql.toString();
+    }
+
+    @Test
+    void testCompilesToParameterizedSql() {
+        List<Object> parameters = new ArrayList<>();
+        Filter filter = parser.parse("age>40 and (department=Engineering or department='Human Resources')");
+
+        assertThat(sql(filter, parameters))
+                .isEqualTo("(age > ?2 AND (department = ?3 OR department = ?4))");
+        assertThat(parameters).containsExactly(40L, "Engineering", "Human Resources");
+    }
+
+    @Test
+    void testEvaluatesInMemory() {
+        Filter filter = parser.parse("age >= 40 AND department != HR");
+
+        assertThat(filter.test(new DatasetRecordView(1L, "ds", "Alice", 45, "Engineering"))).isTrue();
+        assertThat(filter.test(new DatasetRecordView(2L, "ds", "Bob", 45, "HR"))).isFalse();
+        assertThat(filter.test(new DatasetRecordView(3L, "ds", "Carol", 39, "Engineering"))).isFalse();
+        assertThat(filter.test(new DatasetRecordView(4L, "ds", "Dave", null, "Engineering"))).isFalse();
+    }
+
+    @Test
+    void testTextIsComparedIgnoringCaseLikeMySql() {
+        Filter equal = parser.parse("department = engineering");
+        assertThat(equal.test(new DatasetRecordView(1L, "ds", "Alice", 45, "Engineering"))).isTrue();
+        assertThat(equal.test(new DatasetRecordView(2L, "ds", "Bob", 45, "ENGINEERING"))).isTrue();
+        assertThat(equal.test(new DatasetRecordView(3L, "ds", "Carol", 45, "Engineers"))).isFalse();
+        assertThat(parser.parse("department != HR").test(new DatasetRecordView(4L, "ds", "Dave", 45, "hr")))
+                .isFalse();
+
+        // "bob" sorts after "Alice" and before "Carol" whatever the case
+        Filter range = parser.parse("name > bob and name < CAROL");
+        assertThat(range.test(new DatasetRecordView(5L, "ds", "Bobby", 30, "HR"))).isTrue();
+        assertThat(range.test(new DatasetRecordView(6L, "ds", "alice", 30, "HR"))).isFalse();
+        assertThat(range.test(new DatasetRecordView(7L, "ds", "carol", 30, "HR"))).isFalse();
+    }
+
+    @Test
+    void testAndBindsTighterThanOr() {
+        List<Object> parameters = new ArrayList<>();
+        Filter filter = parser.parse("name='O''Brien' or age<20 and age>10");
+
+        assertThat(sql(filter, parameters)).isEqualTo("(name = ?2 OR (age < ?3 AND age > ?4))");
+        assertThat(parameters).containsExactly("O'Brien", 20L, 10L);
+    }
+
+    @Test
+    void testPlansAreCachedByExpression() {
+        assertThat(parser.parse("age>40")).isSameAs(parser.parse("age>40"));
+    }
+
+    @Test
+    void testRejectsInvalidExpressions() {
+        InvalidFieldException unknown = assertThrows(InvalidFieldException.class, () -> parser.parse("salary>10"));
+        assertThat(unknown.getMessage()).isEqualTo("Unsupported where field: salary");
+
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("age>forty"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("age 40"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("(age>40"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("name='open"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("age>40 department=HR"));
+
+        // Nesting is bounded instead of overflowing the stack
+        String nested = "(".repeat(FilterParser.MAX_DEPTH) + "age>40" + ")".repeat(FilterParser.MAX_DEPTH);
+        assertThat(parser.parse(nested).test(new DatasetRecordView(1L, null, null, 41, null))).isTrue();
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("(" + nested + ")"));
+        assertThrows(IllegalArgumentException.class,
+                () -> parser.parse("(".repeat(100_000) + "age>40" + ")".repeat(100_000)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    void testSmallCardinalitiesAreNearExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            sketch.add("value-" + i);
+            sketch.add("value-" + i);
+        }
+
+        assertThat(sketch.estimate()).isBetween(98L, 102L);
+    }
+
+    @Test
+    void testLargeCardinalityWithinErrorBound() {
+        HyperLogLog sketch = new HyperLogLog();
+        int distinct = 1_000_000;
+        for (int i = 0; i < distinct; i++) {
+            sketch.add(Integer.toString(i));
+        }
+
+        // Four standard errors: fails for a correct sketch well under 0.01% of the time
+        double bound = 4 * HyperLogLog.RELATIVE_STANDARD_ERROR * distinct;
+        assertThat((double) sketch.estimate()).isBetween(distinct - bound, distinct + bound);
+    }
+
+    @Test
+    void testMergeEqualsSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 20_000; i++) {
+            (i % 2 == 0 ? left : right).add("v" + i);
+            union.add("v" + i);
+        }
+        // Overlapping values are counted once
+        for (int i = 0; i < 5_000; i++) {
+            right.add("v" + (i * 2));
+        }
+
+        assertThat(left.merge(right).toBytes()).isEqualTo(union.toBytes());
+    }
+
+    @Test
+    void testSerializationRoundTrip() {
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.add("Engineering");
+        sketch.add("HR");
+
+        HyperLogLog restored = HyperLogLog.fromBytes(sketch.toBytes());
+        assertThat(restored.estimate()).isEqualTo(2);
+        assertThat(restored.add("HR")).isFalse();
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[16]));
+    }
+}
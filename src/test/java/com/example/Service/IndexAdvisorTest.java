@@ -0,0 +1,69 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.Config.ShardingConfiguration;
+import com.example.Entity.DatasetField;
+
+@DataJpaTest
+@EntityScan(basePackages = "com.example.Entity")
+@Import({ IndexAdvisor.class, ShardingConfiguration.class })
+class IndexAdvisorTest {
+
+        @Autowired
+        private IndexAdvisor indexAdvisor;
+
+        @Autowired
+        private JdbcTemplate jdbcTemplate;
+
+        @Test
+        void testDeclaredIndexesCoverQueryFields() {
+                for (DatasetField field : DatasetField.values()) {
+                        assertThat(indexAdvisor.isIndexed(field)).as(field.getFieldName()).isTrue();
+                }
+        }
+
+        @Test
+        void testReportCountsUsagePerDataset() {
+                indexAdvisor.recordUsage("ReportDataset", DatasetField.AGE);
+                indexAdvisor.recordUsage("ReportDataset", DatasetField.AGE);
+                indexAdvisor.recordUsage("ReportDataset", DatasetField.NAME);
+
+                List<IndexAdvisor.Advice> report = indexAdvisor.report().stream()
+                                .filter(entry -> entry.dataset().equals("ReportDataset"))
+                                .toList();
+                assertThat(report).hasSize(2);
+                assertThat(report.get(0).field()).isEqualTo("age");
+                assertThat(report.get(0).usage()).isEqualTo(2);
+                assertThat(report.get(0).indexed()).isTrue();
+                assertThat(report.get(0).suggestedIndex()).isNull();
+                assertThat(report.get(1).field()).isEqualTo("name");
+                assertThat(report.get(1).usage()).isEqualTo(1);
+        }
+
+        @Test
+        void testMissingIndexIsReportedAndCreated() {
+                jdbcTemplate.execute("DROP INDEX idx_dataset_records_department");
+                indexAdvisor.recordUsage("TestDataset", DatasetField.DEPARTMENT);
+
+                IndexAdvisor.Advice advice = indexAdvisor.report().stream()
+                                .filter(entry -> entry.field().equals("department"))
+                                .findFirst()
+                                .orElseThrow();
+                assertThat(advice.indexed()).isFalse();
+                assertThat(advice.suggestedIndex()).isEqualTo(
+                                "CREATE INDEX idx_dataset_records_department ON dataset_records (dataset_id, department, id)");
+
+                indexAdvisor.createIndex(DatasetField.DEPARTMENT);
+                assertThat(indexAdvisor.isIndexed(DatasetField.DEPARTMENT)).isTrue();
+        }
+}
@@ -0,0 +1,66 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class KllSketchTest {
+
+    @Test
+    void testExactUntilFirstCompaction() {
+        KllSketch sketch = new KllSketch();
+        for (long value = 100; value >= 1; value--) {
+            sketch.add(value);
+        }
+
+        assertThat(sketch.isExact()).isTrue();
+        assertThat(sketch.quantile(0)).isEqualTo(1);
+        assertThat(sketch.quantile(0.5)).isEqualTo(50);
+        assertThat(sketch.quantile(0.99)).isEqualTo(99);
+        assertThat(sketch.quantile(1)).isEqualTo(100);
+        assertThat(KllSketch.exactQuantile(new long[] { 1, 2, 3, 4 }, 0.5)).isEqualTo(2);
+    }
+
+    @Test
+    void testRankErrorWithinBound() {
+        KllSketch sketch = new KllSketch();
+        int count = 1_000_000;
+        for (int i = 0; i < count; i++) {
+            // A shuffled permutation of 0..count-1: value v has rank v + 1
+            sketch.add(Math.floorMod(i * 7_919L, count));
+        }
+
+        assertThat(sketch.isExact()).isFalse();
+        assertThat(sketch.count()).isEqualTo(count);
+        for (double q : new double[] { 0.5, 0.9, 0.99 }) {
+            double rank = sketch.quantile(q) + 1;
+            assertThat(Math.abs(rank / count - q)).isLessThan(0.02);
+        }
+    }
+
+    @Test
+    void testMergeCoversBothSketches() {
+        KllSketch low = new KllSketch();
+        KllSketch high = new KllSketch();
+        for (long value = 0; value < 50_000; value++) {
+            low.add(value);
+            high.add(value + 50_000);
+        }
+
+        KllSketch merged = low.merge(high);
+        assertThat(merged.count()).isEqualTo(100_000);
+        assertThat((double) merged.quantile(0.5)).isCloseTo(50_000, offset(2_000.0));
+        assertThat(merged.quantile(1)).isGreaterThan(95_000);
+    }
+
+    @Test
+    void testEmptyAndInvalid() {
+        KllSketch sketch = new KllSketch();
+
+        assertThat(sketch.quantile(0.5)).isNull();
+        assertThrows(IllegalArgumentException.class, () -> sketch.quantile(1.5));
+        assertThrows(IllegalArgumentException.class, () -> new KllSketch(2));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.Entity.DatasetField;
+
+public class QueryPlannerTest {
+
+    private static final List<DatasetRollups.Rollup> ROLLUPS = List.of(
+            new DatasetRollups.Rollup("Engineering", 600_000, 600_000, 18_000_000, 20L, 60L),
+            new DatasetRollups.Rollup("HR", 400_000, 400_000, 14_000_000, 22L, 65L));
+
+    @TempDir
+    Path directory;
+
+    private QueryPlanner planner(int parallelism, Set<DatasetField> indexed) {
+        IndexAdvisor indexAdvisor = new IndexAdvisor(null, null, false, 0) {
+            @Override
+            public boolean isIndexed(DatasetField field) {
+                return indexed.contains(field);
+            }
+        };
+        return new QueryPlanner(null, null, indexAdvisor, 60_000, 20_000, parallelism);
+    }
+
+    private static QueryPlanner.Statistics rows(long rows) {
+        return new QueryPlanner.Statistics(rows, Optional.empty());
+    }
+
+    @Test
+    void testRollupsAnswerUnfilteredAgeAggregates() {
+        QueryPlanner planner = planner(4, Set.of());
+        QueryPlanner.Statistics statistics = new QueryPlanner.Statistics(1_000_000, Optional.of(ROLLUPS));
+
+        QueryPlanner.Plan plan = planner.aggregate(statistics, DatasetField.AGE, List.of(), false);
+        assertThat(plan.strategy()).isEqualTo(QueryPlanner.Strategy.ROLLUP);
+        assertThat(plan.cost()).isEqualTo(2);
+        assertThat(plan.costs()).containsEntry(QueryPlanner.Strategy.SQL, 1_000_000L);
+        assertThat(planner.aggregate(statistics, null, List.of(DatasetField.DEPARTMENT), false).strategy())
+                .isEqualTo(QueryPlanner.Strategy.ROLLUP);
+
+        // Filters, other fields and other groups are aggregated by the database
+        assertThat(planner.aggregate(statistics, DatasetField.AGE, List.of(), true).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+        assertThat(planner.aggregate(statistics, DatasetField.ID, List.of(), false).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+        assertThat(planner.aggregate(statistics, null, List.of(DatasetField.NAME), false).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+        assertThat(planner.aggregate(rows(1_000_000), DatasetField.AGE, List.of(), false).costs())
+                .containsOnlyKeys(QueryPlanner.Strategy.SQL);
+    }
+
+    @Test
+    void testIndexedSortsRunInTheDatabase() {
+        QueryPlanner planner = planner(4, Set.of(DatasetField.AGE));
+
+        QueryPlanner.Plan plan = planner.sort(rows(1_000_000), DatasetField.AGE, false, 10);
+        assertThat(plan.strategy()).isEqualTo(QueryPlanner.Strategy.SQL);
+        assertThat(plan.indexed()).isTrue();
+        assertThat(plan.cost()).isEqualTo(15);
+        assertThat(planner.sort(rows(1_000_000), DatasetField.AGE, false, null).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+    }
+
+    @Test
+    void testLargeUnindexedSortsRunInParallel() {
+        QueryPlanner planner = planner(4, Set.of());
+
+        assertThat(planner.sort(rows(1_000), DatasetField.NAME, false, null).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+        assertThat(planner.sort(rows(1_000_000), DatasetField.NAME, false, null).strategy())
+                .isEqualTo(QueryPlanner.Strategy.PARALLEL_SCAN);
+        // The database keeps only the first records of a limited sort
+        assertThat(planner.sort(rows(1_000_000), DatasetField.NAME, false, 10).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+        // One thread never pays off
+        assertThat(planner(1, Set.of()).sort(rows(1_000_000), DatasetField.NAME, false, null).costs())
+                .containsOnlyKeys(QueryPlanner.Strategy.SQL);
+    }
+
+    @Test
+    void testGroupingRunsInParallelOnceItPaysOff() {
+        QueryPlanner planner = planner(4, Set.of());
+
+        assertThat(planner.group(rows(100_000)).strategy()).isEqualTo(QueryPlanner.Strategy.SCAN);
+        assertThat(planner.group(rows(10_000_000)).strategy()).isEqualTo(QueryPlanner.Strategy.PARALLEL_SCAN);
+        assertThat(planner.scan(rows(10_000_000)).costs()).containsOnlyKeys(QueryPlanner.Strategy.SCAN);
+    }
+
+    @Test
+    void testSnapshotsMakeScansCheaper() throws IOException {
+        QueryPlanner planner = planner(4, Set.of());
+        Path path = directory.resolve("staff.snapshot");
+        try (SnapshotFile.Writer writer = SnapshotFile.create(path, "Staff", 1, 0)) {
+            writer.finish();
+        }
+        SnapshotFile snapshot = SnapshotFile.open(path);
+
+        // The snapshot's size is the exact row count
+        QueryPlanner.Statistics resident = rows(1_000_000).withSnapshot(Optional.of(snapshot));
+        assertThat(resident.rows()).isZero();
+        assertThat(rows(1_000_000).withSnapshot(Optional.empty()).snapshot()).isEmpty();
+
+        QueryPlanner.Statistics large = new QueryPlanner.Statistics(1_000_000, Optional.empty(),
+                Optional.of(snapshot));
+        QueryPlanner.Plan fromDatabase = planner.group(rows(1_000_000));
+        QueryPlanner.Plan fromSnapshot = planner.group(large);
+        assertThat(fromSnapshot.snapshot()).isTrue();
+        assertThat(fromDatabase.snapshot()).isFalse();
+        assertThat(fromSnapshot.cost()).isLessThan(fromDatabase.cost() / 5);
+        assertThat(planner.scan(large).cost()).isEqualTo(100_000);
+
+        // A limited unindexed sort is cheaper in the application once the
+        // records need not come from the database
+        assertThat(planner.sort(rows(1_000_000), DatasetField.NAME, false, 10).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+        assertThat(planner.sort(large, DatasetField.NAME, false, 10).strategy())
+                .isEqualTo(QueryPlanner.Strategy.PARALLEL_SCAN);
+        // Indexed sorts still stop after the limit in the database
+        assertThat(planner(4, Set.of(DatasetField.NAME)).sort(large, DatasetField.NAME, false, 10).strategy())
+                .isEqualTo(QueryPlanner.Strategy.SQL);
+    }
+}
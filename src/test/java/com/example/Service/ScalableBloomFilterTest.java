@@ -0,0 +1,62 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class ScalableBloomFilterTest {
+
+    @Test
+    void testAddedValuesAreAlwaysFound() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        for (long id = 0; id < 50_000; id++) {
+            filter.add(id);
+        }
+
+        for (long id = 0; id < 50_000; id++) {
+            assertThat(filter.mightContain(id)).as("id " + id).isTrue();
+        }
+    }
+
+    @Test
+    void testFalsePositiveRateStaysUnderTargetAsItGrows() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        for (long id = 0; id < 100_000; id++) {
+            filter.add(id);
+        }
+        assertThat(filter.stages()).isGreaterThan(1);
+
+        int falsePositives = 0;
+        int probes = 200_000;
+        for (long id = 1_000_000; id < 1_000_000 + probes; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(0.01);
+        assertThat(filter.expectedFalsePositiveRate()).isLessThan(0.01);
+    }
+
+    @Test
+    void testMemoryGrowsWithStages() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        long initial = filter.memoryBytes();
+        for (long id = 0; id < 1_000; id++) {
+            filter.add(id);
+        }
+        assertThat(filter.stages()).isEqualTo(1);
+        assertThat(filter.memoryBytes()).isEqualTo(initial);
+
+        filter.add(-1);
+        filter.add(-2);
+        assertThat(filter.stages()).isEqualTo(2);
+        assertThat(filter.memoryBytes()).isGreaterThan(2 * initial);
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(100, 1));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+
+public class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecordsRoundTripThroughTheMapping() throws IOException {
+        List<DatasetRow> records = List.of(
+                new DatasetRecordView(1L, null, "Alice", 25, "Engineering"),
+                new DatasetRecordView(2L, null, null, null, "HR"),
+                new DatasetRecordView(3L, null, "Zoë", 41, "Engineering"),
+                new DatasetRecordView(4L, null, "", 30, null));
+        Path path = directory.resolve("staff.snapshot");
+        try (SnapshotFile.Writer writer = SnapshotFile.create(path, "Staff", 7, 42)) {
+            records.forEach(writer);
+            assertThat(writer.finish()).isEqualTo(4);
+        }
+        // Only the snapshot is left
+        try (var files = Files.list(directory)) {
+            assertThat(files).containsExactly(path);
+        }
+
+        SnapshotFile snapshot = SnapshotFile.open(path);
+        assertThat(snapshot.getDatasetName()).isEqualTo("Staff");
+        assertThat(snapshot.getDatasetId()).isEqualTo(7);
+        assertThat(snapshot.getChangeSeq()).isEqualTo(42);
+        assertThat(snapshot.size()).isEqualTo(4);
+        assertThat(snapshot.records(EnumSet.of(DatasetField.ID, DatasetField.NAME, DatasetField.AGE,
+                DatasetField.DEPARTMENT)))
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(records);
+
+        // Fields that are not read stay null
+        DatasetRow projected = snapshot.records(EnumSet.of(DatasetField.DATASET_NAME, DatasetField.AGE)).get(2);
+        assertThat(projected).usingRecursiveComparison()
+                .isEqualTo(new DatasetRecordView(null, "Staff", null, 41, null));
+    }
+
+    @Test
+    void testEmptySnapshot() throws IOException {
+        Path path = directory.resolve("empty.snapshot");
+        try (SnapshotFile.Writer writer = SnapshotFile.create(path, "Empty", 1, 0)) {
+            assertThat(writer.finish()).isZero();
+        }
+        assertThat(SnapshotFile.open(path).records(EnumSet.allOf(DatasetField.class))).isEmpty();
+    }
+
+    @Test
+    void testIncompleteFilesAreRejected() throws IOException {
+        Path path = directory.resolve("partial.snapshot");
+        try (SnapshotFile.Writer writer = SnapshotFile.create(path, "Partial", 1, 3)) {
+            writer.accept(new DatasetRecordView(1L, null, "Alice", 25, "Engineering"));
+        }
+        assertThrows(IOException.class, () -> SnapshotFile.open(path));
+
+        Path truncated = directory.resolve("truncated.snapshot");
+        try (SnapshotFile.Writer writer = SnapshotFile.create(truncated, "Truncated", 1, 3)) {
+            writer.accept(new DatasetRecordView(1L, null, "Alice", 25, "Engineering"));
+            writer.finish();
+        }
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> SnapshotFile.open(truncated));
+    }
+}
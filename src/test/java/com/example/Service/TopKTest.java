@@ -0,0 +1,61 @@
+package com.example.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.Entity.DatasetField;
+import com.example.Entity.DatasetRecordView;
+import com.example.Entity.DatasetRow;
+
+public class TopKTest {
+
+    @Test
+    void testKeepsFirstItemsInOrder() {
+        List<Integer> top = IntStream.of(5, 1, 9, 3, 7, 2, 8)
+                .boxed()
+                .collect(TopK.collector(3, Comparator.<Integer>naturalOrder()));
+
+        assertThat(top).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void testFewerItemsThanLimit() {
+        TopK<Integer> topK = new TopK<>(10, Comparator.<Integer>reverseOrder());
+        List.of(4, 6, 5).forEach(topK::offer);
+
+        assertThat(topK.toList()).containsExactly(6, 5, 4);
+    }
+
+    @Test
+    void testParallelStreamMergesHeaps() {
+        List<Integer> top = IntStream.range(0, 100_000)
+                .parallel()
+                .boxed()
+                .collect(TopK.collector(5, Comparator.<Integer>reverseOrder()));
+
+        assertThat(top).containsExactly(99_999, 99_998, 99_997, 99_996, 99_995);
+    }
+
+    @Test
+    void testRecordOrderBreaksTiesById() {
+        Comparator<DatasetRow> oldestFirst = DatasetField.AGE.comparator().reversed();
+        TopK<DatasetRow> topK = new TopK<>(2, oldestFirst);
+        topK.offer(new DatasetRecordView(1L, "ds", "Alice", 40, "HR"));
+        topK.offer(new DatasetRecordView(2L, "ds", "Bob", 50, "HR"));
+        topK.offer(new DatasetRecordView(3L, "ds", "Carol", 40, "HR"));
+        topK.offer(new DatasetRecordView(4L, "ds", "Dave", null, "HR"));
+
+        assertThat(topK.toList()).extracting(DatasetRow::getName).containsExactly("Bob", "Carol");
+    }
+
+    @Test
+    void testRejectsNonPositiveLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new TopK<Integer>(0, Comparator.naturalOrder()));
+    }
+}